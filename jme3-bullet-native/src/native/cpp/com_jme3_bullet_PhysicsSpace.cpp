@@ -32,6 +32,7 @@
 #include "com_jme3_bullet_PhysicsSpace.h"
 #include "jmePhysicsSpace.h"
 #include "jmeBulletUtil.h"
+#include "jmeMotionState.h"
 
 /**
  * Author: Normen Hansen
@@ -74,6 +75,43 @@ extern "C" {
         space->stepSimulation(tpf, maxSteps, accuracy);
     }
 
+    /*
+     * Class:     com_jme3_bullet_PhysicsSpace
+     * Method:    getMovedTransforms
+     * Signature: (JLjava/nio/LongBuffer;Ljava/nio/FloatBuffer;I)I
+     */
+    JNIEXPORT jint JNICALL Java_com_jme3_bullet_PhysicsSpace_getMovedTransforms
+    (JNIEnv * env, jobject object, jlong spaceId, jobject idBuffer, jobject transformBuffer, jint capacity) {
+        jmePhysicsSpace* space = reinterpret_cast<jmePhysicsSpace*>(spaceId);
+        if (space == NULL) {
+            jclass newExc = env->FindClass("java/lang/NullPointerException");
+            env->ThrowNew(newExc, "The physics space does not exist.");
+            return 0;
+        }
+        jlong* ids = (jlong*) env->GetDirectBufferAddress(idBuffer);
+        jfloat* transforms = (jfloat*) env->GetDirectBufferAddress(transformBuffer);
+        if (ids == NULL || transforms == NULL) {
+            jclass newExc = env->FindClass("java/lang/IllegalArgumentException");
+            env->ThrowNew(newExc, "The transform buffers are not direct buffers.");
+            return 0;
+        }
+        // only bodies moved by the simulation have a dirty motion state,
+        // sleeping bodies are skipped without any JNI calls
+        btCollisionObjectArray& objects = space->getDynamicsWorld()->getCollisionObjectArray();
+        int count = 0;
+        for (int i = 0; i < objects.size() && count < capacity; i++) {
+            btRigidBody* body = btRigidBody::upcast(objects[i]);
+            if (body == NULL || body->getMotionState() == NULL) {
+                continue;
+            }
+            jmeMotionState* motionState = (jmeMotionState*) body->getMotionState();
+            if (motionState->writeTransform(transforms + count * 7)) {
+                ids[count++] = reinterpret_cast<jlong>(body);
+            }
+        }
+        return count;
+    }
+
     /*
      * Class:     com_jme3_bullet_PhysicsSpace
      * Method:    addCollisionObject
@@ -528,7 +566,81 @@ extern "C" {
         space->getDynamicsWorld()->convexSweepTest((btConvexShape *) shape, native_from, native_to, resultCallback, native_allowed_ccd_penetration);
         return;
     }
-    
+
+    /**
+     * Tests a ray against the leaves of the dbvt broadphase trees it passes,
+     * using only local state so that several threads can test rays at once.
+     */
+    struct BatchRayCallback : public btDbvt::ICollide {
+        btTransform rayFromTrans;
+        btTransform rayToTrans;
+        btCollisionWorld::RayResultCallback* resultCallback;
+
+        void Process(const btDbvtNode* leaf) {
+            btBroadphaseProxy* proxy = (btBroadphaseProxy*) leaf->data;
+            btCollisionObject* collisionObject = (btCollisionObject*) proxy->m_clientObject;
+            if (resultCallback->needsCollision(collisionObject->getBroadphaseHandle())) {
+                btCollisionWorld::rayTestSingle(rayFromTrans, rayToTrans, collisionObject,
+                        collisionObject->getCollisionShape(), collisionObject->getWorldTransform(), *resultCallback);
+            }
+        }
+    };
+
+    JNIEXPORT jint JNICALL Java_com_jme3_bullet_PhysicsSpace_rayTestBatch_1native
+    (JNIEnv * env, jobject object, jlong spaceId, jobject fromBuffer, jobject toBuffer, jint start, jint end, jobject resultBuffer, jobject idBuffer, jint flags, jboolean dbvt) {
+        jmePhysicsSpace* space = reinterpret_cast<jmePhysicsSpace*> (spaceId);
+        if (space == NULL) {
+            jclass newExc = env->FindClass("java/lang/NullPointerException");
+            env->ThrowNew(newExc, "The physics space does not exist.");
+            return 0;
+        }
+        jfloat* from = (jfloat*) env->GetDirectBufferAddress(fromBuffer);
+        jfloat* to = (jfloat*) env->GetDirectBufferAddress(toBuffer);
+        jfloat* results = (jfloat*) env->GetDirectBufferAddress(resultBuffer);
+        jlong* ids = (jlong*) env->GetDirectBufferAddress(idBuffer);
+        if (from == NULL || to == NULL || results == NULL || ids == NULL) {
+            jclass newExc = env->FindClass("java/lang/IllegalArgumentException");
+            env->ThrowNew(newExc, "The batch buffers are not direct buffers.");
+            return 0;
+        }
+
+        btDbvtBroadphase* broadphase = dbvt ? (btDbvtBroadphase*) space->getDynamicsWorld()->getBroadphase() : NULL;
+        int hits = 0;
+        for (int i = start; i < end; i++) {
+            btVector3 rayFrom(from[i * 3], from[i * 3 + 1], from[i * 3 + 2]);
+            btVector3 rayTo(to[i * 3], to[i * 3 + 1], to[i * 3 + 2]);
+            btCollisionWorld::ClosestRayResultCallback resultCallback(rayFrom, rayTo);
+            resultCallback.m_flags = flags;
+            if (broadphase != NULL) {
+                BatchRayCallback rayCallback;
+                rayCallback.rayFromTrans.setIdentity();
+                rayCallback.rayFromTrans.setOrigin(rayFrom);
+                rayCallback.rayToTrans.setIdentity();
+                rayCallback.rayToTrans.setOrigin(rayTo);
+                rayCallback.resultCallback = &resultCallback;
+                btDbvt::rayTest(broadphase->m_sets[0].m_root, rayFrom, rayTo, rayCallback);
+                btDbvt::rayTest(broadphase->m_sets[1].m_root, rayFrom, rayTo, rayCallback);
+            } else {
+                space->getDynamicsWorld()->rayTest(rayFrom, rayTo, resultCallback);
+            }
+            if (resultCallback.hasHit()) {
+                results[i * 4] = resultCallback.m_closestHitFraction;
+                results[i * 4 + 1] = resultCallback.m_hitNormalWorld.getX();
+                results[i * 4 + 2] = resultCallback.m_hitNormalWorld.getY();
+                results[i * 4 + 3] = resultCallback.m_hitNormalWorld.getZ();
+                ids[i] = reinterpret_cast<jlong>(resultCallback.m_collisionObject);
+                hits++;
+            } else {
+                results[i * 4] = 1;
+                results[i * 4 + 1] = 0;
+                results[i * 4 + 2] = 0;
+                results[i * 4 + 3] = 0;
+                ids[i] = 0;
+            }
+        }
+        return hits;
+    }
+
     JNIEXPORT void JNICALL Java_com_jme3_bullet_PhysicsSpace_setSolverNumIterations
     (JNIEnv *env, jobject object, jlong spaceId, jint value) {
         jmePhysicsSpace* space = reinterpret_cast<jmePhysicsSpace*>(spaceId);
@@ -29,6 +29,14 @@ JNIEXPORT jlong JNICALL Java_com_jme3_bullet_PhysicsSpace_createPhysicsSpace
 JNIEXPORT void JNICALL Java_com_jme3_bullet_PhysicsSpace_stepSimulation
   (JNIEnv *, jobject, jlong, jfloat, jint, jfloat);
 
+/*
+ * Class:     com_jme3_bullet_PhysicsSpace
+ * Method:    getMovedTransforms
+ * Signature: (JLjava/nio/LongBuffer;Ljava/nio/FloatBuffer;I)I
+ */
+JNIEXPORT jint JNICALL Java_com_jme3_bullet_PhysicsSpace_getMovedTransforms
+  (JNIEnv *, jobject, jlong, jobject, jobject, jint);
+
 /*
  * Class:     com_jme3_bullet_PhysicsSpace
  * Method:    addCollisionObject
@@ -174,6 +182,14 @@ JNIEXPORT void JNICALL Java_com_jme3_bullet_PhysicsSpace_finalizeNative
 JNIEXPORT void JNICALL Java_com_jme3_bullet_PhysicsSpace_sweepTest_1native
 (JNIEnv *, jobject, jlong, jobject, jobject, jlong, jobject, jfloat);
 
+/*
+ * Class:     com_jme3_bullet_PhysicsSpace
+ * Method:    rayTestBatch_native
+ * Signature: (JLjava/nio/FloatBuffer;Ljava/nio/FloatBuffer;IILjava/nio/FloatBuffer;Ljava/nio/LongBuffer;IZ)I
+ */
+JNIEXPORT jint JNICALL Java_com_jme3_bullet_PhysicsSpace_rayTestBatch_1native
+  (JNIEnv *, jobject, jlong, jobject, jobject, jint, jint, jobject, jobject, jint, jboolean);
+
 /*
  * Class:     com_jme3_bullet_PhysicsSpace
  * Method:    setSolverNumIterations
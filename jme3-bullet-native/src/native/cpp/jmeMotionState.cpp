@@ -84,6 +84,23 @@ bool jmeMotionState::applyTransform(JNIEnv* env, jobject location, jobject rotat
     return false;
 }
 
+bool jmeMotionState::writeTransform(jfloat* buffer) {
+    if (dirty) {
+        btQuaternion rotation;
+        worldTransform.getBasis().getRotation(rotation);
+        buffer[0] = worldTransform.getOrigin().getX();
+        buffer[1] = worldTransform.getOrigin().getY();
+        buffer[2] = worldTransform.getOrigin().getZ();
+        buffer[3] = rotation.getX();
+        buffer[4] = rotation.getY();
+        buffer[5] = rotation.getZ();
+        buffer[6] = rotation.getW();
+        dirty = false;
+        return true;
+    }
+    return false;
+}
+
 jmeMotionState::~jmeMotionState() {
     free(trans);
 }
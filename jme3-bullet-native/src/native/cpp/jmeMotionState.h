@@ -54,4 +54,5 @@ public:
     void setKinematicRotation(JNIEnv*, jobject);
     void setKinematicRotationQuat(JNIEnv*, jobject);
     bool applyTransform(JNIEnv* env, jobject location, jobject rotation);
+    bool writeTransform(jfloat* buffer);
 };
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.bullet;
+
+import com.jme3.util.ParallelTasks;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs a batch of ray or sweep tests of a {@link PhysicsSpace} in ranges of
+ * queries, on the calling thread or spread over an executor. The calling
+ * thread runs the ranges not yet picked up by the executor, so a busy or
+ * single threaded executor never delays the batch.
+ */
+abstract class BatchQuery {
+
+    /**
+     * number of queries per task when the batch runs in parallel
+     */
+    static final int QUERIES_PER_TASK = 256;
+
+    /**
+     * Performs the queries from start to end - 1, possibly at the same time
+     * as other ranges of the same batch on other threads.
+     *
+     * @return the number of queries that hit something
+     */
+    protected abstract int query(int start, int end);
+
+    /**
+     * Performs all count queries of the batch.
+     *
+     * @param executor the executor to spread the queries over, or null to
+     * run all of them on the calling thread
+     * @return the number of queries that hit something
+     */
+    int run(int count, Executor executor) {
+        if (executor == null || count <= QUERIES_PER_TASK) {
+            return query(0, count);
+        }
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+        for (int start = 0; start < count; start += QUERIES_PER_TASK) {
+            final int from = start;
+            final int to = Math.min(start + QUERIES_PER_TASK, count);
+            tasks.add(new Callable<Integer>() {
+                public Integer call() {
+                    return query(from, to);
+                }
+            });
+        }
+        int hits = 0;
+        for (int taskHits : ParallelTasks.invokeAll(executor, tasks)) {
+            hits += taskHits;
+        }
+        return hits;
+    }
+
+    /**
+     * Checks the buffers of a batch of count queries.
+     */
+    static void checkBuffers(FloatBuffer from, FloatBuffer to, int count,
+            FloatBuffer results, Object[] hitObjects) {
+        if (from.capacity() < count * 3 || to.capacity() < count * 3) {
+            throw new IllegalArgumentException("The start or end buffer holds less than " + count + " points");
+        }
+        if (results.capacity() < count * 4) {
+            throw new IllegalArgumentException("The result buffer holds less than " + count + " results");
+        }
+        if (hitObjects != null && hitObjects.length < count) {
+            throw new IllegalArgumentException("The hit object array is shorter than " + count);
+        }
+    }
+}
@@ -0,0 +1,506 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.bullet;
+
+import com.jme3.app.Application;
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.app.state.AppStateManager;
+import com.jme3.bullet.objects.PhysicsRigidBody;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.scene.Spatial;
+import com.jme3.util.ParallelTasks;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * <code>PhysicsLodAppState</code> lowers the cost of the rigid bodies of a
+ * BulletAppState that are far from all observers, e.g. the cameras and the
+ * players.
+ * <p>
+ * Bodies near an observer are simulated normally. Beyond the reduced
+ * distance they get higher sleeping thresholds, so they go to sleep as soon as
+ * they settle and no longer take solver and integration time. Beyond the
+ * frozen distance they are made kinematic and their velocities are kept, they
+ * get them back and are woken up when an observer comes near again. Static and
+ * kinematic bodies are left alone.
+ * <p>
+ * Only a budget of bodies is checked each frame, so in large worlds a body
+ * changes its tier a few frames after an observer moved. The physics step time
+ * and the bodies of each tier are reported to tune the distances and budget.
+ * <p>
+ * The locations of the bodies are read and the bodies are changed through
+ * {@link PhysicsSpace#enqueue}, so the state also works when the space steps
+ * in parallel to the update loop. Bodies that leave the space are dropped as
+ * they are, a body removed while it is frozen stays kinematic.
+ */
+public class PhysicsLodAppState extends AbstractAppState implements PhysicsTickListener {
+
+    /**
+     * bodies go back to a nearer tier only well inside its distance, so that
+     * bodies at the border do not switch every frame
+     */
+    private static final float HYSTERESIS = 0.9f;
+    private final BulletAppState bulletAppState;
+    private PhysicsSpace space;
+    private final List<Spatial> spatialObservers = new ArrayList<Spatial>();
+    private final List<Camera> cameraObservers = new ArrayList<Camera>();
+    private final List<Vector3f> observerLocations = new ArrayList<Vector3f>();
+    private final Map<PhysicsRigidBody, BodyState> states = new IdentityHashMap<PhysicsRigidBody, BodyState>();
+    /**
+     * the bodies of the current pass, read on the physics thread
+     */
+    private PassSnapshot passBodies;
+    private Future<PassSnapshot> nextPassBodies;
+    private int passIndex;
+    private int pass;
+    private float reducedDistance = 50f;
+    private float frozenDistance = 150f;
+    private float sleepingThresholdScale = 4f;
+    private int bodiesPerFrame = 5000;
+    private final int[] bodyCounts = new int[Tier.values().length];
+    private final int[] awakeCounts = new int[Tier.values().length];
+    private final int[] passBodyCounts = new int[Tier.values().length];
+    private final int[] passAwakeCounts = new int[Tier.values().length];
+    private long stepStart;
+    private long stepTime;
+    private long lastStepTime;
+
+    public PhysicsLodAppState(BulletAppState bulletAppState) {
+        this.bulletAppState = bulletAppState;
+    }
+
+    /**
+     * Adds a spatial whose world translation is an observer.
+     */
+    public void addObserver(Spatial spatial) {
+        spatialObservers.add(spatial);
+    }
+
+    /**
+     * Adds a camera whose location is an observer.
+     */
+    public void addObserver(Camera camera) {
+        cameraObservers.add(camera);
+    }
+
+    public void removeObserver(Spatial spatial) {
+        spatialObservers.remove(spatial);
+    }
+
+    public void removeObserver(Camera camera) {
+        cameraObservers.remove(camera);
+    }
+
+    @Override
+    public void initialize(AppStateManager stateManager, Application app) {
+        super.initialize(stateManager, app);
+        attachSpace();
+    }
+
+    private boolean attachSpace() {
+        if (space == null) {
+            space = bulletAppState.getPhysicsSpace();
+            if (space != null) {
+                space.addTickListener(this);
+            }
+        }
+        return space != null;
+    }
+
+    @Override
+    public void update(float tpf) {
+        lastStepTime = stepTime;
+        stepTime = 0;
+        if (!attachSpace()) {
+            return;
+        }
+
+        observerLocations.clear();
+        for (int i = 0; i < spatialObservers.size(); i++) {
+            observerLocations.add(spatialObservers.get(i).getWorldTranslation());
+        }
+        for (int i = 0; i < cameraObservers.size(); i++) {
+            observerLocations.add(cameraObservers.get(i).getLocation());
+        }
+
+        if (passBodies == null || passIndex >= passBodies.size) {
+            if (nextPassBodies == null) {
+                finishPass();
+                return;
+            }
+            if (!nextPassBodies.isDone()) {
+                // a new pass starts once the physics thread read the bodies
+                return;
+            }
+            passBodies = ParallelTasks.get(nextPassBodies);
+            nextPassBodies = null;
+            passIndex = 0;
+        }
+        int end = Math.min(passBodies.size, passIndex + bodiesPerFrame);
+        for (; passIndex < end; passIndex++) {
+            updateBody(passIndex);
+            passBodies.bodies[passIndex] = null;
+        }
+    }
+
+    /**
+     * Publishes the counts of the pass that just ended, drops the bodies that
+     * left the space while they were not active and asks the physics thread
+     * for the current bodies of the space for a new pass.
+     */
+    private void finishPass() {
+        System.arraycopy(passBodyCounts, 0, bodyCounts, 0, bodyCounts.length);
+        System.arraycopy(passAwakeCounts, 0, awakeCounts, 0, awakeCounts.length);
+        Arrays.fill(passBodyCounts, 0);
+        Arrays.fill(passAwakeCounts, 0);
+        for (Iterator<Map.Entry<PhysicsRigidBody, BodyState>> it = states.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<PhysicsRigidBody, BodyState> entry = it.next();
+            if (entry.getValue().pass != pass) {
+                // the body is no longer in the space, the physics thread
+                // must not be asked to change it
+                it.remove();
+            }
+        }
+        pass++;
+        passBodies = null;
+        final PhysicsSpace physicsSpace = space;
+        nextPassBodies = physicsSpace.enqueue(new Callable<PassSnapshot>() {
+
+            public PassSnapshot call() {
+                return new PassSnapshot(physicsSpace.getRigidBodyList());
+            }
+        });
+    }
+
+    private void updateBody(int index) {
+        PhysicsRigidBody body = passBodies.bodies[index];
+        BodyState state = states.get(body);
+        if (state == null && !passBodies.dynamic[index]) {
+            return;
+        }
+        Tier tier = state == null ? Tier.ACTIVE : state.tier;
+        Tier target = Tier.ACTIVE;
+        if (!observerLocations.isEmpty()) {
+            float[] locations = passBodies.locations;
+            float x = locations[index * 3];
+            float y = locations[index * 3 + 1];
+            float z = locations[index * 3 + 2];
+            float distanceSquared = Float.POSITIVE_INFINITY;
+            for (int i = 0; i < observerLocations.size(); i++) {
+                Vector3f observer = observerLocations.get(i);
+                float dx = observer.x - x;
+                float dy = observer.y - y;
+                float dz = observer.z - z;
+                distanceSquared = Math.min(distanceSquared, dx * dx + dy * dy + dz * dz);
+            }
+            float reduced = tier == Tier.ACTIVE ? reducedDistance : reducedDistance * HYSTERESIS;
+            float frozen = tier == Tier.FROZEN ? frozenDistance * HYSTERESIS : frozenDistance;
+            if (distanceSquared > frozen * frozen) {
+                target = Tier.FROZEN;
+            } else if (distanceSquared > reduced * reduced) {
+                target = Tier.REDUCED;
+            }
+        }
+        if (target != tier) {
+            if (state == null) {
+                state = new BodyState();
+                states.put(body, state);
+            }
+            setTier(body, state, target);
+            if (target == Tier.ACTIVE) {
+                states.remove(body);
+                state = null;
+            }
+        }
+        if (state != null) {
+            state.pass = pass;
+        }
+        passBodyCounts[target.ordinal()]++;
+        if (target != Tier.FROZEN && passBodies.active[index]) {
+            passAwakeCounts[target.ordinal()]++;
+        }
+    }
+
+    /**
+     * Moves the body to the tier. The state changes at once, the body is
+     * changed before the next physics step.
+     */
+    private void setTier(final PhysicsRigidBody body, final BodyState state, final Tier tier) {
+        final Tier from = state.tier;
+        if (from == tier) {
+            return;
+        }
+        state.tier = tier;
+        final float scale = sleepingThresholdScale;
+        space.enqueue(new Callable<Object>() {
+
+            public Object call() {
+                applyTier(body, state, from, tier, scale);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Changes the body from one tier to the other, on the physics thread.
+     */
+    private static void applyTier(PhysicsRigidBody body, BodyState state, Tier from, Tier tier,
+            float sleepingThresholdScale) {
+        if (from == Tier.ACTIVE) {
+            state.linearSleepingThreshold = body.getLinearSleepingThreshold();
+            state.angularSleepingThreshold = body.getAngularSleepingThreshold();
+            body.setSleepingThresholds(state.linearSleepingThreshold * sleepingThresholdScale,
+                    state.angularSleepingThreshold * sleepingThresholdScale);
+        }
+        if (from == Tier.FROZEN) {
+            body.setKinematic(false);
+            body.setLinearVelocity(state.linearVelocity);
+            body.setAngularVelocity(state.angularVelocity);
+            body.activate();
+        }
+        if (tier == Tier.FROZEN) {
+            body.getLinearVelocity(state.linearVelocity);
+            body.getAngularVelocity(state.angularVelocity);
+            body.setKinematic(true);
+        } else if (tier == Tier.ACTIVE) {
+            body.setSleepingThresholds(state.linearSleepingThreshold, state.angularSleepingThreshold);
+            body.activate();
+        }
+    }
+
+    /**
+     * Brings all bodies back to the active tier.
+     */
+    private void restoreBodies() {
+        for (Map.Entry<PhysicsRigidBody, BodyState> entry : states.entrySet()) {
+            setTier(entry.getKey(), entry.getValue(), Tier.ACTIVE);
+        }
+        states.clear();
+        passBodies = null;
+        if (nextPassBodies != null) {
+            nextPassBodies.cancel(false);
+            nextPassBodies = null;
+        }
+        passIndex = 0;
+        Arrays.fill(passBodyCounts, 0);
+        Arrays.fill(passAwakeCounts, 0);
+    }
+
+    /**
+     * Disabling the state brings all bodies back to normal simulation.
+     */
+    @Override
+    public void setEnabled(boolean enabled) {
+        if (!enabled && isEnabled()) {
+            restoreBodies();
+        }
+        super.setEnabled(enabled);
+    }
+
+    @Override
+    public void cleanup() {
+        restoreBodies();
+        if (space != null) {
+            space.removeTickListener(this);
+            space = null;
+        }
+        super.cleanup();
+    }
+
+    public void prePhysicsTick(PhysicsSpace space, float tpf) {
+        stepStart = System.nanoTime();
+    }
+
+    public void physicsTick(PhysicsSpace space, float tpf) {
+        stepTime += System.nanoTime() - stepStart;
+    }
+
+    /**
+     * @return the tier of the body, bodies not handled by this state are active
+     */
+    public Tier getTier(PhysicsRigidBody body) {
+        BodyState state = states.get(body);
+        return state == null ? Tier.ACTIVE : state.tier;
+    }
+
+    /**
+     * @return the time in nanoseconds the physics steps of the last frame took
+     */
+    public long getStepTime() {
+        return lastStepTime;
+    }
+
+    /**
+     * @return the share of the step time of the last frame taken by the awake
+     * bodies of the tier, assuming all awake bodies cost the same
+     */
+    public long getEstimatedStepTime(Tier tier) {
+        int awake = 0;
+        for (int i = 0; i < awakeCounts.length; i++) {
+            awake += awakeCounts[i];
+        }
+        return awake == 0 ? 0 : lastStepTime * awakeCounts[tier.ordinal()] / awake;
+    }
+
+    /**
+     * @return the number of dynamic bodies in the tier, as of the last
+     * complete pass over all bodies
+     */
+    public int getBodyCount(Tier tier) {
+        return bodyCounts[tier.ordinal()];
+    }
+
+    /**
+     * @return the number of awake bodies in the tier, as of the last complete
+     * pass over all bodies
+     */
+    public int getAwakeCount(Tier tier) {
+        return awakeCounts[tier.ordinal()];
+    }
+
+    public float getReducedDistance() {
+        return reducedDistance;
+    }
+
+    /**
+     * @param reducedDistance the distance to the nearest observer beyond which
+     * bodies get higher sleeping thresholds, default 50
+     */
+    public void setReducedDistance(float reducedDistance) {
+        this.reducedDistance = reducedDistance;
+    }
+
+    public float getFrozenDistance() {
+        return frozenDistance;
+    }
+
+    /**
+     * @param frozenDistance the distance to the nearest observer beyond which
+     * bodies are frozen, default 150
+     */
+    public void setFrozenDistance(float frozenDistance) {
+        this.frozenDistance = frozenDistance;
+    }
+
+    public float getSleepingThresholdScale() {
+        return sleepingThresholdScale;
+    }
+
+    /**
+     * @param sleepingThresholdScale the factor applied to the sleeping
+     * thresholds of reduced bodies, default 4
+     */
+    public void setSleepingThresholdScale(float sleepingThresholdScale) {
+        this.sleepingThresholdScale = sleepingThresholdScale;
+    }
+
+    public int getBodiesPerFrame() {
+        return bodiesPerFrame;
+    }
+
+    /**
+     * @param bodiesPerFrame the number of bodies checked each frame, default
+     * 5000
+     */
+    public void setBodiesPerFrame(int bodiesPerFrame) {
+        this.bodiesPerFrame = bodiesPerFrame;
+    }
+
+    public enum Tier {
+
+        /**
+         * Simulated normally
+         */
+        ACTIVE,
+        /**
+         * Simulated with higher sleeping thresholds
+         */
+        REDUCED,
+        /**
+         * Kinematic, with the velocities kept until the body becomes active
+         * again
+         */
+        FROZEN;
+    }
+
+    /**
+     * The bodies of the space with their locations and activity, read on the
+     * physics thread at the start of a pass.
+     */
+    private static class PassSnapshot {
+
+        final int size;
+        final PhysicsRigidBody[] bodies;
+        final float[] locations;
+        /**
+         * false for static and kinematic bodies
+         */
+        final boolean[] dynamic;
+        final boolean[] active;
+
+        PassSnapshot(Collection<PhysicsRigidBody> rigidBodies) {
+            size = rigidBodies.size();
+            bodies = rigidBodies.toArray(new PhysicsRigidBody[size]);
+            locations = new float[size * 3];
+            dynamic = new boolean[size];
+            active = new boolean[size];
+            Vector3f location = new Vector3f();
+            for (int i = 0; i < size; i++) {
+                PhysicsRigidBody body = bodies[i];
+                body.getPhysicsLocation(location);
+                locations[i * 3] = location.x;
+                locations[i * 3 + 1] = location.y;
+                locations[i * 3 + 2] = location.z;
+                dynamic[i] = body.getMass() != 0 && !body.isKinematic();
+                active[i] = body.isActive();
+            }
+        }
+    }
+
+    private static class BodyState {
+
+        Tier tier = Tier.ACTIVE;
+        int pass;
+        float linearSleepingThreshold;
+        float angularSleepingThreshold;
+        final Vector3f linearVelocity = new Vector3f();
+        final Vector3f angularVelocity = new Vector3f();
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.bullet.util;
+
+import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Mesh;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Shares the collision shapes that {@link CollisionShapeFactory} creates for
+ * meshes, so that all geometries using the same Mesh at the same scale get one
+ * MeshCollisionShape or HullCollisionShape, instead of each copying the
+ * vertices and building its own BVH or hull.
+ * <p>
+ * Meshes are compared by identity and only weakly referenced, the shapes of
+ * a mesh are dropped once the mesh is no longer used anywhere else, or when
+ * they are removed or the cache is cleared. Shapes that could not be created
+ * are not kept, they are tried again the next time they are asked for.
+ * Shared shapes must not be changed afterwards, e.g. with setScale or
+ * setMargin, and the shapes of a mesh whose vertices change have to be
+ * removed with {@link #remove(Mesh)}. The cache can be used from several
+ * threads.
+ *
+ * @see CollisionShapeFactory#createMeshShape(com.jme3.scene.Spatial, CollisionShapeCache)
+ * @see CollisionShapeFactory#createDynamicMeshShape(com.jme3.scene.Spatial, CollisionShapeCache)
+ */
+public class CollisionShapeCache {
+
+    private final Map<Mesh, Map<Vector3f, ShapeTask>> meshShapes =
+            new WeakHashMap<Mesh, Map<Vector3f, ShapeTask>>();
+    private final Map<Mesh, Map<Vector3f, ShapeTask>> hullShapes =
+            new WeakHashMap<Mesh, Map<Vector3f, ShapeTask>>();
+
+    /**
+     * The task creating a shape, which takes itself out of the cache if it
+     * fails so the failure is not kept.
+     */
+    private class ShapeTask extends FutureTask<CollisionShape> {
+
+        private final Map<Vector3f, ShapeTask> scales;
+        private final Vector3f scale;
+
+        ShapeTask(Callable<CollisionShape> callable, Map<Vector3f, ShapeTask> scales, Vector3f scale) {
+            super(callable);
+            this.scales = scales;
+            this.scale = scale;
+        }
+
+        @Override
+        protected void done() {
+            try {
+                get();
+            } catch (ExecutionException ex) {
+                forget();
+            } catch (CancellationException ex) {
+                forget();
+            } catch (InterruptedException ex) {
+                // cannot happen once the task is done
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void forget() {
+            synchronized (CollisionShapeCache.this) {
+                if (scales.get(scale) == this) {
+                    scales.remove(scale);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the task creating the shape of the mesh at the given scale.
+     * A new task is created with the callable and run on the executor when
+     * there is none yet, or stays for the caller to run when the executor
+     * is null. The callable must not keep the mesh once it has run, or the
+     * mesh is never dropped from the cache.
+     */
+    FutureTask<CollisionShape> get(Mesh mesh, Vector3f scale, boolean hull,
+            Callable<CollisionShape> callable, Executor executor) {
+        ShapeTask task;
+        synchronized (this) {
+            Map<Mesh, Map<Vector3f, ShapeTask>> shapes = hull ? hullShapes : meshShapes;
+            Map<Vector3f, ShapeTask> scales = shapes.get(mesh);
+            if (scales == null) {
+                scales = new HashMap<Vector3f, ShapeTask>();
+                shapes.put(mesh, scales);
+            }
+            task = scales.get(scale);
+            if (task != null) {
+                return task;
+            }
+            Vector3f key = scale.clone();
+            task = new ShapeTask(callable, scales, key);
+            scales.put(key, task);
+        }
+        if (executor != null) {
+            executor.execute(task);
+        }
+        return task;
+    }
+
+    /**
+     * Removes the shapes of the mesh, they are created again the next time
+     * they are asked for.
+     */
+    public synchronized void remove(Mesh mesh) {
+        Map<Vector3f, ShapeTask> scales = meshShapes.remove(mesh);
+        if (scales != null) {
+            scales.clear();
+        }
+        scales = hullShapes.remove(mesh);
+        if (scales != null) {
+            scales.clear();
+        }
+    }
+
+    /**
+     * Removes all shapes.
+     */
+    public synchronized void clear() {
+        for (Map<Vector3f, ShapeTask> scales : meshShapes.values()) {
+            scales.clear();
+        }
+        for (Map<Vector3f, ShapeTask> scales : hullShapes.values()) {
+            scales.clear();
+        }
+        meshShapes.clear();
+        hullShapes.clear();
+    }
+
+    /**
+     * @return the number of shapes in the cache, including the ones still
+     * being created
+     */
+    public synchronized int getShapeCount() {
+        int count = 0;
+        for (Map<Vector3f, ShapeTask> scales : meshShapes.values()) {
+            count += scales.size();
+        }
+        for (Map<Vector3f, ShapeTask> scales : hullShapes.values()) {
+            count += scales.size();
+        }
+        return count;
+    }
+}
@@ -40,8 +40,16 @@ import com.jme3.math.Vector3f;
 import com.jme3.scene.*;
 import com.jme3.terrain.geomipmap.TerrainPatch;
 import com.jme3.terrain.geomipmap.TerrainQuad;
+import com.jme3.util.ParallelTasks;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /**
  *
@@ -77,8 +85,49 @@ public class CollisionShapeFactory {
         return shapeTransform;
     }
 
+    /**
+     * Creates the MeshCollisionShape or HullCollisionShape of a mesh. The mesh
+     * is let go once the shape is created, so a cached task does not keep it.
+     */
+    private static class ShapeCallable implements Callable<CollisionShape> {
+
+        private Mesh mesh;
+        private final Vector3f scale;
+        private final boolean hull;
+
+        ShapeCallable(Mesh mesh, Vector3f scale, boolean hull) {
+            this.mesh = mesh;
+            this.scale = scale;
+            this.hull = hull;
+        }
+
+        public CollisionShape call() {
+            Mesh source = mesh;
+            mesh = null;
+            CollisionShape shape = hull ? new HullCollisionShape(source) : new MeshCollisionShape(source);
+            shape.setScale(scale);
+            return shape;
+        }
+    }
+
+    /**
+     * A child shape of a compound shape that is still being created.
+     */
+    private static class PendingChild {
+
+        FutureTask<CollisionShape> shape;
+        Vector3f location;
+        Matrix3f rotation;
+    }
+
+    /**
+     * Adds the shapes of the spatials below rootNode to the compound shape,
+     * when pending is not null the hull shapes are created on the executor and
+     * only added to the list.
+     */
     private static CompoundCollisionShape createCompoundShape(Node realRootNode,
-            Node rootNode, CompoundCollisionShape shape, boolean meshAccurate, boolean dynamic) {
+            Node rootNode, CompoundCollisionShape shape, boolean meshAccurate, boolean dynamic,
+            CollisionShapeCache cache, Executor executor, List<PendingChild> pending) {
         for (Spatial spatial : rootNode.getChildren()) {
             if (spatial instanceof TerrainQuad) {
                 Boolean bool = spatial.getUserData(UserData.JME_PHYSICSIGNORE);
@@ -91,7 +140,8 @@ public class CollisionShapeFactory {
                         trans.getTranslation(),
                         trans.getRotation().toRotationMatrix());
             } else if (spatial instanceof Node) {
-                createCompoundShape(realRootNode, (Node) spatial, shape, meshAccurate, dynamic);
+                createCompoundShape(realRootNode, (Node) spatial, shape, meshAccurate, dynamic,
+                        cache, executor, pending);
             } else if (spatial instanceof TerrainPatch) {
                 Boolean bool = spatial.getUserData(UserData.JME_PHYSICSIGNORE);
                 if (bool != null && bool.booleanValue()) {
@@ -108,10 +158,20 @@ public class CollisionShapeFactory {
                     continue; // go to the next child in the loop
                 }
 
-                if (meshAccurate) {
+                if (meshAccurate && dynamic && pending != null) {
+                    Mesh mesh = ((Geometry) spatial).getMesh();
+                    if (mesh != null) {
+                        Transform trans = getTransform(spatial, realRootNode);
+                        PendingChild child = new PendingChild();
+                        child.shape = createShapeTask(mesh, trans.getScale(), true, cache, executor);
+                        child.location = trans.getTranslation();
+                        child.rotation = trans.getRotation().toRotationMatrix();
+                        pending.add(child);
+                    }
+                } else if (meshAccurate) {
                     CollisionShape childShape = dynamic
-                            ? createSingleDynamicMeshShape((Geometry) spatial, realRootNode)
-                            : createSingleMeshShape((Geometry) spatial, realRootNode);
+                            ? createSingleDynamicMeshShape((Geometry) spatial, realRootNode, cache)
+                            : createSingleMeshShape((Geometry) spatial, realRootNode, cache);
                     if (childShape != null) {
                         Transform trans = getTransform(spatial, realRootNode);
                         shape.addChildShape(childShape,
@@ -130,8 +190,8 @@ public class CollisionShapeFactory {
     }
 
     private static CompoundCollisionShape createCompoundShape(
-            Node rootNode, CompoundCollisionShape shape, boolean meshAccurate) {
-        return createCompoundShape(rootNode, rootNode, shape, meshAccurate, false);
+            Node rootNode, CompoundCollisionShape shape, boolean meshAccurate, CollisionShapeCache cache) {
+        return createCompoundShape(rootNode, rootNode, shape, meshAccurate, false, cache, null, null);
     }
 
     /**
@@ -139,8 +199,8 @@ public class CollisionShapeFactory {
      * Examples include terrain, houses or whole shooter levels.<br>
      * Objects with "mesh" type collision shape will not collide with each other.
      */
-    private static CompoundCollisionShape createMeshCompoundShape(Node rootNode) {
-        return createCompoundShape(rootNode, new CompoundCollisionShape(), true);
+    private static CompoundCollisionShape createMeshCompoundShape(Node rootNode, CollisionShapeCache cache) {
+        return createCompoundShape(rootNode, new CompoundCollisionShape(), true, cache);
     }
 
     /**
@@ -150,7 +210,7 @@ public class CollisionShapeFactory {
      * @return
      */
     private static CompoundCollisionShape createBoxCompoundShape(Node rootNode) {
-        return createCompoundShape(rootNode, new CompoundCollisionShape(), false);
+        return createCompoundShape(rootNode, new CompoundCollisionShape(), false, null);
     }
 
     /**
@@ -161,6 +221,16 @@ public class CollisionShapeFactory {
      * @return A MeshCollisionShape or a CompoundCollisionShape with MeshCollisionShapes as children if the supplied spatial is a Node. A HeightieldCollisionShape if a TerrainQuad was supplied.
      */
     public static CollisionShape createMeshShape(Spatial spatial) {
+        return createMeshShape(spatial, null);
+    }
+
+    /**
+     * Creates a mesh-accurate shape like {@link #createMeshShape(Spatial)},
+     * taking the MeshCollisionShapes from the cache, so that geometries sharing
+     * a mesh and scale also share one shape and its BVH.
+     * @param cache the cache to use, or null to create all shapes
+     */
+    public static CollisionShape createMeshShape(Spatial spatial, CollisionShapeCache cache) {
         if (spatial instanceof TerrainQuad) {
             TerrainQuad terrain = (TerrainQuad) spatial;
             return new HeightfieldCollisionShape(terrain.getHeightMap(), terrain.getLocalScale());
@@ -168,9 +238,9 @@ public class CollisionShapeFactory {
             TerrainPatch terrain = (TerrainPatch) spatial;
             return new HeightfieldCollisionShape(terrain.getHeightMap(), terrain.getLocalScale());
         } else if (spatial instanceof Geometry) {
-            return createSingleMeshShape((Geometry) spatial, spatial);
+            return createSingleMeshShape((Geometry) spatial, spatial, cache);
         } else if (spatial instanceof Node) {
-            return createMeshCompoundShape((Node) spatial);
+            return createMeshCompoundShape((Node) spatial, cache);
         } else {
             throw new IllegalArgumentException("Supplied spatial must either be Node or Geometry!");
         }
@@ -182,16 +252,90 @@ public class CollisionShapeFactory {
      * @return A HullCollisionShape or a CompoundCollisionShape with HullCollisionShapes as children if the supplied spatial is a Node.
      */
     public static CollisionShape createDynamicMeshShape(Spatial spatial) {
+        return createDynamicMeshShape(spatial, null);
+    }
+
+    /**
+     * Creates hull shapes like {@link #createDynamicMeshShape(Spatial)},
+     * taking the HullCollisionShapes from the cache, so that geometries sharing
+     * a mesh and scale also share one shape.
+     * @param cache the cache to use, or null to create all shapes
+     */
+    public static CollisionShape createDynamicMeshShape(Spatial spatial, CollisionShapeCache cache) {
         if (spatial instanceof Geometry) {
-            return createSingleDynamicMeshShape((Geometry) spatial, spatial);
+            return createSingleDynamicMeshShape((Geometry) spatial, spatial, cache);
         } else if (spatial instanceof Node) {
-            return createCompoundShape((Node) spatial, (Node) spatial, new CompoundCollisionShape(), true, true);
+            return createCompoundShape((Node) spatial, (Node) spatial, new CompoundCollisionShape(), true, true,
+                    cache, null, null);
         } else {
             throw new IllegalArgumentException("Supplied spatial must either be Node or Geometry!");
         }
 
     }
 
+    /**
+     * Creates hull shapes like {@link #createDynamicMeshShape(Spatial)} on
+     * the shared executor.
+     * @see #createDynamicMeshShapeAsync(Spatial, CollisionShapeCache, Executor)
+     */
+    public static Future<CollisionShape> createDynamicMeshShapeAsync(Spatial spatial) {
+        return createDynamicMeshShapeAsync(spatial, null, getSharedExecutor());
+    }
+
+    /**
+     * Creates hull shapes like {@link #createDynamicMeshShape(Spatial, CollisionShapeCache)},
+     * with the hull of each geometry created on the executor.<br>
+     * The scene graph is only read by this method, but the meshes are read
+     * on the executor and must not change until the future is done.
+     * @param cache the cache to use, or null to create all shapes
+     * @param executor the executor creating the shapes
+     * @return the future HullCollisionShape or CompoundCollisionShape with
+     * HullCollisionShapes as children if the supplied spatial is a Node
+     */
+    public static Future<CollisionShape> createDynamicMeshShapeAsync(Spatial spatial, CollisionShapeCache cache,
+            Executor executor) {
+        if (spatial instanceof Geometry) {
+            Mesh mesh = ((Geometry) spatial).getMesh();
+            if (mesh == null) {
+                FutureTask<CollisionShape> task = new FutureTask<CollisionShape>(new Callable<CollisionShape>() {
+
+                    public CollisionShape call() {
+                        return null;
+                    }
+                });
+                task.run();
+                return task;
+            }
+            return createShapeTask(mesh, getTransform(spatial, spatial).getScale(), true, cache, executor);
+        } else if (spatial instanceof Node) {
+            final CompoundCollisionShape shape = new CompoundCollisionShape();
+            final List<PendingChild> pending = new ArrayList<PendingChild>();
+            createCompoundShape((Node) spatial, (Node) spatial, shape, true, true, cache, executor, pending);
+            FutureTask<CollisionShape> task = new FutureTask<CollisionShape>(new Callable<CollisionShape>() {
+
+                public CollisionShape call() {
+                    for (PendingChild child : pending) {
+                        shape.addChildShape(ParallelTasks.runAndGet(child.shape), child.location, child.rotation);
+                    }
+                    return shape;
+                }
+            });
+            executor.execute(task);
+            return task;
+        } else {
+            throw new IllegalArgumentException("Supplied spatial must either be Node or Geometry!");
+        }
+    }
+
+    /**
+     * The executor used by {@link #createDynamicMeshShapeAsync(Spatial)},
+     * the engine's shared worker threads.
+     * @see ParallelTasks#getSharedExecutor()
+     */
+    public static ExecutorService getSharedExecutor() {
+        return ParallelTasks.getSharedExecutor();
+    }
+
     public static CollisionShape createBoxShape(Spatial spatial) {
         if (spatial instanceof Geometry) {
             return createSingleBoxShape((Geometry) spatial, spatial);
@@ -207,13 +351,11 @@ public class CollisionShapeFactory {
      * Examples include terrain, houses or whole shooter levels.<br>
      * Objects with "mesh" type collision shape will not collide with each other.
      */
-    private static MeshCollisionShape createSingleMeshShape(Geometry geom, Spatial parent) {
+    private static MeshCollisionShape createSingleMeshShape(Geometry geom, Spatial parent, CollisionShapeCache cache) {
         Mesh mesh = geom.getMesh();
         Transform trans = getTransform(geom, parent);
         if (mesh != null && mesh.getMode() == Mesh.Mode.Triangles) {
-            MeshCollisionShape mColl = new MeshCollisionShape(mesh);
-            mColl.setScale(trans.getScale());
-            return mColl;
+            return (MeshCollisionShape) ParallelTasks.runAndGet(createShapeTask(mesh, trans.getScale(), false, cache, null));
         } else {
             return null;
         }
@@ -234,18 +376,34 @@ public class CollisionShapeFactory {
     /**
      * This method creates a hull collision shape for the given mesh.<br>
      */
-    private static HullCollisionShape createSingleDynamicMeshShape(Geometry geom, Spatial parent) {
+    private static HullCollisionShape createSingleDynamicMeshShape(Geometry geom, Spatial parent, CollisionShapeCache cache) {
         Mesh mesh = geom.getMesh();
         Transform trans = getTransform(geom, parent);
         if (mesh != null) {
-            HullCollisionShape dynamicShape = new HullCollisionShape(mesh);
-            dynamicShape.setScale(trans.getScale());
-            return dynamicShape;
+            return (HullCollisionShape) ParallelTasks.runAndGet(createShapeTask(mesh, trans.getScale(), true, cache, null));
         } else {
             return null;
         }
     }
 
+    /**
+     * Returns the task creating a MeshCollisionShape or HullCollisionShape
+     * for the mesh, from the cache if there is one. The task is run on the
+     * executor, or has to be run by the caller when the executor is null.
+     */
+    private static FutureTask<CollisionShape> createShapeTask(Mesh mesh, Vector3f scale,
+            boolean hull, CollisionShapeCache cache, Executor executor) {
+        Callable<CollisionShape> callable = new ShapeCallable(mesh, scale, hull);
+        if (cache != null) {
+            return cache.get(mesh, scale, hull, callable, executor);
+        }
+        FutureTask<CollisionShape> task = new FutureTask<CollisionShape>(callable);
+        if (executor != null) {
+            executor.execute(task);
+        }
+        return task;
+    }
+
     /**
      * This method moves each child shape of a compound shape by the given vector
      * @param vector
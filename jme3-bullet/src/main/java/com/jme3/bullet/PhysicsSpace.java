@@ -46,6 +46,11 @@ import com.jme3.math.Transform;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.Node;
 import com.jme3.scene.Spatial;
+import com.jme3.util.BufferUtils;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -56,6 +61,7 @@ import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -103,6 +109,14 @@ public class PhysicsSpace {
     private float accuracy = 1f / 60f;
     private int maxSubSteps = 4, rayTestFlags = 1 << 2;
     private int solverNumIterations = 10;
+    private boolean transformSync = false;
+    //ids and transforms of the bodies moved by the last update
+    private LongBuffer movedIds;
+    private FloatBuffer movedTransforms;
+    //object ids of the hits of the batch test running on each thread
+    private final ThreadLocal<LongBuffer> batchIds = new ThreadLocal<LongBuffer>();
+    //set once the native library turned out to have no batch tests
+    private static volatile boolean batchTestsMissing = false;
 
     static {
 //        System.loadLibrary("bulletjme");
@@ -192,15 +206,13 @@ public class PhysicsSpace {
 
     private void preTick_native(float f) {
         AppTask task = pQueue.poll();
-        task = pQueue.poll();
         while (task != null) {
-            while (task.isCancelled()) {
-                task = pQueue.poll();
-            }
-            try {
-                task.invoke();
-            } catch (Exception ex) {
-                logger.log(Level.SEVERE, null, ex);
+            if (!task.isCancelled()) {
+                try {
+                    task.invoke();
+                } catch (Exception ex) {
+                    logger.log(Level.SEVERE, null, ex);
+                }
             }
             task = pQueue.poll();
         }
@@ -357,10 +369,66 @@ public class PhysicsSpace {
 //        }
         //step simulation
         stepSimulation(physicsSpaceId, time, maxSteps, accuracy);
+        if (transformSync) {
+            syncTransforms();
+        }
     }
 
     private native void stepSimulation(long space, float time, int maxSteps, float accuracy);
 
+    /**
+     * Copies the transforms of all bodies moved by the simulation to their
+     * motion states with a single native call, instead of one call per body
+     * and frame when the controls apply them.
+     */
+    private void syncTransforms() {
+        int capacity = physicsBodies.size();
+        if (movedIds == null || movedIds.capacity() < capacity) {
+            capacity = Math.max(capacity, 16) * 3 / 2;
+            movedIds = ByteBuffer.allocateDirect(capacity * 8).order(ByteOrder.nativeOrder()).asLongBuffer();
+            movedTransforms = BufferUtils.createFloatBuffer(capacity * 7);
+        }
+        int count;
+        try {
+            count = getMovedTransforms(physicsSpaceId, movedIds, movedTransforms, movedIds.capacity());
+        } catch (UnsatisfiedLinkError e) {
+            // natives built before the bulk sync, the motion states apply
+            // their transforms one by one again
+            logger.log(Level.WARNING, "The native library does not support transform sync, disabling it.");
+            setTransformSync(false);
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            PhysicsRigidBody body = physicsBodies.get(movedIds.get(i));
+            if (body != null) {
+                body.getMotionState().setSyncedTransform(movedTransforms, i * 7);
+            }
+        }
+    }
+
+    private native int getMovedTransforms(long space, LongBuffer ids, FloatBuffer transforms, int capacity);
+
+    /**
+     * Enable or disable copying the transforms of all moved rigid bodies
+     * after each update in one native call, disabled by default. The motion
+     * states of the bodies then only apply these copies to their spatials,
+     * bodies that did not move cost no native call at all.<br/>
+     * This needs a native library built with the bulk sync, with older
+     * libraries it is disabled again on the first update.
+     *
+     * @param transformSync true to copy the transforms in bulk
+     */
+    public void setTransformSync(boolean transformSync) {
+        this.transformSync = transformSync;
+        for (PhysicsRigidBody body : physicsBodies.values()) {
+            body.getMotionState().setTransformSynced(transformSync);
+        }
+    }
+
+    public boolean isTransformSync() {
+        return transformSync;
+    }
+
     public void distributeEvents() {
         //add collision callbacks
         int clistsize = collisionListeners.size();
@@ -606,6 +674,7 @@ public class PhysicsSpace {
             return;
         }
         physicsBodies.put(node.getObjectId(), node);
+        node.getMotionState().setTransformSynced(transformSync);
 
         //Workaround
         //It seems that adding a Kinematic RigidBody to the dynamicWorld prevent it from being non kinematic again afterward.
@@ -641,6 +710,7 @@ public class PhysicsSpace {
         logger.log(Level.FINE, "Removing RigidBody {0} from physics space.", Long.toHexString(node.getObjectId()));
         physicsBodies.remove(node.getObjectId());
         removeRigidBody(physicsSpaceId, node.getObjectId());
+        node.getMotionState().setTransformSynced(false);
     }
 
     private void addJoint(PhysicsJoint joint) {
@@ -855,6 +925,158 @@ public class PhysicsSpace {
         return results;
     }
 
+    /**
+     * Performs a closest hit ray test for each of a batch of rays, without
+     * creating any result objects. See
+     * {@link #rayTestBatch(java.nio.FloatBuffer, java.nio.FloatBuffer, int, java.nio.FloatBuffer, com.jme3.bullet.collision.PhysicsCollisionObject[], java.util.concurrent.Executor)}.
+     */
+    public int rayTestBatch(FloatBuffer from, FloatBuffer to, int count, FloatBuffer results,
+            PhysicsCollisionObject[] hitObjects) {
+        return rayTestBatch(from, to, count, results, hitObjects, null);
+    }
+
+    /**
+     * Performs a closest hit ray test for each of a batch of rays, without
+     * creating any result objects and with a single native call per range
+     * of rays.<br/>
+     * The rays run from the points in from to the points in to, 3 values
+     * per point starting at index 0. For each ray the hit fraction and the
+     * world space hit normal are stored in results, 4 values per ray, and
+     * the hit object in hitObjects. Rays that hit nothing get a fraction of
+     * 1, a zero normal and a null object.<br/>
+     * With the DBVT broadphase the rays can be tested in parallel on the
+     * given executor, the space must not be updated or changed meanwhile.
+     * With a native library built without batch tests, the rays are tested
+     * one by one on the calling thread.
+     *
+     * @param from the direct buffer of the start points
+     * @param to the direct buffer of the end points
+     * @param count the number of rays
+     * @param results the direct buffer to store the hits in
+     * @param hitObjects the array to store the hit objects in, or null
+     * @param executor the executor to test the rays on, or null to test all
+     * of them on the calling thread
+     * @return the number of rays that hit something
+     */
+    public int rayTestBatch(final FloatBuffer from, final FloatBuffer to, int count,
+            final FloatBuffer results, PhysicsCollisionObject[] hitObjects, Executor executor) {
+        checkBatchBuffers(from, to, count, results, hitObjects);
+        final LongBuffer ids = getBatchIds(count);
+        final int flags = rayTestFlags;
+        final boolean dbvt = broadphaseType == BroadphaseType.DBVT;
+        BatchQuery query = new BatchQuery() {
+            @Override
+            protected int query(int start, int end) {
+                return rayTestBatch_native(physicsSpaceId, from, to, start, end, results, ids, flags, dbvt);
+            }
+        };
+        if (!hasBatchTests(query)) {
+            return rayTestEach(from, to, count, results, hitObjects);
+        }
+        int hits = query.run(count, dbvt ? executor : null);
+        getBatchHitObjects(ids, count, hitObjects);
+        return hits;
+    }
+
+    private int rayTestEach(FloatBuffer from, FloatBuffer to, int count, FloatBuffer results,
+            PhysicsCollisionObject[] hitObjects) {
+        Vector3f start = new Vector3f();
+        Vector3f end = new Vector3f();
+        List<PhysicsRayTestResult> rayResults = new LinkedList<PhysicsRayTestResult>();
+        int hits = 0;
+        for (int i = 0; i < count; i++) {
+            start.set(from.get(i * 3), from.get(i * 3 + 1), from.get(i * 3 + 2));
+            end.set(to.get(i * 3), to.get(i * 3 + 1), to.get(i * 3 + 2));
+            rayTest(start, end, rayResults);
+            PhysicsRayTestResult closest = null;
+            for (PhysicsRayTestResult result : rayResults) {
+                if (closest == null || result.getHitFraction() < closest.getHitFraction()) {
+                    closest = result;
+                }
+            }
+            if (closest != null) {
+                hits++;
+                // despite its name the native ray test stores the world space
+                // normal in hitNormalLocal, the same one the batch test stores
+                setBatchHit(i, closest.getCollisionObject(), closest.getHitFraction(), closest.getHitNormalLocal(),
+                        results, hitObjects);
+            } else {
+                setBatchHit(i, null, 1, Vector3f.ZERO, results, hitObjects);
+            }
+        }
+        return hits;
+    }
+
+    private native int rayTestBatch_native(long physicsSpaceId, FloatBuffer from, FloatBuffer to, int start, int end, FloatBuffer results, LongBuffer ids, int flags, boolean dbvt);
+
+    private void setBatchHit(int i, PhysicsCollisionObject object, float fraction, Vector3f normal,
+            FloatBuffer results, PhysicsCollisionObject[] hitObjects) {
+        results.put(i * 4, fraction);
+        results.put(i * 4 + 1, normal.x);
+        results.put(i * 4 + 2, normal.y);
+        results.put(i * 4 + 3, normal.z);
+        if (hitObjects != null) {
+            hitObjects[i] = object;
+        }
+    }
+
+    /**
+     * Runs an empty range of the query on the calling thread to find out
+     * whether the native library has the batch tests, the prebuilt libraries
+     * may predate them.
+     */
+    private boolean hasBatchTests(BatchQuery query) {
+        if (batchTestsMissing) {
+            return false;
+        }
+        try {
+            query.query(0, 0);
+            return true;
+        } catch (UnsatisfiedLinkError e) {
+            logger.log(Level.WARNING, "The native library does not support batch tests, testing one by one.");
+            batchTestsMissing = true;
+            return false;
+        }
+    }
+
+    private void checkBatchBuffers(FloatBuffer from, FloatBuffer to, int count, FloatBuffer results,
+            PhysicsCollisionObject[] hitObjects) {
+        if (!from.isDirect() || !to.isDirect() || !results.isDirect()) {
+            throw new IllegalArgumentException("Batch tests need direct buffers");
+        }
+        BatchQuery.checkBuffers(from, to, count, results, hitObjects);
+    }
+
+    private LongBuffer getBatchIds(int count) {
+        LongBuffer ids = batchIds.get();
+        if (ids == null || ids.capacity() < count) {
+            ids = ByteBuffer.allocateDirect(count * 8).order(ByteOrder.nativeOrder()).asLongBuffer();
+            batchIds.set(ids);
+        }
+        return ids;
+    }
+
+    private void getBatchHitObjects(LongBuffer ids, int count, PhysicsCollisionObject[] hitObjects) {
+        if (hitObjects == null) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            long id = ids.get(i);
+            hitObjects[i] = id == 0 ? null : getCollisionObject(id);
+        }
+    }
+
+    private PhysicsCollisionObject getCollisionObject(long objectId) {
+        PhysicsCollisionObject object = physicsBodies.get(objectId);
+        if (object == null) {
+            object = physicsGhostObjects.get(objectId);
+        }
+        if (object == null) {
+            object = physicsCharacters.get(objectId);
+        }
+        return object;
+    }
+
 /*    private class InternalSweepListener extends CollisionWorld.ConvexResultCallback {
 
         private List<PhysicsSweepTestResult> results;
@@ -60,7 +60,7 @@ public class PhysicsRayTestResult {
     }
 
     /**
-     * @return the hitNormalLocal
+     * @return the hit normal, in world space despite the name of the field
      */
     public Vector3f getHitNormalLocal() {
         return hitNormalLocal;
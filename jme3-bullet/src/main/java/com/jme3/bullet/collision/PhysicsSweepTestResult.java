@@ -62,7 +62,7 @@ public class PhysicsSweepTestResult {
     }
 
     /**
-     * @return the hitNormalLocal
+     * @return the hit normal, in world space despite the name of the field
      */
     public Vector3f getHitNormalLocal() {
         return hitNormalLocal;
@@ -36,6 +36,7 @@ import com.jme3.math.Matrix3f;
 import com.jme3.math.Quaternion;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.Spatial;
+import java.nio.FloatBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -52,6 +53,11 @@ public class RigidBodyMotionState {
     private Quaternion tmp_inverseWorldRotation = new Quaternion();
     private PhysicsVehicle vehicle;
     private boolean applyPhysicsLocal = false;
+    //transform copied from the physics space after each step, see setSyncedTransform
+    private Vector3f syncedLocation = new Vector3f();
+    private Quaternion syncedRotation = new Quaternion();
+    private boolean transformSynced = false;
+    private boolean syncedTransformDirty = false;
 //    protected LinkedList<PhysicsMotionStateListener> listeners = new LinkedList<PhysicsMotionStateListener>();
 
     public RigidBodyMotionState() {
@@ -68,8 +74,11 @@ public class RigidBodyMotionState {
     public boolean applyTransform(Spatial spatial) {
         Vector3f localLocation = spatial.getLocalTranslation();
         Quaternion localRotationQuat = spatial.getLocalRotation();
-        boolean physicsLocationDirty = applyTransform(motionStateId, localLocation, localRotationQuat);
-        if (!physicsLocationDirty) {
+        if (syncedTransformDirty) {
+            localLocation.set(syncedLocation);
+            localRotationQuat.set(syncedRotation);
+            syncedTransformDirty = false;
+        } else if (transformSynced || !applyTransform(motionStateId, localLocation, localRotationQuat)) {
             return false;
         }
         if (!applyPhysicsLocal && spatial.getParent() != null) {
@@ -133,6 +142,35 @@ public class RigidBodyMotionState {
         this.vehicle = vehicle;
     }
 
+    /**
+     * Used internally, stores the transform the physics space copied from the
+     * native motion state after a step, the next call to
+     * {@link #applyTransform(com.jme3.scene.Spatial)} applies it.
+     *
+     * @param transforms the transforms of all moved bodies, 3 location
+     * and 4 rotation values per body
+     * @param offset the index of the first value of this motion state
+     */
+    public void setSyncedTransform(FloatBuffer transforms, int offset) {
+        syncedLocation.set(transforms.get(offset), transforms.get(offset + 1), transforms.get(offset + 2));
+        syncedRotation.set(transforms.get(offset + 3), transforms.get(offset + 4),
+                transforms.get(offset + 5), transforms.get(offset + 6));
+        syncedTransformDirty = true;
+    }
+
+    /**
+     * Used internally, while true {@link #applyTransform(com.jme3.scene.Spatial)}
+     * only applies the transforms set by the physics space and does not
+     * query the native motion state.
+     */
+    public void setTransformSynced(boolean transformSynced) {
+        this.transformSynced = transformSynced;
+    }
+
+    public boolean isTransformSynced() {
+        return transformSynced;
+    }
+
     public boolean isApplyPhysicsLocal() {
         return applyPhysicsLocal;
     }
@@ -46,6 +46,8 @@ import com.jme3.renderer.Renderer;
 import com.jme3.renderer.ViewPort;
 import com.jme3.system.*;
 import com.jme3.system.JmeContext.Type;
+import com.jme3.asset.DesktopAssetManager;
+import com.jme3.texture.image.ImagePreparer;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.concurrent.Callable;
@@ -258,6 +260,14 @@ public class Application implements SystemListener {
         }
 
         renderer = context.getRenderer();
+        
+        // Let the loading threads prepare images for this renderer,
+        // unless the user has chosen otherwise
+        if (context.getType() != Type.Headless 
+                && assetManager instanceof DesktopAssetManager
+                && ((DesktopAssetManager) assetManager).getImagePreparer() == null) {
+            ((DesktopAssetManager) assetManager).setImagePreparer(ImagePreparer.forCaps(renderer.getCaps()));
+        }
     }
 
     private void initAudio(){
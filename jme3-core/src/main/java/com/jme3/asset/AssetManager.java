@@ -50,6 +50,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.Future;
 
 /**
  * <code>AssetManager</code> provides an interface for managing the data assets
@@ -235,6 +236,26 @@ public interface AssetManager {
      */
     public <T> T loadAsset(AssetKey<T> key);
 
+    /**
+     * Load an asset from a key on a background loading thread. 
+     * The asset is loaded the same way as with 
+     * {@link AssetManager#loadAsset(com.jme3.asset.AssetKey) }.
+     * <p>
+     * Concurrent requests for equal keys are de-duplicated: only one 
+     * thread loads the asset while the others wait for it and then receive 
+     * it from the cache. Loaders can use this method to start loading 
+     * their dependencies in parallel before requesting them with 
+     * {@link AssetManager#loadAsset(com.jme3.asset.AssetKey) }.
+     *
+     * @param <T> The object type that will be loaded from the AssetKey instance.
+     * @param key The AssetKey
+     * @return A future which provides the loaded asset. {@link Future#get() }
+     * throws an {@link java.util.concurrent.ExecutionException} with the 
+     * {@link AssetNotFoundException} or {@link AssetLoadException} as the cause
+     * if the asset failed to load.
+     */
+    public <T> Future<T> loadAssetAsync(AssetKey<T> key);
+
     /**
      * Load an asset by name, calling this method is the same as calling
      * <code>loadAsset(new AssetKey(name))</code>.
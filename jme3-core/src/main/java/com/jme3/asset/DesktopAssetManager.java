@@ -32,9 +32,11 @@
 package com.jme3.asset;
 
 import com.jme3.asset.cache.AssetCache;
+import com.jme3.asset.cache.PersistentAssetCache;
 import com.jme3.asset.cache.SimpleAssetCache;
 import com.jme3.audio.AudioData;
 import com.jme3.audio.AudioKey;
+import com.jme3.export.Savable;
 import com.jme3.font.BitmapFont;
 import com.jme3.material.Material;
 import com.jme3.post.FilterPostProcessor;
@@ -47,6 +49,7 @@ import com.jme3.shader.ShaderGenerator;
 import com.jme3.shader.ShaderKey;
 import com.jme3.system.JmeSystem;
 import com.jme3.texture.Texture;
+import com.jme3.texture.image.ImagePreparer;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
@@ -54,8 +57,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -77,6 +86,26 @@ public class DesktopAssetManager implements AssetManager {
     
     private List<ClassLoader> classLoaders =
             Collections.synchronizedList(new ArrayList<ClassLoader>());
+    
+    private volatile PersistentAssetCache persistentCache;
+    
+    private volatile ImagePreparer imagePreparer;
+    
+    /**
+     * Loads currently in progress for cached assets, used to make
+     * concurrent requests for the same key wait for a single load.
+     */
+    private final ConcurrentHashMap<AssetKey, AssetLoadRequest> pendingLoads =
+            new ConcurrentHashMap<AssetKey, AssetLoadRequest>();
+    
+    /**
+     * The load each thread is waiting for while another thread runs it,
+     * used to detect cyclic dependencies between loads on different threads.
+     */
+    private final HashMap<Thread, AssetLoadRequest> waitingLoads =
+            new HashMap<Thread, AssetLoadRequest>();
+    
+    private ThreadingManager threadingManager;
 
     public DesktopAssetManager(){
         this(null);
@@ -121,6 +150,50 @@ public class DesktopAssetManager implements AssetManager {
         eventListeners.remove(listener);
     }
 
+    /**
+     * Sets the persistent cache used to store loader output on disk
+     * across application runs. Assets loaded with
+     * {@link #loadAssetFromStream(com.jme3.asset.AssetKey, java.io.InputStream) }
+     * are not cached, as their source cannot be read twice.
+     * 
+     * @param persistentCache The persistent cache, or null to disable 
+     * persistent caching (the default).
+     * 
+     * @see PersistentAssetCache
+     */
+    public void setPersistentCache(PersistentAssetCache persistentCache) {
+        this.persistentCache = persistentCache;
+    }
+    
+    /**
+     * @return The persistent cache, or null if persistent caching is disabled.
+     */
+    public PersistentAssetCache getPersistentCache() {
+        return persistentCache;
+    }
+
+    /**
+     * Sets the preparer used to perform the CPU-side transforms of loaded
+     * textures on the loading thread, so that the render thread only has
+     * to upload them. It is applied to the texture returned to the caller, 
+     * the cached original is left as is.
+     * 
+     * @param imagePreparer The image preparer, or null to leave all 
+     * transforms to the renderer (the default).
+     * 
+     * @see ImagePreparer
+     */
+    public void setImagePreparer(ImagePreparer imagePreparer) {
+        this.imagePreparer = imagePreparer;
+    }
+
+    /**
+     * @return The image preparer, or null if none is set.
+     */
+    public ImagePreparer getImagePreparer() {
+        return imagePreparer;
+    }
+
     public void clearAssetEventListeners() {
         eventListeners.clear();
     }
@@ -198,6 +271,22 @@ public class DesktopAssetManager implements AssetManager {
         return info;
     }
     
+    /**
+     * Returns the cache instance of the given type used by this asset manager,
+     * creating it if necessary. This allows configuring caches
+     * which are selected through {@link AssetKey#getCacheType() }.
+     * 
+     * @param <T> The cache type
+     * @param cacheClass The cache class
+     * @return The cache instance
+     */
+    public <T extends AssetCache> T getCache(Class<T> cacheClass) {
+        if (cacheClass == null) {
+            throw new IllegalArgumentException("cacheClass cannot be null");
+        }
+        return handler.getCache(cacheClass);
+    }
+    
     @Override
     public <T> T getFromCache(AssetKey<T> key) {
         AssetCache cache = handler.getCache(key.getCacheType());
@@ -256,10 +345,24 @@ public class DesktopAssetManager implements AssetManager {
      */
     protected <T> T loadLocatedAsset(AssetKey<T> key, AssetInfo info, AssetProcessor proc, AssetCache cache) {
         AssetLoader loader = handler.aquireLoader(key);
-        Object obj;
+        PersistentAssetCache persistent = persistentCache;
+        String stamp = null;
+        Object obj = null;
         try {
             handler.establishParentKey(key);
-            obj = loader.load(info);
+            // The stream of a StreamAssetInfo can only be opened once,
+            // computing a stamp would leave nothing for the loader
+            if (persistent != null && !(info instanceof StreamAssetInfo)
+                    && persistent.isPersistable(key)) {
+                stamp = persistent.computeStamp(info);
+                obj = persistent.load(key, stamp, this);
+            }
+            if (obj == null) {
+                obj = loader.load(info);
+                if (stamp != null && obj instanceof Savable) {
+                    persistent.store(key, stamp, (Savable) obj);
+                }
+            }
         } catch (IOException ex) {
             throw new AssetLoadException("An exception has occured while loading asset: " + key, ex);
         } finally {
@@ -341,7 +444,9 @@ public class DesktopAssetManager implements AssetManager {
         
         AssetProcessor proc = handler.getProcessor(key.getProcessorType());
         StreamAssetInfo info = new StreamAssetInfo(this, key, inputStream);
-        return loadLocatedAsset(key, info, proc, null);
+        T obj = loadLocatedAsset(key, info, proc, null);
+        prepareTexture(obj);
+        return obj;
     }
     
     @Override
@@ -359,32 +464,191 @@ public class DesktopAssetManager implements AssetManager {
         Object obj = cache != null ? cache.getFromCache(key) : null;
         if (obj == null){
             // Asset not in cache, load it from file system.
-            AssetInfo info = handler.tryLocate(key);
-            if (info == null){
-                if (handler.getParentKey() != null){
-                    // Inform event listener that an asset has failed to load.
-                    // If the parent AssetLoader chooses not to propagate
-                    // the exception, this is the only means of finding
-                    // that something went wrong.
-                    for (AssetEventListener listener : eventListeners){
-                        listener.assetDependencyNotFound(handler.getParentKey(), key);
-                    }
+            if (cache != null){
+                obj = loadSharedAsset(key, proc, cache);
+            }else{
+                AssetInfo info = handler.tryLocate(key);
+                if (info == null){
+                    notifyDependencyNotFound(key);
+                    throw new AssetNotFoundException(key.toString());
                 }
-                throw new AssetNotFoundException(key.toString());
+                obj = loadLocatedAsset(key, info, proc, null);
             }
-            
-            obj = loadLocatedAsset(key, info, proc, cache);
         }
 
         T clone = (T) obj;
         
         if (obj instanceof CloneableSmartAsset) {
             clone = registerAndCloneSmartAsset(key, clone, proc, cache);
+        } else if (cache != null) {
+            // Since getFromCache / addToCache fill the load stack,
+            // it has to be popped
+            cache.notifyNoAssetClone();
         }
         
+        prepareTexture(clone);
         return clone;
     }
 
+    /**
+     * Prepares the image of a texture about to be returned to the caller,
+     * if an image preparer is set.
+     */
+    private void prepareTexture(Object obj) {
+        ImagePreparer preparer = imagePreparer;
+        if (preparer != null && obj instanceof Texture) {
+            preparer.prepare((Texture) obj);
+        }
+    }
+
+    private void notifyDependencyNotFound(AssetKey key){
+        if (handler.getParentKey() != null){
+            // Inform event listener that an asset has failed to load.
+            // If the parent AssetLoader chooses not to propagate
+            // the exception, this is the only means of finding
+            // that something went wrong.
+            for (AssetEventListener listener : eventListeners){
+                listener.assetDependencyNotFound(handler.getParentKey(), key);
+            }
+        }
+    }
+    
+    /**
+     * Locates and loads a cached asset, or waits for the load in progress 
+     * on another thread if the same key is already being loaded.
+     * 
+     * @return The asset as stored in the cache, the load stack of the 
+     * cache has been filled for the current thread.
+     */
+    private <T> Object loadSharedAsset(AssetKey<T> key, AssetProcessor proc, AssetCache cache){
+        AssetLoadRequest request = new AssetLoadRequest(key, proc, cache);
+        AssetLoadRequest pending = pendingLoads.putIfAbsent(key, request);
+        if (pending == null){
+            pending = request;
+        }else if (pending.runner == Thread.currentThread()){
+            throw new AssetLoadException("Cyclic dependency detected while loading asset: " + key);
+        }
+        
+        // Runs the load on this thread, unless another thread 
+        // is already running it or has finished it
+        pending.task.run();
+        
+        Object original;
+        try {
+            if (pending.task.isDone()){
+                original = pending.task.get();
+            }else{
+                startWaiting(pending);
+                try {
+                    original = pending.task.get();
+                } finally {
+                    stopWaiting();
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new AssetLoadException("Interrupted while loading asset: " + key, ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof AssetNotFoundException){
+                notifyDependencyNotFound(key);
+            }
+            if (cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            }else if (cause instanceof Error){
+                throw (Error) cause;
+            }
+            throw new AssetLoadException("An exception has occured while loading asset: " + key, cause);
+        }
+        
+        Object obj = cache.getFromCache(key);
+        if (obj == null){
+            // Removed from the cache since it was loaded, put it back
+            cache.addToCache(key, (T) original);
+            obj = original;
+        }
+        return obj;
+    }
+    
+    /**
+     * Registers the current thread as waiting for a load running on 
+     * another thread. Fails if that load, or a load it is waiting for in 
+     * turn, is run by the current thread, since the threads would then 
+     * wait for each other forever.
+     */
+    private void startWaiting(AssetLoadRequest request){
+        Thread current = Thread.currentThread();
+        synchronized (waitingLoads){
+            AssetLoadRequest blocking = request;
+            for (int i = 0; blocking != null && i <= waitingLoads.size(); i++){
+                Thread runner = blocking.runner;
+                if (runner == current){
+                    throw new AssetLoadException("Cyclic dependency detected while loading asset: " + request.key);
+                }
+                blocking = runner != null ? waitingLoads.get(runner) : null;
+            }
+            waitingLoads.put(current, request);
+        }
+    }
+    
+    private void stopWaiting(){
+        synchronized (waitingLoads){
+            waitingLoads.remove(Thread.currentThread());
+        }
+    }
+    
+    /**
+     * A load of a cached asset which can be shared by all threads
+     * requesting the same key at the same time.
+     */
+    private final class AssetLoadRequest implements Callable<Object> {
+        
+        private final AssetKey key;
+        private final AssetProcessor proc;
+        private final AssetCache cache;
+        private final FutureTask<Object> task = new FutureTask<Object>(this);
+        private volatile Thread runner;
+
+        public AssetLoadRequest(AssetKey key, AssetProcessor proc, AssetCache cache) {
+            this.key = key;
+            this.proc = proc;
+            this.cache = cache;
+        }
+        
+        public Object call() {
+            runner = Thread.currentThread();
+            try {
+                AssetInfo info = handler.tryLocate(key);
+                if (info == null){
+                    throw new AssetNotFoundException(key.toString());
+                }
+                Object obj = loadLocatedAsset(key, info, proc, cache);
+                
+                // Every thread waiting on this request fetches the asset
+                // from the cache, which fills its own load stack
+                cache.notifyNoAssetClone();
+                return obj;
+            } finally {
+                runner = null;
+                pendingLoads.remove(key, this);
+            }
+        }
+    }
+    
+    public <T> Future<T> loadAssetAsync(AssetKey<T> key){
+        if (key == null)
+            throw new IllegalArgumentException("key cannot be null");
+        
+        ThreadingManager manager;
+        synchronized (this){
+            if (threadingManager == null){
+                threadingManager = new ThreadingManager(this);
+            }
+            manager = threadingManager;
+        }
+        return manager.loadAsset(key);
+    }
+
     public Object loadAsset(String name){
         return loadAsset(new AssetKey(name));
     }
@@ -0,0 +1,410 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.asset.cache;
+
+import com.jme3.asset.AssetKey;
+import com.jme3.asset.CloneableSmartAsset;
+import com.jme3.audio.AudioBuffer;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.SceneGraphVisitorAdapter;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.texture.Image;
+import com.jme3.texture.Texture;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <code>BoundedAssetCache</code> is an asset cache that keeps the 
+ * total estimated memory footprint of the cached assets under a 
+ * configurable budget. When the budget is exceeded, assets are evicted
+ * according to the {@link EvictionPolicy} of the cache.
+ * <p>
+ * The footprint of an asset is estimated with {@link #estimateSize(java.lang.Object) }
+ * which accounts for image data, vertex buffers and audio data. 
+ * Textures referenced by a model's materials are not included since 
+ * they are cached separately under their own {@link com.jme3.asset.TextureKey}.
+ * <p>
+ * {@link CloneableSmartAsset cloneable assets} are handled the same 
+ * way as in {@link WeakRefCloneAssetCache}: the original asset is kept 
+ * in the cache without a key, and all clones handed out for equal keys 
+ * share the same key instance. Evicting an asset does not affect clones 
+ * that are already in use, the asset is simply reloaded the next time 
+ * it is requested.
+ * <p>
+ * Since the asset manager creates caches with their empty constructor, 
+ * the budget and policy are configured after creation, e.g. through
+ * {@link com.jme3.asset.DesktopAssetManager#getCache(java.lang.Class) }.
+ */
+public class BoundedAssetCache implements AssetCache {
+
+    private static final Logger logger = Logger.getLogger(BoundedAssetCache.class.getName());
+    
+    /**
+     * The default budget, 256 megabytes.
+     */
+    public static final long DEFAULT_MAX_SIZE = 256L * 1024L * 1024L;
+    
+    /**
+     * The size assumed for assets which cannot be measured.
+     */
+    protected static final long UNKNOWN_ASSET_SIZE = 1024;
+    
+    /**
+     * The number of least recently used entries considered by
+     * {@link EvictionPolicy#CostAware}.
+     */
+    private static final int COST_AWARE_WINDOW = 8;
+
+    /**
+     * Specifies which asset is evicted when the cache exceeds its budget.
+     */
+    public enum EvictionPolicy {
+        /**
+         * Evicts the least recently used asset.
+         */
+        LeastRecentlyUsed,
+        
+        /**
+         * Evicts the largest asset among the least recently used ones,
+         * so that fewer assets need to be evicted to get under budget.
+         */
+        CostAware;
+    }
+    
+    private static final class Entry {
+        
+        final AssetKey key;
+        final Object asset;
+        final long size;
+
+        Entry(AssetKey key, Object asset, long size) {
+            this.key = key;
+            this.asset = asset;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Access ordered, the first entry is the least recently used.
+     * All access must be synchronized on the map.
+     */
+    private final LinkedHashMap<AssetKey, Entry> entries 
+            = new LinkedHashMap<AssetKey, Entry>(64, 0.75f, true);
+    
+    private final ThreadLocal<ArrayList<AssetKey>> assetLoadStack 
+            = new ThreadLocal<ArrayList<AssetKey>>() {
+        @Override
+        protected ArrayList<AssetKey> initialValue() {
+            return new ArrayList<AssetKey>();
+        }
+    };
+    
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    
+    private long size;
+    private volatile long maxSize = DEFAULT_MAX_SIZE;
+    private volatile EvictionPolicy policy = EvictionPolicy.LeastRecentlyUsed;
+
+    public BoundedAssetCache() {
+    }
+    
+    public BoundedAssetCache(long maxSize, EvictionPolicy policy) {
+        setMaxSize(maxSize);
+        setEvictionPolicy(policy);
+    }
+
+    /**
+     * Sets the budget of the cache. If the cached assets currently exceed 
+     * the new budget, assets are evicted immediately.
+     * 
+     * @param maxSize The budget in bytes
+     */
+    public void setMaxSize(long maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize cannot be negative");
+        }
+        this.maxSize = maxSize;
+        synchronized (entries) {
+            evict(null);
+        }
+    }
+
+    /**
+     * @return The budget in bytes
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public void setEvictionPolicy(EvictionPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("policy cannot be null");
+        }
+        this.policy = policy;
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return The estimated size in bytes of all assets in the cache.
+     */
+    public long getSize() {
+        synchronized (entries) {
+            return size;
+        }
+    }
+
+    /**
+     * @return The number of assets in the cache.
+     */
+    public int getAssetCount() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return The number of times an asset was found in the cache.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of times an asset was not found in the cache.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return The number of assets evicted to stay under budget.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Resets the hit, miss and eviction counters.
+     */
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+    }
+
+    public <T> void addToCache(AssetKey<T> key, T obj) {
+        long assetSize = estimateSize(obj);
+        
+        if (obj instanceof CloneableSmartAsset) {
+            // Only the clones are tracked with a key
+            ((CloneableSmartAsset) obj).setKey(null);
+        }
+        
+        Entry entry = new Entry(key, obj, assetSize);
+        synchronized (entries) {
+            Entry old = entries.put(key, entry);
+            if (old != null) {
+                size -= old.size;
+            }
+            size += assetSize;
+            evict(entry);
+        }
+        
+        // Push the original key used to load the asset
+        // so that it can be set on the clone later
+        assetLoadStack.get().add(key);
+    }
+
+    public <T> void registerAssetClone(AssetKey<T> key, T clone) {
+        ArrayList<AssetKey> loadStack = assetLoadStack.get();
+        ((CloneableSmartAsset) clone).setKey(loadStack.remove(loadStack.size() - 1));
+    }
+
+    public void notifyNoAssetClone() {
+        ArrayList<AssetKey> loadStack = assetLoadStack.get();
+        loadStack.remove(loadStack.size() - 1);
+    }
+
+    public <T> T getFromCache(AssetKey<T> key) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        
+        // The key which was used to load the asset is shared 
+        // by all of its clones
+        assetLoadStack.get().add(entry.key);
+        return (T) entry.asset;
+    }
+
+    public boolean deleteFromCache(AssetKey key) {
+        synchronized (entries) {
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                size -= entry.size;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    public void clearCache() {
+        synchronized (entries) {
+            entries.clear();
+            size = 0;
+        }
+    }
+
+    /**
+     * Evicts assets until the cache is under budget.
+     * Must be called while synchronized on the entries.
+     * 
+     * @param keep An entry that should not be evicted, or null.
+     */
+    private void evict(Entry keep) {
+        int evicted = 0;
+        while (size > maxSize && entries.size() > (keep != null ? 1 : 0)) {
+            Entry victim = selectVictim(keep);
+            entries.remove(victim.key);
+            size -= victim.size;
+            evicted++;
+        }
+        if (evicted > 0) {
+            evictions.addAndGet(evicted);
+            if (logger.isLoggable(Level.FINE)) {
+                logger.log(Level.FINE, "BoundedAssetCache: {0} assets were evicted from the cache.", evicted);
+            }
+        }
+    }
+
+    private Entry selectVictim(Entry keep) {
+        Entry victim = null;
+        int considered = 0;
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry == keep) {
+                continue;
+            }
+            if (policy == EvictionPolicy.LeastRecentlyUsed) {
+                return entry;
+            }
+            if (victim == null || entry.size > victim.size) {
+                victim = entry;
+            }
+            if (++considered == COST_AWARE_WINDOW) {
+                break;
+            }
+        }
+        return victim;
+    }
+
+    /**
+     * Estimates the memory footprint of an asset. 
+     * Override to account for custom asset types.
+     * 
+     * @param asset The asset to measure
+     * @return The estimated size in bytes
+     */
+    protected long estimateSize(Object asset) {
+        if (asset instanceof Texture) {
+            Image image = ((Texture) asset).getImage();
+            return image != null ? estimateSize(image) : UNKNOWN_ASSET_SIZE;
+        } else if (asset instanceof Image) {
+            long bytes = 0;
+            for (ByteBuffer data : ((Image) asset).getData()) {
+                if (data != null) {
+                    bytes += data.capacity();
+                }
+            }
+            return bytes;
+        } else if (asset instanceof Mesh) {
+            return estimateMeshSize((Mesh) asset);
+        } else if (asset instanceof Spatial) {
+            final IdentityHashMap<Mesh, Mesh> meshes = new IdentityHashMap<Mesh, Mesh>();
+            ((Spatial) asset).depthFirstTraversal(new SceneGraphVisitorAdapter() {
+                @Override
+                public void visit(Geometry geom) {
+                    if (geom.getMesh() != null) {
+                        meshes.put(geom.getMesh(), geom.getMesh());
+                    }
+                }
+            });
+            long bytes = UNKNOWN_ASSET_SIZE;
+            for (Mesh mesh : meshes.keySet()) {
+                bytes += estimateMeshSize(mesh);
+            }
+            return bytes;
+        } else if (asset instanceof AudioBuffer) {
+            ByteBuffer data = ((AudioBuffer) asset).getData();
+            return data != null ? data.capacity() : UNKNOWN_ASSET_SIZE;
+        } else if (asset instanceof String) {
+            return ((String) asset).length() * 2;
+        }
+        return UNKNOWN_ASSET_SIZE;
+    }
+
+    private static long estimateMeshSize(Mesh mesh) {
+        long bytes = 0;
+        for (VertexBuffer vb : mesh.getBufferList()) {
+            bytes += estimateBufferSize(vb);
+        }
+        return bytes;
+    }
+
+    private static long estimateBufferSize(VertexBuffer vb) {
+        Buffer data = vb.getData();
+        if (data == null) {
+            return 0;
+        }
+        return (long) data.capacity() * vb.getFormat().getComponentSize();
+    }
+}
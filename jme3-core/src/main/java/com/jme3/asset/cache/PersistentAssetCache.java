@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.asset.cache;
+
+import com.jme3.asset.AssetInfo;
+import com.jme3.asset.AssetKey;
+import com.jme3.asset.AssetManager;
+import com.jme3.export.Savable;
+import com.jme3.export.binary.BinaryExporter;
+import com.jme3.export.binary.BinaryImporter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <code>PersistentAssetCache</code> stores the output of asset loaders 
+ * on disk in the jME3 binary format, so that expensive source formats 
+ * (OBJ, Ogre XML, FBX, Blender, images that need flipping, etc) only 
+ * have to be parsed once across application runs.
+ * <p>
+ * Unlike the in-memory {@link AssetCache} implementations, this cache 
+ * is not selected by the {@link AssetKey}, instead it is set on the
+ * asset manager with 
+ * {@link com.jme3.asset.DesktopAssetManager#setPersistentCache(com.jme3.asset.cache.PersistentAssetCache) }
+ * and consulted for every asset that has to be loaded from a locator.
+ * Only assets whose loader returns a {@link Savable} are stored. 
+ * The {@link com.jme3.asset.AssetProcessor} still runs on the stored 
+ * loader output, which keeps textures, materials and cloneable assets 
+ * working the same way they do without the persistent cache.
+ * <p>
+ * Each entry is keyed by the asset key and validated against a stamp 
+ * computed from the content of the located source file. If the source
+ * changes, the stale entry is ignored and overwritten after the asset has 
+ * been loaded again. Dependencies of an asset (e.g. the MTL file of an OBJ
+ * model) are not part of the stamp, clear the cache when only those change.
+ * <p><font color="red">Thread-Safe</font>
+ * 
+ */
+public class PersistentAssetCache {
+
+    private static final Logger logger = Logger.getLogger(PersistentAssetCache.class.getName());
+
+    private static final int MAGIC = 0x4A334143; // "J3AC"
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".j3cache";
+
+    private final File cacheDir;
+
+    /**
+     * Creates a persistent cache that stores its entries in the given 
+     * directory. The directory is created if it does not exist.
+     * 
+     * @param cacheDir The directory where cache entries are stored.
+     */
+    public PersistentAssetCache(File cacheDir) {
+        if (cacheDir == null) {
+            throw new IllegalArgumentException("cacheDir cannot be null");
+        }
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+            throw new IllegalArgumentException("Cannot create cache directory: " + cacheDir);
+        }
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * @return The directory where cache entries are stored.
+     */
+    public File getCacheDir() {
+        return cacheDir;
+    }
+
+    /**
+     * Returns true if assets with the given key should go through the 
+     * persistent cache. Assets that are already in the jME3 binary format
+     * gain nothing from it and are excluded.
+     * 
+     * @param key The asset key
+     * @return True if the asset should be persisted
+     */
+    public boolean isPersistable(AssetKey key) {
+        String ext = key.getExtension();
+        return !"j3o".equals(ext);
+    }
+
+    /**
+     * Computes the stamp of the located asset source. The stamp is 
+     * stored along with the entry and used to detect stale entries.
+     * 
+     * @param info The located asset
+     * @return The stamp, or null if the source cannot be read.
+     */
+    public String computeStamp(AssetInfo info) {
+        InputStream in = null;
+        try {
+            in = info.openStream();
+            if (in == null) {
+                return null;
+            }
+            MessageDigest digest = createDigest();
+            byte[] buf = new byte[8192];
+            int read;
+            while ((read = in.read(buf)) != -1) {
+                digest.update(buf, 0, read);
+            }
+            return toHex(digest.digest());
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Failed to compute stamp of " + info.getKey(), ex);
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ex) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the stored loader output for the given key.
+     * 
+     * @param key The asset key
+     * @param stamp The stamp of the current asset source, as returned by
+     * {@link #computeStamp(com.jme3.asset.AssetInfo) }.
+     * @param assetManager The asset manager used to resolve dependencies
+     * of the stored asset.
+     * @return The stored asset, or null if there is no entry, or the entry
+     * is stale.
+     */
+    public Savable load(AssetKey key, String stamp, AssetManager assetManager) {
+        File file = getFile(key);
+        if (stamp == null || !file.isFile()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            if (!getKeyString(key).equals(in.readUTF()) || !stamp.equals(in.readUTF())) {
+                return null;
+            }
+            BinaryImporter importer = new BinaryImporter();
+            importer.setAssetManager(assetManager);
+            Savable asset = importer.load(in);
+            if (logger.isLoggable(Level.FINER)) {
+                logger.log(Level.FINER, "Loaded {0} from persistent cache", key);
+            }
+            return asset;
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Failed to read persistent cache entry for " + key, ex);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ex) {
+                }
+            }
+        }
+        
+        // Corrupt entry, it will be overwritten once the asset is loaded
+        file.delete();
+        return null;
+    }
+
+    /**
+     * Stores the loader output for the given key.
+     * 
+     * @param key The asset key
+     * @param stamp The stamp of the asset source the asset was loaded from.
+     * @param asset The loader output
+     */
+    public void store(AssetKey key, String stamp, Savable asset) {
+        if (stamp == null) {
+            return;
+        }
+
+        File file = getFile(key);
+        // Write to a temporary file first so that other threads or 
+        // processes never see a partially written entry
+        File tempFile = new File(cacheDir, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        DataOutputStream out = null;
+        boolean written = false;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(getKeyString(key));
+            out.writeUTF(stamp);
+            new BinaryExporter().save(asset, out);
+            out.close();
+            out = null;
+            written = true;
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Failed to write persistent cache entry for " + key, ex);
+        } catch (RuntimeException ex) {
+            // Savable.write() of some assets may not support this
+            logger.log(Level.WARNING, "Failed to write persistent cache entry for " + key, ex);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ex) {
+                }
+            }
+        }
+
+        if (written) {
+            file.delete();
+            if (!tempFile.renameTo(file)) {
+                logger.log(Level.WARNING, "Failed to move persistent cache entry to {0}", file);
+                tempFile.delete();
+            }
+        } else {
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Deletes the stored entry for the given key.
+     * 
+     * @param key The asset key
+     * @return True if an entry was deleted
+     */
+    public boolean delete(AssetKey key) {
+        return getFile(key).delete();
+    }
+
+    /**
+     * Deletes all entries stored in the cache directory.
+     */
+    public void clear() {
+        File[] files = cacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().endsWith(EXTENSION)) {
+                file.delete();
+            }
+        }
+    }
+
+    private File getFile(AssetKey key) {
+        MessageDigest digest = createDigest();
+        try {
+            digest.update(getKeyString(key).getBytes("UTF-8"));
+        } catch (java.io.UnsupportedEncodingException ex) {
+            throw new AssertionError(ex);
+        }
+        return new File(cacheDir, toHex(digest.digest()) + EXTENSION);
+    }
+
+    private static String getKeyString(AssetKey key) {
+        // The key class and its string form include the loading options
+        // (e.g. TextureKey flipping and mipmap flags)
+        return key.getClass().getName() + ":" + key.toString();
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new AssertionError(ex);
+        }
+    }
+
+    private static String toHex(byte[] data) {
+        StringBuilder sb = new StringBuilder(data.length * 2);
+        for (byte b : data) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
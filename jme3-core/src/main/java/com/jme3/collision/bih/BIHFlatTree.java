@@ -0,0 +1,671 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.collision.bih;
+
+import com.jme3.collision.CollisionResult;
+import com.jme3.collision.CollisionResults;
+import com.jme3.math.Matrix4f;
+import com.jme3.math.FastMath;
+import com.jme3.math.Ray;
+import com.jme3.math.Triangle;
+import com.jme3.math.Vector3f;
+import com.jme3.util.ParallelTasks;
+import com.jme3.util.TempVars;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Flattened, array based layout of a {@link BIHTree}.
+ * <p>
+ * The nodes are stored in depth-first order in primitive arrays, so that
+ * the left child of an inner node directly follows it and traversal 
+ * only touches contiguous memory. Rays are traversed with a fixed size
+ * stack, no objects are allocated per node.
+ * <p>
+ * Besides the {@link BIHTree#collideWith(com.jme3.collision.Collidable, com.jme3.math.Matrix4f, com.jme3.bounding.BoundingVolume, com.jme3.collision.CollisionResults) }
+ * path, the flat tree offers a batch API which finds the closest hit of 
+ * many rays at once and returns primitive hit data, optionally spreading 
+ * the rays over an {@link ExecutorService}.
+ * <p>
+ * The flat tree is immutable and can be queried from multiple threads.
+ * 
+ * @see BIHTree#getFlatTree() 
+ */
+public final class BIHFlatTree {
+
+    private static final int LEAF = 3;
+    
+    /**
+     * The number of rays processed by each task of a parallel batch.
+     */
+    private static final int RAYS_PER_TASK = 256;
+    
+    /**
+     * 3 ints per node: axis (or {@link #LEAF}), then for inner nodes 
+     * the index of the right child, for leaves the first and last 
+     * triangle.
+     */
+    private final int[] nodes;
+    
+    /**
+     * 2 floats per inner node: left plane, right plane.
+     */
+    private final float[] planes;
+    
+    private final float[] pointData;
+    private final int[] triIndices;
+    private final int maxDepth;
+    
+    /**
+     * Local space bounds of all triangles.
+     */
+    private final float[] boundsMin = new float[3];
+    private final float[] boundsMax = new float[3];
+    
+    private int nodeCount;
+
+    /**
+     * Per thread traversal stack.
+     */
+    private static final class TraversalStack {
+        int[] nodes = new int[0];
+        float[] min = new float[0];
+        float[] max = new float[0];
+        float hitDistance;
+        
+        void ensureCapacity(int size) {
+            if (nodes.length < size) {
+                nodes = new int[size];
+                min = new float[size];
+                max = new float[size];
+            }
+        }
+    }
+    
+    private static final ThreadLocal<TraversalStack> stacks = new ThreadLocal<TraversalStack>() {
+        @Override
+        protected TraversalStack initialValue() {
+            return new TraversalStack();
+        }
+    };
+
+    BIHFlatTree(BIHNode root, float[] pointData, int[] triIndices) {
+        this.pointData = pointData;
+        this.triIndices = triIndices;
+        
+        int count = countNodes(root);
+        nodes = new int[count * 3];
+        planes = new float[count * 2];
+        maxDepth = flatten(root, 1);
+        computeBounds();
+    }
+
+    /**
+     * Creates the tree from previously flattened data.
+     * 
+     * @see #getNodeData() 
+     * @see #getPlaneData() 
+     */
+    BIHFlatTree(int[] nodes, float[] planes, float[] pointData, int[] triIndices) {
+        if (nodes.length % 3 != 0 || planes.length * 3 != nodes.length * 2) {
+            throw new IllegalArgumentException("Invalid BIH node data");
+        }
+        this.nodes = nodes;
+        this.planes = planes;
+        this.pointData = pointData;
+        this.triIndices = triIndices;
+        nodeCount = nodes.length / 3;
+        maxDepth = depth(0);
+        computeBounds();
+    }
+
+    private void computeBounds() {
+        boundsMin[0] = boundsMin[1] = boundsMin[2] = Float.POSITIVE_INFINITY;
+        boundsMax[0] = boundsMax[1] = boundsMax[2] = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < pointData.length; i++) {
+            int axis = i % 3;
+            boundsMin[axis] = Math.min(boundsMin[axis], pointData[i]);
+            boundsMax[axis] = Math.max(boundsMax[axis], pointData[i]);
+        }
+    }
+
+    private int depth(int node) {
+        if (nodes[node * 3] == LEAF) {
+            return 1;
+        }
+        return 1 + Math.max(depth(node + 1), depth(nodes[node * 3 + 1]));
+    }
+
+    /**
+     * Rebuilds the node hierarchy from the flat layout.
+     * 
+     * @return The root node of the recursive tree.
+     */
+    public BIHNode createNodes() {
+        return createNode(0);
+    }
+
+    private BIHNode createNode(int index) {
+        int n = index * 3;
+        if (nodes[n] == LEAF) {
+            return new BIHNode(nodes[n + 1], nodes[n + 2]);
+        }
+        BIHNode node = new BIHNode(nodes[n]);
+        node.setLeftPlane(planes[index * 2]);
+        node.setRightPlane(planes[index * 2 + 1]);
+        node.setLeftChild(createNode(index + 1));
+        node.setRightChild(createNode(nodes[n + 1]));
+        return node;
+    }
+
+    int[] getNodeData() {
+        return nodes;
+    }
+
+    float[] getPlaneData() {
+        return planes;
+    }
+
+    private static int countNodes(BIHNode node) {
+        if (node.getAxis() == LEAF) {
+            return 1;
+        }
+        return 1 + countNodes(node.getLeftChild()) + countNodes(node.getRightChild());
+    }
+
+    /**
+     * Writes the node and its children in depth-first order.
+     * 
+     * @return The depth of the subtree
+     */
+    private int flatten(BIHNode node, int depth) {
+        int index = nodeCount++;
+        int n = index * 3;
+        int axis = node.getAxis();
+        nodes[n] = axis;
+        if (axis == LEAF) {
+            nodes[n + 1] = node.getLeftIndex();
+            nodes[n + 2] = node.getRightIndex();
+            return depth;
+        }
+        
+        planes[index * 2] = node.getLeftPlane();
+        planes[index * 2 + 1] = node.getRightPlane();
+        
+        int leftDepth = flatten(node.getLeftChild(), depth + 1);
+        nodes[n + 1] = nodeCount;
+        int rightDepth = flatten(node.getRightChild(), depth + 1);
+        return Math.max(leftDepth, rightDepth);
+    }
+
+    /**
+     * @return The number of nodes in the tree.
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return The depth of the tree.
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    private TraversalStack getStack() {
+        TraversalStack stack = stacks.get();
+        stack.ensureCapacity(maxDepth + 1);
+        return stack;
+    }
+
+    /**
+     * Same as {@link BIHNode#intersectWhere(com.jme3.math.Ray, com.jme3.math.Matrix4f, com.jme3.collision.bih.BIHTree, float, float, com.jme3.collision.CollisionResults) }
+     * on the root node, using the flat layout.
+     */
+    int intersectWhere(Ray r,
+            Matrix4f worldMatrix,
+            float sceneMin,
+            float sceneMax,
+            CollisionResults results) {
+
+        TempVars vars = TempVars.get();
+        TraversalStack stack = getStack();
+        int[] stackNodes = stack.nodes;
+        float[] stackMin = stack.min;
+        float[] stackMax = stack.max;
+
+        Vector3f o = vars.vect1.set(r.getOrigin());
+        Vector3f d = vars.vect2.set(r.getDirection());
+
+        Matrix4f inv = vars.tempMat4.set(worldMatrix).invertLocal();
+
+        inv.mult(r.getOrigin(), r.getOrigin());
+
+        // Fixes rotation collision bug
+        inv.multNormal(r.getDirection(), r.getDirection());
+
+        float[] origins = vars.fWdU;
+        origins[0] = r.getOrigin().x;
+        origins[1] = r.getOrigin().y;
+        origins[2] = r.getOrigin().z;
+
+        float[] invDirections = vars.fAWdU;
+        invDirections[0] = 1f / r.getDirection().x;
+        invDirections[1] = 1f / r.getDirection().y;
+        invDirections[2] = 1f / r.getDirection().z;
+
+        r.getDirection().normalizeLocal();
+
+        Vector3f v1 = vars.vect3,
+                v2 = vars.vect4,
+                v3 = vars.vect5;
+        int cols = 0;
+
+        int top = 0;
+        stackNodes[top] = 0;
+        stackMin[top] = sceneMin;
+        stackMax[top] = sceneMax;
+        top++;
+        
+        stackloop:
+        while (top > 0) {
+            top--;
+            int node = stackNodes[top];
+            float tMin = stackMin[top],
+                    tMax = stackMax[top];
+
+            if (tMax < tMin) {
+                continue;
+            }
+
+            int a;
+            while ((a = nodes[node * 3]) != LEAF) {
+                float origin = origins[a];
+                float invDirection = invDirections[a];
+
+                float tNearSplit = (planes[node * 2] - origin) * invDirection;
+                float tFarSplit = (planes[node * 2 + 1] - origin) * invDirection;
+                int nearNode = node + 1;
+                int farNode = nodes[node * 3 + 1];
+
+                if (invDirection < 0) {
+                    float tmpSplit = tNearSplit;
+                    tNearSplit = tFarSplit;
+                    tFarSplit = tmpSplit;
+
+                    int tmpNode = nearNode;
+                    nearNode = farNode;
+                    farNode = tmpNode;
+                }
+
+                if (tMin > tNearSplit && tMax < tFarSplit) {
+                    continue stackloop;
+                }
+
+                if (tMin > tNearSplit) {
+                    tMin = Math.max(tMin, tFarSplit);
+                    node = farNode;
+                } else if (tMax < tFarSplit) {
+                    tMax = Math.min(tMax, tNearSplit);
+                    node = nearNode;
+                } else {
+                    stackNodes[top] = farNode;
+                    stackMin[top] = Math.max(tMin, tFarSplit);
+                    stackMax[top] = tMax;
+                    top++;
+                    tMax = Math.min(tMax, tNearSplit);
+                    node = nearNode;
+                }
+            }
+
+            // a leaf
+            int last = nodes[node * 3 + 2];
+            for (int i = nodes[node * 3 + 1]; i <= last; i++) {
+                getTriangle(i, v1, v2, v3);
+
+                float t = r.intersects(v1, v2, v3);
+                if (!Float.isInfinite(t)) {
+                    if (worldMatrix != null) {
+                        worldMatrix.mult(v1, v1);
+                        worldMatrix.mult(v2, v2);
+                        worldMatrix.mult(v3, v3);
+                        float t_world = new Ray(o, d).intersects(v1, v2, v3);
+                        t = t_world;
+                    }
+
+                    Vector3f contactNormal = Triangle.computeTriangleNormal(v1, v2, v3, null);
+                    Vector3f contactPoint = new Vector3f(d).multLocal(t).addLocal(o);
+                    float worldSpaceDist = o.distance(contactPoint);
+
+                    CollisionResult cr = new CollisionResult(contactPoint, worldSpaceDist);
+                    cr.setContactNormal(contactNormal);
+                    cr.setTriangleIndex(triIndices[i]);
+                    results.addCollision(cr);
+                    cols++;
+                }
+            }
+        }
+        r.setOrigin(o);
+        r.setDirection(d);
+        vars.release();
+
+        return cols;
+    }
+
+    private void getTriangle(int index, Vector3f v1, Vector3f v2, Vector3f v3) {
+        int p = index * 9;
+        v1.set(pointData[p], pointData[p + 1], pointData[p + 2]);
+        v2.set(pointData[p + 3], pointData[p + 4], pointData[p + 5]);
+        v3.set(pointData[p + 6], pointData[p + 7], pointData[p + 8]);
+    }
+
+    /**
+     * Finds the closest triangle hit by each of the given rays.
+     * <p>
+     * Each ray is stored as 6 floats: origin x, y, z followed by 
+     * direction x, y, z. The rays are in world space if a world matrix
+     * is given, otherwise in the local space of the mesh. The returned
+     * distance is measured in units of the ray direction, it is the world
+     * space distance when the direction is normalized.
+     * 
+     * @param rays The rays, 6 floats per ray
+     * @param count The number of rays
+     * @param worldMatrix The world matrix of the mesh, or null if the rays
+     * are in local space.
+     * @param maxDistance Hits further away than this are ignored.
+     * @param distances Receives the distance of the closest hit of each 
+     * ray, or {@link Float#POSITIVE_INFINITY} if the ray hit nothing.
+     * @param triangles Receives the index of the triangle closest hit by
+     * each ray, or -1 if the ray hit nothing. Can be null.
+     * @return The number of rays that hit a triangle.
+     */
+    public int intersectRays(float[] rays, int count, Matrix4f worldMatrix, 
+            float maxDistance, float[] distances, int[] triangles) {
+        if (rays.length < count * 6 || distances.length < count 
+                || (triangles != null && triangles.length < count)) {
+            throw new IllegalArgumentException("Arrays are too small for " + count + " rays");
+        }
+        Matrix4f inv = worldMatrix != null ? worldMatrix.invert() : null;
+        return intersectRays(rays, 0, count, inv, maxDistance, distances, triangles);
+    }
+
+    /**
+     * Same as {@link #intersectRays(float[], int, com.jme3.math.Matrix4f, float, float[], int[]) }
+     * but splits the rays into tasks that run on the given executor.
+     * The calling thread runs the tasks no pool thread has started yet, so
+     * this can be called from a thread of the executor itself.
+     */
+    public int intersectRays(final float[] rays, int count, Matrix4f worldMatrix,
+            final float maxDistance, final float[] distances, final int[] triangles,
+            ExecutorService executor) {
+        if (rays.length < count * 6 || distances.length < count 
+                || (triangles != null && triangles.length < count)) {
+            throw new IllegalArgumentException("Arrays are too small for " + count + " rays");
+        }
+        final Matrix4f inv = worldMatrix != null ? worldMatrix.invert() : null;
+        if (count <= RAYS_PER_TASK) {
+            return intersectRays(rays, 0, count, inv, maxDistance, distances, triangles);
+        }
+        
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+        for (int start = 0; start < count; start += RAYS_PER_TASK) {
+            final int from = start;
+            final int to = Math.min(count, start + RAYS_PER_TASK);
+            tasks.add(new Callable<Integer>() {
+                public Integer call() {
+                    return intersectRays(rays, from, to, inv, maxDistance, distances, triangles);
+                }
+            });
+        }
+        
+        int hits = 0;
+        for (int taskHits : ParallelTasks.invokeAll(executor, tasks)) {
+            hits += taskHits;
+        }
+        return hits;
+    }
+
+    private int intersectRays(float[] rays, int from, int to, Matrix4f inv,
+            float maxDistance, float[] distances, int[] triangles) {
+        TraversalStack stack = getStack();
+        int hits = 0;
+        for (int i = from; i < to; i++) {
+            int r = i * 6;
+            float ox = rays[r], oy = rays[r + 1], oz = rays[r + 2];
+            float dx = rays[r + 3], dy = rays[r + 4], dz = rays[r + 5];
+            if (inv != null) {
+                // Transforming the unnormalized direction keeps the
+                // ray parameter the same in both spaces
+                float lx = inv.m00 * ox + inv.m01 * oy + inv.m02 * oz + inv.m03;
+                float ly = inv.m10 * ox + inv.m11 * oy + inv.m12 * oz + inv.m13;
+                float lz = inv.m20 * ox + inv.m21 * oy + inv.m22 * oz + inv.m23;
+                float ldx = inv.m00 * dx + inv.m01 * dy + inv.m02 * dz;
+                float ldy = inv.m10 * dx + inv.m11 * dy + inv.m12 * dz;
+                float ldz = inv.m20 * dx + inv.m21 * dy + inv.m22 * dz;
+                ox = lx; oy = ly; oz = lz;
+                dx = ldx; dy = ldy; dz = ldz;
+            }
+            
+            int hit = intersectClosest(stack, ox, oy, oz, dx, dy, dz, maxDistance);
+            if (hit >= 0) {
+                distances[i] = stack.hitDistance;
+                if (triangles != null) {
+                    triangles[i] = triIndices[hit];
+                }
+                hits++;
+            } else {
+                distances[i] = Float.POSITIVE_INFINITY;
+                if (triangles != null) {
+                    triangles[i] = -1;
+                }
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Finds the closest hit of a local space ray.
+     * 
+     * @return The index of the triangle in the tree order, or -1. 
+     * The distance is stored in the stack.
+     */
+    private int intersectClosest(TraversalStack stack, 
+            float ox, float oy, float oz, float dx, float dy, float dz,
+            float maxDistance) {
+        float idx = 1f / dx, idy = 1f / dy, idz = 1f / dz;
+        
+        // Clip the ray against the bounds of the mesh
+        float tMin = 0, tMax = maxDistance;
+        float t1 = (boundsMin[0] - ox) * idx, t2 = (boundsMax[0] - ox) * idx;
+        tMin = Math.max(tMin, Math.min(t1, t2));
+        tMax = Math.min(tMax, Math.max(t1, t2));
+        t1 = (boundsMin[1] - oy) * idy;
+        t2 = (boundsMax[1] - oy) * idy;
+        tMin = Math.max(tMin, Math.min(t1, t2));
+        tMax = Math.min(tMax, Math.max(t1, t2));
+        t1 = (boundsMin[2] - oz) * idz;
+        t2 = (boundsMax[2] - oz) * idz;
+        tMin = Math.max(tMin, Math.min(t1, t2));
+        tMax = Math.min(tMax, Math.max(t1, t2));
+        // NaN comparisons fail, so axis parallel rays are handled by the traversal
+        if (tMin > tMax) {
+            return -1;
+        }
+        
+        int[] stackNodes = stack.nodes;
+        float[] stackMin = stack.min;
+        float[] stackMax = stack.max;
+        
+        float closest = maxDistance;
+        int closestTri = -1;
+        
+        int top = 0;
+        stackNodes[top] = 0;
+        stackMin[top] = tMin;
+        stackMax[top] = tMax;
+        top++;
+        
+        stackloop:
+        while (top > 0) {
+            top--;
+            int node = stackNodes[top];
+            tMin = stackMin[top];
+            // Nothing behind the closest hit can be closer
+            tMax = Math.min(stackMax[top], closest);
+            if (tMax < tMin) {
+                continue;
+            }
+
+            int a;
+            while ((a = nodes[node * 3]) != LEAF) {
+                float origin, invDirection;
+                if (a == 0) {
+                    origin = ox;
+                    invDirection = idx;
+                } else if (a == 1) {
+                    origin = oy;
+                    invDirection = idy;
+                } else {
+                    origin = oz;
+                    invDirection = idz;
+                }
+
+                float tNearSplit = (planes[node * 2] - origin) * invDirection;
+                float tFarSplit = (planes[node * 2 + 1] - origin) * invDirection;
+                int nearNode = node + 1;
+                int farNode = nodes[node * 3 + 1];
+
+                if (invDirection < 0) {
+                    float tmpSplit = tNearSplit;
+                    tNearSplit = tFarSplit;
+                    tFarSplit = tmpSplit;
+
+                    int tmpNode = nearNode;
+                    nearNode = farNode;
+                    farNode = tmpNode;
+                }
+
+                if (tMin > tNearSplit && tMax < tFarSplit) {
+                    continue stackloop;
+                }
+
+                if (tMin > tNearSplit) {
+                    tMin = Math.max(tMin, tFarSplit);
+                    node = farNode;
+                } else if (tMax < tFarSplit) {
+                    tMax = Math.min(tMax, tNearSplit);
+                    node = nearNode;
+                } else {
+                    stackNodes[top] = farNode;
+                    stackMin[top] = Math.max(tMin, tFarSplit);
+                    stackMax[top] = tMax;
+                    top++;
+                    tMax = Math.min(tMax, tNearSplit);
+                    node = nearNode;
+                }
+            }
+
+            int last = nodes[node * 3 + 2];
+            for (int i = nodes[node * 3 + 1]; i <= last; i++) {
+                float t = intersectTriangle(i, ox, oy, oz, dx, dy, dz);
+                if (t < closest) {
+                    closest = t;
+                    closestTri = i;
+                }
+            }
+        }
+        
+        stack.hitDistance = closest;
+        return closestTri;
+    }
+
+    /**
+     * Same test as {@link Ray#intersects(com.jme3.math.Vector3f, com.jme3.math.Vector3f, com.jme3.math.Vector3f) }
+     * on primitive values.
+     */
+    private float intersectTriangle(int index, 
+            float ox, float oy, float oz, float dx, float dy, float dz) {
+        int p = index * 9;
+        float v0x = pointData[p], v0y = pointData[p + 1], v0z = pointData[p + 2];
+        
+        float edge1X = pointData[p + 3] - v0x;
+        float edge1Y = pointData[p + 4] - v0y;
+        float edge1Z = pointData[p + 5] - v0z;
+
+        float edge2X = pointData[p + 6] - v0x;
+        float edge2Y = pointData[p + 7] - v0y;
+        float edge2Z = pointData[p + 8] - v0z;
+
+        float normX = ((edge1Y * edge2Z) - (edge1Z * edge2Y));
+        float normY = ((edge1Z * edge2X) - (edge1X * edge2Z));
+        float normZ = ((edge1X * edge2Y) - (edge1Y * edge2X));
+
+        float dirDotNorm = dx * normX + dy * normY + dz * normZ;
+
+        float diffX = ox - v0x;
+        float diffY = oy - v0y;
+        float diffZ = oz - v0z;
+
+        float sign;
+        if (dirDotNorm > FastMath.FLT_EPSILON) {
+            sign = 1;
+        } else if (dirDotNorm < -FastMath.FLT_EPSILON) {
+            sign = -1f;
+            dirDotNorm = -dirDotNorm;
+        } else {
+            // ray and triangle are parallel
+            return Float.POSITIVE_INFINITY;
+        }
+
+        float dirDotDiffxEdge2 = sign * (dx * ((diffY * edge2Z) - (diffZ * edge2Y))
+                + dy * ((diffZ * edge2X) - (diffX * edge2Z))
+                + dz * ((diffX * edge2Y) - (diffY * edge2X)));
+        if (dirDotDiffxEdge2 < 0.0f) {
+            return Float.POSITIVE_INFINITY;
+        }
+
+        float dirDotEdge1xDiff = sign * (dx * ((edge1Y * diffZ) - (edge1Z * diffY))
+                + dy * ((edge1Z * diffX) - (edge1X * diffZ))
+                + dz * ((edge1X * diffY) - (edge1Y * diffX)));
+        if (dirDotEdge1xDiff < 0.0f || dirDotDiffxEdge2 + dirDotEdge1xDiff > dirDotNorm) {
+            return Float.POSITIVE_INFINITY;
+        }
+
+        float diffDotNorm = -sign * (diffX * normX + diffY * normY + diffZ * normZ);
+        if (diffDotNorm < 0.0f) {
+            return Float.POSITIVE_INFINITY;
+        }
+        return diffDotNorm / dirDotNorm;
+    }
+}
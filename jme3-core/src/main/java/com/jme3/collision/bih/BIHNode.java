@@ -79,6 +79,18 @@ public final class BIHNode implements Savable {
     public BIHNode() {
     }
 
+    public int getAxis() {
+        return axis;
+    }
+
+    public int getLeftIndex() {
+        return leftIndex;
+    }
+
+    public int getRightIndex() {
+        return rightIndex;
+    }
+
     public BIHNode getLeftChild() {
         return left;
     }
@@ -52,10 +52,14 @@ import com.jme3.scene.VertexBuffer.Type;
 import com.jme3.scene.mesh.IndexBuffer;
 import com.jme3.scene.mesh.VirtualIndexBuffer;
 import com.jme3.scene.mesh.WrappedIndexBuffer;
+import com.jme3.util.ParallelTasks;
 import com.jme3.util.TempVars;
 import java.io.IOException;
 import static java.lang.Math.max;
 import java.nio.FloatBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
 
 public class BIHTree implements CollisionData {
 
@@ -67,9 +71,15 @@ public class BIHTree implements CollisionData {
     private int numTris;
     private float[] pointData;
     private int[] triIndices;
+    private transient BIHFlatTree flatTree;
+    
+    /**
+     * Subtrees with at least this many triangles are built on another
+     * thread when constructing in parallel.
+     */
+    private static final int PARALLEL_THRESHOLD = 4096;
     
     // private transient CollisionResults boundResults = new CollisionResults();
-    private transient float[] bihSwapTmp;
     
     private static final TriangleAxisComparator[] comparators = new TriangleAxisComparator[]
     {
@@ -112,8 +122,6 @@ public class BIHTree implements CollisionData {
             throw new IllegalArgumentException();
         }
 
-        bihSwapTmp = new float[9];
-
         FloatBuffer vb = (FloatBuffer) mesh.getBuffer(Type.Position).getData();
         IndexBuffer ib = mesh.getIndexBuffer();
         if (ib == null) {
@@ -134,8 +142,34 @@ public class BIHTree implements CollisionData {
     }
 
     public void construct() {
+        construct(null);
+    }
+
+    /**
+     * Constructs the tree, building large subtrees in parallel on the given
+     * executor. The calling thread takes part in the construction and 
+     * returns when the tree is complete.
+     * 
+     * @param executor The executor to use, or null to construct the tree 
+     * on the calling thread only.
+     */
+    public void construct(ExecutorService executor) {
         BoundingBox sceneBbox = createBox(0, numTris - 1);
-        root = createNode(0, numTris - 1, sceneBbox, 0);
+        root = createNode(0, numTris - 1, sceneBbox, 0, executor);
+        flatTree = new BIHFlatTree(root, pointData, triIndices);
+    }
+
+    /**
+     * Returns the flattened layout of this tree, which is used for ray
+     * queries and offers a batch ray API.
+     * 
+     * @return The flat tree, or null if the tree was not constructed yet.
+     */
+    public BIHFlatTree getFlatTree() {
+        if (flatTree == null && root != null) {
+            flatTree = new BIHFlatTree(root, pointData, triIndices);
+        }
+        return flatTree;
     }
 
     private BoundingBox createBox(int l, int r) {
@@ -288,7 +322,7 @@ public class BIHTree implements CollisionData {
 //
 //        return node;
 //    }
-    private BIHNode createNode(int l, int r, BoundingBox nodeBbox, int depth) {
+    private BIHNode createNode(int l, int r, BoundingBox nodeBbox, int depth, ExecutorService executor) {
         if ((r - l) < maxTrisPerNode || depth > MAX_TREE_DEPTH) {
             return new BIHNode(l, r);
         }
@@ -329,30 +363,48 @@ public class BIHTree implements CollisionData {
             //Only right
             BoundingBox rbbox = new BoundingBox(currentBox);
             setMinMax(rbbox, true, axis, split);
-            return createNode(l, r, rbbox, depth + 1);
+            return createNode(l, r, rbbox, depth + 1, executor);
         } else if (pivot > r) {
             //Only left
             BoundingBox lbbox = new BoundingBox(currentBox);
             setMinMax(lbbox, false, axis, split);
-            return createNode(l, r, lbbox, depth + 1);
+            return createNode(l, r, lbbox, depth + 1, executor);
         } else {
             //Build the node
-            BIHNode node = new BIHNode(axis);
-
-            //Left child
-            BoundingBox lbbox = new BoundingBox(currentBox);
-            setMinMax(lbbox, false, axis, split);
+            final BIHNode node = new BIHNode(axis);
 
             //The left node right border is the plane most right
             node.setLeftPlane(getMinMax(createBox(l, max(l, pivot - 1)), false, axis));
-            node.setLeftChild(createNode(l, max(l, pivot - 1), lbbox, depth + 1)); //Recursive call
+            //The right node left border is the plane most left
+            node.setRightPlane(getMinMax(createBox(pivot, r), true, axis));
+
+            //Left child
+            final BoundingBox lbbox = new BoundingBox(currentBox);
+            setMinMax(lbbox, false, axis, split);
 
             //Right Child
             BoundingBox rbbox = new BoundingBox(currentBox);
             setMinMax(rbbox, true, axis, split);
-            //The right node left border is the plane most left
-            node.setRightPlane(getMinMax(createBox(pivot, r), true, axis));
-            node.setRightChild(createNode(pivot, r, rbbox, depth + 1)); //Recursive call
+
+            if (executor != null && (r - l) >= PARALLEL_THRESHOLD) {
+                //The children work on disjoint triangle ranges,
+                //build the left one on another thread
+                final int leftL = l, leftR = max(l, pivot - 1), childDepth = depth + 1;
+                final ExecutorService childExecutor = executor;
+                FutureTask<BIHNode> leftTask = new FutureTask<BIHNode>(new Callable<BIHNode>() {
+                    public BIHNode call() {
+                        return createNode(leftL, leftR, lbbox, childDepth, childExecutor);
+                    }
+                });
+                executor.execute(leftTask);
+                node.setRightChild(createNode(pivot, r, rbbox, depth + 1, executor)); //Recursive call
+
+                //Build the left child here if no thread picked it up yet
+                node.setLeftChild(ParallelTasks.runAndGet(leftTask));
+            } else {
+                node.setLeftChild(createNode(l, max(l, pivot - 1), lbbox, depth + 1, executor)); //Recursive call
+                node.setRightChild(createNode(pivot, r, rbbox, depth + 1, executor)); //Recursive call
+            }
 
             return node;
         }
@@ -378,14 +430,12 @@ public class BIHTree implements CollisionData {
         int p1 = index1 * 9;
         int p2 = index2 * 9;
 
-        // store p1 in tmp
-        System.arraycopy(pointData, p1, bihSwapTmp, 0, 9);
-
-        // copy p2 to p1
-        System.arraycopy(pointData, p2, pointData, p1, 9);
-
-        // copy tmp to p2
-        System.arraycopy(bihSwapTmp, 0, pointData, p2, 9);
+        // swap in place, subtrees may be sorted concurrently
+        for (int i = 0; i < 9; i++) {
+            float tmp = pointData[p1 + i];
+            pointData[p1 + i] = pointData[p2 + i];
+            pointData[p2 + i] = tmp;
+        }
 
         // swap indices
         int tmp2 = triIndices[index1];
@@ -425,7 +475,7 @@ public class BIHTree implements CollisionData {
                 }
 
     //            return root.intersectBrute(r, worldMatrix, this, tMin, tMax, results);
-                return root.intersectWhere(r, worldMatrix, this, tMin, tMax, results);
+                return getFlatTree().intersectWhere(r, worldMatrix, tMin, tMax, results);
             }
             return 0;
         } finally {
@@ -471,7 +521,12 @@ public class BIHTree implements CollisionData {
     public void write(JmeExporter ex) throws IOException {
         OutputCapsule oc = ex.getCapsule(this);
         oc.write(mesh, "mesh", null);
-        oc.write(root, "root", null);
+        BIHFlatTree flat = getFlatTree();
+        if (flat != null) {
+            // the flat layout is much more compact than a savable per node
+            oc.write(flat.getNodeData(), "flat_nodes", null);
+            oc.write(flat.getPlaneData(), "flat_planes", null);
+        }
         oc.write(maxTrisPerNode, "tris_per_node", 0);
         oc.write(pointData, "points", null);
         oc.write(triIndices, "indices", null);
@@ -484,5 +539,15 @@ public class BIHTree implements CollisionData {
         maxTrisPerNode = ic.readInt("tris_per_node", 0);
         pointData = ic.readFloatArray("points", null);
         triIndices = ic.readIntArray("indices", null);
+        if (triIndices != null) {
+            numTris = triIndices.length;
+        }
+        
+        int[] flatNodes = ic.readIntArray("flat_nodes", null);
+        float[] flatPlanes = ic.readFloatArray("flat_planes", null);
+        if (root == null && flatNodes != null) {
+            flatTree = new BIHFlatTree(flatNodes, flatPlanes, pointData, triIndices);
+            root = flatTree.createNodes();
+        }
     }
 }
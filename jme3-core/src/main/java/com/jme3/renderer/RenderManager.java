@@ -86,6 +86,7 @@ public class RenderManager {
     private int viewX, viewY, viewWidth, viewHeight;
     private Matrix4f orthoMatrix = new Matrix4f();
     private LightList filteredLightList = new LightList(null);
+    private ArrayList<Geometry> broadphaseGeometries = new ArrayList<Geometry>();
     private String tmpTech;
     private boolean handleTranlucentBucket = true;
     private AppProfiler prof;
@@ -672,7 +673,21 @@ public class RenderManager {
         }
 
         scene.runControlRender(this, vp);
-        if (scene instanceof Node) {
+        if (scene instanceof BroadphaseNode && ((BroadphaseNode) scene).isCullingEnabled()) {
+            // The node finds its visible geometries itself
+            List<Geometry> visible = broadphaseGeometries;
+            visible.clear();
+            ((BroadphaseNode) scene).getVisibleGeometries(vp.getCamera(), visible);
+            for (int i = 0; i < visible.size(); i++) {
+                Geometry gm = visible.get(i);
+                gm.runControlRender(this, vp);
+                if (gm.getMaterial() == null) {
+                    throw new IllegalStateException("No material is set for Geometry: " + gm.getName());
+                }
+                vp.getQueue().addToQueue(gm, gm.getQueueBucket());
+            }
+            visible.clear();
+        } else if (scene instanceof Node) {
             // Recurse for all children
             Node n = (Node) scene;
             SafeArrayList<Spatial> children = (SafeArrayList)n.getChildren();
@@ -1954,6 +1954,10 @@ public class GLRenderer implements Renderer {
      * before being uploaded.
      */
     public void updateTexImageData(Image img, Texture.Type type, int unit, boolean scaleToPot) {
+        updateTexImageData(img, type, unit, scaleToPot, null);
+    }
+
+    private void updateTexImageData(Image img, Texture.Type type, int unit, boolean scaleToPot, Image prepared) {
         int texId = img.getId();
         if (texId == -1) {
             // create texture
@@ -2038,7 +2042,9 @@ public class GLRenderer implements Renderer {
         }
 
         Image imageForUpload;
-        if (scaleToPot) {
+        if (scaleToPot && prepared != null) {
+            imageForUpload = prepared;
+        } else if (scaleToPot) {
             imageForUpload = MipMapGenerator.resizeToPowerOf2(img);
         } else {
             imageForUpload = img;
@@ -2106,7 +2112,17 @@ public class GLRenderer implements Renderer {
                 scaleToPot = true;
             }
             
-            updateTexImageData(image, tex.getType(), unit, scaleToPot);
+            Image prepared = tex.getPreparedImage();
+            if (prepared != null) {
+                // The copy was made from the image as it was loaded,
+                // so it is only valid for the first upload
+                tex.setPreparedImage(null);
+                if (image.getId() != -1) {
+                    prepared = null;
+                }
+            }
+            
+            updateTexImageData(image, tex.getType(), unit, scaleToPot, prepared);
         }
 
         int texId = image.getId();
@@ -2227,6 +2243,12 @@ public class GLRenderer implements Renderer {
             }
         }
         
+        if (!created && vb.getUpdateStart() >= 0 && !vb.hasDataSizeChanged()
+                && vb.getFormat() != VertexBuffer.Format.Half) {
+            updateBufferSubData(vb, target);
+            return;
+        }
+
         int usage = convertUsage(vb.getUsage());
         vb.getData().rewind();
 
@@ -2253,6 +2275,43 @@ public class GLRenderer implements Renderer {
         vb.clearUpdateNeeded();
     }
 
+    /**
+     * Sends only the elements of the buffer that changed since the last
+     * upload.
+     */
+    private void updateBufferSubData(VertexBuffer vb, int target) {
+        Buffer data = vb.getData();
+        int limit = data.limit();
+        int components = vb.getNumComponents();
+        int start = vb.getUpdateStart() * components;
+        int end = Math.min(vb.getUpdateEnd() * components, limit);
+        if (start < end) {
+            long offset = (long) start * vb.getFormat().getComponentSize();
+            data.limit(end).position(start);
+            switch (vb.getFormat()) {
+                case Byte:
+                case UnsignedByte:
+                    gl.glBufferSubData(target, offset, (ByteBuffer) data);
+                    break;
+                case Short:
+                case UnsignedShort:
+                    gl.glBufferSubData(target, offset, (ShortBuffer) data);
+                    break;
+                case Int:
+                case UnsignedInt:
+                    glext.glBufferSubData(target, offset, (IntBuffer) data);
+                    break;
+                case Float:
+                    gl.glBufferSubData(target, offset, (FloatBuffer) data);
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Unknown buffer format.");
+            }
+            data.limit(limit).position(0);
+        }
+        vb.clearUpdateNeeded();
+    }
+
     public void deleteBuffer(VertexBuffer vb) {
         int bufId = vb.getId();
         if (bufId != -1) {
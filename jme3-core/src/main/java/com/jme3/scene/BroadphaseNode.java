@@ -0,0 +1,460 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.scene;
+
+import com.jme3.bounding.BoundingSphere;
+import com.jme3.bounding.BoundingVolume;
+import com.jme3.collision.Collidable;
+import com.jme3.collision.CollisionResults;
+import com.jme3.export.InputCapsule;
+import com.jme3.export.JmeExporter;
+import com.jme3.export.JmeImporter;
+import com.jme3.export.OutputCapsule;
+import com.jme3.math.Ray;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.queue.RenderQueue.Bucket;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <code>BroadphaseNode</code> is a {@link Node} that indexes the world 
+ * bounds of all geometries in its sub scene graph in a dynamic AABB tree.
+ * <p>
+ * The index is kept up to date incrementally: geometries are added and 
+ * removed as spatials are attached and detached anywhere below this node,
+ * and moved in the tree when their world bound is refreshed. Ray and 
+ * bounding volume {@link #collideWith(com.jme3.collision.Collidable, com.jme3.collision.CollisionResults) collisions}
+ * and range queries only visit the geometries near the query, instead of 
+ * every spatial of the sub scene graph. This pays off for scenes with 
+ * many pickable objects.
+ * <p>
+ * Frustum culling can go through the index as well, see 
+ * {@link #setCullingEnabled(boolean) }.
+ * <p>
+ * A <code>BroadphaseNode</code> below another one indexes its own sub
+ * scene graph, the outer node forwards queries to it.
+ */
+public class BroadphaseNode extends Node {
+
+    private transient BroadphaseTree tree = new BroadphaseTree();
+    private transient ArrayList<Geometry> dirtyGeometries = new ArrayList<Geometry>();
+    private transient ArrayList<Geometry> unboundedGeometries = new ArrayList<Geometry>();
+    private transient ArrayList<BroadphaseNode> nestedNodes = new ArrayList<BroadphaseNode>();
+    private transient ArrayList<Geometry> candidates = new ArrayList<Geometry>();
+    private transient ArrayList<Geometry> intersecting = new ArrayList<Geometry>();
+    
+    /**
+     * The broadphase node this node is nested in.
+     */
+    private transient BroadphaseNode owner;
+    
+    /**
+     * False until the sub scene graph has been indexed.
+     */
+    private transient boolean indexed = false;
+    
+    private boolean cullingEnabled = false;
+
+    /**
+     * Serialization only. Do not use.
+     */
+    public BroadphaseNode() {
+        super();
+    }
+
+    public BroadphaseNode(String name) {
+        super(name);
+    }
+
+    /**
+     * Enables frustum culling through the index.
+     * <p>
+     * When enabled, the renderer asks this node for the geometries that
+     * are in the view frustum instead of checking every spatial below it.
+     * This differs from regular culling in two ways: geometries outside 
+     * the frustum are dropped even if their cull hint is 
+     * {@link Spatial.CullHint#Never}, and controls of nodes between this 
+     * node and its geometries are not {@link com.jme3.scene.control.Control#render(com.jme3.renderer.RenderManager, com.jme3.renderer.ViewPort) rendered}.
+     * Controls of the geometries themselves are. Spatials that rely on 
+     * either, like a sky, should be attached outside of this node.
+     * 
+     * @param cullingEnabled True to cull through the index.
+     */
+    public void setCullingEnabled(boolean cullingEnabled) {
+        this.cullingEnabled = cullingEnabled;
+    }
+
+    /**
+     * @return True if frustum culling goes through the index.
+     * 
+     * @see #setCullingEnabled(boolean) 
+     */
+    public boolean isCullingEnabled() {
+        return cullingEnabled;
+    }
+
+    /**
+     * Indexes the sub scene graph if it was not done yet, and applies
+     * pending bound changes.
+     */
+    private void updateIndex() {
+        if (!indexed) {
+            indexed = true;
+            for (Spatial child : children.getArray()) {
+                addSubtree(child);
+            }
+        }
+        
+        for (int i = 0; i < dirtyGeometries.size(); i++) {
+            Geometry geom = dirtyGeometries.get(i);
+            if (geom.broadphase != this || !geom.broadphaseDirty) {
+                continue;
+            }
+            // Updating the bound updates the index
+            geom.checkDoBoundUpdate();
+            if (geom.broadphaseDirty) {
+                updateGeometry(geom);
+            }
+        }
+        dirtyGeometries.clear();
+    }
+
+    private void addSubtree(Spatial spatial) {
+        if (spatial instanceof BroadphaseNode) {
+            BroadphaseNode nested = (BroadphaseNode) spatial;
+            if (nested.owner != null) {
+                nested.owner.nestedNodes.remove(nested);
+            }
+            nested.owner = this;
+            nestedNodes.add(nested);
+        } else if (spatial instanceof Geometry) {
+            Geometry geom = (Geometry) spatial;
+            if (geom.broadphase != null) {
+                geom.broadphase.removeGeometry(geom);
+            }
+            geom.broadphase = this;
+            markDirty(geom);
+        } else if (spatial instanceof Node) {
+            for (Spatial child : ((Node) spatial).getChildren()) {
+                addSubtree(child);
+            }
+        }
+    }
+
+    private static void removeSubtree(Spatial spatial) {
+        if (spatial instanceof BroadphaseNode) {
+            BroadphaseNode nested = (BroadphaseNode) spatial;
+            if (nested.owner != null) {
+                nested.owner.nestedNodes.remove(nested);
+                nested.owner = null;
+            }
+        } else if (spatial instanceof Geometry) {
+            Geometry geom = (Geometry) spatial;
+            if (geom.broadphase != null) {
+                geom.broadphase.removeGeometry(geom);
+            }
+        } else if (spatial instanceof Node) {
+            for (Spatial child : ((Node) spatial).getChildren()) {
+                removeSubtree(child);
+            }
+        }
+    }
+
+    private void removeGeometry(Geometry geom) {
+        if (geom.broadphaseProxy != -1) {
+            tree.destroyProxy(geom.broadphaseProxy);
+            geom.broadphaseProxy = -1;
+        } else {
+            unboundedGeometries.remove(geom);
+        }
+        geom.broadphase = null;
+        geom.broadphaseDirty = false;
+    }
+
+    private static BroadphaseNode findBroadphase(Node node) {
+        while (node != null) {
+            if (node instanceof BroadphaseNode) {
+                return (BroadphaseNode) node;
+            }
+            node = node.getParent();
+        }
+        return null;
+    }
+
+    /**
+     * Called by a node after a child was attached to it.
+     */
+    static void childAttached(Node parent, Spatial child) {
+        BroadphaseNode broadphase = findBroadphase(parent);
+        if (broadphase != null && broadphase.indexed) {
+            broadphase.addSubtree(child);
+        }
+    }
+
+    /**
+     * Called by a node after a child was detached from it.
+     */
+    static void childDetached(Node parent, Spatial child) {
+        if (findBroadphase(parent) != null) {
+            removeSubtree(child);
+        }
+    }
+
+    /**
+     * Called by an indexed geometry when its bound needs a refresh.
+     */
+    void markDirty(Geometry geom) {
+        geom.broadphaseDirty = true;
+        dirtyGeometries.add(geom);
+    }
+
+    /**
+     * Called by an indexed geometry after its world bound was updated.
+     */
+    void updateGeometry(Geometry geom) {
+        geom.broadphaseDirty = false;
+        BoundingVolume bound = geom.worldBound;
+        if (bound == null) {
+            if (geom.broadphaseProxy != -1) {
+                tree.destroyProxy(geom.broadphaseProxy);
+                geom.broadphaseProxy = -1;
+                unboundedGeometries.add(geom);
+            } else if (!unboundedGeometries.contains(geom)) {
+                unboundedGeometries.add(geom);
+            }
+        } else if (geom.broadphaseProxy == -1) {
+            unboundedGeometries.remove(geom);
+            geom.broadphaseProxy = tree.createProxy(geom, bound);
+        } else {
+            tree.moveProxy(geom.broadphaseProxy, bound);
+        }
+    }
+
+    @Override
+    public void updateGeometricState() {
+        super.updateGeometricState();
+        updateIndex();
+    }
+
+    @Override
+    public int collideWith(Collidable other, CollisionResults results) {
+        if (!(other instanceof Ray) && !(other instanceof BoundingVolume)) {
+            return super.collideWith(other, results);
+        }
+        
+        updateIndex();
+        ArrayList<Geometry> geoms = candidates;
+        geoms.clear();
+        if (other instanceof Ray) {
+            tree.raycast((Ray) other, geoms);
+        } else {
+            tree.query((BoundingVolume) other, geoms);
+        }
+        geoms.addAll(unboundedGeometries);
+        
+        int total = 0;
+        for (int i = 0; i < geoms.size(); i++) {
+            total += geoms.get(i).collideWith(other, results);
+        }
+        geoms.clear();
+        
+        for (int i = 0; i < nestedNodes.size(); i++) {
+            total += nestedNodes.get(i).collideWith(other, results);
+        }
+        return total;
+    }
+
+    /**
+     * Finds the geometries below this node whose world bound intersects 
+     * the given volume.
+     * 
+     * @param volume The volume to test, in world space.
+     * @param store The list to add the geometries to, or null to create 
+     * a new one.
+     * @return The list the geometries were added to.
+     */
+    public List<Geometry> getGeometriesWithin(BoundingVolume volume, List<Geometry> store) {
+        if (store == null) {
+            store = new ArrayList<Geometry>();
+        }
+        
+        updateIndex();
+        ArrayList<Geometry> geoms = candidates;
+        geoms.clear();
+        tree.query(volume, geoms);
+        for (int i = 0; i < geoms.size(); i++) {
+            Geometry geom = geoms.get(i);
+            if (geom.worldBound.intersects(volume)) {
+                store.add(geom);
+            }
+        }
+        geoms.clear();
+        
+        for (int i = 0; i < nestedNodes.size(); i++) {
+            nestedNodes.get(i).getGeometriesWithin(volume, store);
+        }
+        return store;
+    }
+
+    /**
+     * Finds the geometries below this node whose world bound intersects 
+     * the sphere with the given center and radius.
+     * 
+     * @param center The center of the sphere, in world space.
+     * @param radius The radius of the sphere.
+     * @param store The list to add the geometries to, or null to create 
+     * a new one.
+     * @return The list the geometries were added to.
+     */
+    public List<Geometry> getGeometriesWithin(Vector3f center, float radius, List<Geometry> store) {
+        return getGeometriesWithin(new BoundingSphere(radius, center), store);
+    }
+
+    /**
+     * Finds the geometries below this node that are in the view frustum
+     * of the camera and not culled by their {@link Spatial.CullHint}.
+     * Used by the renderer when {@link #setCullingEnabled(boolean) culling}
+     * is enabled.
+     * 
+     * @param cam The camera to cull against.
+     * @param store The list to add the geometries to.
+     */
+    public void getVisibleGeometries(Camera cam, List<Geometry> store) {
+        updateIndex();
+        ArrayList<Geometry> inside = candidates;
+        inside.clear();
+        intersecting.clear();
+        tree.cull(cam, inside, intersecting);
+        
+        int planeState = cam.getPlaneState();
+        for (int i = 0; i < inside.size(); i++) {
+            Geometry geom = inside.get(i);
+            if (!isCulled(geom)) {
+                geom.setLastFrustumIntersection(Camera.FrustumIntersect.Inside);
+                store.add(geom);
+            }
+        }
+        for (int i = 0; i < intersecting.size(); i++) {
+            Geometry geom = intersecting.get(i);
+            if (isCulled(geom)) {
+                continue;
+            }
+            CullHint hint = geom.getCullHint();
+            Camera.FrustumIntersect result;
+            if (hint == CullHint.Never) {
+                result = Camera.FrustumIntersect.Intersects;
+            } else if (geom.getQueueBucket() == Bucket.Gui) {
+                result = cam.containsGui(geom.worldBound) 
+                        ? Camera.FrustumIntersect.Intersects 
+                        : Camera.FrustumIntersect.Outside;
+            } else {
+                cam.setPlaneState(planeState);
+                result = cam.contains(geom.worldBound);
+            }
+            geom.setLastFrustumIntersection(result);
+            if (result != Camera.FrustumIntersect.Outside) {
+                store.add(geom);
+            }
+        }
+        cam.setPlaneState(planeState);
+        inside.clear();
+        intersecting.clear();
+        
+        for (int i = 0; i < unboundedGeometries.size(); i++) {
+            Geometry geom = unboundedGeometries.get(i);
+            if (!isCulled(geom)) {
+                store.add(geom);
+            }
+        }
+        for (int i = 0; i < nestedNodes.size(); i++) {
+            BroadphaseNode nested = nestedNodes.get(i);
+            if (!isCulled(nested)) {
+                nested.getVisibleGeometries(cam, store);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the spatial is skipped regardless of the camera, 
+     * the same way {@link Spatial#checkCulling(com.jme3.renderer.Camera) }
+     * would skip it during a regular scene traversal: when it or any of 
+     * its parents below this node has {@link CullHint#Always}, or when it 
+     * is a geometry grouped into a batch or an instance.
+     */
+    private boolean isCulled(Spatial spatial) {
+        if (spatial instanceof Geometry && ((Geometry) spatial).isGrouped()) {
+            spatial.setLastFrustumIntersection(Camera.FrustumIntersect.Outside);
+            return true;
+        }
+        for (Spatial s = spatial; s != null && s != this; s = s.getParent()) {
+            if (s.getCullHint() == CullHint.Always) {
+                spatial.setLastFrustumIntersection(Camera.FrustumIntersect.Outside);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public BroadphaseNode clone(boolean cloneMaterials) {
+        BroadphaseNode clone = (BroadphaseNode) super.clone(cloneMaterials);
+        clone.resetIndex();
+        return clone;
+    }
+
+    private void resetIndex() {
+        tree = new BroadphaseTree();
+        dirtyGeometries = new ArrayList<Geometry>();
+        unboundedGeometries = new ArrayList<Geometry>();
+        nestedNodes = new ArrayList<BroadphaseNode>();
+        candidates = new ArrayList<Geometry>();
+        intersecting = new ArrayList<Geometry>();
+        owner = null;
+        indexed = false;
+    }
+
+    @Override
+    public void write(JmeExporter ex) throws IOException {
+        super.write(ex);
+        OutputCapsule oc = ex.getCapsule(this);
+        oc.write(cullingEnabled, "cullingEnabled", false);
+    }
+
+    @Override
+    public void read(JmeImporter im) throws IOException {
+        super.read(im);
+        InputCapsule ic = im.getCapsule(this);
+        cullingEnabled = ic.readBoolean("cullingEnabled", false);
+    }
+}
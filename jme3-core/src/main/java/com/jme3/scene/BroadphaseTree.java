@@ -0,0 +1,618 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.scene;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.bounding.BoundingSphere;
+import com.jme3.bounding.BoundingVolume;
+import com.jme3.math.Ray;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.Camera.FrustumIntersect;
+import java.util.List;
+
+/**
+ * Dynamic AABB tree over the world bounds of geometries, used by 
+ * {@link BroadphaseNode}.
+ * <p>
+ * Leaves store the world bound of a geometry enlarged by a margin, so 
+ * small movements do not require the tree to be changed. Inner nodes are
+ * kept balanced with tree rotations as leaves are inserted and removed.
+ * Nodes are stored in primitive arrays and referenced by index.
+ */
+final class BroadphaseTree {
+
+    private static final int NULL = -1;
+    
+    /**
+     * Fraction of the largest extent by which leaf bounds are enlarged.
+     */
+    private static final float MARGIN = 0.1f;
+    
+    private float[] bounds;
+    private int[] parents;
+    private int[] children1;
+    private int[] children2;
+    private int[] heights;
+    private Geometry[] geometries;
+    
+    private int root = NULL;
+    private int freeList = NULL;
+    private int capacity;
+    private int nodeCount;
+    private int leafCount;
+    
+    private int[] stack = new int[64];
+    private int[] stackPlaneStates = new int[64];
+    private final float[] queryMin = new float[3];
+    private final float[] queryMax = new float[3];
+    private final BoundingBox cullBox = new BoundingBox();
+    private final Vector3f tmpMin = new Vector3f();
+    private final Vector3f tmpMax = new Vector3f();
+
+    BroadphaseTree() {
+        allocate(16);
+    }
+
+    private void allocate(int newCapacity) {
+        float[] newBounds = new float[newCapacity * 6];
+        int[] newParents = new int[newCapacity];
+        int[] newChildren1 = new int[newCapacity];
+        int[] newChildren2 = new int[newCapacity];
+        int[] newHeights = new int[newCapacity];
+        Geometry[] newGeometries = new Geometry[newCapacity];
+        if (capacity > 0) {
+            System.arraycopy(bounds, 0, newBounds, 0, capacity * 6);
+            System.arraycopy(parents, 0, newParents, 0, capacity);
+            System.arraycopy(children1, 0, newChildren1, 0, capacity);
+            System.arraycopy(children2, 0, newChildren2, 0, capacity);
+            System.arraycopy(heights, 0, newHeights, 0, capacity);
+            System.arraycopy(geometries, 0, newGeometries, 0, capacity);
+        }
+        bounds = newBounds;
+        parents = newParents;
+        children1 = newChildren1;
+        children2 = newChildren2;
+        heights = newHeights;
+        geometries = newGeometries;
+        
+        // link the new nodes into the free list
+        for (int i = newCapacity - 1; i >= capacity; i--) {
+            parents[i] = freeList;
+            heights[i] = -1;
+            freeList = i;
+        }
+        capacity = newCapacity;
+    }
+
+    private int allocateNode() {
+        if (freeList == NULL) {
+            allocate(capacity * 2);
+        }
+        int node = freeList;
+        freeList = parents[node];
+        parents[node] = NULL;
+        children1[node] = NULL;
+        children2[node] = NULL;
+        heights[node] = 0;
+        geometries[node] = null;
+        nodeCount++;
+        return node;
+    }
+
+    private void freeNode(int node) {
+        parents[node] = freeList;
+        heights[node] = -1;
+        geometries[node] = null;
+        freeList = node;
+        nodeCount--;
+    }
+
+    /**
+     * Removes all leaves.
+     */
+    void clear() {
+        capacity = 0;
+        freeList = NULL;
+        root = NULL;
+        nodeCount = 0;
+        leafCount = 0;
+        allocate(16);
+    }
+
+    /**
+     * @return The number of geometries in the tree.
+     */
+    int getLeafCount() {
+        return leafCount;
+    }
+
+    /**
+     * @return The height of the tree, 0 if it only holds a single leaf.
+     */
+    int getHeight() {
+        return root == NULL ? 0 : heights[root];
+    }
+
+    /**
+     * Inserts a leaf for the given geometry.
+     * 
+     * @return The proxy of the geometry, used to move or remove the leaf.
+     */
+    int createProxy(Geometry geometry, BoundingVolume bound) {
+        int leaf = allocateNode();
+        geometries[leaf] = geometry;
+        setFatBounds(leaf, bound);
+        insertLeaf(leaf);
+        leafCount++;
+        return leaf;
+    }
+
+    void destroyProxy(int proxy) {
+        removeLeaf(proxy);
+        freeNode(proxy);
+        leafCount--;
+    }
+
+    /**
+     * Updates the bounds of a leaf. The tree is only changed if the new 
+     * bound is not contained in the enlarged bounds of the leaf.
+     * 
+     * @return True if the leaf was reinserted.
+     */
+    boolean moveProxy(int proxy, BoundingVolume bound) {
+        getBounds(bound, queryMin, queryMax);
+        int b = proxy * 6;
+        if (bounds[b] <= queryMin[0] && bounds[b + 1] <= queryMin[1] && bounds[b + 2] <= queryMin[2]
+                && bounds[b + 3] >= queryMax[0] && bounds[b + 4] >= queryMax[1] && bounds[b + 5] >= queryMax[2]) {
+            return false;
+        }
+        removeLeaf(proxy);
+        setFatBounds(proxy, bound);
+        insertLeaf(proxy);
+        return true;
+    }
+
+    private static void getBounds(BoundingVolume bound, float[] min, float[] max) {
+        Vector3f center = bound.getCenter();
+        float x, y, z;
+        if (bound.getType() == BoundingVolume.Type.AABB) {
+            BoundingBox box = (BoundingBox) bound;
+            x = box.getXExtent();
+            y = box.getYExtent();
+            z = box.getZExtent();
+        } else if (bound.getType() == BoundingVolume.Type.Sphere) {
+            x = y = z = ((BoundingSphere) bound).getRadius();
+        } else {
+            throw new UnsupportedOperationException("Unsupported bounding volume: " + bound);
+        }
+        min[0] = center.x - x;
+        min[1] = center.y - y;
+        min[2] = center.z - z;
+        max[0] = center.x + x;
+        max[1] = center.y + y;
+        max[2] = center.z + z;
+    }
+
+    private void setFatBounds(int node, BoundingVolume bound) {
+        getBounds(bound, queryMin, queryMax);
+        float margin = MARGIN * 0.5f * Math.max(queryMax[0] - queryMin[0],
+                Math.max(queryMax[1] - queryMin[1], queryMax[2] - queryMin[2]));
+        int b = node * 6;
+        bounds[b] = queryMin[0] - margin;
+        bounds[b + 1] = queryMin[1] - margin;
+        bounds[b + 2] = queryMin[2] - margin;
+        bounds[b + 3] = queryMax[0] + margin;
+        bounds[b + 4] = queryMax[1] + margin;
+        bounds[b + 5] = queryMax[2] + margin;
+    }
+
+    private boolean isLeaf(int node) {
+        return children1[node] == NULL;
+    }
+
+    /**
+     * Half the surface area of the box of a node.
+     */
+    private float area(int node) {
+        int b = node * 6;
+        float dx = bounds[b + 3] - bounds[b];
+        float dy = bounds[b + 4] - bounds[b + 1];
+        float dz = bounds[b + 5] - bounds[b + 2];
+        return dx * dy + dy * dz + dz * dx;
+    }
+
+    /**
+     * Half the surface area of the box containing both nodes.
+     */
+    private float unionArea(int node1, int node2) {
+        int b1 = node1 * 6, b2 = node2 * 6;
+        float dx = Math.max(bounds[b1 + 3], bounds[b2 + 3]) - Math.min(bounds[b1], bounds[b2]);
+        float dy = Math.max(bounds[b1 + 4], bounds[b2 + 4]) - Math.min(bounds[b1 + 1], bounds[b2 + 1]);
+        float dz = Math.max(bounds[b1 + 5], bounds[b2 + 5]) - Math.min(bounds[b1 + 2], bounds[b2 + 2]);
+        return dx * dy + dy * dz + dz * dx;
+    }
+
+    private void setUnion(int node, int node1, int node2) {
+        int b = node * 6, b1 = node1 * 6, b2 = node2 * 6;
+        for (int i = 0; i < 3; i++) {
+            bounds[b + i] = Math.min(bounds[b1 + i], bounds[b2 + i]);
+            bounds[b + 3 + i] = Math.max(bounds[b1 + 3 + i], bounds[b2 + 3 + i]);
+        }
+    }
+
+    private void insertLeaf(int leaf) {
+        if (root == NULL) {
+            root = leaf;
+            parents[root] = NULL;
+            return;
+        }
+
+        // Find the best sibling, by the increase of surface area
+        int index = root;
+        while (!isLeaf(index)) {
+            int child1 = children1[index];
+            int child2 = children2[index];
+
+            float area = area(index);
+            float combinedArea = unionArea(index, leaf);
+
+            // Cost of creating a new parent for this node and the new leaf
+            float cost = 2 * combinedArea;
+            // Minimum cost of pushing the leaf further down the tree
+            float inheritanceCost = 2 * (combinedArea - area);
+
+            float cost1 = unionArea(leaf, child1) + inheritanceCost;
+            if (!isLeaf(child1)) {
+                cost1 -= area(child1);
+            }
+            float cost2 = unionArea(leaf, child2) + inheritanceCost;
+            if (!isLeaf(child2)) {
+                cost2 -= area(child2);
+            }
+
+            if (cost < cost1 && cost < cost2) {
+                break;
+            }
+            index = cost1 < cost2 ? child1 : child2;
+        }
+        int sibling = index;
+
+        // Create a new parent
+        int oldParent = parents[sibling];
+        int newParent = allocateNode();
+        parents[newParent] = oldParent;
+        setUnion(newParent, leaf, sibling);
+        heights[newParent] = heights[sibling] + 1;
+
+        if (oldParent != NULL) {
+            if (children1[oldParent] == sibling) {
+                children1[oldParent] = newParent;
+            } else {
+                children2[oldParent] = newParent;
+            }
+        } else {
+            root = newParent;
+        }
+        children1[newParent] = sibling;
+        children2[newParent] = leaf;
+        parents[sibling] = newParent;
+        parents[leaf] = newParent;
+
+        refit(parents[leaf]);
+    }
+
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NULL;
+            return;
+        }
+
+        int parent = parents[leaf];
+        int grandParent = parents[parent];
+        int sibling = children1[parent] == leaf ? children2[parent] : children1[parent];
+
+        if (grandParent != NULL) {
+            // Connect the sibling to the grand parent and drop the parent
+            if (children1[grandParent] == parent) {
+                children1[grandParent] = sibling;
+            } else {
+                children2[grandParent] = sibling;
+            }
+            parents[sibling] = grandParent;
+            freeNode(parent);
+            refit(grandParent);
+        } else {
+            root = sibling;
+            parents[sibling] = NULL;
+            freeNode(parent);
+        }
+    }
+
+    /**
+     * Walks up from the given node, balancing and fixing bounds and heights.
+     */
+    private void refit(int index) {
+        while (index != NULL) {
+            index = balance(index);
+
+            int child1 = children1[index];
+            int child2 = children2[index];
+            heights[index] = 1 + Math.max(heights[child1], heights[child2]);
+            setUnion(index, child1, child2);
+
+            index = parents[index];
+        }
+    }
+
+    /**
+     * Performs a left or right rotation if the node is imbalanced.
+     * 
+     * @return The new root of the subtree.
+     */
+    private int balance(int a) {
+        if (isLeaf(a) || heights[a] < 2) {
+            return a;
+        }
+
+        int b = children1[a];
+        int c = children2[a];
+        int balance = heights[c] - heights[b];
+
+        if (balance > 1) {
+            // Rotate c up
+            int f = children1[c];
+            int g = children2[c];
+
+            children1[c] = a;
+            parents[c] = parents[a];
+            parents[a] = c;
+            replaceChild(parents[c], a, c);
+
+            if (heights[f] > heights[g]) {
+                children2[c] = f;
+                children2[a] = g;
+                parents[g] = a;
+                setUnion(a, b, g);
+                setUnion(c, a, f);
+                heights[a] = 1 + Math.max(heights[b], heights[g]);
+                heights[c] = 1 + Math.max(heights[a], heights[f]);
+            } else {
+                children2[c] = g;
+                children2[a] = f;
+                parents[f] = a;
+                setUnion(a, b, f);
+                setUnion(c, a, g);
+                heights[a] = 1 + Math.max(heights[b], heights[f]);
+                heights[c] = 1 + Math.max(heights[a], heights[g]);
+            }
+            return c;
+        }
+
+        if (balance < -1) {
+            // Rotate b up
+            int d = children1[b];
+            int e = children2[b];
+
+            children1[b] = a;
+            parents[b] = parents[a];
+            parents[a] = b;
+            replaceChild(parents[b], a, b);
+
+            if (heights[d] > heights[e]) {
+                children2[b] = d;
+                children1[a] = e;
+                parents[e] = a;
+                setUnion(a, c, e);
+                setUnion(b, a, d);
+                heights[a] = 1 + Math.max(heights[c], heights[e]);
+                heights[b] = 1 + Math.max(heights[a], heights[d]);
+            } else {
+                children2[b] = e;
+                children1[a] = d;
+                parents[d] = a;
+                setUnion(a, c, d);
+                setUnion(b, a, e);
+                heights[a] = 1 + Math.max(heights[c], heights[d]);
+                heights[b] = 1 + Math.max(heights[a], heights[e]);
+            }
+            return b;
+        }
+
+        return a;
+    }
+
+    private void replaceChild(int parent, int oldChild, int newChild) {
+        if (parent == NULL) {
+            root = newChild;
+        } else if (children1[parent] == oldChild) {
+            children1[parent] = newChild;
+        } else {
+            children2[parent] = newChild;
+        }
+    }
+
+    private int push(int top, int node) {
+        if (top == stack.length) {
+            int[] newStack = new int[stack.length * 2];
+            System.arraycopy(stack, 0, newStack, 0, top);
+            stack = newStack;
+        }
+        stack[top] = node;
+        return top + 1;
+    }
+
+    private boolean overlaps(int node) {
+        int b = node * 6;
+        return bounds[b] <= queryMax[0] && bounds[b + 3] >= queryMin[0]
+                && bounds[b + 1] <= queryMax[1] && bounds[b + 4] >= queryMin[1]
+                && bounds[b + 2] <= queryMax[2] && bounds[b + 5] >= queryMin[2];
+    }
+
+    /**
+     * Adds the geometries whose enlarged bounds overlap the box of 
+     * the given volume.
+     */
+    void query(BoundingVolume volume, List<Geometry> store) {
+        if (root == NULL) {
+            return;
+        }
+        getBounds(volume, queryMin, queryMax);
+        int top = push(0, root);
+        while (top > 0) {
+            int node = stack[--top];
+            if (!overlaps(node)) {
+                continue;
+            }
+            if (isLeaf(node)) {
+                store.add(geometries[node]);
+            } else {
+                top = push(top, children1[node]);
+                top = push(top, children2[node]);
+            }
+        }
+    }
+
+    /**
+     * Adds the geometries whose enlarged bounds are hit by the ray within 
+     * its limit.
+     */
+    void raycast(Ray ray, List<Geometry> store) {
+        if (root == NULL) {
+            return;
+        }
+        Vector3f origin = ray.getOrigin();
+        Vector3f direction = ray.getDirection();
+        float ox = origin.x, oy = origin.y, oz = origin.z;
+        float idx = 1f / direction.x, idy = 1f / direction.y, idz = 1f / direction.z;
+        float limit = ray.getLimit();
+        
+        int top = push(0, root);
+        while (top > 0) {
+            int node = stack[--top];
+            int b = node * 6;
+            
+            float tMin = 0, tMax = limit;
+            float t1 = (bounds[b] - ox) * idx, t2 = (bounds[b + 3] - ox) * idx;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+            t1 = (bounds[b + 1] - oy) * idy;
+            t2 = (bounds[b + 4] - oy) * idy;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+            t1 = (bounds[b + 2] - oz) * idz;
+            t2 = (bounds[b + 5] - oz) * idz;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+            // Axis parallel rays starting on a slab border give NaN, 
+            // which fails this test and keeps the node
+            if (tMin > tMax) {
+                continue;
+            }
+            
+            if (isLeaf(node)) {
+                store.add(geometries[node]);
+            } else {
+                top = push(top, children1[node]);
+                top = push(top, children2[node]);
+            }
+        }
+    }
+
+    /**
+     * Adds the geometries whose enlarged bounds are inside or intersect 
+     * the frustum of the camera. Geometries in subtrees that are completely
+     * inside the frustum are added to <code>inside</code>, the others to 
+     * <code>intersecting</code>.
+     */
+    void cull(Camera cam, List<Geometry> inside, List<Geometry> intersecting) {
+        if (root == NULL) {
+            return;
+        }
+        int startState = cam.getPlaneState();
+        int top = push(0, root);
+        stackPlaneStates[0] = startState;
+        while (top > 0) {
+            int node = stack[--top];
+            cam.setPlaneState(stackPlaneStates[top]);
+            
+            int b = node * 6;
+            tmpMin.set(bounds[b], bounds[b + 1], bounds[b + 2]);
+            tmpMax.set(bounds[b + 3], bounds[b + 4], bounds[b + 5]);
+            cullBox.setMinMax(tmpMin, tmpMax);
+            FrustumIntersect result = cam.contains(cullBox);
+            if (result == FrustumIntersect.Outside) {
+                continue;
+            } else if (result == FrustumIntersect.Inside) {
+                collectLeaves(node, inside, top);
+                continue;
+            }
+            
+            if (isLeaf(node)) {
+                intersecting.add(geometries[node]);
+            } else {
+                int planeState = cam.getPlaneState();
+                top = push(top, children1[node]);
+                setPlaneState(top - 1, planeState);
+                top = push(top, children2[node]);
+                setPlaneState(top - 1, planeState);
+            }
+        }
+        cam.setPlaneState(startState);
+    }
+
+    private void setPlaneState(int index, int planeState) {
+        if (index >= stackPlaneStates.length) {
+            int[] newStates = new int[stack.length];
+            System.arraycopy(stackPlaneStates, 0, newStates, 0, stackPlaneStates.length);
+            stackPlaneStates = newStates;
+        }
+        stackPlaneStates[index] = planeState;
+    }
+
+    /**
+     * Adds all leaves below the node, using the stack above 
+     * <code>base</code>.
+     */
+    private void collectLeaves(int node, List<Geometry> store, int base) {
+        int top = push(base, node);
+        while (top > base) {
+            node = stack[--top];
+            if (isLeaf(node)) {
+                store.add(geometries[node]);
+            } else {
+                top = push(top, children1[node]);
+                top = push(top, children2[node]);
+            }
+        }
+    }
+}
@@ -83,6 +83,14 @@ public class Geometry extends Spatial {
      * the {@link GeometryGroupNode}.
      */
     protected int startIndex = -1;
+    
+    /**
+     * The {@link BroadphaseNode} indexing this <code>Geometry</code>,
+     * its proxy in the index and whether the index needs an update.
+     */
+    transient BroadphaseNode broadphase;
+    transient int broadphaseProxy = -1;
+    transient boolean broadphaseDirty;
         
     /**
      * Serialization only. Do not use.
@@ -302,6 +310,19 @@ public class Geometry extends Spatial {
                 worldBound = mesh.getBound().transform(worldTransform, worldBound);
             }
         }
+        
+        if (broadphase != null) {
+            broadphase.updateGeometry(this);
+        }
+    }
+
+    @Override
+    protected void setBoundRefresh() {
+        super.setBoundRefresh();
+        
+        if (broadphase != null && !broadphaseDirty) {
+            broadphase.markDirty(this);
+        }
     }
 
     @Override
@@ -500,6 +521,11 @@ public class Geometry extends Spatial {
             geomClone.startIndex = -1;
         }
         
+        // The clone is not attached, hence not indexed either.
+        geomClone.broadphase = null;
+        geomClone.broadphaseProxy = -1;
+        geomClone.broadphaseDirty = false;
+        
         geomClone.cachedWorldMat = cachedWorldMat.clone();
         if (material != null) {
             if (cloneMaterial) {
@@ -53,6 +53,7 @@ import com.jme3.util.SafeArrayList;
 import java.io.IOException;
 import java.nio.*;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
 
 /**
  * <code>Mesh</code> is used to store rendering data.
@@ -166,7 +167,7 @@ public class Mesh implements Savable, Cloneable {
      */
     private BoundingVolume meshBound =  new BoundingBox();
 
-    private CollisionData collisionTree = null;
+    private volatile CollisionData collisionTree = null;
 
     private SafeArrayList<VertexBuffer> buffersList = new SafeArrayList<VertexBuffer>(VertexBuffer.class);
     private IntMap<VertexBuffer> buffers = new IntMap<VertexBuffer>();
@@ -924,11 +925,37 @@ public class Mesh implements Savable, Cloneable {
      * com.jme3.collision.CollisionResults) }.
      */
     public void createCollisionData(){
+        createCollisionData(null);
+    }
+
+    /**
+     * Generates a collision tree for the mesh, building large parts of 
+     * the tree in parallel on the given executor.
+     * <p>
+     * This can be called on a loading thread so that the tree does not 
+     * have to be generated on the first collision check.
+     * 
+     * @param executor The executor to use, or null to generate the tree 
+     * on the calling thread only.
+     * 
+     * @see com.jme3.util.CollisionDataGenerator
+     */
+    public void createCollisionData(ExecutorService executor){
         BIHTree tree = new BIHTree(this);
-        tree.construct();
+        tree.construct(executor);
         collisionTree = tree;
     }
 
+    /**
+     * Returns true if a collision tree was generated or loaded for
+     * this mesh.
+     * 
+     * @return True if the mesh has collision data.
+     */
+    public boolean hasCollisionData() {
+        return collisionTree != null;
+    }
+
     /**
      * Clears any previously generated collision data.  Use this if
      * the mesh has changed in some way that invalidates any previously
@@ -952,11 +979,13 @@ public class Mesh implements Savable, Cloneable {
             return 0;
         }
         
-        if (collisionTree == null){
+        CollisionData tree = collisionTree;
+        if (tree == null){
             createCollisionData();
+            tree = collisionTree;
         }
         
-        return collisionTree.collideWith(other, worldMatrix, worldBound, results);
+        return tree.collideWith(other, worldMatrix, worldBound, results);
     }
 
     /**
@@ -356,6 +356,7 @@ public class Node extends Spatial {
             }
             
             invalidateUpdateList();
+            BroadphaseNode.childAttached(this, child);
         }
         
         return children.size();
@@ -434,6 +435,7 @@ public class Node extends Spatial {
             child.setLightListRefresh();
             
             invalidateUpdateList();
+            BroadphaseNode.childDetached(this, child);
         }
         return child;
     }
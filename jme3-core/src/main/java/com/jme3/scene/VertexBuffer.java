@@ -335,6 +335,12 @@ public class VertexBuffer extends NativeObject implements Savable, Cloneable {
     protected boolean normalized = false;
     protected int instanceSpan = 0;
     protected transient boolean dataSizeChanged = false;
+    /**
+     * the elements changed since the last upload, -1 when the whole buffer
+     * has to be sent
+     */
+    protected transient int updateStart = -1;
+    protected transient int updateEnd = -1;
 
     /**
      * Creates an empty, uninitialized buffer.
@@ -711,6 +717,60 @@ public class VertexBuffer extends NativeObject implements Savable, Cloneable {
     public void clearUpdateNeeded(){
         super.clearUpdateNeeded();
         dataSizeChanged = false;
+        updateStart = -1;
+        updateEnd = -1;
+    }
+
+    /**
+     * Indicates that the whole data of the buffer has to be sent to the GPU
+     * again.
+     */
+    @Override
+    public void setUpdateNeeded(){
+        super.setUpdateNeeded();
+        updateStart = -1;
+        updateEnd = -1;
+    }
+
+    /**
+     * Indicates that only the given elements of the data buffer changed, so
+     * the renderer can send just those to the GPU. Ranges marked before the
+     * next upload are merged into one range covering all of them, if the
+     * whole buffer needs to be sent already it still is.
+     *
+     * @param start the first changed element
+     * @param count the number of changed elements
+     */
+    public void setUpdateNeeded(int start, int count){
+        if (isUpdateNeeded()) {
+            if (updateStart < 0) {
+                return;
+            }
+            updateStart = Math.min(updateStart, start);
+            updateEnd = Math.max(updateEnd, start + count);
+        } else {
+            super.setUpdateNeeded();
+            updateStart = start;
+            updateEnd = start + count;
+        }
+    }
+
+    /**
+     * Internal use only.
+     * @return the first element changed since the last upload, or -1 if the
+     * whole buffer has to be sent
+     */
+    public int getUpdateStart() {
+        return updateStart;
+    }
+
+    /**
+     * Internal use only.
+     * @return the element after the last one changed since the last upload,
+     * or -1 if the whole buffer has to be sent
+     */
+    public int getUpdateEnd() {
+        return updateEnd;
     }
 
     /**
@@ -307,6 +307,12 @@ public abstract class Texture implements CloneableSmartAsset, Savable, Cloneable
      */
     private Image image = null;
 
+    /**
+     * Power-of-2 copy of the image, made on the loading thread by an 
+     * {@link com.jme3.texture.image.ImagePreparer}.
+     */
+    private Image preparedImage = null;
+
     /**
      * The texture key allows to reload a texture from a file
      * if needed.
@@ -325,7 +331,10 @@ public abstract class Texture implements CloneableSmartAsset, Savable, Cloneable
     @Override
     public Texture clone(){
         try {
-            return (Texture) super.clone();
+            Texture clone = (Texture) super.clone();
+            // The prepared copy belongs to this instance only
+            clone.preparedImage = null;
+            return clone;
         } catch (CloneNotSupportedException ex) {
             throw new AssertionError();
         }
@@ -415,6 +424,7 @@ public abstract class Texture implements CloneableSmartAsset, Savable, Cloneable
      */
     public void setImage(Image image) {
         this.image = image;
+        this.preparedImage = null;
         
         // Test if mipmap generation required.
         setMinFilter(getMinFilter());
@@ -441,6 +451,27 @@ public abstract class Texture implements CloneableSmartAsset, Savable, Cloneable
         return image;
     }
 
+    /**
+     * <code>setPreparedImage</code> sets a power-of-2 copy of the image 
+     * which the renderer uploads instead of scaling the image itself, 
+     * if the hardware cannot use this texture with its non-power-of-2 
+     * image. The copy is only used for the first upload of the image,
+     * and is cleared when the image is replaced.
+     *
+     * @param preparedImage the power-of-2 copy of the image, or null.
+     */
+    public void setPreparedImage(Image preparedImage) {
+        this.preparedImage = preparedImage;
+    }
+
+    /**
+     * @return the power-of-2 copy of the image set with 
+     * {@link #setPreparedImage(com.jme3.texture.Image) }, or null.
+     */
+    public Image getPreparedImage() {
+        return preparedImage;
+    }
+
     /**
      * <code>setWrap</code> sets the wrap mode of this texture for a
      * particular axis.
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.texture.image;
+
+import com.jme3.renderer.Caps;
+import com.jme3.texture.Image;
+import com.jme3.texture.Texture;
+import com.jme3.texture.Texture.WrapAxis;
+import com.jme3.texture.Texture.WrapMode;
+import com.jme3.util.MipMapGenerator;
+import java.util.EnumSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <code>ImagePreparer</code> performs the CPU-side transforms that 
+ * a texture's {@link Image} needs before it can be uploaded, so they can 
+ * run on the loading thread instead of the render thread.
+ * <p>
+ * The preparer is used by a {@link com.jme3.asset.DesktopAssetManager} 
+ * once it has been set with 
+ * {@link com.jme3.asset.DesktopAssetManager#setImagePreparer(com.jme3.texture.image.ImagePreparer) }.
+ * {@link com.jme3.app.Application} installs one matching the renderer 
+ * capabilities on its asset manager when it starts.
+ * <p>
+ * The image itself is never modified, since it is shared by every clone
+ * of the texture and may be read back, e.g. as a heightmap. Instead the 
+ * transformed copy is set with 
+ * {@link Texture#setPreparedImage(com.jme3.texture.Image) } and the 
+ * renderer uploads it when it decides, at upload time, that the texture 
+ * needs it. Textures that were not prepared still work, the renderer 
+ * then does the same work when uploading them.
+ * <p>
+ * Only uncompressed 2D images with a single data buffer are prepared.
+ * 
+ * @see MipMapGenerator
+ */
+public class ImagePreparer {
+
+    private static final Logger logger = Logger.getLogger(ImagePreparer.class.getName());
+    
+    private final EnumSet<Caps> caps;
+
+    /**
+     * Creates a preparer which performs the transforms the renderer with 
+     * the given capabilities would otherwise perform at upload time.
+     * 
+     * @param caps The renderer capabilities
+     */
+    public ImagePreparer(EnumSet<Caps> caps) {
+        this.caps = EnumSet.copyOf(caps);
+    }
+
+    /**
+     * Creates a preparer which performs the transforms the renderer with 
+     * the given capabilities would otherwise perform at upload time.
+     * 
+     * @param caps The renderer capabilities
+     * @return The preparer
+     */
+    public static ImagePreparer forCaps(EnumSet<Caps> caps) {
+        return new ImagePreparer(caps);
+    }
+
+    /**
+     * Returns true if the renderer has to scale the texture's image to 
+     * power-of-2 dimensions to use it with the texture's current filtering
+     * and wrap modes. This matches the check the renderer does when it 
+     * uploads the texture.
+     * 
+     * @param tex The texture to check
+     * @return True if the image of the texture needs to be scaled.
+     */
+    public boolean needsScaling(Texture tex) {
+        Image image = tex.getImage();
+        if (image == null || !image.isNPOT()) {
+            return false;
+        }
+        if (caps.contains(Caps.NonPowerOfTwoTextures)) {
+            return false;
+        }
+        if (!caps.contains(Caps.PartialNonPowerOfTwoTextures)) {
+            return true;
+        }
+        // Partial NPOT support only covers clamped textures without mipmaps
+        return tex.getMinFilter().usesMipMapLevels()
+            || tex.getWrap(WrapAxis.S) != WrapMode.EdgeClamp
+            || tex.getWrap(WrapAxis.T) != WrapMode.EdgeClamp;
+    }
+
+    /**
+     * Prepares the texture for upload. The texture's image is left as is.
+     * Images that were already uploaded are not prepared again.
+     * 
+     * @param tex The 2D texture to prepare
+     * @return True if a prepared image was set on the texture.
+     */
+    public boolean prepare(Texture tex) {
+        Image image = tex.getImage();
+        if (tex.getType() != Texture.Type.TwoDimensional 
+                || image == null
+                || image.getId() != -1
+                || !canPrepare(image)
+                || !needsScaling(tex)) {
+            return false;
+        }
+        
+        try {
+            tex.setPreparedImage(MipMapGenerator.resizeToPowerOf2(image));
+            return true;
+        } catch (UnsupportedOperationException ex) {
+            // Format not supported by ImageRaster, 
+            // leave it up to the renderer
+            if (logger.isLoggable(Level.FINE)) {
+                logger.log(Level.FINE, "Cannot prepare image " + image, ex);
+            }
+            return false;
+        }
+    }
+
+    private static boolean canPrepare(Image image) {
+        Image.Format format = image.getFormat();
+        return !format.isCompressed()
+            && !format.isDepthFormat()
+            && !image.hasMipmaps()
+            && image.getDepth() <= 1
+            && image.getMultiSamples() <= 1
+            && image.getData().size() == 1
+            && image.getData(0) != null;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.util;
+
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Mesh.Mode;
+import com.jme3.scene.SceneGraphVisitorAdapter;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.VertexBuffer.Type;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Generates the collision trees of the meshes in a scene ahead of time.
+ * <p>
+ * By default a mesh builds its collision tree on the first collision
+ * check, which causes a hitch when a large mesh is first picked. Calling
+ * this on a loading thread, or before exporting a model to j3o, moves that 
+ * work out of the render loop. Collision trees are saved with the mesh 
+ * and used as-is when the j3o is loaded.
+ */
+public class CollisionDataGenerator {
+
+    private static final Logger logger = Logger.getLogger(CollisionDataGenerator.class.getName());
+
+    private CollisionDataGenerator() {
+    }
+
+    /**
+     * Generates the collision trees of all meshes in the scene that 
+     * do not have one yet, on the calling thread.
+     * 
+     * @param scene The scene to process
+     */
+    public static void generate(Spatial scene) {
+        for (Mesh mesh : gatherMeshes(scene)) {
+            mesh.createCollisionData();
+        }
+    }
+
+    /**
+     * Generates the collision trees of all meshes in the scene that 
+     * do not have one yet. The meshes, and large parts of each tree, 
+     * are processed in parallel on the given executor. Returns when 
+     * all trees are generated.
+     * 
+     * @param scene The scene to process
+     * @param executor The executor to use
+     */
+    public static void generateParallel(Spatial scene, final ExecutorService executor) {
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (final Mesh mesh : gatherMeshes(scene)) {
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    // A mesh that fails is skipped, the others are still generated
+                    try {
+                        mesh.createCollisionData(executor);
+                    } catch (RuntimeException ex) {
+                        logger.log(Level.WARNING, "Error while generating collision data", ex);
+                    }
+                    return null;
+                }
+            });
+        }
+        ParallelTasks.invokeAll(executor, tasks);
+    }
+
+    private static List<Mesh> gatherMeshes(Spatial scene) {
+        final Map<Mesh, Mesh> meshes = new IdentityHashMap<Mesh, Mesh>();
+        scene.depthFirstTraversal(new SceneGraphVisitorAdapter() {
+            @Override
+            public void visit(Geometry geom) {
+                Mesh mesh = geom.getMesh();
+                if (mesh != null && canGenerate(mesh)) {
+                    meshes.put(mesh, mesh);
+                }
+            }
+        });
+        return new ArrayList<Mesh>(meshes.keySet());
+    }
+
+    private static boolean canGenerate(Mesh mesh) {
+        if (mesh.hasCollisionData() || mesh.getVertexCount() == 0
+                || mesh.getBuffer(Type.Position) == null) {
+            return false;
+        }
+        Mode mode = mesh.getMode();
+        return mode == Mode.Triangles || mode == Mode.TriangleStrip || mode == Mode.TriangleFan;
+    }
+}
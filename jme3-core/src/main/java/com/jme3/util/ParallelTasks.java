@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Helpers to run tasks on an executor and wait for their results.
+ * <p>
+ * The calling thread runs the tasks no thread of the executor has started
+ * yet instead of only waiting for them. Tasks may therefore start parallel
+ * work on the same executor themselves, and the methods may be called from
+ * a thread of the executor, without running out of threads.
+ * <p>
+ * A RuntimeException or Error thrown by a task is rethrown as-is, other
+ * exceptions are wrapped in an IllegalStateException. When the calling
+ * thread is interrupted while waiting, its interrupt flag is set again and
+ * an IllegalStateException is thrown.
+ */
+public final class ParallelTasks {
+
+    private static ExecutorService sharedExecutor;
+
+    private ParallelTasks() {
+    }
+
+    /**
+     * The executor shared by the parallel work of the engine that was not
+     * given an executor of its own, with one daemon thread per processor.
+     * It is never shut down.
+     *
+     * @return The shared executor
+     */
+    public static synchronized ExecutorService getSharedExecutor() {
+        if (sharedExecutor == null) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            sharedExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private int count;
+
+                public Thread newThread(Runnable r) {
+                    Thread th = new Thread(r);
+                    th.setName("jME3 Worker Thread " + ++count);
+                    th.setDaemon(true);
+                    return th;
+                }
+            });
+        }
+        return sharedExecutor;
+    }
+
+    /**
+     * Runs the tasks on the executor and returns their results in the order
+     * of the tasks, once all are done. When the executor is null the tasks
+     * run one after the other on the calling thread.
+     *
+     * @param executor The executor to use, or null
+     * @param callables The tasks to run
+     * @return The results of the tasks
+     */
+    public static <T> List<T> invokeAll(Executor executor, List<? extends Callable<T>> callables) {
+        List<FutureTask<T>> tasks = new ArrayList<FutureTask<T>>(callables.size());
+        for (Callable<T> callable : callables) {
+            FutureTask<T> task = new FutureTask<T>(callable);
+            tasks.add(task);
+            if (executor != null) {
+                executor.execute(task);
+            }
+        }
+        for (FutureTask<T> task : tasks) {
+            task.run();
+        }
+        List<T> results = new ArrayList<T>(tasks.size());
+        for (FutureTask<T> task : tasks) {
+            results.add(get(task));
+        }
+        return results;
+    }
+
+    /**
+     * Runs the task on the calling thread, unless it already ran or another
+     * thread is running it, and returns its result.
+     *
+     * @param task The task to run
+     * @return The result of the task
+     */
+    public static <T> T runAndGet(FutureTask<T> task) {
+        task.run();
+        return get(task);
+    }
+
+    /**
+     * Waits for the result of the future.
+     *
+     * @param future The future to wait for
+     * @return The result of the future
+     */
+    public static <T> T get(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a task", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
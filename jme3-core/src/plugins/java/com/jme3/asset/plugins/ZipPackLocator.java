@@ -0,0 +1,457 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.asset.plugins;
+
+import com.jme3.asset.AssetInfo;
+import com.jme3.asset.AssetKey;
+import com.jme3.asset.AssetLoadException;
+import com.jme3.asset.AssetLocator;
+import com.jme3.asset.AssetManager;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * <code>ZipPackLocator</code> is a locator that looks up resources in a 
+ * <code>.ZIP</code> file, like {@link ZipLocator}, but is designed for
+ * large asset packs read by many loading threads at once.
+ * <p>
+ * The archive is memory mapped and its central directory is parsed once 
+ * into a hashed entry index. Both are shared by all locator instances
+ * that use the same root path, so the per-thread locators created by the
+ * asset manager do not open the archive again. Stored (uncompressed) 
+ * entries are copied straight from the mapped archive into the buffer
+ * of the reader, without an intermediate stream buffer. Compressed
+ * entries are inflated with {@link Inflater} instances taken from a 
+ * shared pool.
+ * <p>
+ * When the size or modification time of the archive changes on disk, 
+ * it is mapped and indexed again on the next lookup. Streams opened 
+ * before keep reading the old mapping.
+ * <p>
+ * The root path must be a valid ZIP or ZIP-like {@link File file}, 
+ * for example, <br>
+ * <code>C:\My App\data.zip</code>
+ * <p>
+ * ZIP64 archives and archives larger than 2 GB are not supported.
+ */
+public class ZipPackLocator implements AssetLocator {
+
+    private static final Logger logger = Logger.getLogger(ZipPackLocator.class.getName());
+
+    private static final ConcurrentHashMap<String, ZipPack> packs 
+            = new ConcurrentHashMap<String, ZipPack>();
+    
+    private String rootPath;
+    private ZipPack pack;
+
+    private static final class PackEntry {
+        
+        final String name;
+        final int headerOffset;
+        final int compSize;
+        final int length;
+        final boolean deflate;
+        
+        /**
+         * Offset of the entry data, resolved from the local header 
+         * on first access.
+         */
+        volatile int dataOffset = -1;
+
+        PackEntry(String name, int headerOffset, int compSize, int length, boolean deflate) {
+            this.name = name;
+            this.headerOffset = headerOffset;
+            this.compSize = compSize;
+            this.length = length;
+            this.deflate = deflate;
+        }
+
+        @Override
+        public String toString() {
+            return "PackEntry[name=" + name
+                    + ", length=" + length
+                    + ", compSize=" + compSize + "]";
+        }
+    }
+
+    /**
+     * The memory mapped archive and its entry index, 
+     * shared by all locators with the same root path.
+     */
+    private static final class ZipPack {
+
+        private static final Charset UTF8 = Charset.forName("UTF-8");
+        private static final int MAX_POOLED_INFLATERS 
+                = Runtime.getRuntime().availableProcessors() * 2;
+        
+        private final File file;
+        private final long lastModified;
+        private final long length;
+        private final MappedByteBuffer data;
+        private final HashMap<String, PackEntry> entries;
+        private final ConcurrentLinkedQueue<Inflater> inflaterPool 
+                = new ConcurrentLinkedQueue<Inflater>();
+        private final AtomicInteger pooledInflaters = new AtomicInteger();
+
+        ZipPack(File file) throws IOException {
+            this.file = file;
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+            
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new IOException("Zip files larger than 2 GB are not supported");
+                }
+                // The mapping stays valid after the channel is closed
+                data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                data.order(ByteOrder.LITTLE_ENDIAN);
+            } finally {
+                raf.close();
+            }
+            
+            entries = readCentralDirectory();
+        }
+
+        private int findEndHeader() throws IOException {
+            // The end header is followed by a comment of up to 64 KB
+            int min = Math.max(0, data.limit() - ZipEntry.ENDHDR - 0xFFFF);
+            for (int i = data.limit() - ZipEntry.ENDHDR; i >= min; i--) {
+                if (data.getInt(i) == (int) ZipEntry.ENDSIG) {
+                    return i;
+                }
+            }
+            throw new IOException("Cannot find Zip End Header in file " + file);
+        }
+
+        private HashMap<String, PackEntry> readCentralDirectory() throws IOException {
+            int end = findEndHeader();
+            int numEntries  = data.getShort(end + ZipEntry.ENDTOT) & 0xFFFF;
+            int tableOffset = data.getInt(end + ZipEntry.ENDOFF);
+
+            HashMap<String, PackEntry> map = new HashMap<String, PackEntry>(numEntries * 2);
+            int offset = tableOffset;
+            for (int i = 0; i < numEntries; i++) {
+                if (data.getInt(offset) != (int) ZipEntry.CENSIG) {
+                    throw new IOException("Central directory error, expected 'PK12'");
+                }
+
+                int nameLen    = data.getShort(offset + ZipEntry.CENNAM) & 0xFFFF;
+                int extraLen   = data.getShort(offset + ZipEntry.CENEXT) & 0xFFFF;
+                int commentLen = data.getShort(offset + ZipEntry.CENCOM) & 0xFFFF;
+                int flags      = data.getShort(offset + ZipEntry.CENFLG) & 0xFFFF;
+                int method     = data.getShort(offset + ZipEntry.CENHOW) & 0xFFFF;
+                
+                int next = offset + ZipEntry.CENHDR + nameLen + extraLen + commentLen;
+                
+                // Skip encrypted entries and unknown compression methods
+                if ((flags & 1) == 0 
+                        && (method == ZipEntry.DEFLATED || method == ZipEntry.STORED)) {
+                    byte[] nameBytes = new byte[nameLen];
+                    ByteBuffer dup = data.duplicate();
+                    dup.position(offset + ZipEntry.CENHDR);
+                    dup.get(nameBytes);
+                    String name = new String(nameBytes, UTF8);
+                    
+                    // Skip directory nodes
+                    if (name.length() > 0 && name.charAt(name.length() - 1) != '/') {
+                        map.put(name, new PackEntry(name, 
+                                data.getInt(offset + ZipEntry.CENOFF),
+                                data.getInt(offset + ZipEntry.CENSIZ),
+                                data.getInt(offset + ZipEntry.CENLEN),
+                                method == ZipEntry.DEFLATED));
+                    }
+                }
+
+                offset = next;
+            }
+            return map;
+        }
+
+        /**
+         * @return True if the archive changed on disk since it was mapped.
+         */
+        boolean isStale() {
+            return file.lastModified() != lastModified || file.length() != length;
+        }
+
+        PackEntry getEntry(String name) {
+            return entries.get(name);
+        }
+
+        /**
+         * Returns a read-only view of the (possibly compressed) entry data.
+         */
+        ByteBuffer getRawData(PackEntry entry) throws IOException {
+            int dataOffset = entry.dataOffset;
+            if (dataOffset == -1) {
+                // The local header may have a different extra field 
+                // than the central directory
+                int header = entry.headerOffset;
+                if (data.getInt(header) != (int) ZipEntry.LOCSIG) {
+                    throw new IOException("Local header error, expected 'PK34' for " + entry);
+                }
+                int nameLen  = data.getShort(header + ZipEntry.LOCNAM) & 0xFFFF;
+                int extraLen = data.getShort(header + ZipEntry.LOCEXT) & 0xFFFF;
+                dataOffset = header + ZipEntry.LOCHDR + nameLen + extraLen;
+                entry.dataOffset = dataOffset;
+            }
+            ByteBuffer dup = data.duplicate();
+            dup.limit(dataOffset + entry.compSize);
+            dup.position(dataOffset);
+            return dup.slice().asReadOnlyBuffer();
+        }
+
+        InputStream openStream(PackEntry entry) throws IOException {
+            if (!entry.deflate) {
+                return new ByteBufferInputStream(getRawData(entry), false);
+            }
+            
+            // An Inflater without zlib wrapping needs a dummy byte after
+            // the compressed data, like ZipFile provides
+            InputStream in = new ByteBufferInputStream(getRawData(entry), true);
+            Inflater inflater = inflaterPool.poll();
+            if (inflater != null) {
+                pooledInflaters.decrementAndGet();
+            } else {
+                inflater = new Inflater(true);
+            }
+            int bufSize = Math.max(512, Math.min(entry.compSize, 8192));
+            return new PooledInflaterInputStream(this, in, inflater, bufSize);
+        }
+
+        void releaseInflater(Inflater inflater) {
+            if (pooledInflaters.incrementAndGet() <= MAX_POOLED_INFLATERS) {
+                inflater.reset();
+                inflaterPool.offer(inflater);
+            } else {
+                pooledInflaters.decrementAndGet();
+                inflater.end();
+            }
+        }
+    }
+    
+    /**
+     * Returns its inflater to the pool when closed.
+     */
+    private static final class PooledInflaterInputStream extends InflaterInputStream {
+        
+        private final ZipPack pack;
+        private boolean closed;
+        
+        PooledInflaterInputStream(ZipPack pack, InputStream in, Inflater inflater, int size) {
+            super(in, inflater, size);
+            this.pack = pack;
+        }
+
+        @Override
+        public int available() throws IOException {
+            // InflaterInputStream returns 1 until EOF, which makes 
+            // some loaders read one byte at a time
+            return closed || inf.finished() ? 0 : super.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                super.close();
+                pack.releaseInflater(inf);
+            }
+        }
+    }
+    
+    /**
+     * Reads directly from a slice of the mapped archive, optionally 
+     * followed by one zero byte.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+        private boolean trailingByte;
+
+        ByteBufferInputStream(ByteBuffer buffer, boolean trailingByte) {
+            this.buffer = buffer;
+            this.trailingByte = trailingByte;
+        }
+
+        @Override
+        public int read() {
+            if (buffer.hasRemaining()) {
+                return buffer.get() & 0xFF;
+            }
+            if (trailingByte) {
+                trailingByte = false;
+                return 0;
+            }
+            return -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                if (trailingByte) {
+                    trailingByte = false;
+                    b[off] = 0;
+                    return 1;
+                }
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining() + (trailingByte ? 1 : 0);
+        }
+    }
+
+    private class PackAssetInfo extends AssetInfo {
+
+        private final ZipPack pack;
+        private final PackEntry entry;
+
+        public PackAssetInfo(AssetManager manager, AssetKey key, ZipPack pack, PackEntry entry) {
+            super(manager, key);
+            this.pack = pack;
+            this.entry = entry;
+        }
+
+        @Override
+        public InputStream openStream() {
+            try {
+                return pack.openStream(entry);
+            } catch (IOException ex) {
+                throw new AssetLoadException("Failed to load zip entry: " + entry, ex);
+            }
+        }
+    }
+
+    public void setRootPath(String rootPath) {
+        if (rootPath.equals(this.rootPath)) {
+            return;
+        }
+        
+        this.pack = getPack(rootPath);
+        this.rootPath = rootPath;
+    }
+
+    /**
+     * Returns the shared pack of the archive, mapping and indexing it 
+     * if there is none yet or the archive changed on disk.
+     */
+    private static ZipPack getPack(String rootPath) {
+        File file = new File(rootPath);
+        String packKey;
+        try {
+            packKey = file.getCanonicalPath();
+        } catch (IOException ex) {
+            packKey = file.getAbsolutePath();
+        }
+        
+        ZipPack zipPack = packs.get(packKey);
+        if (zipPack == null || zipPack.isStale()) {
+            synchronized (packs) {
+                zipPack = packs.get(packKey);
+                if (zipPack == null || zipPack.isStale()) {
+                    try {
+                        zipPack = new ZipPack(file);
+                    } catch (IOException ex) {
+                        throw new AssetLoadException("Failed to open zip file: " + rootPath, ex);
+                    }
+                    packs.put(packKey, zipPack);
+                    if (logger.isLoggable(Level.FINE)) {
+                        logger.log(Level.FINE, "Indexed {0} entries in {1}", 
+                                new Object[]{zipPack.entries.size(), packKey});
+                    }
+                }
+            }
+        }
+        return zipPack;
+    }
+
+    public AssetInfo locate(AssetManager manager, AssetKey key) {
+        if (pack.isStale()) {
+            pack = getPack(rootPath);
+        }
+        PackEntry entry = pack.getEntry(key.getName());
+        if (entry == null) {
+            return null;
+        }
+        return new PackAssetInfo(manager, key, pack, entry);
+    }
+    
+    /**
+     * Releases the shared index and mapping of the given archive.
+     * The mapping is unmapped by the garbage collector once no locator 
+     * and no open stream references it anymore.
+     * 
+     * @param rootPath The root path the locators were registered with.
+     */
+    public static void releasePack(String rootPath) {
+        File file = new File(rootPath);
+        try {
+            packs.remove(file.getCanonicalPath());
+        } catch (IOException ex) {
+            packs.remove(file.getAbsolutePath());
+        }
+    }
+}
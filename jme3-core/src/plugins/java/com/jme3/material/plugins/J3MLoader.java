@@ -52,8 +52,10 @@ import com.jme3.util.blockparser.Statement;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.List;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -126,37 +128,41 @@ public class J3MLoader implements AssetLoader {
         technique.setShadowMode(sm);
     }
 
+    private TextureKey parseTextureKey(VarType type, String value) {
+        String texturePath = value.trim();
+        boolean flipY = false;
+        if (texturePath.startsWith("Flip Repeat ")){
+            texturePath = texturePath.substring(12).trim();
+            flipY = true;
+        }else if (texturePath.startsWith("Flip ")){
+            texturePath = texturePath.substring(5).trim();
+            flipY = true;
+        }else if (texturePath.startsWith("Repeat ")){
+            texturePath = texturePath.substring(7).trim();
+        }
+
+        TextureKey texKey = new TextureKey(texturePath, flipY);
+        switch (type) {
+            case Texture3D:
+                texKey.setTextureTypeHint(Texture.Type.ThreeDimensional);
+                break;
+            case TextureArray:
+                texKey.setTextureTypeHint(Texture.Type.TwoDimensionalArray);
+                break;
+            case TextureCubeMap:
+                texKey.setTextureTypeHint(Texture.Type.CubeMap);
+                break;
+        }
+        texKey.setGenerateMips(true);
+        return texKey;
+    }
+
     private Object readValue(VarType type, String value) throws IOException{
         if (type.isTextureType()){
-//            String texturePath = readString("[\n;(//)(\\})]");
             String texturePath = value.trim();
-            boolean flipY = false;
-            boolean repeat = false;
-            if (texturePath.startsWith("Flip Repeat ")){
-                texturePath = texturePath.substring(12).trim();
-                flipY = true;
-                repeat = true;
-            }else if (texturePath.startsWith("Flip ")){
-                texturePath = texturePath.substring(5).trim();
-                flipY = true;
-            }else if (texturePath.startsWith("Repeat ")){
-                texturePath = texturePath.substring(7).trim();
-                repeat = true;
-            }
-
-            TextureKey texKey = new TextureKey(texturePath, flipY);
-            switch (type) {
-                case Texture3D:
-                    texKey.setTextureTypeHint(Texture.Type.ThreeDimensional);
-                    break;
-                case TextureArray:
-                    texKey.setTextureTypeHint(Texture.Type.TwoDimensionalArray);
-                    break;
-                case TextureCubeMap:
-                    texKey.setTextureTypeHint(Texture.Type.CubeMap);
-                    break;
-            }
-            texKey.setGenerateMips(true);
+            boolean repeat = texturePath.startsWith("Flip Repeat ") 
+                          || texturePath.startsWith("Repeat ");
+            TextureKey texKey = parseTextureKey(type, value);
 
             Texture tex;
             try {
@@ -312,10 +318,35 @@ public class J3MLoader implements AssetLoader {
         }
     }
 
+    // Starts loading the textures of the material parameters in parallel,
+    // readValueParam() then picks them up from the asset manager.
+    // The futures keep the prefetched textures from being collected 
+    // out of the cache before they are used.
+    private List<Future<Texture>> prefetchTextures(List<Statement> paramsList) {
+        List<Future<Texture>> prefetched = new ArrayList<Future<Texture>>();
+        for (Statement statement : paramsList){
+            String[] split = statement.getLine().split(":", 2);
+            if (split.length != 2){
+                continue;
+            }
+            MatParam p = material.getMaterialDef().getMaterialParam(split[0].trim());
+            if (p != null && p.getVarType().isTextureType()){
+                prefetched.add(assetManager.loadAssetAsync(parseTextureKey(p.getVarType(), split[1])));
+            }
+        }
+        return prefetched;
+    }
+
     private void readExtendingMaterialParams(List<Statement> paramsList) throws IOException{
+        List<Future<Texture>> prefetched = prefetchTextures(paramsList);
         for (Statement statement : paramsList){
             readValueParam(statement.getLine());
         }
+        // the material holds its textures now, drop the prefetches 
+        // that did not start
+        for (Future<Texture> future : prefetched){
+            future.cancel(false);
+        }
     }
 
     private void readWorldParams(List<Statement> worldParams) throws IOException{
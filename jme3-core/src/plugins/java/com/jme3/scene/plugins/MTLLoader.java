@@ -43,9 +43,13 @@ import com.jme3.util.PlaceholderAssets;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -167,7 +171,7 @@ public class MTLLoader implements AssetLoader {
         matName = name;
     }
     
-    protected Texture loadTexture(String path){
+    protected TextureKey createTextureKey(String path){
         String[] split = path.trim().split("\\p{javaWhitespace}+");
         
         // will crash if path is an empty string
@@ -176,6 +180,11 @@ public class MTLLoader implements AssetLoader {
         String name = new File(path).getName();
         TextureKey texKey = new TextureKey(folderName + name);
         texKey.setGenerateMips(true);
+        return texKey;
+    }
+    
+    protected Texture loadTexture(String path){
+        TextureKey texKey = createTextureKey(path);
         Texture texture;
         try {
             texture = assetManager.loadTexture(texKey);
@@ -189,6 +198,35 @@ public class MTLLoader implements AssetLoader {
         return texture;
     }
 
+    /**
+     * Starts loading all texture maps referenced in the MTL file in 
+     * parallel, the texture statements then pick them up from the 
+     * asset manager.
+     * 
+     * @return The futures of the textures, which have to be kept until
+     * the materials are built so the textures stay in the cache.
+     */
+    protected List<Future<Texture>> prefetchTextures(String content){
+        List<Future<Texture>> prefetched = new ArrayList<Future<Texture>>();
+        Scanner lines = new Scanner(content);
+        while (lines.hasNextLine()){
+            String line = lines.nextLine().trim();
+            int split = line.indexOf(' ');
+            if (split == -1){
+                continue;
+            }
+            String cmd = line.substring(0, split).toLowerCase();
+            if (cmd.equals("map_kd") || cmd.equals("map_bump") || cmd.equals("bump")
+             || cmd.equals("map_ks") || cmd.equals("map_d")){
+                String path = line.substring(split + 1);
+                if (path.trim().length() > 0){
+                    prefetched.add(assetManager.loadAssetAsync(createTextureKey(path)));
+                }
+            }
+        }
+        return prefetched;
+    }
+
     protected boolean readLine(){
         if (!scan.hasNext()){
             return false;
@@ -287,6 +325,17 @@ public class MTLLoader implements AssetLoader {
         return true;
     }
 
+    private static String readContent(InputStream in) throws IOException{
+        InputStreamReader reader = new InputStreamReader(in);
+        StringBuilder sb = new StringBuilder();
+        char[] buf = new char[4096];
+        int read;
+        while ((read = reader.read(buf)) != -1){
+            sb.append(buf, 0, read);
+        }
+        return sb.toString();
+    }
+
     @SuppressWarnings("empty-statement")
     public Object load(AssetInfo info) throws IOException{
         reset();
@@ -296,25 +345,35 @@ public class MTLLoader implements AssetLoader {
         folderName = info.getKey().getFolder();
         matList = new MaterialList();
 
+        String content;
         InputStream in = null;
         try {
             in = info.openStream();
-            scan = new Scanner(in);
-            scan.useLocale(Locale.US);
-            
-            while (readLine());
+            content = readContent(in);
         } finally {
             if (in != null){
                 in.close();
             }
         }
         
+        List<Future<Texture>> prefetched = prefetchTextures(content);
+        
+        scan = new Scanner(content);
+        scan.useLocale(Locale.US);
+        while (readLine());
+        
         if (matName != null){
             // still have a material in the vars
             createMaterial();
             resetMaterial();
         }
         
+        // the materials hold their textures now, drop the prefetches 
+        // that did not start
+        for (Future<Texture> future : prefetched){
+            future.cancel(false);
+        }
+        
         MaterialList list = matList;
 
         
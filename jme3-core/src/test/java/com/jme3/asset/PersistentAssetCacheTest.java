@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.asset;
+
+import com.jme3.asset.cache.PersistentAssetCache;
+import com.jme3.asset.plugins.FileLocator;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PersistentAssetCacheTest {
+
+    private static int loadCount;
+    private File dir;
+
+    /**
+     * Loads a Node named after the contents of the file.
+     */
+    public static class NameLoader implements AssetLoader {
+
+        public Object load(AssetInfo info) throws IOException {
+            loadCount++;
+            InputStream in = info.openStream();
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buf = new byte[256];
+                int read;
+                while ((read = in.read(buf)) != -1) {
+                    out.write(buf, 0, read);
+                }
+                return new Node(out.toString("UTF-8"));
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("jme3-persistent-cache", "");
+        assertTrue(dir.delete() && dir.mkdir());
+        loadCount = 0;
+    }
+
+    @After
+    public void tearDown() {
+        delete(dir);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private DesktopAssetManager createAssetManager() {
+        DesktopAssetManager assetManager = new DesktopAssetManager();
+        assetManager.registerLoader(NameLoader.class, "name");
+        assetManager.setPersistentCache(new PersistentAssetCache(new File(dir, "cache")));
+        return assetManager;
+    }
+
+    @Test
+    public void testLoadFromStream() throws IOException {
+        DesktopAssetManager assetManager = createAssetManager();
+        InputStream in = new ByteArrayInputStream("streamed".getBytes("UTF-8"));
+        Spatial model = assetManager.loadAssetFromStream(new ModelKey("Models/streamed.name"), in);
+        assertEquals("streamed", model.getName());
+        assertEquals(1, loadCount);
+    }
+
+    @Test
+    public void testLoadLocatedUsesStoredEntry() throws IOException {
+        File source = new File(dir, "located.name");
+        OutputStream out = new FileOutputStream(source);
+        try {
+            out.write("located".getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+
+        DesktopAssetManager assetManager = createAssetManager();
+        assetManager.registerLocator(dir.getAbsolutePath(), FileLocator.class);
+        ModelKey key = new ModelKey("located.name");
+        assertEquals("located", assetManager.loadAsset(key).getName());
+        assetManager.clearCache();
+        assertEquals("located", assetManager.loadAsset(key).getName());
+        assertEquals(1, loadCount);
+    }
+}
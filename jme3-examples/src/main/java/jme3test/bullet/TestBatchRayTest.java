@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package jme3test.bullet;
+
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.collision.PhysicsCollisionObject;
+import com.jme3.bullet.collision.PhysicsRayTestResult;
+import com.jme3.bullet.collision.PhysicsSweepTestResult;
+import com.jme3.bullet.collision.shapes.BoxCollisionShape;
+import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.bullet.collision.shapes.SphereCollisionShape;
+import com.jme3.bullet.objects.PhysicsRigidBody;
+import com.jme3.math.FastMath;
+import com.jme3.math.Transform;
+import com.jme3.math.Vector3f;
+import com.jme3.util.BufferUtils;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compares ray and sweep tests one by one through
+ * {@link PhysicsSpace#rayTest} and {@link PhysicsSpace#sweepTest} against
+ * the batch API of the physics space, on a field of static boxes.
+ */
+public class TestBatchRayTest {
+
+    private static final int BOXES = 2000;
+    private static final int RAYS = 20000;
+    private static final int SWEEPS = 2000;
+    private static final float FIELD_SIZE = 200;
+    private static final int ITERATIONS = 10;
+    private static final int NANOS_TO_MS = 1000000;
+
+    public static void main(String[] args) {
+        PhysicsSpace space = new PhysicsSpace();
+        CollisionShape boxShape = new BoxCollisionShape(new Vector3f(1, 2, 1));
+        for (int i = 0; i < BOXES; i++) {
+            PhysicsRigidBody box = new PhysicsRigidBody(boxShape, 0);
+            box.setPhysicsLocation(randomPoint(2));
+            space.add(box);
+        }
+        // one step to put the boxes in the broadphase
+        space.update(1f / 60f);
+
+        // short horizontal rays between random points of the field, like
+        // line of sight checks
+        FloatBuffer from = BufferUtils.createFloatBuffer(RAYS * 3);
+        FloatBuffer to = BufferUtils.createFloatBuffer(RAYS * 3);
+        for (int i = 0; i < RAYS; i++) {
+            Vector3f start = randomPoint(1.5f);
+            Vector3f end = randomPoint(1.5f).subtractLocal(start).normalizeLocal().multLocal(20).addLocal(start);
+            from.put(start.x).put(start.y).put(start.z);
+            to.put(end.x).put(end.y).put(end.z);
+        }
+        FloatBuffer results = BufferUtils.createFloatBuffer(RAYS * 4);
+        PhysicsCollisionObject[] hitObjects = new PhysicsCollisionObject[RAYS];
+        int processors = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(processors);
+
+        Vector3f start = new Vector3f();
+        Vector3f end = new Vector3f();
+        List<PhysicsRayTestResult> rayResults = new ArrayList<PhysicsRayTestResult>();
+        for (int it = 0; it < ITERATIONS; it++) {
+            long nanos = System.nanoTime();
+            int hits = 0;
+            for (int i = 0; i < RAYS; i++) {
+                start.set(from.get(i * 3), from.get(i * 3 + 1), from.get(i * 3 + 2));
+                end.set(to.get(i * 3), to.get(i * 3 + 1), to.get(i * 3 + 2));
+                if (!space.rayTest(start, end, rayResults).isEmpty()) {
+                    hits++;
+                }
+            }
+            long single = (System.nanoTime() - nanos) / NANOS_TO_MS;
+
+            nanos = System.nanoTime();
+            int batchHits = space.rayTestBatch(from, to, RAYS, results, hitObjects);
+            long batch = (System.nanoTime() - nanos) / NANOS_TO_MS;
+
+            nanos = System.nanoTime();
+            int parallelHits = space.rayTestBatch(from, to, RAYS, results, hitObjects, executor);
+            long parallel = (System.nanoTime() - nanos) / NANOS_TO_MS;
+
+            System.out.println(RAYS + " rays, rayTest: " + single + " ms (" + hits + " hits)"
+                    + ", batch: " + batch + " ms (" + batchHits + " hits)"
+                    + ", parallel batch on " + processors + " threads: " + parallel
+                    + " ms (" + parallelHits + " hits)");
+        }
+
+        CollisionShape sphere = new SphereCollisionShape(0.5f);
+        Transform startTransform = new Transform();
+        Transform endTransform = new Transform();
+        List<PhysicsSweepTestResult> sweepResults = new ArrayList<PhysicsSweepTestResult>();
+        for (int it = 0; it < ITERATIONS; it++) {
+            long nanos = System.nanoTime();
+            int hits = 0;
+            for (int i = 0; i < SWEEPS; i++) {
+                startTransform.getTranslation().set(from.get(i * 3), from.get(i * 3 + 1), from.get(i * 3 + 2));
+                endTransform.getTranslation().set(to.get(i * 3), to.get(i * 3 + 1), to.get(i * 3 + 2));
+                if (!space.sweepTest(sphere, startTransform, endTransform, sweepResults).isEmpty()) {
+                    hits++;
+                }
+            }
+            long single = (System.nanoTime() - nanos) / NANOS_TO_MS;
+
+            nanos = System.nanoTime();
+            int batchHits = space.sweepTestBatch(sphere, from, to, SWEEPS, results, hitObjects, 0, null);
+            long batch = (System.nanoTime() - nanos) / NANOS_TO_MS;
+
+            nanos = System.nanoTime();
+            int parallelHits = space.sweepTestBatch(sphere, from, to, SWEEPS, results, hitObjects, 0, executor);
+            long parallel = (System.nanoTime() - nanos) / NANOS_TO_MS;
+
+            System.out.println(SWEEPS + " sweeps, sweepTest: " + single + " ms (" + hits + " hits)"
+                    + ", batch: " + batch + " ms (" + batchHits + " hits)"
+                    + ", parallel batch on " + processors + " threads: " + parallel
+                    + " ms (" + parallelHits + " hits)");
+        }
+        executor.shutdown();
+    }
+
+    private static Vector3f randomPoint(float height) {
+        return new Vector3f(FastMath.nextRandomFloat() * FIELD_SIZE, height,
+                FastMath.nextRandomFloat() * FIELD_SIZE);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package jme3test.bullet;
+
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.PhysicsSpaceGroup;
+import com.jme3.bullet.collision.PhysicsCollisionEvent;
+import com.jme3.bullet.collision.PhysicsCollisionListener;
+import com.jme3.bullet.collision.shapes.BoxCollisionShape;
+import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.bullet.objects.PhysicsRigidBody;
+import com.jme3.math.Vector3f;
+
+/**
+ * Drops piles of boxes on a field split into regions, once in a single
+ * PhysicsSpace and once in a {@link PhysicsSpaceGroup} with one space per
+ * region, and compares the step times. Two runs of the group are compared to
+ * check that the collision events arrive in the same order.
+ */
+public class TestPhysicsSpaceGroup {
+
+    private static final int REGIONS = 8;
+    private static final float REGION_SIZE = 40;
+    private static final int BOXES_PER_REGION = 150;
+    private static final int STEPS = 300;
+    private static final float TPF = 1f / 60f;
+
+    public static void main(String[] args) {
+        PhysicsSpace single = new PhysicsSpace();
+        EventCounter singleEvents = new EventCounter();
+        single.addCollisionListener(singleEvents);
+        for (int r = 0; r < REGIONS; r++) {
+            fillRegion(single, r);
+        }
+        long nanos = System.nanoTime();
+        for (int i = 0; i < STEPS; i++) {
+            single.update(TPF);
+            single.distributeEvents();
+        }
+        System.out.println("Single space: " + (System.nanoTime() - nanos) / STEPS / 1000
+                + " us per step, " + singleEvents.count + " events");
+        single.destroy();
+
+        int threads = args.length > 0 ? Integer.parseInt(args[0])
+                : Runtime.getRuntime().availableProcessors();
+        long firstHash = 0;
+        for (int run = 0; run < 2; run++) {
+            PhysicsSpaceGroup group = new PhysicsSpaceGroup(threads);
+            EventCounter events = new EventCounter();
+            for (int r = 0; r < REGIONS; r++) {
+                PhysicsSpace space = group.addSpace(new Vector3f(r * REGION_SIZE, -10, 0),
+                        new Vector3f((r + 1) * REGION_SIZE, 200, REGION_SIZE));
+                space.addCollisionListener(events);
+                fillRegion(space, r);
+            }
+            nanos = System.nanoTime();
+            for (int i = 0; i < STEPS; i++) {
+                group.update(TPF);
+                group.distributeEvents();
+            }
+            System.out.println("Group of " + REGIONS + " spaces on " + threads + " threads: "
+                    + (System.nanoTime() - nanos) / STEPS / 1000 + " us per step, "
+                    + events.count + " events" + (run == 0 ? ""
+                    : events.hash == firstHash ? ", same order as the first run" : ", ORDER DIFFERS"));
+            firstHash = events.hash;
+            group.destroy();
+        }
+    }
+
+    private static void fillRegion(PhysicsSpace space, int region) {
+        PhysicsRigidBody floor = new PhysicsRigidBody(
+                new BoxCollisionShape(new Vector3f(REGION_SIZE / 2, 1, REGION_SIZE / 2)), 0);
+        floor.setPhysicsLocation(new Vector3f((region + 0.5f) * REGION_SIZE, -1, REGION_SIZE / 2));
+        space.add(floor);
+        CollisionShape box = new BoxCollisionShape(new Vector3f(0.5f, 0.5f, 0.5f));
+        for (int i = 0; i < BOXES_PER_REGION; i++) {
+            PhysicsRigidBody body = new PhysicsRigidBody(box, 1);
+            // columns of boxes, slightly offset so that they topple
+            int column = i / 10;
+            body.setPhysicsLocation(new Vector3f(region * REGION_SIZE + 5 + (column % 5) * 6 + (i % 10) * 0.1f,
+                    0.5f + (i % 10) * 1.05f, 5 + (column / 5) * 6));
+            space.add(body);
+        }
+    }
+
+    private static class EventCounter implements PhysicsCollisionListener {
+
+        int count;
+        long hash;
+
+        public void collision(PhysicsCollisionEvent event) {
+            count++;
+            Vector3f position = event.getPositionWorldOnA();
+            hash = hash * 31 + Float.floatToIntBits(position.x + position.y + position.z)
+                    + Float.floatToIntBits(event.getAppliedImpulse());
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package jme3test.collision;
+
+import com.jme3.collision.CollisionResults;
+import com.jme3.collision.bih.BIHFlatTree;
+import com.jme3.collision.bih.BIHNode;
+import com.jme3.collision.bih.BIHTree;
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Ray;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.shape.Sphere;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compares casting rays one by one through the recursive {@link BIHNode}
+ * traversal, which {@link BIHTree} used before it had a flat layout, and
+ * through {@link Geometry#collideWith}, which now uses the flat layout,
+ * against the batch ray API of {@link BIHFlatTree}.
+ */
+public class TestBatchRayCasting {
+
+    private static final int RAYS = 100000;
+    private static final int ITERATIONS = 10;
+    private static final int NANOS_TO_MS = 1000000;
+
+    public static void main(String[] args) {
+        Sphere sphere = new Sphere(128, 128, 5f);
+        Geometry geom = new Geometry("Sphere", sphere);
+        geom.setLocalRotation(new Quaternion().fromAngles(0.3f, 0.7f, 0.1f));
+        geom.setLocalScale(1.5f, 0.8f, 1.2f);
+        geom.updateGeometricState();
+
+        BIHTree tree = new BIHTree(sphere);
+        tree.construct();
+        BIHFlatTree flatTree = tree.getFlatTree();
+        BIHNode recursiveTree = flatTree.createNodes();
+        System.out.println("Triangles: " + sphere.getTriangleCount()
+                + ", nodes: " + flatTree.getNodeCount()
+                + ", depth: " + flatTree.getMaxDepth());
+
+        // rays from random points around the sphere towards its center area
+        float[] rays = new float[RAYS * 6];
+        Vector3f origin = new Vector3f();
+        Vector3f direction = new Vector3f();
+        for (int i = 0; i < RAYS; i++) {
+            origin.set(FastMath.nextRandomFloat() - 0.5f,
+                    FastMath.nextRandomFloat() - 0.5f,
+                    FastMath.nextRandomFloat() - 0.5f).normalizeLocal().multLocal(20);
+            direction.set(FastMath.nextRandomFloat() * 6 - 3,
+                    FastMath.nextRandomFloat() * 6 - 3,
+                    FastMath.nextRandomFloat() * 6 - 3);
+            direction.subtractLocal(origin).normalizeLocal();
+            rays[i * 6] = origin.x;
+            rays[i * 6 + 1] = origin.y;
+            rays[i * 6 + 2] = origin.z;
+            rays[i * 6 + 3] = direction.x;
+            rays[i * 6 + 4] = direction.y;
+            rays[i * 6 + 5] = direction.z;
+        }
+
+        float[] distances = new float[RAYS];
+        int[] triangles = new int[RAYS];
+        Ray ray = new Ray();
+        CollisionResults results = new CollisionResults();
+        int processors = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(processors);
+        
+        for (int it = 0; it < ITERATIONS; it++) {
+            long nanos = System.nanoTime();
+            int recursiveHits = 0;
+            for (int i = 0; i < RAYS; i++) {
+                ray.getOrigin().set(rays[i * 6], rays[i * 6 + 1], rays[i * 6 + 2]);
+                ray.getDirection().set(rays[i * 6 + 3], rays[i * 6 + 4], rays[i * 6 + 5]);
+                results.clear();
+                if (recursiveTree.intersectWhere(ray, geom.getWorldMatrix(), tree, 
+                        0, Float.POSITIVE_INFINITY, results) > 0) {
+                    recursiveHits++;
+                }
+            }
+            long recursive = (System.nanoTime() - nanos) / NANOS_TO_MS;
+
+            nanos = System.nanoTime();
+            int hits = 0;
+            for (int i = 0; i < RAYS; i++) {
+                ray.getOrigin().set(rays[i * 6], rays[i * 6 + 1], rays[i * 6 + 2]);
+                ray.getDirection().set(rays[i * 6 + 3], rays[i * 6 + 4], rays[i * 6 + 5]);
+                results.clear();
+                if (geom.collideWith(ray, results) > 0) {
+                    hits++;
+                }
+            }
+            long single = (System.nanoTime() - nanos) / NANOS_TO_MS;
+
+            nanos = System.nanoTime();
+            int batchHits = flatTree.intersectRays(rays, RAYS, geom.getWorldMatrix(), 
+                    Float.POSITIVE_INFINITY, distances, triangles);
+            long batch = (System.nanoTime() - nanos) / NANOS_TO_MS;
+
+            nanos = System.nanoTime();
+            int parallelHits = flatTree.intersectRays(rays, RAYS, geom.getWorldMatrix(), 
+                    Float.POSITIVE_INFINITY, distances, triangles, executor);
+            long parallel = (System.nanoTime() - nanos) / NANOS_TO_MS;
+
+            System.out.println(RAYS + " rays, recursive: " + recursive + " ms (" + recursiveHits + " hits)"
+                    + ", collideWith: " + single + " ms (" + hits + " hits)"
+                    + ", batch: " + batch + " ms (" + batchHits + " hits)"
+                    + ", parallel batch on " + processors + " threads: " + parallel 
+                    + " ms (" + parallelHits + " hits)");
+        }
+        executor.shutdown();
+    }
+}
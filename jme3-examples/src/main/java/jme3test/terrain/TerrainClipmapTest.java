@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package jme3test.terrain;
+
+import com.jme3.app.SimpleApplication;
+import com.jme3.font.BitmapText;
+import com.jme3.input.KeyInput;
+import com.jme3.input.controls.ActionListener;
+import com.jme3.input.controls.KeyTrigger;
+import com.jme3.material.Material;
+import com.jme3.math.ColorRGBA;
+import com.jme3.math.Vector2f;
+import com.jme3.math.Vector3f;
+import com.jme3.terrain.clipmap.ClipmapTerrain;
+import com.jme3.terrain.clipmap.ClipmapTerrainControl;
+import com.jme3.terrain.heightmap.AbstractHeightMap;
+import com.jme3.terrain.heightmap.HillHeightMap;
+import com.jme3.texture.Texture;
+import com.jme3.texture.Texture.WrapMode;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Demonstrates the geometry clipmap terrain. The same few ring meshes are
+ * moved along with the camera every frame and read their heights from a
+ * texture, whatever the size of the terrain.
+ */
+public class TerrainClipmapTest extends SimpleApplication {
+
+    private ClipmapTerrain terrain;
+    private Material matTerrain;
+    private boolean wireframe = false;
+
+    public static void main(String[] args) {
+        TerrainClipmapTest app = new TerrainClipmapTest();
+        app.start();
+    }
+
+    @Override
+    public void simpleInitApp() {
+        setupKeys();
+
+        matTerrain = new Material(assetManager, "Common/MatDefs/Terrain/Clipmap.j3md");
+        Texture grass = assetManager.loadTexture("Textures/Terrain/splat/grass.jpg");
+        grass.setWrap(WrapMode.Repeat);
+        matTerrain.setTexture("DiffuseMap", grass);
+        matTerrain.setFloat("DiffuseMapScale", 128);
+        matTerrain.setVector3("LightDirection", new Vector3f(-0.5f, -1f, -0.5f).normalizeLocal());
+
+        AbstractHeightMap heightmap = null;
+        try {
+            heightmap = new HillHeightMap(2049, 4000, 50, 100, (byte) 3);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        terrain = new ClipmapTerrain("terrain", 2049, heightmap.getHeightMap());
+        terrain.addControl(new ClipmapTerrainControl(getCamera()));
+        terrain.setMaterial(matTerrain);
+        terrain.setLocalTranslation(0, -100, 0);
+        terrain.setLocalScale(2f, 0.5f, 2f);
+        rootNode.attachChild(terrain);
+
+        BitmapText hintText = new BitmapText(guiFont, false);
+        hintText.setSize(guiFont.getCharSet().getRenderedSize());
+        hintText.setLocalTranslation(0, getCamera().getHeight(), 0);
+        hintText.setText("Hit T to switch to wireframe, R to raise the terrain in front of the camera");
+        guiNode.attachChild(hintText);
+
+        cam.setFrustumFar(4000);
+        cam.setLocation(new Vector3f(0, 100, 0));
+        cam.lookAtDirection(new Vector3f(0, -0.5f, -1).normalizeLocal(), Vector3f.UNIT_Y);
+    }
+
+    private void setupKeys() {
+        flyCam.setMoveSpeed(100);
+        inputManager.addMapping("wireframe", new KeyTrigger(KeyInput.KEY_T));
+        inputManager.addMapping("raise", new KeyTrigger(KeyInput.KEY_R));
+        inputManager.addListener(actionListener, "wireframe", "raise");
+    }
+
+    private ActionListener actionListener = new ActionListener() {
+
+        public void onAction(String name, boolean pressed, float tpf) {
+            if (name.equals("wireframe") && !pressed) {
+                wireframe = !wireframe;
+                matTerrain.getAdditionalRenderState().setWireframe(wireframe);
+            } else if (name.equals("raise") && !pressed) {
+                Vector3f center = cam.getLocation().add(cam.getDirection().mult(50));
+                List<Vector2f> locations = new ArrayList<Vector2f>();
+                List<Float> heights = new ArrayList<Float>();
+                for (int x = -10; x <= 10; x++) {
+                    for (int z = -10; z <= 10; z++) {
+                        locations.add(new Vector2f(center.x + x * 2, center.z + z * 2));
+                        heights.add(20f);
+                    }
+                }
+                terrain.adjustHeight(locations, heights);
+            }
+        }
+    };
+}
@@ -40,6 +40,8 @@ import com.bulletphysics.collision.broadphase.AxisSweep3_32;
 import com.bulletphysics.collision.broadphase.BroadphaseInterface;
 import com.bulletphysics.collision.broadphase.BroadphaseProxy;
 import com.bulletphysics.collision.broadphase.CollisionFilterGroups;
+import com.bulletphysics.collision.broadphase.Dbvt;
+import com.bulletphysics.collision.broadphase.DbvtAabbMm;
 import com.bulletphysics.collision.broadphase.DbvtBroadphase;
 import com.bulletphysics.collision.broadphase.OverlapFilterCallback;
 import com.bulletphysics.collision.broadphase.SimpleBroadphase;
@@ -62,6 +64,7 @@ import com.bulletphysics.dynamics.constraintsolver.SequentialImpulseConstraintSo
 import com.bulletphysics.dynamics.constraintsolver.TypedConstraint;
 import com.bulletphysics.dynamics.vehicle.RaycastVehicle;
 import com.bulletphysics.extras.gimpact.GImpactCollisionAlgorithm;
+import com.bulletphysics.linearmath.VectorUtil;
 import com.jme3.app.AppTask;
 import com.jme3.asset.AssetManager;
 import com.jme3.bullet.collision.PhysicsCollisionEvent;
@@ -84,8 +87,10 @@ import com.jme3.math.Transform;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.Node;
 import com.jme3.scene.Spatial;
+import java.nio.FloatBuffer;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -94,6 +99,7 @@ import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -133,6 +139,9 @@ public class PhysicsSpace {
     private ConcurrentLinkedQueue<PhysicsTickListener> tickListeners = new ConcurrentLinkedQueue<PhysicsTickListener>();
     private ArrayList<PhysicsCollisionListener> collisionListeners = new ArrayList<PhysicsCollisionListener>();
     private ArrayDeque<PhysicsCollisionEvent> collisionEvents = new ArrayDeque<PhysicsCollisionEvent>();
+    private ContactAddedCallback contactAddedCallback;
+    private ContactProcessedCallback contactProcessedCallback;
+    private ContactDestroyedCallback contactDestroyedCallback;
     private PhysicsCollisionEventFactory eventFactory = new PhysicsCollisionEventFactory();
     private Vector3f worldMin = new Vector3f(-10000f, -10000f, -10000f);
     private Vector3f worldMax = new Vector3f(10000f, 10000f, 10000f);
@@ -261,15 +270,13 @@ public class PhysicsSpace {
             public void internalTick(DynamicsWorld dw, float f) {
                 //execute task list
                 AppTask task = pQueue.poll();
-                task = pQueue.poll();
                 while (task != null) {
-                    while (task.isCancelled()) {
-                        task = pQueue.poll();
-                    }
-                    try {
-                        task.invoke();
-                    } catch (Exception ex) {
-                        logger.log(Level.SEVERE, null, ex);
+                    if (!task.isCancelled()) {
+                        try {
+                            task.invoke();
+                        } catch (Exception ex) {
+                            logger.log(Level.SEVERE, null, ex);
+                        }
                     }
                     task = pQueue.poll();
                 }
@@ -294,7 +301,7 @@ public class PhysicsSpace {
     }
 
     private void setContactCallbacks() {
-        BulletGlobals.setContactAddedCallback(new ContactAddedCallback() {
+        contactAddedCallback = new ContactAddedCallback() {
 
             public boolean contactAdded(ManifoldPoint cp, com.bulletphysics.collision.dispatch.CollisionObject colObj0,
                     int partId0, int index0, com.bulletphysics.collision.dispatch.CollisionObject colObj1, int partId1,
@@ -302,9 +309,9 @@ public class PhysicsSpace {
                 System.out.println("contact added");
                 return true;
             }
-        });
+        };
 
-        BulletGlobals.setContactProcessedCallback(new ContactProcessedCallback() {
+        contactProcessedCallback = new ContactProcessedCallback() {
 
             public boolean contactProcessed(ManifoldPoint cp, Object body0, Object body1) {
                 if (body0 instanceof CollisionObject && body1 instanceof CollisionObject) {
@@ -317,15 +324,29 @@ public class PhysicsSpace {
                 }
                 return true;
             }
-        });
+        };
 
-        BulletGlobals.setContactDestroyedCallback(new ContactDestroyedCallback() {
+        contactDestroyedCallback = new ContactDestroyedCallback() {
 
             public boolean contactDestroyed(Object userPersistentData) {
                 System.out.println("contact destroyed");
                 return true;
             }
-        });
+        };
+        attachToThisThread();
+    }
+
+    /**
+     * Make this the space running on this thread. jbullet keeps the contact
+     * callbacks per thread, they have to be set again before stepping this
+     * space on a thread that created or stepped another space.
+     */
+    void attachToThisThread() {
+        physicsSpaceTL.set(this);
+        pQueueTL.set(pQueue);
+        BulletGlobals.setContactAddedCallback(contactAddedCallback);
+        BulletGlobals.setContactProcessedCallback(contactProcessedCallback);
+        BulletGlobals.setContactDestroyedCallback(contactDestroyedCallback);
     }
 
     /**
@@ -797,6 +818,292 @@ public class PhysicsSpace {
         }
     }
 
+    /**
+     * Performs a closest hit ray test for each of a batch of rays, without
+     * creating any result objects. See
+     * {@link #rayTestBatch(java.nio.FloatBuffer, java.nio.FloatBuffer, int, java.nio.FloatBuffer, com.jme3.bullet.collision.PhysicsCollisionObject[], java.util.concurrent.Executor)}.
+     */
+    public int rayTestBatch(FloatBuffer from, FloatBuffer to, int count, FloatBuffer results,
+            PhysicsCollisionObject[] hitObjects) {
+        return rayTestBatch(from, to, count, results, hitObjects, null);
+    }
+
+    /**
+     * Performs a closest hit ray test for each of a batch of rays, without
+     * creating any result objects.<br/>
+     * The rays run from the points in from to the points in to, 3 values
+     * per point starting at index 0. For each ray the hit fraction and the
+     * world space hit normal are stored in results, 4 values per ray, and
+     * the hit object in hitObjects. Rays that hit nothing get a fraction of
+     * 1, a zero normal and a null object.<br/>
+     * With the DBVT broadphase the rays only visit the broadphase nodes they
+     * pass closer than their closest hit so far, and can be tested in
+     * parallel on the given executor, the space must not be updated or
+     * changed meanwhile.
+     *
+     * @param from the buffer of the start points
+     * @param to the buffer of the end points
+     * @param count the number of rays
+     * @param results the buffer to store the hits in
+     * @param hitObjects the array to store the hit objects in, or null
+     * @param executor the executor to test the rays on, or null to test all
+     * of them on the calling thread
+     * @return the number of rays that hit something
+     */
+    public int rayTestBatch(final FloatBuffer from, final FloatBuffer to, int count,
+            final FloatBuffer results, final PhysicsCollisionObject[] hitObjects, Executor executor) {
+        BatchQuery.checkBuffers(from, to, count, results, hitObjects);
+        final Dbvt[] trees = broadphase instanceof DbvtBroadphase ? ((DbvtBroadphase) broadphase).sets : null;
+        return new BatchQuery() {
+            @Override
+            protected int query(int start, int end) {
+                return new BatchRayTest(trees).test(from, to, start, end, results, hitObjects);
+            }
+        }.run(count, trees != null ? executor : null);
+    }
+
+    /**
+     * Performs a closest hit sweep test of a convex shape for each of a
+     * batch of moves, without creating any result objects. The shape keeps
+     * its default rotation, the start and end locations, results and hit
+     * objects are laid out like for
+     * {@link #rayTestBatch(java.nio.FloatBuffer, java.nio.FloatBuffer, int, java.nio.FloatBuffer, com.jme3.bullet.collision.PhysicsCollisionObject[], java.util.concurrent.Executor)}.
+     * As with single sweep tests, moves that start inside an object and move
+     * away from its center do not hit it.
+     *
+     * @param shape the convex shape to sweep
+     * @param from the buffer of the start locations
+     * @param to the buffer of the end locations
+     * @param count the number of moves
+     * @param results the buffer to store the hits in
+     * @param hitObjects the array to store the hit objects in, or null
+     * @param allowedCcdPenetration the allowed penetration of the swept shape
+     * @param executor the executor to test the moves on, or null to test all
+     * of them on the calling thread
+     * @return the number of moves that hit something
+     */
+    public int sweepTestBatch(CollisionShape shape, final FloatBuffer from, final FloatBuffer to, int count,
+            final FloatBuffer results, final PhysicsCollisionObject[] hitObjects, final float allowedCcdPenetration,
+            Executor executor) {
+        BatchQuery.checkBuffers(from, to, count, results, hitObjects);
+        if (!(shape.getCShape() instanceof ConvexShape)) {
+            logger.log(Level.WARNING, "Trying to sweep test with incompatible mesh shape!");
+            return 0;
+        }
+        final ConvexShape convexShape = (ConvexShape) shape.getCShape();
+        final Dbvt[] trees = broadphase instanceof DbvtBroadphase ? ((DbvtBroadphase) broadphase).sets : null;
+        return new BatchQuery() {
+            @Override
+            protected int query(int start, int end) {
+                return new BatchSweepTest(trees, convexShape, allowedCcdPenetration)
+                        .test(from, to, start, end, results, hitObjects);
+            }
+        }.run(count, trees != null ? executor : null);
+    }
+
+    /**
+     * Tests a range of the rays of a batch, only keeping state of its own so
+     * several ranges can be tested at the same time.
+     */
+    private class BatchRayTest {
+
+        private final Dbvt[] trees;
+        private final CollisionWorld.ClosestRayResultCallback callback =
+                new CollisionWorld.ClosestRayResultCallback(new javax.vecmath.Vector3f(), new javax.vecmath.Vector3f());
+        private final com.bulletphysics.linearmath.Transform rayFromTrans = new com.bulletphysics.linearmath.Transform();
+        private final com.bulletphysics.linearmath.Transform rayToTrans = new com.bulletphysics.linearmath.Transform();
+        private final com.bulletphysics.linearmath.Transform objectTrans = new com.bulletphysics.linearmath.Transform();
+        private final javax.vecmath.Vector3f invDirection = new javax.vecmath.Vector3f();
+        private final javax.vecmath.Vector3f aabbMin = new javax.vecmath.Vector3f();
+        private final javax.vecmath.Vector3f aabbMax = new javax.vecmath.Vector3f();
+        private Dbvt.Node[] stack = new Dbvt.Node[64];
+
+        BatchRayTest(Dbvt[] trees) {
+            this.trees = trees;
+            rayFromTrans.setIdentity();
+            rayToTrans.setIdentity();
+        }
+
+        int test(FloatBuffer from, FloatBuffer to, int start, int end, FloatBuffer results,
+                PhysicsCollisionObject[] hitObjects) {
+            javax.vecmath.Vector3f rayFrom = rayFromTrans.origin;
+            javax.vecmath.Vector3f rayTo = rayToTrans.origin;
+            int hits = 0;
+            for (int i = start; i < end; i++) {
+                rayFrom.set(from.get(i * 3), from.get(i * 3 + 1), from.get(i * 3 + 2));
+                rayTo.set(to.get(i * 3), to.get(i * 3 + 1), to.get(i * 3 + 2));
+                callback.rayFromWorld.set(rayFrom);
+                callback.rayToWorld.set(rayTo);
+                callback.closestHitFraction = 1f;
+                callback.collisionObject = null;
+                if (trees != null) {
+                    invDirection.set(1f / (rayTo.x - rayFrom.x), 1f / (rayTo.y - rayFrom.y), 1f / (rayTo.z - rayFrom.z));
+                    for (Dbvt tree : trees) {
+                        testTree(tree.root);
+                    }
+                } else {
+                    dynamicsWorld.rayTest(rayFrom, rayTo, callback);
+                }
+                if (storeResult(i, callback.collisionObject, callback.closestHitFraction, callback.hitNormalWorld,
+                        results, hitObjects)) {
+                    hits++;
+                }
+            }
+            return hits;
+        }
+
+        private void testTree(Dbvt.Node root) {
+            if (root == null) {
+                return;
+            }
+            int size = 0;
+            stack[size++] = root;
+            while (size > 0) {
+                Dbvt.Node node = stack[--size];
+                if (!intersects(node.volume.Mins(), node.volume.Maxs(), callback.closestHitFraction)) {
+                    continue;
+                }
+                if (node.isinternal()) {
+                    if (size + 2 > stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[size++] = node.childs[0];
+                    stack[size++] = node.childs[1];
+                } else {
+                    CollisionObject object = (CollisionObject) ((BroadphaseProxy) node.data).clientObject;
+                    if (!callback.needsCollision(object.getBroadphaseHandle())) {
+                        continue;
+                    }
+                    // the broadphase bounds are padded, test the exact bounds
+                    // first like CollisionWorld.rayTest does
+                    object.getWorldTransform(objectTrans);
+                    object.getCollisionShape().getAabb(objectTrans, aabbMin, aabbMax);
+                    if (intersects(aabbMin, aabbMax, callback.closestHitFraction)) {
+                        CollisionWorld.rayTestSingle(rayFromTrans, rayToTrans, object, object.getCollisionShape(),
+                                objectTrans, callback);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Slab test of the part of the ray up to the given fraction against
+         * the given bounds.
+         */
+        private boolean intersects(javax.vecmath.Vector3f min, javax.vecmath.Vector3f max, float maxFraction) {
+            javax.vecmath.Vector3f origin = rayFromTrans.origin;
+            float near = 0;
+            float far = maxFraction;
+            for (int axis = 0; axis < 3; axis++) {
+                float o = axis == 0 ? origin.x : axis == 1 ? origin.y : origin.z;
+                float inv = axis == 0 ? invDirection.x : axis == 1 ? invDirection.y : invDirection.z;
+                float lo = axis == 0 ? min.x : axis == 1 ? min.y : min.z;
+                float hi = axis == 0 ? max.x : axis == 1 ? max.y : max.z;
+                if (Float.isInfinite(inv)) {
+                    // parallel to the slab
+                    if (o < lo || o > hi) {
+                        return false;
+                    }
+                    continue;
+                }
+                float t0 = (lo - o) * inv;
+                float t1 = (hi - o) * inv;
+                if (t0 > t1) {
+                    float t = t0;
+                    t0 = t1;
+                    t1 = t;
+                }
+                near = Math.max(near, t0);
+                far = Math.min(far, t1);
+                if (near > far) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Tests a range of the moves of a batch sweep test, only keeping state
+     * of its own so several ranges can be tested at the same time.
+     */
+    private class BatchSweepTest extends Dbvt.ICollide {
+
+        private final Dbvt[] trees;
+        private final ConvexShape shape;
+        private final float allowedPenetration;
+        private final CollisionWorld.ClosestConvexResultCallback callback =
+                new CollisionWorld.ClosestConvexResultCallback(new javax.vecmath.Vector3f(), new javax.vecmath.Vector3f());
+        private final com.bulletphysics.linearmath.Transform fromTrans = new com.bulletphysics.linearmath.Transform();
+        private final com.bulletphysics.linearmath.Transform toTrans = new com.bulletphysics.linearmath.Transform();
+        private final com.bulletphysics.linearmath.Transform objectTrans = new com.bulletphysics.linearmath.Transform();
+        private final javax.vecmath.Vector3f min = new javax.vecmath.Vector3f();
+        private final javax.vecmath.Vector3f max = new javax.vecmath.Vector3f();
+        private final javax.vecmath.Vector3f toMin = new javax.vecmath.Vector3f();
+        private final javax.vecmath.Vector3f toMax = new javax.vecmath.Vector3f();
+        private final DbvtAabbMm bounds = new DbvtAabbMm();
+
+        BatchSweepTest(Dbvt[] trees, ConvexShape shape, float allowedPenetration) {
+            this.trees = trees;
+            this.shape = shape;
+            this.allowedPenetration = allowedPenetration;
+            fromTrans.setIdentity();
+            toTrans.setIdentity();
+        }
+
+        int test(FloatBuffer from, FloatBuffer to, int start, int end, FloatBuffer results,
+                PhysicsCollisionObject[] hitObjects) {
+            int hits = 0;
+            for (int i = start; i < end; i++) {
+                fromTrans.origin.set(from.get(i * 3), from.get(i * 3 + 1), from.get(i * 3 + 2));
+                toTrans.origin.set(to.get(i * 3), to.get(i * 3 + 1), to.get(i * 3 + 2));
+                callback.convexFromWorld.set(fromTrans.origin);
+                callback.convexToWorld.set(toTrans.origin);
+                callback.closestHitFraction = 1f;
+                callback.hitCollisionObject = null;
+                if (trees != null) {
+                    shape.getAabb(fromTrans, min, max);
+                    shape.getAabb(toTrans, toMin, toMax);
+                    VectorUtil.setMin(min, toMin);
+                    VectorUtil.setMax(max, toMax);
+                    DbvtAabbMm.FromMM(min, max, bounds);
+                    for (Dbvt tree : trees) {
+                        Dbvt.collideTV(tree.root, bounds, this);
+                    }
+                } else {
+                    dynamicsWorld.convexSweepTest(shape, fromTrans, toTrans, callback);
+                }
+                if (storeResult(i, callback.hitCollisionObject, callback.closestHitFraction, callback.hitNormalWorld,
+                        results, hitObjects)) {
+                    hits++;
+                }
+            }
+            return hits;
+        }
+
+        @Override
+        public void Process(Dbvt.Node leaf) {
+            CollisionObject object = (CollisionObject) ((BroadphaseProxy) leaf.data).clientObject;
+            if (callback.needsCollision(object.getBroadphaseHandle())) {
+                CollisionWorld.objectQuerySingle(shape, fromTrans, toTrans, object, object.getCollisionShape(),
+                        object.getWorldTransform(objectTrans), callback, allowedPenetration);
+            }
+        }
+    }
+
+    private static boolean storeResult(int index, CollisionObject object, float fraction,
+            javax.vecmath.Vector3f normal, FloatBuffer results, PhysicsCollisionObject[] hitObjects) {
+        boolean hit = object != null;
+        results.put(index * 4, hit ? fraction : 1f);
+        results.put(index * 4 + 1, hit ? normal.x : 0f);
+        results.put(index * 4 + 2, hit ? normal.y : 0f);
+        results.put(index * 4 + 3, hit ? normal.z : 0f);
+        if (hitObjects != null) {
+            hitObjects[index] = hit ? (PhysicsCollisionObject) object.getUserPointer() : null;
+        }
+        return hit;
+    }
+
     /**
      * destroys the current PhysicsSpace so that a new one can be created
      */
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.bullet;
+
+import com.jme3.bullet.PhysicsSpace.BroadphaseType;
+import com.jme3.math.Vector3f;
+import com.jme3.util.ParallelTasks;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A group of independent PhysicsSpaces, each covering one region of the
+ * world, that are stepped in parallel on a fixed set of physics threads.
+ * <p>
+ * jbullet keeps its contact callbacks and object pools per thread, so each
+ * space is created on one thread of the group and always stepped there, the
+ * spaces are given to the threads in turns. The collision events of each
+ * space stay in that space until {@link #distributeEvents()}, which delivers
+ * them on the calling thread one space after the other in the order the spaces
+ * were added, so listeners see the same order however the threads ran.
+ * <p>
+ * Objects in different spaces do not collide. Regions should be chosen so
+ * that objects rarely leave them, {@link #getSpace(Vector3f)} finds the space
+ * of a location. Spaces may only be changed between updates or through
+ * {@link PhysicsSpace#enqueue(java.util.concurrent.Callable)}, and tick
+ * listeners are called on the physics threads.
+ */
+public class PhysicsSpaceGroup {
+
+    private final ExecutorService[] threads;
+    private final List<PhysicsSpace> spaces = new ArrayList<PhysicsSpace>();
+    private final List<Future<?>> futures = new ArrayList<Future<?>>();
+
+    /**
+     * Creates a group with one physics thread per processor.
+     */
+    public PhysicsSpaceGroup() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threadCount the number of physics threads
+     */
+    public PhysicsSpaceGroup(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("threadCount must be at least 1");
+        }
+        threads = new ExecutorService[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            final String name = "jME3 Physics Thread " + (i + 1);
+            threads[i] = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+                public Thread newThread(Runnable r) {
+                    Thread th = new Thread(r);
+                    th.setName(name);
+                    th.setDaemon(true);
+                    return th;
+                }
+            });
+        }
+    }
+
+    /**
+     * Creates a space for the region between worldMin and worldMax, using an
+     * AxisSweep broadphase.
+     *
+     * @return the new space
+     */
+    public PhysicsSpace addSpace(Vector3f worldMin, Vector3f worldMax) {
+        return addSpace(worldMin, worldMax, BroadphaseType.AXIS_SWEEP_3);
+    }
+
+    /**
+     * Creates a space for the region between worldMin and worldMax on the
+     * next physics thread.
+     *
+     * @return the new space
+     */
+    public PhysicsSpace addSpace(final Vector3f worldMin, final Vector3f worldMax,
+            final BroadphaseType broadphaseType) {
+        ExecutorService thread = threads[spaces.size() % threads.length];
+        PhysicsSpace space = ParallelTasks.get(thread.submit(new Callable<PhysicsSpace>() {
+
+            public PhysicsSpace call() throws Exception {
+                return new PhysicsSpace(worldMin, worldMax, broadphaseType);
+            }
+        }));
+        spaces.add(space);
+        return space;
+    }
+
+    /**
+     * @return the spaces of this group, in the order they were added
+     */
+    public List<PhysicsSpace> getSpaces() {
+        return Collections.unmodifiableList(spaces);
+    }
+
+    /**
+     * @return the first space whose region contains the location, or null
+     */
+    public PhysicsSpace getSpace(Vector3f location) {
+        for (int i = 0; i < spaces.size(); i++) {
+            PhysicsSpace space = spaces.get(i);
+            Vector3f min = space.getWorldMin();
+            Vector3f max = space.getWorldMax();
+            if (location.x >= min.x && location.y >= min.y && location.z >= min.z
+                    && location.x <= max.x && location.y <= max.y && location.z <= max.z) {
+                return space;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of physics threads
+     */
+    public int getThreadCount() {
+        return threads.length;
+    }
+
+    /**
+     * Steps all spaces in parallel and waits for them to finish.
+     *
+     * @param time the time to simulate
+     */
+    public void update(float time) {
+        update(time, -1);
+    }
+
+    /**
+     * Steps all spaces in parallel and waits for them to finish.
+     *
+     * @param time the time to simulate
+     * @param maxSteps the maximum number of sub steps of each space, or -1 to
+     * use the setting of the space
+     */
+    public void update(final float time, final int maxSteps) {
+        for (int t = 0; t < threads.length && t < spaces.size(); t++) {
+            final int first = t;
+            futures.add(threads[t].submit(new Callable<Object>() {
+
+                public Object call() throws Exception {
+                    for (int i = first; i < spaces.size(); i += threads.length) {
+                        PhysicsSpace space = spaces.get(i);
+                        space.attachToThisThread();
+                        if (maxSteps < 0) {
+                            space.update(time);
+                        } else {
+                            space.update(time, maxSteps);
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                ParallelTasks.get(futures.get(i));
+            }
+        } finally {
+            futures.clear();
+        }
+    }
+
+    /**
+     * Sends the collision events of all spaces to their listeners, one space
+     * after the other in the order the spaces were added.
+     */
+    public void distributeEvents() {
+        for (int i = 0; i < spaces.size(); i++) {
+            spaces.get(i).distributeEvents();
+        }
+    }
+
+    /**
+     * Destroys all spaces and stops the physics threads.
+     */
+    public void destroy() {
+        for (int i = 0; i < spaces.size(); i++) {
+            final PhysicsSpace space = spaces.get(i);
+            ParallelTasks.get(threads[i % threads.length].submit(new Callable<Object>() {
+
+                public Object call() throws Exception {
+                    space.destroy();
+                    return null;
+                }
+            }));
+        }
+        spaces.clear();
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].shutdown();
+        }
+    }
+}
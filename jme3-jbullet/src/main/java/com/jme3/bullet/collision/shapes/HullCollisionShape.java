@@ -97,13 +97,12 @@ public class HullCollisionShape extends CollisionShape {
 
     protected float[] getPoints(Mesh mesh) {
         FloatBuffer vertices = mesh.getFloatBuffer(Type.Position);
-        vertices.rewind();
+        // absolute reads leave the buffer position alone, so that several
+        // shapes can be created from one mesh at the same time
         int components = mesh.getVertexCount() * 3;
         float[] pointsArray = new float[components];
-        for (int i = 0; i < components; i += 3) {
-            pointsArray[i] = vertices.get();
-            pointsArray[i + 1] = vertices.get();
-            pointsArray[i + 2] = vertices.get();
+        for (int i = 0; i < components; i++) {
+            pointsArray[i] = vertices.get(i);
         }
         return pointsArray;
     }
@@ -56,6 +56,7 @@ public class RigidBodyMotionState extends MotionState {
     private Quaternion localRotationQuat = new Quaternion();
     //keep track of transform changes
     private boolean physicsLocationDirty = false;
+    private boolean worldTransformConverted = true;
     private boolean jmeLocationDirty = false;
     //temp variable for conversion
     private Quaternion tmp_inverseWorldRotation = new Quaternion();
@@ -85,9 +86,8 @@ public class RigidBodyMotionState extends MotionState {
             return;
         }
         motionStateTrans.set(worldTrans);
-        Converter.convert(worldTrans.origin, worldLocation);
-        Converter.convert(worldTrans.basis, worldRotation);
-        worldRotationQuat.fromRotationMatrix(worldRotation);
+        //converted when the transform is used, only once for all steps of a frame
+        worldTransformConverted = false;
 //        for (Iterator<PhysicsMotionStateListener> it = listeners.iterator(); it.hasNext();) {
 //            PhysicsMotionStateListener physicsMotionStateListener = it.next();
 //            physicsMotionStateListener.stateChanged(worldLocation, worldRotation);
@@ -98,6 +98,16 @@ public class RigidBodyMotionState extends MotionState {
         }
     }
 
+    private void convertWorldTransform() {
+        if (worldTransformConverted) {
+            return;
+        }
+        Converter.convert(motionStateTrans.origin, worldLocation);
+        Converter.convert(motionStateTrans.basis, worldRotation);
+        worldRotationQuat.fromRotationMatrix(worldRotation);
+        worldTransformConverted = true;
+    }
+
     /**
      * applies the current transform to the given jme Node if the location has been updated on the physics side
      * @param spatial
@@ -106,6 +116,7 @@ public class RigidBodyMotionState extends MotionState {
         if (!physicsLocationDirty) {
             return false;
         }
+        convertWorldTransform();
         if (!applyPhysicsLocal && spatial.getParent() != null) {
             localLocation.set(worldLocation).subtractLocal(spatial.getParent().getWorldTranslation());
             localLocation.divideLocal(spatial.getParent().getWorldScale());
@@ -128,6 +139,7 @@ public class RigidBodyMotionState extends MotionState {
      * @return the worldLocation
      */
     public Vector3f getWorldLocation() {
+        convertWorldTransform();
         return worldLocation;
     }
 
@@ -135,6 +147,7 @@ public class RigidBodyMotionState extends MotionState {
      * @return the worldRotation
      */
     public Matrix3f getWorldRotation() {
+        convertWorldTransform();
         return worldRotation;
     }
 
@@ -142,6 +155,7 @@ public class RigidBodyMotionState extends MotionState {
      * @return the worldRotationQuat
      */
     public Quaternion getWorldRotationQuat() {
+        convertWorldTransform();
         return worldRotationQuat;
     }
 
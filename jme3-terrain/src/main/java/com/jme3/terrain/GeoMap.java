@@ -48,6 +48,15 @@ import java.nio.IntBuffer;
 public class GeoMap implements Savable {
     
     protected float[] hdata;
+    /**
+     * the heights as 16 bit values once quantized, a height being
+     * (qbase + value + 32768) * qscale; hdata is null then. Heights are
+     * whole multiples of qscale, so maps with the same qscale store a
+     * given height identically whatever their qbase.
+     */
+    protected short[] qdata;
+    protected int qbase;
+    protected float qscale;
     protected int width, height, maxval;
     
     public GeoMap() {}
@@ -72,15 +81,204 @@ public class GeoMap implements Savable {
     public FloatBuffer getHeightData(){
         if (!isLoaded())
             return null;
-        return BufferUtils.createFloatBuffer(hdata);
+        return BufferUtils.createFloatBuffer(getHeightArray());
     }
     
+    /**
+     * Returns the heights of this Geomap. Once quantized this is a decoded
+     * copy, use <code>setValue()</code> to change the heights.
+     *
+     * @return the heights, row by row
+     */
     public float[] getHeightArray(){
         if (!isLoaded())
             return null;
+        if (hdata == null && qdata != null) {
+            float[] heights = new float[qdata.length];
+            for (int i = 0; i < heights.length; i++) {
+                heights[i] = getValue(i);
+            }
+            return heights;
+        }
         return hdata;
     }
 
+    /**
+     * Stores the heights as 16 bit values, halving the memory they use.
+     * The step between two 16 bit values is chosen from the range of this
+     * Geomap with {@link #getQuantizationStep(float, float) }.
+     */
+    public void quantize() {
+        if (hdata != null) {
+            float min = Float.POSITIVE_INFINITY;
+            float max = Float.NEGATIVE_INFINITY;
+            for (float h : hdata) {
+                min = Math.min(min, h);
+                max = Math.max(max, h);
+            }
+            quantize(getQuantizationStep(min, max));
+        }
+    }
+
+    /**
+     * Stores the heights as 16 bit values, halving the memory they use.
+     * The heights are rounded to whole multiples of the step, so Geomaps
+     * quantized with the same step store their shared border heights 
+     * identically. The step is doubled if this Geomap does not fit in 
+     * 65536 steps.
+     *
+     * @param step the precision of the heights, greater than 0
+     */
+    public void quantize(float step) {
+        if (step <= 0) {
+            throw new IllegalArgumentException("step must be greater than 0");
+        }
+        float[] heights = getHeightArray();
+        if (heights == null) {
+            return;
+        }
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        for (float h : heights) {
+            min = Math.min(min, h);
+            max = Math.max(max, h);
+        }
+        if (heights.length == 0) {
+            min = max = 0;
+        }
+        while ((max - min) / step > 65000f) {
+            step *= 2f;
+        }
+        encode(heights, step, min, max);
+    }
+
+    /**
+     * Returns the quantization step for heights in the given range. Half 
+     * of the 16 bit values are left as headroom, so edits can go a whole
+     * range beyond the heights before the step has to grow.
+     *
+     * @param min the minimum height
+     * @param max the maximum height
+     * @return the step to use with {@link #quantize(float) }
+     */
+    public static float getQuantizationStep(float min, float max) {
+        if (!(max > min)) {
+            // flat, allow for edits of a few units
+            return 1f / 256f;
+        }
+        return (max - min) / 32768f;
+    }
+
+    /**
+     * @return the precision of the quantized heights, or 0 if the heights
+     * are not quantized
+     */
+    public float getQuantizationStep() {
+        return isQuantized() ? qscale : 0f;
+    }
+
+    /**
+     * Encodes the heights with the given step, the 16 bit values centered
+     * on the range of the heights.
+     */
+    private void encode(float[] heights, float step, float min, float max) {
+        qscale = step;
+        qbase = (int) Math.floor((min + max) * 0.5f / step) - 32768;
+        short[] values = new short[heights.length];
+        for (int i = 0; i < heights.length; i++) {
+            values[i] = encode(heights[i]);
+        }
+        qdata = values;
+        hdata = null;
+    }
+
+    private short encode(float value) {
+        int q = Math.round(value / qscale) - qbase;
+        return (short) (Math.min(Math.max(q, 0), 65535) - 32768);
+    }
+
+    private boolean isEncodable(float value) {
+        int q = Math.round(value / qscale) - qbase;
+        return q >= 0 && q <= 65535;
+    }
+
+    /**
+     * Makes sure a quantized Geomap can store heights from min to max. 
+     * If it cannot, the 16 bit values are re-centered on the new range,
+     * which keeps the stored heights as they are. Only if the range does 
+     * not fit in half of the 16 bit values is the step doubled, rounding 
+     * the stored heights to the new step.
+     * <p>
+     * Call this once before setting a batch of heights with
+     * <code>setValue()</code>, so the map is re-encoded at most once.
+     * Geomaps that share edges with this one have to be quantized again
+     * with the new step when this returns true.
+     *
+     * @param min the minimum height that will be set
+     * @param max the maximum height that will be set
+     * @return true if the step changed and the stored heights were rounded
+     */
+    public boolean fitRange(float min, float max) {
+        if (!isQuantized() || (isEncodable(min) && isEncodable(max))) {
+            return false;
+        }
+        int qmin = Integer.MAX_VALUE;
+        int qmax = Integer.MIN_VALUE;
+        for (short q : qdata) {
+            qmin = Math.min(qmin, q);
+            qmax = Math.max(qmax, q);
+        }
+        min = Math.min(min, (qbase + qmin + 32768) * qscale);
+        max = Math.max(max, (qbase + qmax + 32768) * qscale);
+        float step = qscale;
+        while ((max - min) / step > 32768f) {
+            step *= 2f;
+        }
+        if (step != qscale) {
+            encode(getHeightArray(), step, min, max);
+            return true;
+        }
+        int base = (int) Math.floor((min + max) * 0.5f / step) - 32768;
+        int shift = qbase - base;
+        for (int i = 0; i < qdata.length; i++) {
+            qdata[i] = (short) (qdata[i] + shift);
+        }
+        qbase = base;
+        return false;
+    }
+    /**
+     * @return true if the heights are stored as 16 bit values
+     */
+    public boolean isQuantized() {
+        return hdata == null && qdata != null;
+    }
+
+    /**
+     * Sets the height value at the given index. The range of a quantized 
+     * Geomap is widened with {@link #fitRange(float, float) } if the value 
+     * is out of it.
+     *
+     * @param i The index
+     * @param value the new height
+     */
+    public void setValue(int i, float value) {
+        if (hdata != null) {
+            hdata[i] = value;
+        } else {
+            fitRange(value, value);
+            qdata[i] = encode(value);
+        }
+    }
+
+    /**
+     * @return the number of bytes the heights use in memory
+     */
+    public long getMemorySize() {
+        if (hdata != null)
+            return hdata.length * 4L;
+        return qdata != null ? qdata.length * 2L : 0;
+    }
+
     /**
      * @return The maximum possible value that <code>getValue()</code> can 
      * return. Mostly depends on the source data format (byte, short, int, etc).
@@ -101,7 +299,7 @@ public class GeoMap implements Savable {
      * @throws NullPointerException If isLoaded() is false
      */
     public float getValue(int x, int y) {
-        return hdata[y*width+x];
+        return getValue(y*width+x);
     }
 
     /**
@@ -116,6 +314,8 @@ public class GeoMap implements Savable {
      * @throws NullPointerException If isLoaded() is false
      */
     public float getValue(int i) {
+        if (hdata == null)
+            return (qbase + qdata[i] + 32768) * qscale;
         return hdata[i];
     }
 
@@ -244,7 +444,7 @@ public class GeoMap implements Savable {
             store = BufferUtils.createFloatBuffer(width*height*3);
         }
 
-        assert hdata.length == height*width;
+        assert (hdata != null ? hdata.length : qdata.length) == height*width;
 
         Vector3f offset = new Vector3f(-getWidth() * scale.x * 0.5f,
                                        0,
@@ -256,7 +456,7 @@ public class GeoMap implements Savable {
         for (int z = 0; z < height; z++){
             for (int x = 0; x < width; x++){
                 store.put( (float)x*scale.x + offset.x );
-                store.put( (float)hdata[i++]*scale.y );
+                store.put( getValue(i++)*scale.y );
                 store.put( (float)z*scale.z + offset.z );
             }
         }
@@ -341,7 +541,13 @@ public class GeoMap implements Savable {
     
     public void write(JmeExporter ex) throws IOException {
         OutputCapsule oc = ex.getCapsule(this);
-        oc.write(hdata, "hdataarray", null);
+        if (isQuantized()) {
+            oc.write(qdata, "qdataarray", null);
+            oc.write(qbase, "qbase", 0);
+            oc.write(qscale, "qscale", 1);
+        } else {
+            oc.write(hdata, "hdataarray", null);
+        }
         oc.write(width, "width", 0);
         oc.write(height, "height", 0);
         oc.write(maxval, "maxval", 0);
@@ -350,7 +556,11 @@ public class GeoMap implements Savable {
     public void read(JmeImporter im) throws IOException {
         InputCapsule ic = im.getCapsule(this);
         hdata = ic.readFloatArray("hdataarray", null);
-        if (hdata == null) {
+        qdata = ic.readShortArray("qdataarray", null);
+        if (qdata != null) {
+            qbase = ic.readInt("qbase", 0);
+            qscale = ic.readFloat("qscale", 1);
+        } else if (hdata == null) {
             FloatBuffer buf = ic.readFloatBuffer("hdata", null);
             if (buf != null) {
                 hdata = new float[buf.limit()];
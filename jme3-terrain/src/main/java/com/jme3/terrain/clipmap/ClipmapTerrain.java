@@ -0,0 +1,646 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.terrain.clipmap;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.collision.Collidable;
+import com.jme3.collision.CollisionResult;
+import com.jme3.collision.CollisionResults;
+import com.jme3.export.InputCapsule;
+import com.jme3.export.JmeExporter;
+import com.jme3.export.JmeImporter;
+import com.jme3.export.OutputCapsule;
+import com.jme3.material.Material;
+import com.jme3.math.FastMath;
+import com.jme3.math.Matrix4f;
+import com.jme3.math.Ray;
+import com.jme3.math.Vector2f;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.VertexBuffer.Type;
+import com.jme3.terrain.ProgressMonitor;
+import com.jme3.terrain.Terrain;
+import com.jme3.texture.Image;
+import com.jme3.texture.Image.Format;
+import com.jme3.texture.Texture;
+import com.jme3.texture.Texture2D;
+import com.jme3.texture.image.ColorSpace;
+import com.jme3.util.BufferUtils;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A terrain rendered with geometry clipmaps: a fixed set of square ring
+ * meshes centered on the camera, each level twice as coarse as the one it
+ * surrounds. The meshes never change, only their placement does when the
+ * camera moves, and the heights are read from a float texture in the vertex
+ * shader of the Common/MatDefs/Terrain/Clipmap.j3md material. The work done
+ * on the CPU to update the level of detail is the same for any terrain size.
+ *
+ * The level meshes are moved by a {@link ClipmapTerrainControl}, or by calling
+ * {@link #update(Vector3f)} with the camera location. The vertices of each
+ * level blend into the positions of the next coarser level towards its outer
+ * edge, so neighbouring levels meet without cracks.
+ *
+ * The heights are kept once, in the data of the height texture, and are
+ * used directly for the height, normal and picking queries. Those queries
+ * use the full resolution surface, the coarser levels only approximate it.
+ * Like TerrainQuad, heightmap point (0, 0) is at local coordinate
+ * -(size - 1) / 2 on both axes. Outside the heightmap nothing is drawn.
+ */
+public class ClipmapTerrain extends Node implements Terrain {
+
+    /**
+     * the default number of grid cells along the side of a level
+     */
+    public static final int DEFAULT_CLIPMAP_SIZE = 64;
+
+    private int size;
+    private int clipmapSize;
+    private int levels;
+    private float halfSize;
+    private Texture2D heightTexture;
+    private FloatBuffer heights;
+    private float minHeight;
+    private float maxHeight;
+    private Material material;
+
+    private Geometry[] levelGeometries;
+    private Mesh fullMesh;
+    /**
+     * the ring meshes, one for each corner the finer level can be shifted
+     * to: index 1 is shifted along x and index 2 along z
+     */
+    private Mesh[] ringMeshes;
+    private Matrix4f worldToTerrain = new Matrix4f();
+
+    /**
+     * Serialization only. Do not use.
+     */
+    public ClipmapTerrain() {
+    }
+
+    /**
+     * Create a terrain with levels of {@link #DEFAULT_CLIPMAP_SIZE} cells
+     * and enough of them for the coarsest one to cover the whole heightmap.
+     *
+     * @param name the name of the terrain
+     * @param size the number of heights along each side of the heightmap
+     * @param heightMap the heights, row by row, they are copied
+     */
+    public ClipmapTerrain(String name, int size, float[] heightMap) {
+        this(name, size, DEFAULT_CLIPMAP_SIZE, levelsToCover(size, DEFAULT_CLIPMAP_SIZE), heightMap);
+    }
+
+    /**
+     * @param name the name of the terrain
+     * @param size the number of heights along each side of the heightmap
+     * @param clipmapSize the number of grid cells along the side of a level,
+     * a multiple of 4 and at least 16
+     * @param levels the number of levels
+     * @param heightMap the heights, row by row, they are copied
+     */
+    public ClipmapTerrain(String name, int size, int clipmapSize, int levels, float[] heightMap) {
+        super(name);
+        if (clipmapSize < 16 || clipmapSize % 4 != 0)
+            throw new IllegalArgumentException("The clipmap size must be a multiple of 4 and at least 16");
+        if (levels < 1)
+            throw new IllegalArgumentException("There must be at least one level");
+        if (heightMap == null || heightMap.length != size * size)
+            throw new IllegalArgumentException("The heightmap must have size * size heights");
+        this.size = size;
+        this.clipmapSize = clipmapSize;
+        this.levels = levels;
+        this.halfSize = (size - 1) / 2f;
+
+        ByteBuffer data = BufferUtils.createByteBuffer(size * size * 4);
+        heights = data.asFloatBuffer();
+        heights.put(heightMap);
+        Image image = new Image(Format.Luminance32F, size, size, data, ColorSpace.Linear);
+        heightTexture = createHeightTexture(image);
+        updateHeightRange();
+        createLevels();
+    }
+
+    private static int levelsToCover(int size, int clipmapSize) {
+        int levels = 1;
+        while ((clipmapSize / 2) << (levels - 1) < size)
+            levels++;
+        return levels;
+    }
+
+    private static Texture2D createHeightTexture(Image image) {
+        Texture2D texture = new Texture2D(image);
+        // the vertices sample the heights at texel centers
+        texture.setMinFilter(Texture.MinFilter.NearestNoMipMaps);
+        texture.setMagFilter(Texture.MagFilter.Nearest);
+        texture.setWrap(Texture.WrapMode.EdgeClamp);
+        return texture;
+    }
+
+    private void createLevels() {
+        int half = clipmapSize / 2;
+        fullMesh = createLevelMesh(clipmapSize, 0, 0, 0);
+        ringMeshes = new Mesh[4];
+        for (int i = 0; i < 4; i++) {
+            ringMeshes[i] = createLevelMesh(clipmapSize, half / 2 + (i & 1), half / 2 + (i >> 1), half);
+        }
+        levelGeometries = new Geometry[levels];
+        for (int l = 0; l < levels; l++) {
+            levelGeometries[l] = new Geometry(getName() + "-level" + l, l == 0 ? fullMesh : ringMeshes[0]);
+            levelGeometries[l].setLocalScale(1 << l, 1, 1 << l);
+            if (material != null)
+                levelGeometries[l].setMaterial(material);
+            attachChild(levelGeometries[l]);
+        }
+        updateLevelBounds();
+    }
+
+    /**
+     * Create a flat grid of cells * cells squares centered on the origin,
+     * leaving out a square hole of holeCells cells starting at cell
+     * (holeX, holeZ).
+     */
+    private static Mesh createLevelMesh(int cells, int holeX, int holeZ, int holeCells) {
+        int half = cells / 2;
+        int row = cells + 1;
+        FloatBuffer pb = BufferUtils.createFloatBuffer(row * row * 3);
+        for (int z = 0; z <= cells; z++) {
+            for (int x = 0; x <= cells; x++) {
+                pb.put(x - half).put(0).put(z - half);
+            }
+        }
+        IntBuffer ib = BufferUtils.createIntBuffer((cells * cells - holeCells * holeCells) * 6);
+        for (int z = 0; z < cells; z++) {
+            for (int x = 0; x < cells; x++) {
+                if (x >= holeX && x < holeX + holeCells && z >= holeZ && z < holeZ + holeCells)
+                    continue;
+                // the same triangles as GeoMap.writeIndexArray()
+                int i = z * row + x;
+                ib.put(i).put(i + row).put(i + row + 1);
+                ib.put(i + row + 1).put(i + 1).put(i);
+            }
+        }
+        pb.flip();
+        ib.flip();
+        Mesh mesh = new Mesh();
+        mesh.setBuffer(Type.Position, 3, pb);
+        mesh.setBuffer(Type.Index, 3, ib);
+        mesh.setStatic();
+        return mesh;
+    }
+
+    /**
+     * The level meshes are flat, their bounds are set to the height range
+     * of the whole heightmap instead.
+     */
+    private void updateLevelBounds() {
+        float center = (minHeight + maxHeight) / 2f;
+        float extent = Math.max((maxHeight - minHeight) / 2f, 0.001f);
+        int half = clipmapSize / 2;
+        fullMesh.setBound(new BoundingBox(new Vector3f(0, center, 0), half, extent, half));
+        for (Mesh mesh : ringMeshes)
+            mesh.setBound(new BoundingBox(new Vector3f(0, center, 0), half, extent, half));
+        for (Geometry geometry : levelGeometries)
+            geometry.setMesh(geometry.getMesh()); // refreshes the world bound
+    }
+
+    private void updateHeightRange() {
+        minHeight = Float.POSITIVE_INFINITY;
+        maxHeight = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < size * size; i++) {
+            minHeight = Math.min(minHeight, heights.get(i));
+            maxHeight = Math.max(maxHeight, heights.get(i));
+        }
+    }
+
+    @Override
+    public void updateModelBound() {
+        updateLevelBounds();
+    }
+
+    /**
+     * Move the levels around the camera. Levels finer than a few times the
+     * height of the camera above the terrain are hidden, as are the levels
+     * that lie outside of the heightmap.
+     *
+     * @param cameraLocation the camera location in world space
+     */
+    public void update(Vector3f cameraLocation) {
+        updateWorldToTerrain();
+        Vector3f camera = worldToTerrain.mult(cameraLocation);
+
+        int half = clipmapSize / 2;
+        float above = Math.abs(camera.y - getHeightmapHeight(Math.round(camera.x), Math.round(camera.z)));
+        above *= getWorldScale().y / getWorldScale().x;
+        int finest = 0;
+        while (finest < levels - 1 && (half << finest) < 2 * above)
+            finest++;
+
+        // each level is snapped to the grid of the next coarser level, so
+        // that the finer level lies one cell in, or one cell shifted, inside
+        // the hole of the coarser ring
+        int finerX = 0, finerZ = 0;
+        for (int l = 0; l < levels; l++) {
+            int step = 1 << l;
+            int x = (int) FastMath.floor(camera.x / (2 * step)) * 2 * step;
+            int z = (int) FastMath.floor(camera.z / (2 * step)) * 2 * step;
+            Geometry geometry = levelGeometries[l];
+            boolean outside = x + half * step < 0 || x - half * step > size - 1
+                    || z + half * step < 0 || z - half * step > size - 1;
+            if (l < finest || outside) {
+                geometry.setCullHint(CullHint.Always);
+            } else {
+                Mesh mesh = l == finest ? fullMesh : ringMeshes[(finerX - x) / step + 2 * ((finerZ - z) / step)];
+                if (geometry.getMesh() != mesh)
+                    geometry.setMesh(mesh);
+                geometry.setCullHint(CullHint.Inherit);
+                geometry.setLocalTranslation(x - halfSize, 0, z - halfSize);
+            }
+            finerX = x;
+            finerZ = z;
+        }
+    }
+
+    private void updateWorldToTerrain() {
+        getWorldTransform().toTransformMatrix().invert(worldToTerrain);
+        Matrix4f offset = new Matrix4f();
+        offset.setTranslation(halfSize, 0, halfSize);
+        offset.mult(worldToTerrain, worldToTerrain);
+        if (material != null)
+            material.setMatrix4("WorldToTerrain", worldToTerrain);
+    }
+
+    @Override
+    public void setMaterial(Material material) {
+        this.material = material;
+        material.setTexture("HeightMap", heightTexture);
+        material.setFloat("HeightMapSize", size);
+        // blend into the coarser level over the outer part of each level,
+        // in cells of the level. The finer level can be up to two cells off
+        // center, the blending has to end inside of it and start outside of
+        // the hole of the level
+        int half = clipmapSize / 2;
+        float end = half - 2;
+        float start = Math.max(half / 2 + 1, end - half / 4);
+        material.setVector2("MorphRange", new Vector2f(start, end));
+        material.setMatrix4("WorldToTerrain", worldToTerrain);
+        super.setMaterial(material);
+    }
+
+    public Material getMaterial() {
+        return material;
+    }
+
+    public Material getMaterial(Vector3f worldLocation) {
+        return material;
+    }
+
+    /**
+     * @return the texture holding the heights, one float per texel
+     */
+    public Texture2D getHeightTexture() {
+        return heightTexture;
+    }
+
+    /**
+     * @return the number of grid cells along the side of a level
+     */
+    public int getClipmapSize() {
+        return clipmapSize;
+    }
+
+    /**
+     * @return the number of levels, each twice as coarse as the previous one
+     */
+    public int getLevels() {
+        return levels;
+    }
+
+    private boolean isInside(int x, int z) {
+        return x >= 0 && z >= 0 && x < size && z < size;
+    }
+
+    private float getHeightmapHeight(int x, int z) {
+        x = Math.min(Math.max(x, 0), size - 1);
+        z = Math.min(Math.max(z, 0), size - 1);
+        return heights.get(z * size + x);
+    }
+
+    public float getHeightmapHeight(Vector2f xz) {
+        int x = Math.round((xz.x - getWorldTranslation().x) / getWorldScale().x + halfSize);
+        int z = Math.round((xz.y - getWorldTranslation().z) / getWorldScale().z + halfSize);
+        if (!isInside(x, z))
+            return Float.NaN;
+        return getHeightmapHeight(x, z);
+    }
+
+    public float getHeight(Vector2f xz) {
+        float x = (xz.x - getWorldTranslation().x) / getWorldScale().x + halfSize;
+        float z = (xz.y - getWorldTranslation().z) / getWorldScale().z + halfSize;
+        if (x < 0 || z < 0 || x > size - 1 || z > size - 1)
+            return Float.NaN;
+        return getHeight(x, z) * getWorldScale().y;
+    }
+
+    /**
+     * Interpolate the height on the triangles of the full resolution grid,
+     * in heightmap coordinates.
+     */
+    private float getHeight(float x, float z) {
+        int col = Math.min((int) x, size - 2);
+        int row = Math.min((int) z, size - 2);
+        float dx = x - col;
+        float dz = z - row;
+        float h00 = getHeightmapHeight(col, row);
+        float h11 = getHeightmapHeight(col + 1, row + 1);
+        if (dz > dx) {
+            float h01 = getHeightmapHeight(col, row + 1);
+            return h00 + dz * (h01 - h00) + dx * (h11 - h01);
+        } else {
+            float h10 = getHeightmapHeight(col + 1, row);
+            return h00 + dx * (h10 - h00) + dz * (h11 - h10);
+        }
+    }
+
+    public Vector3f getNormal(Vector2f xz) {
+        float x = (xz.x - getWorldTranslation().x) / getWorldScale().x + halfSize;
+        float z = (xz.y - getWorldTranslation().z) / getWorldScale().z + halfSize;
+        if (x < 0 || z < 0 || x > size - 1 || z > size - 1)
+            return null;
+        // the average of the normals at the corners of the grid cell
+        int col = (int) x;
+        int row = (int) z;
+        Vector3f normal = getGridNormal(col, row, null);
+        normal.addLocal(getGridNormal(col + 1, row, null));
+        normal.addLocal(getGridNormal(col, row + 1, null));
+        normal.addLocal(getGridNormal(col + 1, row + 1, null));
+        return normal.normalizeLocal();
+    }
+
+    /**
+     * The world space normal at a heightmap point from the central
+     * differences of the heights around it.
+     */
+    private Vector3f getGridNormal(int x, int z, Vector3f store) {
+        if (store == null)
+            store = new Vector3f();
+        Vector3f scale = getWorldScale();
+        float dx = (getHeightmapHeight(x + 1, z) - getHeightmapHeight(x - 1, z)) / 2f;
+        float dz = (getHeightmapHeight(x, z + 1) - getHeightmapHeight(x, z - 1)) / 2f;
+        store.set(-dx * scale.y / scale.x, 1, -dz * scale.y / scale.z);
+        return store.normalizeLocal();
+    }
+
+    public void setHeight(Vector2f xz, float height) {
+        List<Vector2f> coord = new ArrayList<Vector2f>();
+        coord.add(xz);
+        List<Float> h = new ArrayList<Float>();
+        h.add(height);
+
+        setHeight(coord, h);
+    }
+
+    public void adjustHeight(Vector2f xz, float delta) {
+        List<Vector2f> coord = new ArrayList<Vector2f>();
+        coord.add(xz);
+        List<Float> h = new ArrayList<Float>();
+        h.add(delta);
+
+        adjustHeight(coord, h);
+    }
+
+    public void setHeight(List<Vector2f> xz, List<Float> height) {
+        setHeight(xz, height, true);
+    }
+
+    public void adjustHeight(List<Vector2f> xz, List<Float> height) {
+        setHeight(xz, height, false);
+    }
+
+    /**
+     * Change the heights in the texture data, the whole texture is uploaded
+     * again on the next frame.
+     */
+    protected void setHeight(List<Vector2f> xz, List<Float> height, boolean overrideHeight) {
+        if (xz.size() != height.size())
+            throw new IllegalArgumentException("Both lists must be the same length!");
+
+        boolean rangeChanged = false;
+        for (int i = 0; i < xz.size(); i++) {
+            int x = Math.round((xz.get(i).x - getWorldTranslation().x) / getWorldScale().x + halfSize);
+            int z = Math.round((xz.get(i).y - getWorldTranslation().z) / getWorldScale().z + halfSize);
+            if (!isInside(x, z))
+                continue;
+            int idx = z * size + x;
+            float h = overrideHeight ? height.get(i) : heights.get(idx) + height.get(i);
+            heights.put(idx, h);
+            if (h < minHeight || h > maxHeight) {
+                minHeight = Math.min(minHeight, h);
+                maxHeight = Math.max(maxHeight, h);
+                rangeChanged = true;
+            }
+        }
+        heightTexture.getImage().setUpdateNeeded();
+        if (rangeChanged)
+            updateLevelBounds();
+    }
+
+    public float[] getHeightMap() {
+        float[] heightMap = new float[size * size];
+        heights.position(0);
+        heights.get(heightMap);
+        heights.position(0);
+        return heightMap;
+    }
+
+    public int getMaxLod() {
+        return levels - 1;
+    }
+
+    /**
+     * The level meshes never change, there is nothing to lock.
+     */
+    public void setLocked(boolean locked) {
+    }
+
+    /**
+     * The levels do not use entropy, this does nothing.
+     */
+    public void generateEntropy(ProgressMonitor monitor) {
+        if (monitor != null)
+            monitor.progressComplete();
+    }
+
+    public int getTerrainSize() {
+        return size;
+    }
+
+    public int getNumMajorSubdivisions() {
+        return 1;
+    }
+
+    /**
+     * Only rays collide with the terrain, they are marched over the full
+     * resolution heights. The level meshes themselves are flat.
+     */
+    @Override
+    public int collideWith(Collidable other, CollisionResults results) {
+        if (!(other instanceof Ray))
+            return 0;
+        Ray ray = (Ray) other;
+        Vector3f scale = getWorldScale();
+        Vector3f translation = getWorldTranslation();
+        Vector3f origin = ray.getOrigin();
+        Vector3f direction = ray.getDirection();
+
+        // clip the ray to the box of the terrain
+        float[] min = {translation.x - halfSize * scale.x, translation.y + minHeight * scale.y, translation.z - halfSize * scale.z};
+        float[] max = {translation.x + halfSize * scale.x, translation.y + maxHeight * scale.y, translation.z + halfSize * scale.z};
+        float[] o = {origin.x, origin.y, origin.z};
+        float[] d = {direction.x, direction.y, direction.z};
+        float tStart = 0, tEnd = ray.getLimit();
+        for (int i = 0; i < 3; i++) {
+            if (Math.abs(d[i]) < FastMath.ZERO_TOLERANCE) {
+                if (o[i] < min[i] || o[i] > max[i])
+                    return 0;
+                continue;
+            }
+            float t1 = (min[i] - o[i]) / d[i];
+            float t2 = (max[i] - o[i]) / d[i];
+            tStart = Math.max(tStart, Math.min(t1, t2));
+            tEnd = Math.min(tEnd, Math.max(t1, t2));
+        }
+        if (tStart > tEnd)
+            return 0;
+
+        // half a grid cell at a time, then bisect the crossing
+        float step = Math.min(scale.x, scale.z) / 2f;
+        Vector2f xz = new Vector2f();
+        float last = tStart;
+        float lastAbove = aboveTerrain(origin, direction, tStart, xz);
+        for (float t = tStart; t < tEnd + step; t += step) {
+            float current = Math.min(t, tEnd);
+            float above = aboveTerrain(origin, direction, current, xz);
+            if (lastAbove >= 0 && above < 0) {
+                float low = last, high = current;
+                for (int i = 0; i < 16; i++) {
+                    float mid = (low + high) / 2f;
+                    if (aboveTerrain(origin, direction, mid, xz) >= 0)
+                        low = mid;
+                    else
+                        high = mid;
+                }
+                Vector3f contact = direction.mult(high).addLocal(origin);
+                xz.set(contact.x, contact.z);
+                CollisionResult result = new CollisionResult(contact, high);
+                result.setContactNormal(getNormal(xz));
+                result.setGeometry(levelGeometries[0]);
+                results.addCollision(result);
+                return 1;
+            }
+            last = current;
+            lastAbove = above;
+        }
+        return 0;
+    }
+
+    private float aboveTerrain(Vector3f origin, Vector3f direction, float t, Vector2f xz) {
+        xz.set(origin.x + direction.x * t, origin.z + direction.z * t);
+        float height = getHeight(xz);
+        if (Float.isNaN(height))
+            return 1;
+        return origin.y + direction.y * t - (height + getWorldTranslation().y);
+    }
+
+    @Override
+    public ClipmapTerrain clone() {
+        return clone(true);
+    }
+
+    /**
+     * The clone gets its own heights, level meshes and material, as the
+     * material holds the height texture.
+     */
+    @Override
+    public ClipmapTerrain clone(boolean cloneMaterials) {
+        ClipmapTerrain clone = (ClipmapTerrain) super.clone(false);
+        clone.detachAllChildren();
+        clone.worldToTerrain = new Matrix4f();
+        ByteBuffer data = BufferUtils.createByteBuffer(size * size * 4);
+        clone.heights = data.asFloatBuffer();
+        clone.heights.put(getHeightMap());
+        clone.heightTexture = createHeightTexture(new Image(Format.Luminance32F, size, size, data, ColorSpace.Linear));
+        clone.material = null;
+        clone.createLevels();
+        if (material != null)
+            clone.setMaterial(material.clone());
+        return clone;
+    }
+
+    @Override
+    public void write(JmeExporter e) throws IOException {
+        super.write(e);
+        OutputCapsule c = e.getCapsule(this);
+        c.write(size, "size", 0);
+        c.write(clipmapSize, "clipmapSize", DEFAULT_CLIPMAP_SIZE);
+        c.write(levels, "levels", 1);
+        c.write(heightTexture, "heightTexture", null);
+        c.write(material, "material", null);
+    }
+
+    @Override
+    public void read(JmeImporter e) throws IOException {
+        super.read(e);
+        InputCapsule c = e.getCapsule(this);
+        size = c.readInt("size", 0);
+        clipmapSize = c.readInt("clipmapSize", DEFAULT_CLIPMAP_SIZE);
+        levels = c.readInt("levels", 1);
+        halfSize = (size - 1) / 2f;
+        heightTexture = (Texture2D) c.readSavable("heightTexture", null);
+        heights = heightTexture.getImage().getData(0).duplicate().order(ByteOrder.nativeOrder()).asFloatBuffer();
+        updateHeightRange();
+        // the level geometries are created again
+        detachAllChildren();
+        createLevels();
+        Material mat = (Material) c.readSavable("material", null);
+        if (mat != null)
+            setMaterial(mat);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.terrain.clipmap;
+
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.ViewPort;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.control.AbstractControl;
+import com.jme3.scene.control.Control;
+
+/**
+ * Moves the levels of a {@link ClipmapTerrain} around the camera every
+ * frame.
+ *
+ * This control serializes, but it does not save the Camera reference.
+ * This camera reference has to be manually added in when you load the
+ * terrain to the scene!
+ */
+public class ClipmapTerrainControl extends AbstractControl {
+
+    private Camera camera;
+
+    public ClipmapTerrainControl() {
+    }
+
+    public ClipmapTerrainControl(Camera camera) {
+        this.camera = camera;
+    }
+
+    @Override
+    protected void controlUpdate(float tpf) {
+        if (camera != null)
+            ((ClipmapTerrain) spatial).update(camera.getLocation());
+    }
+
+    @Override
+    protected void controlRender(RenderManager rm, ViewPort vp) {
+    }
+
+    @Override
+    public void setSpatial(Spatial spatial) {
+        if (spatial != null && !(spatial instanceof ClipmapTerrain))
+            throw new IllegalArgumentException("This control only works with a ClipmapTerrain");
+        super.setSpatial(spatial);
+    }
+
+    public Control cloneForSpatial(Spatial spatial) {
+        ClipmapTerrainControl control = new ClipmapTerrainControl(camera);
+        control.setSpatial(spatial);
+        control.setEnabled(isEnabled());
+        return control;
+    }
+
+    public Camera getCamera() {
+        return camera;
+    }
+
+    public void setCamera(Camera camera) {
+        this.camera = camera;
+    }
+}
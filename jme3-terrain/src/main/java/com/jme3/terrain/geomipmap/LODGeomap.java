@@ -39,7 +39,10 @@ import com.jme3.math.Vector2f;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.Mesh;
 import com.jme3.scene.Mesh.Mode;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.VertexBuffer.Format;
 import com.jme3.scene.VertexBuffer.Type;
+import com.jme3.scene.VertexBuffer.Usage;
 import com.jme3.scene.mesh.IndexBuffer;
 import com.jme3.terrain.GeoMap;
 import com.jme3.util.BufferUtils;
@@ -67,6 +70,14 @@ import java.nio.ShortBuffer;
  */
 public class LODGeomap extends GeoMap {
 
+    /**
+     * Number of index buffers kept by the shared cache, the LOD differences
+     * of one patch size need less than a hundred of them.
+     */
+    private static final int INDEX_BUFFER_CACHE_SIZE = 512;
+    private static final LRUCache<IndexBufferKey, VertexBuffer> indexBufferCache
+            = new LRUCache<IndexBufferKey, VertexBuffer>(INDEX_BUFFER_CACHE_SIZE);
+
     public LODGeomap() {
     }
 
@@ -87,12 +98,7 @@ public class LODGeomap extends GeoMap {
         FloatBuffer pb = writeVertexArray(null, scale, center);
         FloatBuffer texb = writeTexCoordArray(null, tcOffset, tcScale, offsetAmount, totalSize);
         FloatBuffer nb = writeNormalArray(null, scale);
-        Buffer ib;
-        IndexBuffer idxB = writeIndexArrayLodDiff(lod, rightLod, topLod, leftLod, bottomLod, totalSize);
-        if (idxB.getBuffer() instanceof IntBuffer)
-            ib = (IntBuffer)idxB.getBuffer();
-        else
-            ib = (ShortBuffer)idxB.getBuffer();
+        VertexBuffer ib = getIndexBufferLodDiff(lod, rightLod, topLod, leftLod, bottomLod, totalSize);
         FloatBuffer bb = BufferUtils.createFloatBuffer(getWidth() * getHeight() * 3);
         FloatBuffer tanb = BufferUtils.createFloatBuffer(getWidth() * getHeight() * 3);
         writeTangentArray(nb, tanb, bb, texb, scale);
@@ -103,10 +109,7 @@ public class LODGeomap extends GeoMap {
         m.setBuffer(Type.Tangent, 3, tanb);
         m.setBuffer(Type.Binormal, 3, bb);
         m.setBuffer(Type.TexCoord, 2, texb);
-        if (ib instanceof IntBuffer)
-            m.setBuffer(Type.Index, 3, (IntBuffer)ib);
-        else if (ib instanceof ShortBuffer)
-            m.setBuffer(Type.Index, 3, (ShortBuffer)ib);
+        m.setBuffer(ib);
         m.setStatic();
         m.updateBound();
         return m;
@@ -150,6 +153,60 @@ public class LODGeomap extends GeoMap {
         return store;
     }
 
+    /**
+     * Get the index buffer of {@link #writeIndexArrayLodDiff}, shared by all
+     * geomaps of the same size. The indices only depend on the size, the LOD
+     * and which neighbours have a lower detail, so every combination is
+     * written once and kept in a cache. The buffer must not be modified.
+     */
+    public VertexBuffer getIndexBufferLodDiff(int lod, boolean rightLod, boolean topLod, boolean leftLod, boolean bottomLod, int totalSize) {
+        IndexBufferKey key = new IndexBufferKey(getWidth(), false, lod,
+                rightLod ? 1 : 0, topLod ? 1 : 0, leftLod ? 1 : 0, bottomLod ? 1 : 0);
+        VertexBuffer vb = indexBufferCache.get(key);
+        if (vb == null) {
+            vb = cacheIndexBuffer(key, writeIndexArrayLodDiff(lod, rightLod, topLod, leftLod, bottomLod, totalSize));
+        }
+        return vb;
+    }
+
+    /**
+     * Get the index buffer of {@link #writeIndexArrayLodVariable}, shared by
+     * all geomaps of the same size like
+     * {@link #getIndexBufferLodDiff(int, boolean, boolean, boolean, boolean, int) }.
+     */
+    public VertexBuffer getIndexBufferLodVariable(int lod, int rightLod, int topLod, int leftLod, int bottomLod, int totalSize) {
+        IndexBufferKey key = new IndexBufferKey(getWidth(), true, lod, rightLod, topLod, leftLod, bottomLod);
+        VertexBuffer vb = indexBufferCache.get(key);
+        if (vb == null) {
+            vb = cacheIndexBuffer(key, writeIndexArrayLodVariable(lod, rightLod, topLod, leftLod, bottomLod, totalSize));
+        }
+        return vb;
+    }
+
+    private static VertexBuffer cacheIndexBuffer(IndexBufferKey key, IndexBuffer indices) {
+        Buffer buffer = indices.getBuffer();
+        VertexBuffer vb = new VertexBuffer(Type.Index);
+        vb.setupData(Usage.Static, 3,
+                buffer instanceof IntBuffer ? Format.UnsignedInt : Format.UnsignedShort, buffer);
+        synchronized (indexBufferCache) {
+            // another thread may have written the same indices meanwhile,
+            // keep the first buffer so it is only uploaded once
+            VertexBuffer cached = indexBufferCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            indexBufferCache.put(key, vb);
+        }
+        return vb;
+    }
+
+    /**
+     * Removes all shared index buffers, they are written again when needed.
+     */
+    public static void clearIndexBufferCache() {
+        indexBufferCache.clear();
+    }
+
     /**
      * Create the LOD index array that will seam its edges with its neighbour's LOD.
      * This is a scary method!!! It will break your mind.
@@ -658,9 +715,8 @@ public class LODGeomap extends GeoMap {
         }
         binormalStore.rewind();
 
-        Vector3f normal = new Vector3f();
-        Vector3f tangent = new Vector3f();
-        Vector3f binormal = new Vector3f();
+        writeTangentArray(normalBuffer, tangentStore, binormalStore, 0, 0, getWidth() - 1, getHeight() - 1);
+
         /*Vector3f v1 = new Vector3f();
         Vector3f v2 = new Vector3f();
         Vector3f v3 = new Vector3f();
@@ -668,19 +724,6 @@ public class LODGeomap extends GeoMap {
         Vector2f t2 = new Vector2f();
         Vector2f t3 = new Vector2f();*/
 
-        for (int r = 0; r < getHeight(); r++) {
-            for (int c = 0; c < getWidth(); c++) {
-                
-                int idx = (r * getWidth() + c) * 3;
-                normal.set(normalBuffer.get(idx), normalBuffer.get(idx+1), normalBuffer.get(idx+2));
-                tangent.set(normal.cross(new Vector3f(0,0,1)));
-                binormal.set(new Vector3f(1,0,0).cross(normal));
-                
-                BufferUtils.setInBuffer(tangent.normalizeLocal(), tangentStore, (r * getWidth() + c)); // save the tangent
-                BufferUtils.setInBuffer(binormal.normalizeLocal(), binormalStore, (r * getWidth() + c)); // save the binormal
-            }
-        }
-
 /*        for (int r = 0; r < getHeight(); r++) {
             for (int c = 0; c < getWidth(); c++) {
 
@@ -726,6 +769,32 @@ public class LODGeomap extends GeoMap {
         return new FloatBuffer[]{tangentStore, binormalStore};
     }
 
+    /**
+     * Write the tangents and binormals of the vertices from column minX, row
+     * minZ to column maxX, row maxZ (inclusive) into the given buffers,
+     * leaving the other vertices untouched. The buffers are not rewound.
+     */
+    public void writeTangentArray(FloatBuffer normalBuffer, FloatBuffer tangentStore, FloatBuffer binormalStore, int minX, int minZ, int maxX, int maxZ) {
+        Vector3f normal = new Vector3f();
+        Vector3f tangent = new Vector3f();
+        Vector3f binormal = new Vector3f();
+        Vector3f unitX = new Vector3f(1, 0, 0);
+        Vector3f unitZ = new Vector3f(0, 0, 1);
+
+        for (int r = minZ; r <= maxZ; r++) {
+            for (int c = minX; c <= maxX; c++) {
+
+                int idx = (r * getWidth() + c) * 3;
+                normal.set(normalBuffer.get(idx), normalBuffer.get(idx+1), normalBuffer.get(idx+2));
+                normal.cross(unitZ, tangent);
+                unitX.cross(normal, binormal);
+
+                BufferUtils.setInBuffer(tangent.normalizeLocal(), tangentStore, (r * getWidth() + c)); // save the tangent
+                BufferUtils.setInBuffer(binormal.normalizeLocal(), binormalStore, (r * getWidth() + c)); // save the binormal
+            }
+        }
+    }
+
     /**
      * 
      * @param v Takes 3 vertices: root, right, bottom
@@ -791,6 +860,15 @@ public class LODGeomap extends GeoMap {
         }
         store.rewind();
 
+        return writeNormalArray(store, scale, 0, 0, getWidth() - 1, getHeight() - 1);
+    }
+
+    /**
+     * Write the normals of the vertices from column minX, row minZ to column
+     * maxX, row maxZ (inclusive) into the store, leaving the other vertices
+     * untouched. Used to update the normals around edited heights only.
+     */
+    public FloatBuffer writeNormalArray(FloatBuffer store, Vector3f scale, int minX, int minZ, int maxX, int maxZ) {
         TempVars vars = TempVars.get();
         
         Vector3f rootPoint = vars.vect1;
@@ -802,8 +880,8 @@ public class LODGeomap extends GeoMap {
         Vector3f tmp1 = vars.vect6;
 
         // calculate normals for each polygon
-        for (int r = 0; r < getHeight(); r++) {
-            for (int c = 0; c < getWidth(); c++) {
+        for (int r = minZ; r <= maxZ; r++) {
+            for (int c = minX; c <= maxX; c++) {
 
                 rootPoint.set(0, getValue(c, r), 0);
                 Vector3f normal = vars.vect8;
@@ -960,6 +1038,49 @@ public class LODGeomap extends GeoMap {
         }
     }
 
+    /**
+     * Identifies the indices of a geomap size, LOD and neighbour LODs.
+     */
+    private static final class IndexBufferKey {
+
+        private final int width;
+        private final boolean variable;
+        private final int lod, right, top, left, bottom;
+
+        IndexBufferKey(int width, boolean variable, int lod, int right, int top, int left, int bottom) {
+            this.width = width;
+            this.variable = variable;
+            this.lod = lod;
+            this.right = right;
+            this.top = top;
+            this.left = left;
+            this.bottom = bottom;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof IndexBufferKey)) {
+                return false;
+            }
+            IndexBufferKey other = (IndexBufferKey) obj;
+            return width == other.width && variable == other.variable && lod == other.lod
+                    && right == other.right && top == other.top
+                    && left == other.left && bottom == other.bottom;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = width;
+            hash = 31 * hash + (variable ? 1 : 0);
+            hash = 31 * hash + lod;
+            hash = 31 * hash + right;
+            hash = 31 * hash + top;
+            hash = 31 * hash + left;
+            hash = 31 * hash + bottom;
+            return hash;
+        }
+    }
+
     /**
      * Get the two triangles that make up the grid section at the specified point.
      *
@@ -983,10 +1104,10 @@ public class LODGeomap extends GeoMap {
             return Float.NaN;
         }
         
-        float h1 = hdata[index];                // top left
-        float h2 = hdata[index + 1];            // top right
-        float h3 = hdata[index + width];        // bottom left
-        float h4 = hdata[index + width + 1];    // bottom right
+        float h1 = getValue(index);                // top left
+        float h2 = getValue(index + 1);            // top right
+        float h3 = getValue(index + width);        // bottom left
+        float h4 = getValue(index + width + 1);    // bottom right
 
         //float dix = (x % 1f) ;
         //float diz = (z % 1f) ;
@@ -1088,10 +1209,10 @@ public class LODGeomap extends GeoMap {
         Triangle t = new Triangle(new Vector3f(), new Vector3f(), new Vector3f());
         Triangle t2 = new Triangle(new Vector3f(), new Vector3f(), new Vector3f());
 
-        float h1 = hdata[index];                // top left
-        float h2 = hdata[index + 1];            // top right
-        float h3 = hdata[index + width];        // bottom left
-        float h4 = hdata[index + width + 1];    // bottom right
+        float h1 = getValue(index);                // top left
+        float h2 = getValue(index + 1);            // top right
+        float h3 = getValue(index + width);        // bottom left
+        float h4 = getValue(index + width + 1);    // bottom right
 
 
         if ((gridX == 0 && gridY == 0) || (gridX == width - 2 && gridY == width - 2)) {
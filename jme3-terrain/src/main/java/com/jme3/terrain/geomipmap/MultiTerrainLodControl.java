@@ -140,13 +140,10 @@ public class MultiTerrainLodControl extends TerrainLodControl {
                 terrainQuad.fixEdges(updated);
             }
             
-            for (TerrainQuad terrainQuad : terrains) {
-                // perform the edge seaming, if it requires it
-                terrainQuad.reIndexPages(updated, lodCalculator.usesVariableLod());
-            }
+            // perform the edge seaming of the patches of all terrains at once
+            reIndexPatches(updated, lodCalculator.usesVariableLod());
             
             //setUpdateQuadLODs(updated); // set back to main ogl thread
-            setLodCalcRunning(false);
             
             return updated;
         }
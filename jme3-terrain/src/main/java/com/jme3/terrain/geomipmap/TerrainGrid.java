@@ -43,10 +43,14 @@ import com.jme3.math.Vector3f;
 import com.jme3.scene.Spatial;
 import com.jme3.scene.control.UpdateControl;
 import com.jme3.terrain.Terrain;
+import com.jme3.terrain.geomipmap.picking.BresenhamTerrainPicker;
+import com.jme3.terrain.geomipmap.picking.TerrainPicker;
 import com.jme3.terrain.heightmap.HeightMap;
 import com.jme3.terrain.heightmap.HeightMapGrid;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
@@ -69,9 +73,10 @@ import java.util.logging.Logger;
  * TerrainGrid will piggyback on the TerrainLodControl so it can use the camera for its
  * updates as well. It does this in the overwritten update() method.
  * </p><p>
- * It uses an LRU (Least Recently Used) cache of 16 terrain tiles (full TerrainQuadTrees). The
- * center 4 are the ones that are visible. As the camera moves, it checks what camera cell it is in
- * and will attach the now visible tiles.
+ * It uses an LRU (Least Recently Used) cache of terrain tiles (full TerrainQuadTrees), bounded
+ * by the memory of the tiles, see {@link #setCacheMemory(long)}. The 16 tiles around the camera
+ * and the attached ones are always kept, the center 4 are the ones that are visible. As the camera moves, it checks what
+ * camera cell it is in and will attach the now visible tiles.
  * </p><p>
  * The 'quadIndex' variable is a 4x4 array that represents the tiles. The center
  * four (index numbers: 5, 6, 9, 10) are what is visible. Each quadIndex value is an
@@ -96,6 +101,10 @@ import java.util.logging.Logger;
  * The tile loading is done on a background thread, and once the tile is loaded, then it is
  * attached to the qrid quad tree, back on the OGL thread. It will grab the terrain quad from
  * the LRU cache if it exists. If it does not exist, it will load in the new TerrainQuad tile.
+ * Tiles are loaded nearest first. The tiles the camera is heading to, judging by its velocity,
+ * are prefetched, see {@link #setPrefetchTime(float)}, and prefetches that are no longer ahead
+ * of the camera are cancelled before they start. {@link #requestTile(Vector3f)} gives a tile
+ * to wait on.
  * </p><p>
  * The loading of new tiles triggers events for any TerrainGridListeners. The events are:
  * <ul>
@@ -105,7 +114,11 @@ import java.util.logging.Logger;
  * </ul>
  * <p>
  * These allow physics to update, and other operation (often needed for loading the terrain) to occur
- * at the right time.
+ * at the right time. A TerrainGridTileLoadListener is told about every tile put in the cache,
+ * including the prefetched ones.
+ * </p><p>
+ * A single loader thread is used unless {@link #setLoaderThreads(int)} asks for more. The loader
+ * threads stop once they have been idle for a while, or right away with {@link #stopTileLoading()}.
  * </p>
  * @author Anthyon
  */
@@ -117,14 +130,39 @@ public class TerrainGrid extends TerrainQuad {
     protected HeightMapGrid heightMapGrid;
     private TerrainGridTileLoader gridTileLoader;
     protected Vector3f[] quadIndex;
+    /**
+     * the center of the four visible tiles, relative to the camera cell
+     */
+    private static final Vector3f CENTER_OFFSET = new Vector3f(0.5f, 0, 0.5f);
     protected Set<TerrainGridListener> listeners = new HashSet<TerrainGridListener>();
+    protected Set<TerrainGridTileLoadListener> tileLoadListeners = new HashSet<TerrainGridTileLoadListener>();
     protected Material material;
-    //cache  needs to be 1 row (4 cells) larger than what we care is cached
-    protected LRUCache<Vector3f, TerrainQuad> cache = new LRUCache<Vector3f, TerrainQuad>(20);
+    // the 16 tiles of the grid and the attached ones are pinned, see pinTiles()
+    private final TerrainTileCache tileCache = new TerrainTileCache(TerrainTileCache.DEFAULT_MAX_SIZE);
+    /**
+     * the tile cache, as seen by subclasses
+     */
+    protected LRUCache<Vector3f, TerrainQuad> cache = tileCache;
+    /**
+     * the cells of the attached tiles, only used on the render thread
+     */
+    private final HashMap<TerrainQuad, Vector3f> attachedCells = new HashMap<TerrainQuad, Vector3f>();
     protected int cellsLoaded = 0;
     protected int[] gridOffset;
     protected boolean runOnce = false;
     protected ExecutorService cacheExecutor;
+    private TileLoadQueue tileQueue;
+    private int loaderThreads = 1;
+    private float prefetchTime = 1f;
+    private Vector3f lastCamLocation;
+    private long lastCamTime;
+    private final Vector3f camVelocity = new Vector3f();
+    private Vector3f lastPrefetchCell;
+    /**
+     * Camera cells passed on the way to the prefetched cell that get their
+     * tiles prefetched too, so very fast cameras do not queue large areas.
+     */
+    private static final int MAX_PREFETCH_STEPS = 4;
 
     protected class UpdateQuadCache implements Runnable {
 
@@ -144,26 +182,43 @@ public class TerrainGrid extends TerrainQuad {
          * neighbours).
          */
         public void run() {
+            // queue all missing tiles at once, nearest to the new center first
+            Future<TerrainQuad>[] loading = new Future[16];
+            for (int quadIdx = 0; quadIdx < 16; quadIdx++) {
+                Vector3f quadCell = location.add(quadIndex[quadIdx]);
+                if (!tileCache.contains(quadCell)) {
+                    float distance = quadIndex[quadIdx].distance(CENTER_OFFSET);
+                    loading[quadIdx] = getTileQueue().request(quadCell, distance, true);
+                }
+            }
+
             for (int i = 0; i < 4; i++) {
                 for (int j = 0; j < 4; j++) {
                     int quadIdx = i * 4 + j;
                     final Vector3f quadCell = location.add(quadIndex[quadIdx]);
-                    TerrainQuad q = cache.get(quadCell);
+                    TerrainQuad q = tileCache.get(quadCell);
                     if (q == null) {
-                        if (heightMapGrid != null) {
-                            // create the new Quad since it doesn't exist
-                            HeightMap heightMapAt = heightMapGrid.getHeightMapAt(quadCell);
-                            q = new TerrainQuad(getName() + "Quad" + quadCell, patchSize, quadSize, heightMapAt == null ? null : heightMapAt.getHeightMap());
-                            q.setMaterial(material.clone());
-                            log.log(Level.FINE, "Loaded TerrainQuad {0} from HeightMapGrid", q.getName());
-                        } else if (gridTileLoader != null) {
-                            q = gridTileLoader.getTerrainQuadAt(quadCell);
-                            // only clone the material to the quad if it doesn't have a material of its own
-                            if(q.getMaterial()==null) q.setMaterial(material.clone());
-                            log.log(Level.FINE, "Loaded TerrainQuad {0} from TerrainQuadGrid", q.getName());
+                        if (loading[quadIdx] == null) {
+                            // evicted since it was found in the cache, load
+                            // it on the loader threads like the others
+                            loading[quadIdx] = getTileQueue().request(quadCell, 0, true);
+                        }
+                        try {
+                            q = loading[quadIdx].get();
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        } catch (CancellationException ex) {
+                            // the loader threads were stopped
+                            return;
+                        } catch (ExecutionException ex) {
+                            log.log(Level.SEVERE, "Could not load the tile at " + quadCell, ex.getCause());
                         }
                     }
-                    cache.put(quadCell, q);
+                    if (q == null) {
+                        continue;
+                    }
+                    tileCache.put(quadCell, q);
 
                     
                     final int quadrant = getQuadrant(quadIdx);
@@ -211,6 +266,210 @@ public class TerrainGrid extends TerrainQuad {
         }
     }
 
+    /**
+     * Load the tile of a cell, unless it is in the cache, and put it in the
+     * cache. This is run on the loader threads.
+     * 
+     * @return the tile, or null if there is no tile loader
+     */
+    protected TerrainQuad loadTile(final Vector3f quadCell) {
+        TerrainQuad q = tileCache.get(quadCell);
+        if (q != null) {
+            return q;
+        }
+        if (heightMapGrid != null) {
+            // create the new Quad since it doesn't exist
+            HeightMap heightMapAt = heightMapGrid.getHeightMapAt(quadCell);
+            q = new TerrainQuad(getName() + "Quad" + quadCell, patchSize, quadSize, heightMapAt == null ? null : heightMapAt.getHeightMap());
+            q.setMaterial(material.clone());
+            log.log(Level.FINE, "Loaded TerrainQuad {0} from HeightMapGrid", q.getName());
+        } else if (gridTileLoader != null) {
+            q = gridTileLoader.getTerrainQuadAt(quadCell);
+            // only clone the material to the quad if it doesn't have a material of its own
+            if(q.getMaterial()==null) q.setMaterial(material.clone());
+            log.log(Level.FINE, "Loaded TerrainQuad {0} from TerrainQuadGrid", q.getName());
+        } else {
+            return null;
+        }
+        tileCache.put(quadCell, q);
+
+        final TerrainQuad loaded = q;
+        getControl(UpdateControl.class).enqueue(new Callable() {
+            // back on the OpenGL thread:
+            public Object call() throws Exception {
+                for (TerrainGridTileLoadListener l : tileLoadListeners) {
+                    l.tileLoaded(quadCell, loaded);
+                }
+                return null;
+            }
+        });
+        return q;
+    }
+
+    protected synchronized TileLoadQueue getTileQueue() {
+        if (tileQueue == null) {
+            tileQueue = new TileLoadQueue(this, loaderThreads);
+        }
+        return tileQueue;
+    }
+
+    /**
+     * Stops the tile loader threads. Tiles that did not start loading are
+     * cancelled. The threads are started again when tiles are needed.
+     */
+    public synchronized void stopTileLoading() {
+        if (tileQueue != null) {
+            tileQueue.shutdown();
+            tileQueue = null;
+        }
+        lastPrefetchCell = null;
+    }
+
+    /**
+     * @return the number of threads loading tiles
+     */
+    public int getLoaderThreads() {
+        return loaderThreads;
+    }
+
+    /**
+     * Set the number of threads loading tiles, 1 by default. With more than
+     * one thread the {@link HeightMapGrid} or {@link TerrainGridTileLoader}
+     * is called for several tiles at once, so it must be thread safe.
+     * Takes effect when the loader threads are started again, see
+     * {@link #stopTileLoading()}.
+     * 
+     * @param threads the number of threads, at least 1
+     */
+    public void setLoaderThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one loader thread");
+        }
+        this.loaderThreads = threads;
+    }
+
+    /**
+     * Keep the tiles of the grid around the camera cell and the attached
+     * tiles in the cache, so prefetched tiles cannot push them out.
+     * Runs on the rendering thread.
+     */
+    protected void pinTiles(Vector3f camCell) {
+        Set<Vector3f> cells = new HashSet<Vector3f>(attachedCells.values());
+        for (Vector3f index : quadIndex) {
+            cells.add(camCell.add(index));
+        }
+        tileCache.setPinned(cells);
+    }
+
+    /**
+     * Queue the tiles the camera is heading to, judging by its velocity over
+     * the last calls. Prefetched tiles that are no longer ahead of the camera
+     * are taken off the queue if their loading has not started.
+     * 
+     * @param location the camera location
+     */
+    protected void prefetchTiles(Vector3f location) {
+        long now = System.nanoTime();
+        if (lastCamLocation == null) {
+            lastCamLocation = location.clone();
+            lastCamTime = now;
+            return;
+        }
+        float elapsed = (now - lastCamTime) / 1000000000f;
+        if (elapsed <= 0) {
+            return;
+        }
+        // smooth the velocity over about a quarter of a second
+        Vector3f velocity = location.subtract(lastCamLocation).divideLocal(elapsed);
+        camVelocity.interpolateLocal(velocity, Math.min(1f, elapsed * 4f));
+        lastCamLocation.set(location);
+        lastCamTime = now;
+        if (prefetchTime <= 0 || (heightMapGrid == null && gridTileLoader == null)) {
+            return;
+        }
+
+        Vector3f camCell = getCamCell(location);
+        Vector3f aheadCell = getCamCell(location.add(camVelocity.mult(prefetchTime)));
+        if (aheadCell.equals(lastPrefetchCell)) {
+            return;
+        }
+        lastPrefetchCell = aheadCell;
+
+        // the grids around the camera cells on the way, nearest first
+        Set<Vector3f> wanted = new LinkedHashSet<Vector3f>();
+        int steps = (int) Math.max(Math.abs(aheadCell.x - camCell.x), Math.abs(aheadCell.z - camCell.z));
+        steps = Math.min(steps, MAX_PREFETCH_STEPS);
+        for (int step = 1; step <= steps; step++) {
+            float t = step / (float) steps;
+            Vector3f cell = new Vector3f(Math.round(camCell.x + (aheadCell.x - camCell.x) * t), 0,
+                    Math.round(camCell.z + (aheadCell.z - camCell.z) * t));
+            for (Vector3f index : quadIndex) {
+                wanted.add(cell.add(index));
+            }
+        }
+        TileLoadQueue queue = getTileQueue();
+        queue.cancelPrefetches(wanted);
+        Vector3f center = camCell.add(CENTER_OFFSET);
+        for (Vector3f cell : wanted) {
+            if (!tileCache.contains(cell)) {
+                queue.request(cell, cell.distance(center), false);
+            }
+        }
+    }
+
+    /**
+     * Queue the tile of a cell for loading, ahead of the prefetched tiles.
+     * The tile is put in the cache and the tile load listeners are notified,
+     * it is only attached once the camera gets near it.
+     * 
+     * @param cellCoordinate integer cell coordinates
+     * @return the tile, once it is loaded
+     */
+    public Future<TerrainQuad> requestTile(Vector3f cellCoordinate) {
+        Vector3f cell = cellCoordinate.clone();
+        return getTileQueue().request(cell, cell.distance(currentCamCell.add(CENTER_OFFSET)), true);
+    }
+
+    /**
+     * Take all prefetched tiles off the queue that did not start loading yet.
+     */
+    public void cancelPrefetching() {
+        lastPrefetchCell = null;
+        getTileQueue().cancelPrefetches(new HashSet<Vector3f>());
+    }
+
+    /**
+     * @return the seconds of camera movement the tiles are prefetched for
+     */
+    public float getPrefetchTime() {
+        return prefetchTime;
+    }
+
+    /**
+     * Set how far ahead tiles are prefetched, as the seconds the camera takes
+     * to get there at its current velocity. 0 turns prefetching off.
+     */
+    public void setPrefetchTime(float prefetchTime) {
+        this.prefetchTime = prefetchTime;
+    }
+
+    /**
+     * @return the memory budget of the tile cache in bytes
+     */
+    public long getCacheMemory() {
+        return tileCache.getMaxSize();
+    }
+
+    /**
+     * Set the memory budget of the tile cache. The 16 tiles around the camera
+     * and the attached tiles are kept even if they need more.
+     * 
+     * @param bytes the budget in bytes
+     */
+    public void setCacheMemory(long bytes) {
+        tileCache.setMaxSize(bytes);
+    }
+
     protected boolean isCenter(int quadIndex) {
         return quadIndex == 9 || quadIndex == 5 || quadIndex == 10 || quadIndex == 6;
     }
@@ -319,7 +578,7 @@ public class TerrainGrid extends TerrainQuad {
             return null;
         Vector3f tileCell = getTileCell(worldLocation.setY(0));
         tileCell = new Vector3f(Math.round(tileCell.x), tileCell.y, Math.round(tileCell.z));
-        return cache.get(tileCell);
+        return tileCache.get(tileCell);
     }
     
     /**
@@ -328,7 +587,7 @@ public class TerrainGrid extends TerrainQuad {
      * @return the terrain tile at that location
      */
     public Terrain getTerrainAtCell(Vector3f cellCoordinate) {
-        return cache.get(cellCoordinate);
+        return tileCache.get(cellCoordinate);
     }
     
     /**
@@ -347,6 +606,16 @@ public class TerrainGrid extends TerrainQuad {
         return cellLocation.mult(getLocalScale()).multLocal(quadSize - 1);
     }
     
+    /**
+     * The tiles are loaded and unloaded while the camera moves, so the grid
+     * has no height map of its own to build a picking pyramid from. Picking
+     * walks the patches of the loaded tiles instead.
+     */
+    @Override
+    protected TerrainPicker createPicker() {
+        return new BresenhamTerrainPicker(this);
+    }
+
     protected void removeQuad(TerrainQuad q) {
         if (q != null && ( (q.getQuadrant() > 0 && q.getQuadrant()<5) || q.getParent() != null) ) {
             for (TerrainGridListener l : listeners) {
@@ -354,6 +623,9 @@ public class TerrainGrid extends TerrainQuad {
             }
             q.setQuadrant((short)0);
             this.detachChild(q);
+            if (attachedCells.remove(q) != null) {
+                pinTiles(currentCamCell);
+            }
             cellsLoaded++; // For gridoffset calc., maybe the run() method is a better location for this.
         }
     }
@@ -367,6 +639,9 @@ public class TerrainGrid extends TerrainQuad {
         q.setQuadrant((short) quadrant);
         if (!shifted)
             this.attachChild(q);
+        if (!quadCell.equals(attachedCells.put(q, quadCell))) {
+            pinTiles(currentCamCell);
+        }
 
         Vector3f loc = quadCell.mult(this.quadSize - 1).subtract(quarterSize, 0, quarterSize);// quadrant location handled TerrainQuad automatically now
         q.setLocalTranslation(loc);
@@ -418,12 +693,14 @@ public class TerrainGrid extends TerrainQuad {
             yMin = 1;
         }
 
+        pinTiles(camCell);
+
         // Touch the items in the cache that we are and will be interested in.
         // We activate cells in the direction we are moving. If we didn't move 
         // either way in one of the axes (say X or Y axis) then they are all touched.
         for (int i = yMin; i < yMax; i++) {
             for (int j = xMin; j < xMax; j++) {
-                cache.get(camCell.add(quadIndex[i * 4 + j]));
+                tileCache.get(camCell.add(quadIndex[i * 4 + j]));
             }
         }
         
@@ -452,6 +729,14 @@ public class TerrainGrid extends TerrainQuad {
         this.listeners.remove(listener);
     }
 
+    public void addTileLoadListener(TerrainGridTileLoadListener listener) {
+        this.tileLoadListeners.add(listener);
+    }
+
+    public void removeTileLoadListener(TerrainGridTileLoadListener listener) {
+        this.tileLoadListeners.remove(listener);
+    }
+
     @Override
     public void setMaterial(Material mat) {
         this.material = mat;
@@ -487,7 +772,7 @@ public class TerrainGrid extends TerrainQuad {
         if (worldLocation == null)
             return null;
         Vector3f tileCell = getTileCell(worldLocation);
-        Terrain terrain = cache.get(tileCell);
+        Terrain terrain = tileCache.get(tileCell);
         if (terrain == null)
             return null; // terrain not loaded for that cell yet!
         return terrain.getMaterial(worldLocation);
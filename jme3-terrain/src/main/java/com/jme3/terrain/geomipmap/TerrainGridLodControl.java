@@ -49,6 +49,15 @@ public class TerrainGridLodControl extends TerrainLodControl {
         super(terrain, camera);
     }
     
+    /**
+     * Also stops the tile loader threads of the grid.
+     */
+    @Override
+    public void detachAndCleanUpControl() {
+        ((TerrainGrid) getSpatial()).stopTileLoading();
+        super.detachAndCleanUpControl();
+    }
+
     @Override
     protected void updateLOD(List<Vector3f> locations, LodCalculator lodCalculator) {
         TerrainGrid terrainGrid = (TerrainGrid)getSpatial();
@@ -72,6 +81,8 @@ public class TerrainGridLodControl extends TerrainLodControl {
             }
         }
         terrainGrid.runOnce = true;
+        // queue the tiles the camera is heading to
+        terrainGrid.prefetchTiles(cam);
         super.updateLOD(locations, lodCalculator);
     }
 }
@@ -46,6 +46,7 @@ import com.jme3.scene.control.Control;
 import com.jme3.terrain.Terrain;
 import com.jme3.terrain.geomipmap.lodcalc.DistanceLodCalculator;
 import com.jme3.terrain.geomipmap.lodcalc.LodCalculator;
+import com.jme3.util.ParallelTasks;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -57,6 +58,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -73,10 +75,14 @@ import java.util.logging.Logger;
  * This camera reference has to be manually added in when you load the
  * terrain to the scene!
  * 
+ * The LOD is calculated on a pool of daemon threads shared by all terrain LOD
+ * controls, the index buffers of the patches are rebuilt in parallel. The
+ * results are handed back to the render thread and applied all at once on the
+ * next update.
+ * 
  * When the control or the terrain are removed from the scene, you should call
- * TerrainLodControl.detachAndCleanUpControl() to remove any threads it created
- * to handle the LOD processing. If you supply your own executor service, then
- * you have to handle its thread termination yourself.
+ * TerrainLodControl.detachAndCleanUpControl(). If you supply your own executor
+ * service, then you have to handle its thread termination yourself.
  * 
  * @author Brent Owens
  */
@@ -97,7 +103,18 @@ public class TerrainLodControl extends AbstractControl {
     
     protected ExecutorService executor;
     protected Future<HashMap<String, UpdatedTerrainPatch>> indexer;
+    /**
+     * the patches of the last finished LOD calculation, waiting for the
+     * render thread to apply them
+     */
+    private final AtomicReference<HashMap<String, UpdatedTerrainPatch>> finishedPatches
+            = new AtomicReference<HashMap<String, UpdatedTerrainPatch>>();
     private boolean forceUpdate = true;
+
+    /**
+     * Number of patches re-indexed by one task of the LOD calculation.
+     */
+    private static final int PATCHES_PER_TASK = 8;
     
     public TerrainLodControl() {
     }
@@ -127,21 +144,22 @@ public class TerrainLodControl extends AbstractControl {
 
     /**
      * Set your own custom executor to be used. The control will use
-     * this instead of creating its own.
+     * this instead of the shared one.
      */
     public void setExecutor(ExecutorService executor) {
         this.executor = executor;
     }
     
     protected ExecutorService createExecutorService() {
-        return Executors.newSingleThreadExecutor(new ThreadFactory() {
-            public Thread newThread(Runnable r) {
-                Thread th = new Thread(r);
-                th.setName("jME3 Terrain Thread");
-                th.setDaemon(true);
-                return th;
-            }
-        });
+        return getSharedExecutor();
+    }
+
+    /**
+     * The executor used by all terrain LOD controls that were not given their
+     * own, {@link ParallelTasks#getSharedExecutor()}.
+     */
+    public static ExecutorService getSharedExecutor() {
+        return ParallelTasks.getSharedExecutor();
     }
     
     @Override
@@ -171,10 +189,11 @@ public class TerrainLodControl extends AbstractControl {
     
     /**
      * Call this when you remove the terrain or this control from the scene.
-     * It will clear up any threads it had.
+     * It will clear up any threads it had, the shared executor is kept for
+     * the other controls.
      */
     public void detachAndCleanUpControl() {
-        if (executor != null)
+        if (executor != null && executor != ParallelTasks.getSharedExecutor())
             executor.shutdownNow();
         getSpatial().removeControl(this);
     }
@@ -209,7 +228,7 @@ public class TerrainLodControl extends AbstractControl {
             return;
         }
 
-        if (isLodCalcRunning()) {
+        if (isLodCalcRunning() || finishedPatches.get() != null) {
             return;
         }
         setLodCalcRunning(true);
@@ -219,8 +238,23 @@ public class TerrainLodControl extends AbstractControl {
         
         prepareTerrain();
         
-        UpdateLOD updateLodThread = getLodThread(locations, lodCalculator);
-        indexer = executor.submit(updateLodThread);
+        final UpdateLOD updateLodThread = getLodThread(locations, lodCalculator);
+        indexer = executor.submit(new Callable<HashMap<String, UpdatedTerrainPatch>>() {
+            public HashMap<String, UpdatedTerrainPatch> call() throws Exception {
+                try {
+                    HashMap<String, UpdatedTerrainPatch> updated = updateLodThread.call();
+                    // hand the patches to the render thread before another
+                    // calculation may start
+                    finishedPatches.set(updated);
+                    return updated;
+                } catch (Exception ex) {
+                    Logger.getLogger(TerrainLodControl.class.getName()).log(Level.SEVERE, null, ex);
+                    throw ex;
+                } finally {
+                    setLodCalcRunning(false);
+                }
+            }
+        });
     }
 
     /**
@@ -244,27 +278,16 @@ public class TerrainLodControl extends AbstractControl {
      * Back on the ogl thread: update the terrain patch geometries
      */
     private void updateQuadLODs() {
-        if (indexer != null) {
-            if (indexer.isDone()) {
-                try {
-                    
-                    HashMap<String, UpdatedTerrainPatch> updated = indexer.get();
-                    if (updated != null) {
-                        // do the actual geometry update here
-                        for (UpdatedTerrainPatch utp : updated.values()) {
-                            utp.updateAll();
-                        }
-                    }
-                    
-                } catch (InterruptedException ex) {
-                    Logger.getLogger(TerrainLodControl.class.getName()).log(Level.SEVERE, null, ex);
-                } catch (ExecutionException ex) {
-                    Logger.getLogger(TerrainLodControl.class.getName()).log(Level.SEVERE, null, ex);
-                } finally {
-                    indexer = null;
-                }
+        HashMap<String, UpdatedTerrainPatch> updated = finishedPatches.getAndSet(null);
+        if (updated != null) {
+            // do the actual geometry update here
+            for (UpdatedTerrainPatch utp : updated.values()) {
+                utp.updateAll();
             }
         }
+        if (indexer != null && indexer.isDone()) {
+            indexer = null;
+        }
     }
     
     private boolean lastCameraLocationsTheSame(List<Vector3f> locations) {
@@ -390,7 +413,6 @@ public class TerrainLodControl extends AbstractControl {
 
             if (!lodChanged) {
                 // not worth updating anything else since no one's LOD changed
-                setLodCalcRunning(false);
                 return null;
             }
             
@@ -400,14 +422,49 @@ public class TerrainLodControl extends AbstractControl {
 
             terrainQuad.fixEdges(updated); // 'updated' can get added to here
 
-            terrainQuad.reIndexPages(updated, lodCalculator.usesVariableLod());
+            reIndexPatches(updated, lodCalculator.usesVariableLod());
 
             //setUpdateQuadLODs(updated); // set back to main ogl thread
-
-            setLodCalcRunning(false);
+            // the running flag is cleared once the patches are handed over
             
             return updated;
         }
+
+        /**
+         * Build the new index buffers of the updated patches, a few patches
+         * per task on the executor. The patches only read the map, and the
+         * calling thread runs the tasks not yet picked up by the executor.
+         */
+        protected void reIndexPatches(final HashMap<String, UpdatedTerrainPatch> updated,
+                final boolean usesVariableLod) {
+            List<TerrainPatch> patches = new ArrayList<TerrainPatch>();
+            for (UpdatedTerrainPatch utp : updated.values()) {
+                if (utp.isReIndexNeeded()) {
+                    patches.add(utp.getUpdatedPatch());
+                }
+            }
+            if (patches.size() <= PATCHES_PER_TASK || executor == null) {
+                for (TerrainPatch patch : patches) {
+                    patch.reIndexGeometry(updated, usesVariableLod);
+                }
+                return;
+            }
+
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+            for (int start = 0; start < patches.size(); start += PATCHES_PER_TASK) {
+                final List<TerrainPatch> part = patches.subList(start,
+                        Math.min(start + PATCHES_PER_TASK, patches.size()));
+                tasks.add(new Callable<Void>() {
+                    public Void call() {
+                        for (TerrainPatch patch : part) {
+                            patch.reIndexGeometry(updated, usesVariableLod);
+                        }
+                        return null;
+                    }
+                });
+            }
+            ParallelTasks.invokeAll(executor, tasks);
+        }
     }
 
     @Override
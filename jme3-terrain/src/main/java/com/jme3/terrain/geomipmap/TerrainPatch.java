@@ -251,18 +251,13 @@ public class TerrainPatch extends Geometry {
             boolean right = utp.getRightLod() > utp.getNewLod();
             boolean bottom = utp.getBottomLod() > utp.getNewLod();
 
-            IndexBuffer idxB;
+            // the index buffers are shared by all patches of the same size
+            VertexBuffer idxB;
             if (useVariableLod)
-                idxB = geomap.writeIndexArrayLodVariable(pow, (int) Math.pow(2, utp.getRightLod()), (int) Math.pow(2, utp.getTopLod()), (int) Math.pow(2, utp.getLeftLod()), (int) Math.pow(2, utp.getBottomLod()), totalSize);
+                idxB = geomap.getIndexBufferLodVariable(pow, (int) Math.pow(2, utp.getRightLod()), (int) Math.pow(2, utp.getTopLod()), (int) Math.pow(2, utp.getLeftLod()), (int) Math.pow(2, utp.getBottomLod()), totalSize);
             else
-                idxB = geomap.writeIndexArrayLodDiff(pow, right, top, left, bottom, totalSize);
-            
-            Buffer b;
-            if (idxB.getBuffer() instanceof IntBuffer)
-                b = (IntBuffer)idxB.getBuffer();
-            else
-                b = (ShortBuffer)idxB.getBuffer();
-            utp.setNewIndexBuffer(b);
+                idxB = geomap.getIndexBufferLodDiff(pow, right, top, left, bottom, totalSize);
+            utp.setNewIndexBuffer(idxB);
         }
 
     }
@@ -307,22 +302,109 @@ public class TerrainPatch extends Geometry {
 
     protected void setHeight(List<LocationHeight> locationHeights, boolean overrideHeight) {
         
-        for (LocationHeight lh : locationHeights) {
+        VertexBuffer positions = getMesh().getBuffer(Type.Position);
+        FloatBuffer pb = (FloatBuffer) positions.getData();
+        float[] heights = new float[locationHeights.size()];
+        float minHeight = Float.POSITIVE_INFINITY;
+        float maxHeight = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < heights.length; i++) {
+            LocationHeight lh = locationHeights.get(i);
             if (lh.x < 0 || lh.z < 0 || lh.x >= size || lh.z >= size)
                 continue;
             int idx = lh.z * size + lh.x;
             if (overrideHeight) {
-                geomap.getHeightArray()[idx] = lh.h;
+                heights[i] = lh.h;
             } else {
-                float h = getMesh().getFloatBuffer(Type.Position).get(idx*3+1);
-                geomap.getHeightArray()[idx] = h+lh.h;
+                heights[i] = pb.get(idx*3+1) + lh.h;
             }
-            
+            minHeight = Math.min(minHeight, heights[i]);
+            maxHeight = Math.max(maxHeight, heights[i]);
+        }
+        if (minHeight > maxHeight) {
+            return;
+        }
+
+        // widen the range of quantized heights once for the whole batch
+        boolean rounded = geomap.fitRange(minHeight, maxHeight);
+
+        int minIdx = Integer.MAX_VALUE;
+        int maxIdx = -1;
+        for (int i = 0; i < heights.length; i++) {
+            LocationHeight lh = locationHeights.get(i);
+            if (lh.x < 0 || lh.z < 0 || lh.x >= size || lh.z >= size)
+                continue;
+            int idx = lh.z * size + lh.x;
+            geomap.setValue(idx, heights[i]);
+            // only the changed vertices are written and uploaded
+            pb.put(idx*3+1, geomap.getValue(idx)*stepScale.y);
+            minIdx = Math.min(minIdx, idx);
+            maxIdx = Math.max(maxIdx, idx);
         }
 
-        FloatBuffer newVertexBuffer = geomap.writeVertexArray(null, stepScale, false);
-        getMesh().clearBuffer(Type.Position);
-        getMesh().setBuffer(Type.Position, 3, newVertexBuffer);
+        if (rounded) {
+            // all heights were rounded to a coarser step, the terrain
+            // quad re-quantizes the other patches to it
+            writeHeights();
+        } else {
+            positions.setUpdateNeeded(minIdx, maxIdx - minIdx + 1);
+        }
+    }
+
+    /**
+     * Store the heights of this patch as 16 bit values, rounded to whole
+     * multiples of the step. The vertex positions are rewritten with the
+     * decoded heights so the rendered surface matches the height queries.
+     * 
+     * @param step the precision of the heights, the same for all patches
+     * of a terrain so their shared edges match
+     */
+    protected void quantizeHeights(float step) {
+        if (geomap.isQuantized() && geomap.getQuantizationStep() == step) {
+            return;
+        }
+        geomap.quantize(step);
+        writeHeights();
+    }
+
+    /**
+     * Rewrite the heights of all vertices from the geomap.
+     */
+    private void writeHeights() {
+        VertexBuffer positions = getMesh().getBuffer(Type.Position);
+        FloatBuffer pb = (FloatBuffer) positions.getData();
+        for (int i = 0; i < size * size; i++) {
+            pb.put(i*3+1, geomap.getValue(i)*stepScale.y);
+        }
+        positions.setUpdateNeeded();
+        getMesh().updateBound();
+    }
+
+    /**
+     * Recalculate the normal vectors of the vertices from column minX, row
+     * minZ to column maxX, row maxZ of this patch, clamped to the patch. The
+     * normal, tangent and binormal buffers are updated in place and only that
+     * range of them is uploaded again.
+     */
+    protected void updateNormals(int minX, int minZ, int maxX, int maxZ) {
+        minX = Math.max(minX, 0);
+        minZ = Math.max(minZ, 0);
+        maxX = Math.min(maxX, size - 1);
+        maxZ = Math.min(maxZ, size - 1);
+        if (minX > maxX || minZ > maxZ)
+            return;
+
+        VertexBuffer NB = getMesh().getBuffer(Type.Normal);
+        VertexBuffer TB = getMesh().getBuffer(Type.Tangent);
+        VertexBuffer BB = getMesh().getBuffer(Type.Binormal);
+        FloatBuffer normals = (FloatBuffer) NB.getData();
+        geomap.writeNormalArray(normals, getWorldScale(), minX, minZ, maxX, maxZ);
+        geomap.writeTangentArray(normals, (FloatBuffer) TB.getData(), (FloatBuffer) BB.getData(), minX, minZ, maxX, maxZ);
+
+        int start = minZ * size + minX;
+        int count = (maxZ - minZ) * size + maxX - minX + 1;
+        NB.setUpdateNeeded(start, count);
+        TB.setUpdateNeeded(start, count);
+        BB.setUpdateNeeded(start, count);
     }
 
     /**
@@ -347,9 +429,9 @@ public class TerrainPatch extends Geometry {
         BufferUtils.setInBuffer(normal, (FloatBuffer)NB.getData(), index);
         BufferUtils.setInBuffer(tangent, (FloatBuffer)TB.getData(), index);
         BufferUtils.setInBuffer(binormal, (FloatBuffer)BB.getData(), index);
-        NB.setUpdateNeeded();
-        TB.setUpdateNeeded();
-        BB.setUpdateNeeded();
+        NB.setUpdateNeeded(index, 1);
+        TB.setUpdateNeeded(index, 1);
+        BB.setUpdateNeeded(index, 1);
     }
     
     /**
@@ -948,6 +1030,9 @@ public class TerrainPatch extends Geometry {
         //clone.lodCalculator.setTerrainPatch(clone);
         //clone.setLodCalculator(lodCalculatorFactory.clone());
         clone.geomap = new LODGeomap(size, geomap.getHeightArray());
+        if (geomap.isQuantized()) {
+            clone.geomap.quantize(geomap.getQuantizationStep());
+        }
         clone.setLocalTranslation(getLocalTranslation().clone());
         Mesh m = clone.geomap.createMesh(clone.stepScale, Vector2f.UNIT_XY, clone.offset, clone.offsetAmount, clone.totalSize, false);
         clone.setMesh(m);
@@ -48,18 +48,21 @@ import com.jme3.scene.Geometry;
 import com.jme3.scene.Node;
 import com.jme3.scene.Spatial;
 import com.jme3.scene.debug.WireBox;
+import com.jme3.terrain.GeoMap;
 import com.jme3.terrain.ProgressMonitor;
 import com.jme3.terrain.Terrain;
 import com.jme3.terrain.geomipmap.lodcalc.LodCalculator;
-import com.jme3.terrain.geomipmap.picking.BresenhamTerrainPicker;
+import com.jme3.terrain.geomipmap.picking.PyramidTerrainPicker;
 import com.jme3.terrain.geomipmap.picking.TerrainPickData;
 import com.jme3.terrain.geomipmap.picking.TerrainPicker;
+import com.jme3.util.ParallelTasks;
 import com.jme3.util.TangentBinormalGenerator;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -121,6 +124,7 @@ public class TerrainQuad extends Node implements Terrain {
     protected int quadrant = 0; // 1=upper left, 2=lower left, 3=upper right, 4=lower right
     private int maxLod = -1;
     private BoundingBox affectedAreaBBox; // only set in the root quad
+    private int[] affectedGridArea; // minX, minZ, maxX, maxZ of the changed heights, null if all normals need updating
 
     private TerrainPicker picker;
     private Vector3f lastScale = Vector3f.UNIT_XYZ;
@@ -247,6 +251,83 @@ public class TerrainQuad extends Node implements Terrain {
      */
     public void recalculateAllNormals() {
         affectedAreaBBox = new BoundingBox(new Vector3f(0,0,0), totalSize*2, Float.MAX_VALUE, totalSize*2);
+        affectedGridArea = null;
+    }
+
+    /**
+     * Store the heights of all patches as 16 bit values to cut the memory
+     * used by the height data in half. All patches use the same precision,
+     * the height range of the whole terrain divided by 32768, so the 
+     * vertices they share keep the same height. Edits up to a whole range
+     * beyond the heights keep that precision; further edits double the
+     * step of all patches.
+     * The normals are recalculated on the next update.
+     */
+    public void quantizeHeights() {
+        List<TerrainPatch> patches = new ArrayList<TerrainPatch>();
+        getAllTerrainPatches(patches);
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        for (TerrainPatch patch : patches) {
+            LODGeomap geomap = patch.geomap;
+            for (int i = 0; i < patch.getSize() * patch.getSize(); i++) {
+                float h = geomap.getValue(i);
+                min = Math.min(min, h);
+                max = Math.max(max, h);
+            }
+        }
+        float step = GeoMap.getQuantizationStep(min, max);
+        for (TerrainPatch patch : patches) {
+            patch.quantizeHeights(step);
+        }
+        picker = null;
+        recalculateAllNormals();
+    }
+
+    /**
+     * Re-quantize the patches of the whole terrain to the coarsest step
+     * used by any of them. An edit beyond the range of a patch can double
+     * the step of that patch, and its edges would no longer match the
+     * patches next to it.
+     *
+     * @return true if any patch was re-quantized
+     */
+    private boolean shareQuantizationStep() {
+        TerrainQuad root = this;
+        while (root.getParent() instanceof TerrainQuad) {
+            root = (TerrainQuad) root.getParent();
+        }
+        List<TerrainPatch> patches = new ArrayList<TerrainPatch>();
+        root.getAllTerrainPatches(patches);
+        float step = 0;
+        for (TerrainPatch patch : patches) {
+            step = Math.max(step, patch.geomap.getQuantizationStep());
+        }
+        if (step == 0) {
+            return false;
+        }
+        boolean changed = false;
+        boolean grew = true;
+        while (grew) {
+            // a patch may not fit in 65536 of the new steps and double it again
+            grew = false;
+            for (TerrainPatch patch : patches) {
+                LODGeomap geomap = patch.geomap;
+                if (geomap.isQuantized() && geomap.getQuantizationStep() != step) {
+                    patch.quantizeHeights(step);
+                    changed = true;
+                    if (geomap.getQuantizationStep() > step) {
+                        step = geomap.getQuantizationStep();
+                        grew = true;
+                    }
+                }
+            }
+        }
+        if (changed && root != this) {
+            root.picker = null;
+            root.recalculateAllNormals();
+        }
+        return changed;
     }
     
     /**
@@ -264,8 +345,12 @@ public class TerrainQuad extends Node implements Terrain {
     protected void updateNormals() {
 
         if (needToRecalculateNormals()) {
-            //TODO background-thread this if it ends up being expensive
-            fixNormals(affectedAreaBBox); // the affected patches
+            if (affectedGridArea != null) {
+                // only around the changed heights
+                fixNormals(affectedGridArea[0], affectedGridArea[1], affectedGridArea[2], affectedGridArea[3]);
+            } else {
+                fixNormals(affectedAreaBBox); // the affected patches
+            }
             fixNormalEdges(affectedAreaBBox); // the edges between the patches
             
             setNormalRecalcNeeded(null); // set to false
@@ -289,7 +374,7 @@ public class TerrainQuad extends Node implements Terrain {
 
     private int collideWithRay(Ray ray, CollisionResults results) {
         if (picker == null)
-            picker = new BresenhamTerrainPicker(this);
+            picker = createPicker();
 
         Vector3f intersection = picker.getTerrainIntersection(ray, results);
         if (intersection != null) {
@@ -304,6 +389,45 @@ public class TerrainQuad extends Node implements Terrain {
             return 0;
     }
 
+    /**
+     * Create the picker used to collide rays with this terrain. It walks a
+     * min/max pyramid of the height map, so this quad has to be a complete
+     * terrain.
+     */
+    protected TerrainPicker createPicker() {
+        return new PyramidTerrainPicker(this);
+    }
+
+    /**
+     * Cast many rays against the terrain at once, spread over the threads of
+     * the terrain executor when the terrain uses the pyramid picker. The
+     * closest hit of rays[i] is added to results[i]. Do not change the
+     * heights of the terrain while this runs.
+     *
+     * @return the number of rays that hit the terrain within their limit
+     */
+    public int collideWithRays(Ray[] rays, CollisionResults[] results) {
+        if (rays.length != results.length)
+            throw new IllegalArgumentException("Both arrays must be the same length!");
+        if (picker == null)
+            picker = createPicker();
+
+        if (!(picker instanceof PyramidTerrainPicker)) {
+            int total = 0;
+            for (int i = 0; i < rays.length; i++)
+                total += collideWithRay(rays[i], results[i]);
+            return total;
+        }
+
+        Vector3f[] intersections = ((PyramidTerrainPicker) picker).getTerrainIntersections(rays, results, TerrainLodControl.getSharedExecutor());
+        int total = 0;
+        for (int i = 0; i < rays.length; i++) {
+            if (intersections[i] != null && results[i].getClosestCollision().getDistance() <= rays[i].getLimit())
+                total++;
+        }
+        return total;
+    }
+
     /**
      * Generate the entropy values for the terrain for the "perspective" LOD
      * calculator. This routine can take a long time to run!
@@ -871,6 +995,7 @@ public class TerrainQuad extends Node implements Terrain {
     protected void setNormalRecalcNeeded(Vector2f changedPoint) {
         if (changedPoint == null) { // set needToRecalculateNormals() to false
             affectedAreaBBox = null;
+            affectedGridArea = null;
             return;
         }
 
@@ -887,6 +1012,7 @@ public class TerrainQuad extends Node implements Terrain {
             return true;
         if (!lastScale.equals(getWorldScale())) {
             affectedAreaBBox = new BoundingBox(getWorldTranslation(), Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE);
+            affectedGridArea = null;
             lastScale = getWorldScale();
             return true;
         }
@@ -898,6 +1024,7 @@ public class TerrainQuad extends Node implements Terrain {
      */
     protected void setNeedToRecalculateNormals() {
         affectedAreaBBox = new BoundingBox(getWorldTranslation(), Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE);
+        affectedGridArea = null;
     }
 
     public float getHeightmapHeight(Vector2f xz) {
@@ -1179,9 +1306,34 @@ public class TerrainQuad extends Node implements Terrain {
 
         setHeight(locations, overrideHeight); // adjust height of the actual mesh
 
-        // signal that the normals need updating
+        if (shareQuantizationStep()) {
+            // every patch was rounded to a coarser step, rebuild the picker
+            // and the normals of the whole terrain
+            picker = null;
+            recalculateAllNormals();
+        } else if (picker instanceof PyramidTerrainPicker) {
+            for (LocationHeight lh : locations)
+                ((PyramidTerrainPicker) picker).setHeight(lh.x, lh.z, getHeightmapHeight(lh.x, lh.z));
+        }
+
+        // signal that the normals need updating, only around the changed
+        // heights unless all of them need updating already
+        boolean allNormals = affectedAreaBBox != null && affectedGridArea == null;
         for (int i=0; i<xz.size(); i++)
             setNormalRecalcNeeded(xz.get(i) );
+        if (!allNormals) {
+            for (LocationHeight lh : locations) {
+                // the normals of the neighbouring vertices change too
+                if (affectedGridArea == null) {
+                    affectedGridArea = new int[]{lh.x - 1, lh.z - 1, lh.x + 1, lh.z + 1};
+                } else {
+                    affectedGridArea[0] = Math.min(affectedGridArea[0], lh.x - 1);
+                    affectedGridArea[1] = Math.min(affectedGridArea[1], lh.z - 1);
+                    affectedGridArea[2] = Math.max(affectedGridArea[2], lh.x + 1);
+                    affectedGridArea[3] = Math.max(affectedGridArea[3], lh.z + 1);
+                }
+            }
+        }
     }
 
     protected class LocationHeight {
@@ -1353,6 +1505,34 @@ public class TerrainQuad extends Node implements Terrain {
         return null;
     }
 
+    /**
+     * Get the patch holding the grid square with its top left corner at
+     * column x, row z of the height map of this quad.
+     *
+     * @return null if the square is not inside this quad
+     */
+    public TerrainPatch getPatchAt(int x, int z) {
+        int split = (size + 1) >> 1;
+        if (x < 0 || z < 0 || x >= size - 1 || z >= size - 1)
+            return null;
+
+        int quad;
+        if (x < split - 1)
+            quad = z < split - 1 ? 1 : 2;
+        else
+            quad = z < split - 1 ? 3 : 4;
+        if (quad == 2 || quad == 4)
+            z -= split - 1;
+        if (quad == 3 || quad == 4)
+            x -= split - 1;
+
+        TerrainPatch patch = getPatch(quad);
+        if (patch != null)
+            return patch;
+        TerrainQuad child = getQuad(quad);
+        return child != null ? child.getPatchAt(x, z) : null;
+    }
+
     protected TerrainQuad getQuad(int quad) {
         if (quad == 0)
             return this;
@@ -1612,6 +1792,75 @@ public class TerrainQuad extends Node implements Terrain {
         }
     }
 
+    /**
+     * Update the normals of the vertices from column minX, row minZ to
+     * column maxX, row maxZ of this quad only. The patches touching that
+     * area are updated on the terrain executor, the calling thread runs the
+     * ones not picked up yet.
+     */
+    protected void fixNormals(int minX, int minZ, int maxX, int maxZ) {
+        final List<TerrainPatch> patches = new ArrayList<TerrainPatch>();
+        final List<int[]> areas = new ArrayList<int[]>();
+        findNormalAreas(minX, minZ, maxX, maxZ, patches, areas);
+        if (patches.size() == 1) {
+            int[] area = areas.get(0);
+            patches.get(0).updateNormals(area[0], area[1], area[2], area[3]);
+            return;
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < patches.size(); i++) {
+            final TerrainPatch patch = patches.get(i);
+            final int[] area = areas.get(i);
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    patch.updateNormals(area[0], area[1], area[2], area[3]);
+                    return null;
+                }
+            });
+        }
+        ParallelTasks.invokeAll(TerrainLodControl.getSharedExecutor(), tasks);
+    }
+
+    /**
+     * Find the patches touching the area of this quad from column minX, row
+     * minZ to column maxX, row maxZ, and the part of the area local to each
+     * of them. The children share their middle row and column.
+     */
+    protected void findNormalAreas(int minX, int minZ, int maxX, int maxZ, List<TerrainPatch> patches, List<int[]> areas) {
+        if (children == null)
+            return;
+
+        int split = (size + 1) >> 1;
+        for (int i = children.size(); --i >= 0;) {
+            Spatial child = children.get(i);
+            int childQuadrant = 0;
+            if (child instanceof TerrainQuad) {
+                childQuadrant = ((TerrainQuad) child).getQuadrant();
+            } else if (child instanceof TerrainPatch) {
+                childQuadrant = ((TerrainPatch) child).getQuadrant();
+            }
+            if (childQuadrant == 0)
+                continue;
+
+            int col = (childQuadrant == 3 || childQuadrant == 4) ? split - 1 : 0;
+            int row = (childQuadrant == 2 || childQuadrant == 4) ? split - 1 : 0;
+            int childMinX = Math.max(minX - col, 0);
+            int childMinZ = Math.max(minZ - row, 0);
+            int childMaxX = Math.min(maxX - col, split - 1);
+            int childMaxZ = Math.min(maxZ - row, split - 1);
+            if (childMinX > childMaxX || childMinZ > childMaxZ)
+                continue;
+
+            if (child instanceof TerrainQuad) {
+                ((TerrainQuad) child).findNormalAreas(childMinX, childMinZ, childMaxX, childMaxZ, patches, areas);
+            } else {
+                patches.add((TerrainPatch) child);
+                areas.add(new int[]{childMinX, childMinZ, childMaxX, childMaxZ});
+            }
+        }
+    }
+
     /**
      * fix the normals on the edge of the terrain patches.
      */
@@ -1791,6 +2040,7 @@ public class TerrainQuad extends Node implements Terrain {
         }
         quadClone.offsetAmount = offsetAmount;
         quadClone.quadrant = quadrant;
+        quadClone.picker = null;
         //quadClone.lodCalculatorFactory = lodCalculatorFactory.clone();
         //quadClone.lodCalculator = lodCalculator.clone();
         
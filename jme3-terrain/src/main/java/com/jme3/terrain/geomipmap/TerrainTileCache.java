@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.terrain.geomipmap;
+
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import java.nio.Buffer;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A least recently used cache of the tiles of a {@link TerrainGrid}, bounded
+ * by the estimated memory of the tiles instead of their number. The meshes
+ * and height maps of all patches of a tile are counted, the index buffers are
+ * shared between tiles and are left out.
+ * <p>
+ * The tiles of the pinned cells, the ones the grid shows and is about to
+ * show, are never evicted, even when they exceed the budget. Only the other
+ * tiles, such as prefetched ones, make room for new tiles.
+ * <p>
+ * This class is thread-safe. It extends {@link LRUCache} so it can stand in
+ * for the cache of earlier versions of TerrainGrid.
+ * 
+ * @see TerrainGrid#setCacheMemory(long)
+ */
+public class TerrainTileCache extends LRUCache<Vector3f, TerrainQuad> {
+
+    /**
+     * The default budget, 64 megabytes.
+     */
+    public static final long DEFAULT_MAX_SIZE = 64L * 1024L * 1024L;
+
+    private static final class CachedTile {
+
+        final TerrainQuad quad;
+        final long size;
+
+        CachedTile(TerrainQuad quad, long size) {
+            this.quad = quad;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Access ordered, the first entry is the least recently used.
+     */
+    private final LinkedHashMap<Vector3f, CachedTile> entries
+            = new LinkedHashMap<Vector3f, CachedTile>(32, 0.75f, true);
+    private final HashSet<Vector3f> pinned = new HashSet<Vector3f>();
+    private long size;
+    private long maxSize;
+
+    /**
+     * @param maxSize the budget in bytes
+     */
+    public TerrainTileCache(long maxSize) {
+        super(0);
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize cannot be negative");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Retrieves a tile, which becomes the most recently used one.
+     * 
+     * @param cell the cell coordinate of the tile
+     * @return the tile, or null if it is not cached
+     */
+    @Override
+    public synchronized TerrainQuad get(Vector3f cell) {
+        CachedTile entry = entries.get(cell);
+        return entry != null ? entry.quad : null;
+    }
+
+    /**
+     * @return true if the tile of the cell is cached, without counting as
+     * a use of the tile
+     */
+    public synchronized boolean contains(Vector3f cell) {
+        return entries.containsKey(cell);
+    }
+
+    /**
+     * Adds a tile as the most recently used one, evicting the least recently
+     * used tiles if the cache is over budget.
+     */
+    @Override
+    public void put(Vector3f cell, TerrainQuad quad) {
+        CachedTile entry = new CachedTile(quad, estimateSize(quad));
+        synchronized (this) {
+            CachedTile old = entries.put(cell, entry);
+            if (old != null) {
+                size -= old.size;
+            }
+            size += entry.size;
+            evict();
+        }
+    }
+
+    public synchronized TerrainQuad remove(Vector3f cell) {
+        CachedTile entry = entries.remove(cell);
+        if (entry == null) {
+            return null;
+        }
+        size -= entry.size;
+        return entry.quad;
+    }
+
+    @Override
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * Sets the cells whose tiles are kept regardless of the budget, replacing
+     * the previously pinned ones. Tiles that are not cached yet are kept once
+     * they are put in the cache.
+     * 
+     * @param cells the cell coordinates of the tiles to keep
+     */
+    public synchronized void setPinned(Collection<Vector3f> cells) {
+        pinned.clear();
+        pinned.addAll(cells);
+        evict();
+    }
+
+    /**
+     * @return the number of tiles in the cache
+     */
+    @Override
+    public synchronized int usedEntries() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized Collection<Map.Entry<Vector3f, TerrainQuad>> getAll() {
+        List<Map.Entry<Vector3f, TerrainQuad>> all
+                = new ArrayList<Map.Entry<Vector3f, TerrainQuad>>(entries.size());
+        for (Map.Entry<Vector3f, CachedTile> entry : entries.entrySet()) {
+            all.add(new AbstractMap.SimpleEntry<Vector3f, TerrainQuad>(
+                    entry.getKey(), entry.getValue().quad));
+        }
+        return all;
+    }
+
+    /**
+     * @return the estimated size in bytes of all tiles in the cache
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Sets the budget of the cache, evicting tiles right away if the cached
+     * ones exceed it.
+     * 
+     * @param maxSize the budget in bytes
+     */
+    public synchronized void setMaxSize(long maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize cannot be negative");
+        }
+        this.maxSize = maxSize;
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Vector3f, CachedTile>> it = entries.entrySet().iterator();
+        while (size > maxSize && it.hasNext()) {
+            Map.Entry<Vector3f, CachedTile> entry = it.next();
+            if (!pinned.contains(entry.getKey())) {
+                size -= entry.getValue().size;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Estimates the memory of a tile from the vertex buffers and height maps
+     * of its patches.
+     * 
+     * @param quad the tile
+     * @return the estimated size in bytes
+     */
+    public static long estimateSize(TerrainQuad quad) {
+        List<TerrainPatch> patches = new ArrayList<TerrainPatch>();
+        quad.getAllTerrainPatches(patches);
+        long bytes = 0;
+        for (TerrainPatch patch : patches) {
+            if (patch.geomap != null) {
+                bytes += patch.geomap.getMemorySize();
+            }
+            Mesh mesh = patch.getMesh();
+            if (mesh == null) {
+                continue;
+            }
+            for (VertexBuffer vb : mesh.getBufferList()) {
+                Buffer data = vb.getData();
+                if (data != null && vb.getBufferType() != VertexBuffer.Type.Index) {
+                    bytes += (long) data.capacity() * vb.getFormat().getComponentSize();
+                }
+            }
+        }
+        return bytes;
+    }
+}
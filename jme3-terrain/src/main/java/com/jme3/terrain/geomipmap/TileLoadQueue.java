@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.terrain.geomipmap;
+
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The tiles waiting to be loaded for a {@link TerrainGrid}. The tiles the
+ * grid needs right away are loaded first, then the prefetched ones, each
+ * nearest first. A tile is queued only once, and prefetched tiles that are
+ * no longer wanted can be taken off the queue before their loading starts.
+ */
+final class TileLoadQueue {
+
+    private final TerrainGrid grid;
+    private final ThreadPoolExecutor executor;
+    /**
+     * tiles queued or being loaded, all access synchronized on the queue
+     */
+    private final HashMap<Vector3f, TileTask> pending = new HashMap<Vector3f, TileTask>();
+    private long sequence;
+    /**
+     * how long the loader threads wait for another tile before they stop
+     */
+    private static final long IDLE_SECONDS = 5;
+
+    private final class TileTask extends FutureTask<TerrainQuad> implements Comparable<TileTask> {
+
+        final Vector3f cell;
+        final float priority;
+        final boolean required;
+        final long order;
+
+        TileTask(final Vector3f cell, float priority, boolean required, long order) {
+            super(new Callable<TerrainQuad>() {
+                public TerrainQuad call() {
+                    return grid.loadTile(cell);
+                }
+            });
+            this.cell = cell;
+            this.priority = priority;
+            this.required = required;
+            this.order = order;
+        }
+
+        @Override
+        protected void done() {
+            synchronized (TileLoadQueue.this) {
+                if (pending.get(cell) == this) {
+                    pending.remove(cell);
+                }
+            }
+        }
+
+        boolean isBefore(TileTask other) {
+            return compareTo(other) < 0;
+        }
+
+        public int compareTo(TileTask other) {
+            if (required != other.required) {
+                return required ? -1 : 1;
+            }
+            if (priority != other.priority) {
+                return priority < other.priority ? -1 : 1;
+            }
+            return order < other.order ? -1 : (order == other.order ? 0 : 1);
+        }
+    }
+
+    TileLoadQueue(TerrainGrid grid, int threads) {
+        this.grid = grid;
+        executor = new ThreadPoolExecutor(threads, threads, IDLE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread th = new Thread(r);
+                th.setName("jME TerrainGrid Loader Thread");
+                th.setDaemon(true);
+                return th;
+            }
+        });
+        // the threads are started again with the next tile
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queue the loading of a tile, or move a prefetched tile up the queue if
+     * it is requested with a higher priority.
+     * 
+     * @param priority the distance of the tile, lower values load first
+     * @param required true if the grid or the user waits for the tile, false
+     * for a prefetched tile that may be cancelled
+     */
+    synchronized Future<TerrainQuad> request(Vector3f cell, float priority, boolean required) {
+        TileTask task = new TileTask(cell, priority, required, sequence++);
+        TileTask queued = pending.get(cell);
+        if (queued != null) {
+            // only prefetches are replaced, nobody waits on them
+            if (queued.required || !task.isBefore(queued) || !executor.remove(queued)) {
+                return queued;
+            }
+            pending.put(cell, task);
+            queued.cancel(false);
+            executor.execute(task);
+            return task;
+        }
+        pending.put(cell, task);
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * Take the prefetched tiles off the queue that are not among the given
+     * cells and did not start loading yet.
+     */
+    synchronized void cancelPrefetches(Collection<Vector3f> keep) {
+        for (TileTask task : new ArrayList<TileTask>(pending.values())) {
+            if (!task.required && !keep.contains(task.cell) && executor.remove(task)) {
+                pending.remove(task.cell);
+                task.cancel(false);
+            }
+        }
+    }
+
+    synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Stop the loader threads, cancelling the tiles that did not start
+     * loading so nobody keeps waiting on them.
+     */
+    synchronized void shutdown() {
+        for (Runnable task : executor.shutdownNow()) {
+            ((TileTask) task).cancel(false);
+        }
+        pending.clear();
+    }
+}
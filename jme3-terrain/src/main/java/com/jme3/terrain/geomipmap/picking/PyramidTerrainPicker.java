@@ -0,0 +1,377 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.terrain.geomipmap.picking;
+
+import com.jme3.collision.CollisionResult;
+import com.jme3.collision.CollisionResults;
+import com.jme3.math.Ray;
+import com.jme3.math.Transform;
+import com.jme3.math.Triangle;
+import com.jme3.math.Vector3f;
+import com.jme3.terrain.geomipmap.TerrainPatch;
+import com.jme3.terrain.geomipmap.TerrainQuad;
+import com.jme3.util.ParallelTasks;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+/**
+ * Picks the terrain by walking a min/max height pyramid built from the height
+ * map of the quad, instead of stepping through every grid square along the
+ * ray. Each level of the pyramid stores the lowest and highest height of 2x2
+ * squares of the level below, so a ray passing above or below a block of the
+ * terrain skips the whole block. Blocks are visited front to back and the
+ * search stops as soon as no remaining block can be closer than the nearest
+ * hit found, so the result is exactly the first triangle the ray hits.
+ *
+ * The picker keeps its own copy of the heights, the quad updates it when its
+ * heights are changed. Queries do not modify the picker, so many rays can be
+ * cast at once from several threads, see
+ * {@link #getTerrainIntersections(Ray[], CollisionResults[], Executor)}.
+ */
+public class PyramidTerrainPicker implements TerrainPicker {
+
+    private static final int RAYS_PER_TASK = 64;
+    private static final float EPSILON = 0.001f;
+
+    private final TerrainQuad root;
+    private final int size;
+    private final int patchSize;
+    private final Vector3f stepScale;
+    private final float[] heights;
+    /**
+     * lowest and highest height of each block, level 0 holds the single grid
+     * squares, the last level the whole height map
+     */
+    private final float[][] minHeights;
+    private final float[][] maxHeights;
+    private final int[] widths;
+
+    public PyramidTerrainPicker(TerrainQuad root) {
+        this.root = root;
+        this.heights = root.getHeightMap();
+        this.size = (int) Math.sqrt(heights.length);
+        this.patchSize = root.getPatchSize();
+        TerrainPatch patch = root.getPatchAt(0, 0);
+        this.stepScale = patch != null ? patch.getStepScale().clone() : new Vector3f(1, 1, 1);
+
+        List<Integer> levelWidths = new ArrayList<Integer>();
+        int width = Math.max(size - 1, 1);
+        levelWidths.add(width);
+        while (width > 1) {
+            width = (width + 1) >> 1;
+            levelWidths.add(width);
+        }
+        widths = new int[levelWidths.size()];
+        minHeights = new float[widths.length][];
+        maxHeights = new float[widths.length][];
+        for (int level = 0; level < widths.length; level++) {
+            widths[level] = levelWidths.get(level);
+            minHeights[level] = new float[widths[level] * widths[level]];
+            maxHeights[level] = new float[widths[level] * widths[level]];
+        }
+        for (int z = 0; z < widths[0]; z++) {
+            for (int x = 0; x < widths[0]; x++) {
+                fitSquare(x, z);
+            }
+        }
+        for (int level = 1; level < widths.length; level++) {
+            for (int z = 0; z < widths[level]; z++) {
+                for (int x = 0; x < widths[level]; x++) {
+                    fitBlock(level, x, z);
+                }
+            }
+        }
+    }
+
+    /**
+     * Set the height of a point of the height map, refitting the blocks of
+     * the pyramid containing it.
+     *
+     * @param x column of the height map point
+     * @param z row of the height map point
+     * @param height the new height, unscaled
+     */
+    public void setHeight(int x, int z, float height) {
+        if (x < 0 || z < 0 || x >= size || z >= size) {
+            return;
+        }
+        heights[z * size + x] = height;
+        int n = widths[0];
+        for (int sz = Math.max(z - 1, 0); sz <= Math.min(z, n - 1); sz++) {
+            for (int sx = Math.max(x - 1, 0); sx <= Math.min(x, n - 1); sx++) {
+                fitSquare(sx, sz);
+                for (int level = 1; level < widths.length; level++) {
+                    fitBlock(level, sx >> level, sz >> level);
+                }
+            }
+        }
+    }
+
+    private void fitSquare(int x, int z) {
+        int index = z * size + x;
+        float h1 = heights[index];
+        float h2 = heights[index + 1];
+        float h3 = heights[index + size];
+        float h4 = heights[index + size + 1];
+        minHeights[0][z * widths[0] + x] = Math.min(Math.min(h1, h2), Math.min(h3, h4));
+        maxHeights[0][z * widths[0] + x] = Math.max(Math.max(h1, h2), Math.max(h3, h4));
+    }
+
+    private void fitBlock(int level, int x, int z) {
+        int below = widths[level - 1];
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        for (int cz = z * 2; cz < Math.min(z * 2 + 2, below); cz++) {
+            for (int cx = x * 2; cx < Math.min(x * 2 + 2, below); cx++) {
+                min = Math.min(min, minHeights[level - 1][cz * below + cx]);
+                max = Math.max(max, maxHeights[level - 1][cz * below + cx]);
+            }
+        }
+        minHeights[level][z * widths[level] + x] = min;
+        maxHeights[level][z * widths[level] + x] = max;
+    }
+
+    public Vector3f getTerrainIntersection(Ray worldPick, CollisionResults results) {
+        return new Query(root.getWorldTransform()).pick(worldPick, results);
+    }
+
+    /**
+     * Cast many rays against the terrain, a number of rays per task on the
+     * executor. The calling thread runs the tasks not picked up by the
+     * executor. The heights must not be changed until this returns.
+     *
+     * @param rays the pick rays, in world space
+     * @param results the closest hit of rays[i] is added to results[i]
+     * @param executor the executor to run the tasks on, or null to cast all
+     * rays on the calling thread
+     * @return the points of intersection, null for the rays missing the
+     * terrain
+     */
+    public Vector3f[] getTerrainIntersections(final Ray[] rays, final CollisionResults[] results, Executor executor) {
+        if (rays.length != results.length) {
+            throw new IllegalArgumentException("Both arrays must be the same length!");
+        }
+        final Vector3f[] intersections = new Vector3f[rays.length];
+        final Transform transform = root.getWorldTransform().clone();
+        if (executor == null || rays.length <= RAYS_PER_TASK) {
+            Query query = new Query(transform);
+            for (int i = 0; i < rays.length; i++) {
+                intersections[i] = query.pick(rays[i], results[i]);
+            }
+            return intersections;
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int start = 0; start < rays.length; start += RAYS_PER_TASK) {
+            final int first = start;
+            final int last = Math.min(start + RAYS_PER_TASK, rays.length);
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    Query query = new Query(transform);
+                    for (int i = first; i < last; i++) {
+                        intersections[i] = query.pick(rays[i], results[i]);
+                    }
+                    return null;
+                }
+            });
+        }
+        ParallelTasks.invokeAll(executor, tasks);
+        return intersections;
+    }
+
+    /**
+     * The state of one pick, the ray in height map space (x and z in grid
+     * squares, y in unscaled heights) and the closest hit so far. The ray
+     * parameter is the same as for the world space ray.
+     */
+    private final class Query {
+
+        private final Transform transform;
+        private final Ray gridRay = new Ray();
+        private final Vector3f v1 = new Vector3f();
+        private final Vector3f v2 = new Vector3f();
+        private final Vector3f v3 = new Vector3f();
+        private final Vector3f store = new Vector3f();
+        private final float[] range = new float[2];
+        private float closest;
+        private int hitX;
+        private int hitZ;
+        private int hitTriangle;
+
+        Query(Transform transform) {
+            this.transform = transform;
+        }
+
+        Vector3f pick(Ray worldPick, CollisionResults results) {
+            float half = (size - 1) * 0.5f;
+            Vector3f origin = gridRay.getOrigin();
+            Vector3f direction = gridRay.getDirection();
+            transform.transformInverseVector(worldPick.getOrigin(), origin);
+            origin.set(origin.x / stepScale.x + half, origin.y / stepScale.y, origin.z / stepScale.z + half);
+            transform.getRotation().inverse().mult(worldPick.getDirection(), direction);
+            Vector3f scale = transform.getScale();
+            direction.set(direction.x / (scale.x * stepScale.x),
+                    direction.y / (scale.y * stepScale.y),
+                    direction.z / (scale.z * stepScale.z));
+
+            closest = Float.POSITIVE_INFINITY;
+            int top = widths.length - 1;
+            visit(top, 0, 0);
+            if (closest == Float.POSITIVE_INFINITY) {
+                return null;
+            }
+
+            Vector3f intersection = worldPick.getDirection().mult(closest).addLocal(worldPick.getOrigin());
+            Triangle hit = new Triangle(new Vector3f(), new Vector3f(), new Vector3f());
+            setTriangle(hitX, hitZ, hitTriangle);
+            toWorld(v1, hit.get1());
+            toWorld(v2, hit.get2());
+            toWorld(v3, hit.get3());
+            CollisionResult cr = new CollisionResult(intersection, worldPick.getOrigin().distance(intersection));
+            cr.setGeometry(root.getPatchAt(hitX, hitZ));
+            cr.setContactNormal(hit.getNormal());
+            results.addCollision(cr);
+            return intersection;
+        }
+
+        private void toWorld(Vector3f grid, Vector3f store) {
+            float half = (size - 1) * 0.5f;
+            store.set((grid.x - half) * stepScale.x, grid.y * stepScale.y, (grid.z - half) * stepScale.z);
+            transform.transformVector(store, store);
+        }
+
+        private void visit(int level, int x, int z) {
+            int index = z * widths[level] + x;
+            int minX = x << level;
+            int minZ = z << level;
+            int maxX = Math.min((x + 1) << level, size - 1);
+            int maxZ = Math.min((z + 1) << level, size - 1);
+            if (!intersectBox(minX, minHeights[level][index], minZ, maxX, maxHeights[level][index], maxZ)) {
+                return;
+            }
+
+            if (level == 0) {
+                for (int triangle = 0; triangle < 2; triangle++) {
+                    setTriangle(x, z, triangle);
+                    if (gridRay.intersectWherePlanar(v1, v2, v3, store) && store.x < closest) {
+                        closest = store.x;
+                        hitX = x;
+                        hitZ = z;
+                        hitTriangle = triangle;
+                    }
+                }
+                return;
+            }
+
+            // the children nearest to the ray origin first, so farther ones
+            // can be skipped once something is hit
+            int below = widths[level - 1];
+            int firstX = gridRay.getDirection().x >= 0 ? 0 : 1;
+            int firstZ = gridRay.getDirection().z >= 0 ? 0 : 1;
+            for (int i = 0; i < 4; i++) {
+                int childX = x * 2 + (firstX ^ (i & 1));
+                int childZ = z * 2 + (firstZ ^ (i >> 1));
+                if (childX < below && childZ < below) {
+                    visit(level - 1, childX, childZ);
+                }
+            }
+        }
+
+        /**
+         * Test the ray against the box, padded a little against rounding,
+         * limited to the part of the ray before the closest hit.
+         */
+        private boolean intersectBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+            range[0] = 0;
+            range[1] = closest;
+            Vector3f origin = gridRay.getOrigin();
+            Vector3f direction = gridRay.getDirection();
+            float padY = EPSILON * Math.max(1f, Math.max(Math.abs(minY), Math.abs(maxY)));
+            return clip(origin.x, direction.x, minX - EPSILON, maxX + EPSILON)
+                    && clip(origin.y, direction.y, minY - padY, maxY + padY)
+                    && clip(origin.z, direction.z, minZ - EPSILON, maxZ + EPSILON);
+        }
+
+        private boolean clip(float origin, float direction, float min, float max) {
+            if (direction == 0) {
+                return origin >= min && origin <= max;
+            }
+            float t1 = (min - origin) / direction;
+            float t2 = (max - origin) / direction;
+            if (t1 > t2) {
+                float t = t1;
+                t1 = t2;
+                t2 = t;
+            }
+            range[0] = Math.max(range[0], t1);
+            range[1] = Math.min(range[1], t2);
+            return range[0] <= range[1];
+        }
+
+        /**
+         * Put the corners of triangle 0 or 1 of the grid square into v1, v2
+         * and v3, split the same way as
+         * {@link TerrainPatch#getGridTriangles(float, float)}.
+         */
+        private void setTriangle(int x, int z, int triangle) {
+            int index = z * size + x;
+            float h1 = heights[index];                // top left
+            float h2 = heights[index + 1];            // top right
+            float h3 = heights[index + size];         // bottom left
+            float h4 = heights[index + size + 1];     // bottom right
+            int patchX = x % (patchSize - 1);
+            int patchZ = z % (patchSize - 1);
+            if ((patchX == 0 && patchZ == 0) || (patchX == patchSize - 2 && patchZ == patchSize - 2)) {
+                // top left or bottom right square of a patch
+                if (triangle == 0) {
+                    v1.set(x, h1, z);
+                    v2.set(x, h3, z + 1);
+                    v3.set(x + 1, h4, z + 1);
+                } else {
+                    v1.set(x, h1, z);
+                    v2.set(x + 1, h4, z + 1);
+                    v3.set(x + 1, h2, z);
+                }
+            } else if (triangle == 0) {
+                v1.set(x, h1, z);
+                v2.set(x, h3, z + 1);
+                v3.set(x + 1, h2, z);
+            } else {
+                v1.set(x + 1, h2, z);
+                v2.set(x, h3, z + 1);
+                v3.set(x + 1, h4, z + 1);
+            }
+        }
+    }
+}
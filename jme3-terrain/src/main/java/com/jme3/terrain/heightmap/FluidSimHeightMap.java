@@ -31,6 +31,7 @@
  */
 package com.jme3.terrain.heightmap;
 
+import com.jme3.terrain.noise.ParallelRows;
 import java.util.Random;
 import java.util.logging.Logger;
 
@@ -161,49 +162,23 @@ public class FluidSimHeightMap extends AbstractHeightMap {
         }
 
         int curBuf = 0;
-        int ind;
-
-        float[] oldBuffer;
-        float[] newBuffer;
 
         // Iterate over the heightmap, applying the fluid simulation equation.
         // Although it requires knowledge of the two previous timesteps, it only
         // accesses one pixel of the k-1 timestep, so using a simple trick we only
         // need to store the heightmap twice, not three times, and we can avoid
         // copying data every iteration.
+        // Each pixel only writes itself and reads the other buffer around it,
+        // so the rows of an iteration are computed in parallel.
         for (int i = 0; i < iterations; i++) {
-            oldBuffer = tempBuffer[1 - curBuf];
-            newBuffer = tempBuffer[curBuf];
-
-            for (int y = 0; y < size; y++) {
-                for (int x = 0; x < size; x++) {
-                    ind = x + y * size;
-                    float neighborsValue = 0;
-                    int neighbors = 0;
+            final float[] oldBuffer = tempBuffer[1 - curBuf];
+            final float[] newBuffer = tempBuffer[curBuf];
 
-                    if (x > 0) {
-                        neighborsValue += newBuffer[ind - 1];
-                        neighbors++;
-                    }
-                    if (x < size - 1) {
-                        neighborsValue += newBuffer[ind + 1];
-                        neighbors++;
-                    }
-                    if (y > 0) {
-                        neighborsValue += newBuffer[ind - size];
-                        neighbors++;
-                    }
-                    if (y < size - 1) {
-                        neighborsValue += newBuffer[ind + size];
-                        neighbors++;
-                    }
-                    if (neighbors != 4) {
-                        neighborsValue *= 4 / neighbors;
-                    }
-                    oldBuffer[ind] = coefA * newBuffer[ind] + coefB
-                            * oldBuffer[ind] + coefC * (neighborsValue);
+            ParallelRows.run(0, size, size, new ParallelRows.RowBlock() {
+                public void run(int startRow, int endRow) {
+                    simulate(oldBuffer, newBuffer, startRow, endRow);
                 }
-            }
+            });
 
             curBuf = 1 - curBuf;
         }
@@ -221,6 +196,42 @@ public class FluidSimHeightMap extends AbstractHeightMap {
         return true;
     }
 
+    /*
+     * Applies the fluid simulation equation to the rows from startRow
+     * (inclusive) to endRow (exclusive).
+     */
+    private void simulate(float[] oldBuffer, float[] newBuffer, int startRow, int endRow) {
+        for (int y = startRow; y < endRow; y++) {
+            for (int x = 0; x < size; x++) {
+                int ind = x + y * size;
+                float neighborsValue = 0;
+                int neighbors = 0;
+
+                if (x > 0) {
+                    neighborsValue += newBuffer[ind - 1];
+                    neighbors++;
+                }
+                if (x < size - 1) {
+                    neighborsValue += newBuffer[ind + 1];
+                    neighbors++;
+                }
+                if (y > 0) {
+                    neighborsValue += newBuffer[ind - size];
+                    neighbors++;
+                }
+                if (y < size - 1) {
+                    neighborsValue += newBuffer[ind + size];
+                    neighbors++;
+                }
+                if (neighbors != 4) {
+                    neighborsValue *= 4 / neighbors;
+                }
+                oldBuffer[ind] = coefA * newBuffer[ind] + coefB
+                        * oldBuffer[ind] + coefC * (neighborsValue);
+            }
+        }
+    }
+
     private float randomRange(Random random, float min, float max) {
         return (random.nextFloat() * (max - min)) + min;
     }
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.terrain.heightmap;
+
+import com.jme3.terrain.noise.Basis;
+import com.jme3.terrain.noise.ParallelRows;
+import com.jme3.terrain.noise.basis.Noise;
+import java.util.logging.Logger;
+
+/**
+ * <code>TiledBasisHeightMap</code> generates a large height map from a noise
+ * {@link Basis}, one tile at a time. The tiles are computed in parallel when
+ * the basis is thread safe, see {@link Noise#isThreadSafe(Basis)}.
+ * Every tile is requested from the basis the same way the
+ * <code>FractalTileLoader</code> of a terrain grid requests it, so filters
+ * get the margin they need around each tile and the result matches the tiles
+ * of a grid using the same basis and tile size.
+ *
+ * Neighbouring tiles share their border row and column. The tile below or
+ * right of a border provides it, so the result does not depend on the order
+ * the tiles finish in.
+ */
+public class TiledBasisHeightMap extends AbstractHeightMap {
+
+    private static final Logger logger = Logger.getLogger(TiledBasisHeightMap.class.getName());
+    private Basis basis;
+    private int tileSize;
+    private int tiles;
+    private float base;
+
+    /**
+     * Constructor sets the attributes and generates the height map, of size
+     * tiles * (tileSize - 1) + 1.
+     *
+     * @param basis
+     *            the basis to request the tiles from
+     * @param tileSize
+     *            the number of points along a side of a tile
+     * @param tiles
+     *            the number of tiles along a side of the height map
+     * @throws Exception
+     *             if the tile size is less than 2 or the number of tiles is
+     *             not greater than zero
+     */
+    public TiledBasisHeightMap(Basis basis, int tileSize, int tiles) throws Exception {
+        if (tileSize < 2 || tiles <= 0) {
+            throw new Exception("Either the tile size is less than 2 or "
+                    + "the number of tiles is not greater than zero.");
+        }
+        this.basis = basis;
+        this.tileSize = tileSize;
+        this.tiles = tiles;
+        this.size = tiles * (tileSize - 1) + 1;
+
+        load();
+    }
+
+    /*
+     * Generates the height map from the tiles of the basis.
+     */
+    public boolean load() {
+        // Clean up data if needed.
+        if (null != heightData) {
+            unloadHeightMap();
+        }
+
+        heightData = new float[size * size];
+        final int step = tileSize - 1;
+
+        ParallelRows.RowBlock tileRows = new ParallelRows.RowBlock() {
+            public void run(int startTile, int endTile) {
+                for (int t = startTile; t < endTile; t++) {
+                    int tileX = t % tiles;
+                    int tileZ = t / tiles;
+                    float[] tile = basis.getBuffer(tileX * step, tileZ * step, base, tileSize).array();
+                    // the last row and column belong to the next tile,
+                    // unless this tile is at the edge of the map
+                    int rows = tileZ == tiles - 1 ? tileSize : step;
+                    int columns = tileX == tiles - 1 ? tileSize : step;
+                    for (int z = 0; z < rows; z++) {
+                        System.arraycopy(tile, z * tileSize, heightData,
+                                (tileZ * step + z) * size + tileX * step, columns);
+                    }
+                }
+            }
+        };
+        if (Noise.isThreadSafe(basis)) {
+            // one "row" per tile, large enough to get a thread each
+            ParallelRows.run(0, tiles * tiles, tileSize * tileSize, tileRows);
+        } else {
+            tileRows.run(0, tiles * tiles);
+        }
+
+        logger.fine("Created heightmap from " + tiles * tiles + " tiles of the basis");
+        return true;
+    }
+
+    public Basis getBasis() {
+        return basis;
+    }
+
+    public void setBasis(Basis basis) {
+        this.basis = basis;
+    }
+
+    public float getBase() {
+        return base;
+    }
+
+    /**
+     * Set the third coordinate the basis is sampled at, 0 by default.
+     * Call <code>load</code> again to apply it.
+     */
+    public void setBase(float base) {
+        this.base = base;
+    }
+}
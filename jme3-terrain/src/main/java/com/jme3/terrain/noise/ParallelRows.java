@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2009-2015 jMonkeyEngine
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * * Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * * Neither the name of 'jMonkeyEngine' nor the names of its contributors
+ *   may be used to endorse or promote products derived from this software
+ *   without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.jme3.terrain.noise;
+
+import com.jme3.util.ParallelTasks;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Runs a loop over the rows of a height map in blocks of rows, spread over the
+ * threads of {@link ParallelTasks#getSharedExecutor()}. The calling thread
+ * runs the blocks not yet picked up by the pool, so a block may start another
+ * parallel loop itself, like a filter requesting the buffer of its basis.
+ * 
+ * The rows of a block must only depend on data no other block writes, as in
+ * filters reading one buffer and writing another.
+ */
+public final class ParallelRows {
+
+	/**
+	 * The body of a loop over rows.
+	 */
+	public interface RowBlock {
+
+		/**
+		 * Process the rows from startRow (inclusive) to endRow (exclusive).
+		 */
+		public void run(int startRow, int endRow);
+	}
+
+	/**
+	 * blocks smaller than this are not worth handing to another thread
+	 */
+	private static final int SAMPLES_PER_BLOCK = 16384;
+
+	private ParallelRows() {
+	}
+
+	/**
+	 * Run the block over the rows from startRow (inclusive) to endRow
+	 * (exclusive), returning when all rows are done.
+	 * 
+	 * @param rowLength
+	 *            the number of samples in a row, used to size the blocks
+	 */
+	public static void run(int startRow, int endRow, int rowLength, final RowBlock block) {
+		int rows = endRow - startRow;
+		if (rows <= 0) {
+			return;
+		}
+		int threads = Runtime.getRuntime().availableProcessors();
+		int rowsPerBlock = Math.max(ParallelRows.SAMPLES_PER_BLOCK / Math.max(rowLength, 1), 1);
+		// no more than a few blocks per thread
+		rowsPerBlock = Math.max(rowsPerBlock, (rows + 4 * threads - 1) / (4 * threads));
+		if (threads == 1 || rows <= rowsPerBlock) {
+			block.run(startRow, endRow);
+			return;
+		}
+
+		List<Callable<Void>> blocks = new ArrayList<Callable<Void>>();
+		for (int row = startRow; row < endRow; row += rowsPerBlock) {
+			final int first = row;
+			final int last = Math.min(row + rowsPerBlock, endRow);
+			blocks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					block.run(first, last);
+					return null;
+				}
+			});
+		}
+		ParallelTasks.invokeAll(ParallelTasks.getSharedExecutor(), blocks);
+	}
+}
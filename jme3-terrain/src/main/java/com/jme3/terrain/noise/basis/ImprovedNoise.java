@@ -119,6 +119,11 @@ public final class ImprovedNoise extends Noise {
 		}
 	}
 
+	@Override
+	public boolean isThreadSafe() {
+		return this.modulators.isEmpty();
+	}
+
 	@Override
 	public float value(final float x, final float y, final float z) {
 		return ImprovedNoise.noise(this.scale * x, this.scale * y, this.scale * z);
@@ -30,6 +30,7 @@
 package com.jme3.terrain.noise.basis;
 
 import com.jme3.terrain.noise.Basis;
+import com.jme3.terrain.noise.ParallelRows;
 import com.jme3.terrain.noise.modulator.Modulator;
 import com.jme3.terrain.noise.modulator.NoiseModulator;
 import java.nio.FloatBuffer;
@@ -53,15 +54,55 @@ public abstract class Noise implements Basis {
 		return this.getClass().getSimpleName();
 	}
 
+	/**
+	 * Whether {@link #value(float, float, float)} and the modulators of this
+	 * noise are safe to call from several threads at once. Defaults to false;
+	 * subclasses without mutable state override it to let
+	 * {@link #getBuffer(float, float, float, int)} fill the buffer in parallel.
+	 */
+	public boolean isThreadSafe() {
+		return false;
+	}
+
+	/**
+	 * Whether the basis is a noise declaring itself thread safe, or a
+	 * {@link FilteredBasis} of one. The filters are expected to be thread safe,
+	 * like the filters of this library are.
+	 * 
+	 * @see #isThreadSafe()
+	 */
+	public static boolean isThreadSafe(Basis basis) {
+		if (basis instanceof FilteredBasis) {
+			return Noise.isThreadSafe(((FilteredBasis) basis).getBasis());
+		}
+		return basis instanceof Noise && ((Noise) basis).isThreadSafe();
+	}
+
+	/**
+	 * Fills the buffer in blocks of rows on several threads if this noise
+	 * {@link #isThreadSafe() is thread safe}, on the calling thread otherwise.
+	 */
 	@Override
-	public FloatBuffer getBuffer(float sx, float sy, float base, int size) {
-		FloatBuffer retval = FloatBuffer.allocate(size * size);
-		for (int y = 0; y < size; y++) {
-			for (int x = 0; x < size; x++) {
-				retval.put(this.modulate((sx + x) / size, (sy + y) / size, base));
+	public FloatBuffer getBuffer(final float sx, final float sy, final float base, final int size) {
+		final float[] retval = new float[size * size];
+		ParallelRows.RowBlock rows = new ParallelRows.RowBlock() {
+			@Override
+			public void run(int startRow, int endRow) {
+				for (int y = startRow; y < endRow; y++) {
+					int idx = y * size;
+					float v = (sy + y) / size;
+					for (int x = 0; x < size; x++) {
+						retval[idx + x] = Noise.this.modulate((sx + x) / size, v, base);
+					}
+				}
 			}
+		};
+		if (this.isThreadSafe()) {
+			ParallelRows.run(0, size, size, rows);
+		} else {
+			rows.run(0, size);
 		}
-		return retval;
+		return FloatBuffer.wrap(retval);
 	}
 
 	public float modulate(float x, float y, float z) {
@@ -56,6 +56,11 @@ public class NoiseAggregator extends Noise {
 		this.b.init();
 	}
 
+	@Override
+	public boolean isThreadSafe() {
+		return this.modulators.isEmpty() && Noise.isThreadSafe(this.a) && Noise.isThreadSafe(this.b);
+	}
+
 	@Override
 	public float value(final float x, final float y, final float z) {
 		return this.a.value(x, y, z) * (1 - this.rate) + this.rate * this.b.value(x, y, z);
@@ -29,6 +29,7 @@
  */
 package com.jme3.terrain.noise.filter;
 
+import com.jme3.terrain.noise.ParallelRows;
 import java.nio.FloatBuffer;
 
 public class OptimizedErode extends AbstractFilter {
@@ -60,53 +61,61 @@ public class OptimizedErode extends AbstractFilter {
 	}
 
 	@Override
-	public FloatBuffer filter(float sx, float sy, float base, FloatBuffer buffer, int size) {
-		float[] tmp = buffer.array();
-		float[] retval = new float[tmp.length];
-
-		for (int y = this.radius + 1; y < size - this.radius; y++) {
-			for (int x = this.radius + 1; x < size - this.radius; x++) {
-				int idx = y * size + x;
-				float h = tmp[idx];
-
-				float horizAvg = 0;
-				int horizCount = 0;
-				float vertAvg = 0;
-				int vertCount = 0;
-
-				boolean horizT = false;
-				boolean vertT = false;
-
-				for (int i = 0; i >= -this.radius; i--) {
-					int idxV = (y + i) * size + x;
-					int idxVL = (y + i - 1) * size + x;
-					int idxH = y * size + x + i;
-					int idxHL = y * size + x + i - 1;
-					float hV = tmp[idxV];
-					float hH = tmp[idxH];
-
-					if (Math.abs(h - hV) > this.talus && Math.abs(h - tmp[idxVL]) > this.talus || vertT) {
-						vertT = true;
-					} else {
-						if (Math.abs(h - hV) <= this.talus) {
-							vertAvg += hV;
-							vertCount++;
+	public FloatBuffer filter(float sx, float sy, float base, FloatBuffer buffer, final int size) {
+		final float[] tmp = buffer.array();
+		final float[] retval = new float[tmp.length];
+		final int radius = this.radius;
+		final float talus = this.talus;
+
+		// every row only reads the source buffer, so the rows are independent
+		ParallelRows.run(radius + 1, size - radius, size, new ParallelRows.RowBlock() {
+			@Override
+			public void run(int startRow, int endRow) {
+				for (int y = startRow; y < endRow; y++) {
+					for (int x = radius + 1; x < size - radius; x++) {
+						int idx = y * size + x;
+						float h = tmp[idx];
+
+						float horizAvg = 0;
+						int horizCount = 0;
+						float vertAvg = 0;
+						int vertCount = 0;
+
+						boolean horizT = false;
+						boolean vertT = false;
+
+						for (int i = 0; i >= -radius; i--) {
+							int idxV = (y + i) * size + x;
+							int idxVL = (y + i - 1) * size + x;
+							int idxH = y * size + x + i;
+							int idxHL = y * size + x + i - 1;
+							float hV = tmp[idxV];
+							float hH = tmp[idxH];
+
+							if (Math.abs(h - hV) > talus && Math.abs(h - tmp[idxVL]) > talus || vertT) {
+								vertT = true;
+							} else {
+								if (Math.abs(h - hV) <= talus) {
+									vertAvg += hV;
+									vertCount++;
+								}
+							}
+
+							if (Math.abs(h - hH) > talus && Math.abs(h - tmp[idxHL]) > talus || horizT) {
+								horizT = true;
+							} else {
+								if (Math.abs(h - hH) <= talus) {
+									horizAvg += hH;
+									horizCount++;
+								}
+							}
 						}
-					}
 
-					if (Math.abs(h - hH) > this.talus && Math.abs(h - tmp[idxHL]) > this.talus || horizT) {
-						horizT = true;
-					} else {
-						if (Math.abs(h - hH) <= this.talus) {
-							horizAvg += hH;
-							horizCount++;
-						}
+						retval[idx] = 0.5f * (vertAvg / (vertCount > 0 ? vertCount : 1) + horizAvg / (horizCount > 0 ? horizCount : 1));
 					}
 				}
-
-				retval[idx] = 0.5f * (vertAvg / (vertCount > 0 ? vertCount : 1) + horizAvg / (horizCount > 0 ? horizCount : 1));
 			}
-		}
+		});
 		return FloatBuffer.wrap(retval);
 	}
 
@@ -29,6 +29,7 @@
  */
 package com.jme3.terrain.noise.filter;
 
+import com.jme3.terrain.noise.ParallelRows;
 import java.nio.FloatBuffer;
 
 public class SmoothFilter extends AbstractFilter {
@@ -58,22 +59,31 @@ public class SmoothFilter extends AbstractFilter {
 	}
 
 	@Override
-	public FloatBuffer filter(float sx, float sy, float base, FloatBuffer buffer, int size) {
-		float[] data = buffer.array();
-		float[] retval = new float[data.length];
+	public FloatBuffer filter(float sx, float sy, float base, FloatBuffer buffer, final int size) {
+		final float[] data = buffer.array();
+		final float[] retval = new float[data.length];
+		final int radius = this.radius;
+		final float effect = this.effect;
 
-		for (int y = this.radius; y < size - this.radius; y++) {
-			for (int x = this.radius; x < size - this.radius; x++) {
-				int idx = y * size + x;
-				float n = 0;
-				for (int i = -this.radius; i < this.radius + 1; i++) {
-					for (int j = -this.radius; j < this.radius + 1; j++) {
-						n += data[(y + i) * size + x + j];
+		// every row only reads the source buffer, so the rows are independent
+		ParallelRows.run(radius, size - radius, size, new ParallelRows.RowBlock() {
+			@Override
+			public void run(int startRow, int endRow) {
+				for (int y = startRow; y < endRow; y++) {
+					for (int x = radius; x < size - radius; x++) {
+						int idx = y * size + x;
+						float n = 0;
+						for (int i = -radius; i < radius + 1; i++) {
+							int row = (y + i) * size + x;
+							for (int j = -radius; j < radius + 1; j++) {
+								n += data[row + j];
+							}
+						}
+						retval[idx] = effect * n / (4 * radius * (radius + 1) + 1) + (1 - effect) * data[idx];
 					}
 				}
-				retval[idx] = this.effect * n / (4 * this.radius * (this.radius + 1) + 1) + (1 - this.effect) * data[idx];
 			}
-		}
+		});
 
 		return FloatBuffer.wrap(retval);
 	}
@@ -57,14 +57,17 @@ public class ThermalErodeFilter extends AbstractFilter {
 		float[] sa = new float[workSize * workSize];
 
 		int[] idxrel = { -workSize - 1, -workSize + 1, workSize - 1, workSize + 1 };
+		// cleared again after each point
+		float[] deltas = new float[idxrel.length];
 
+		// each point moves material to points visited later, so the sweep
+		// stays serial; tiles of a large map can still run in parallel
 		for (int y = 0; y < workSize; y++) {
 			for (int x = 0; x < workSize; x++) {
 				int idx = y * workSize + x;
 				ga[idx] += sa[idx];
 				sa[idx] = 0;
 
-				float[] deltas = new float[idxrel.length];
 				float deltaMax = this.talus;
 				float deltaTotal = 0;
 
@@ -66,6 +66,11 @@ public class FractalSum extends Noise implements Fractal {
 		this.setOctaves(1);
 	}
 
+	@Override
+	public boolean isThreadSafe() {
+		return this.modulators.isEmpty() && Noise.isThreadSafe(this.basis);
+	}
+
 	@Override
 	public float value(final float x, final float y, final float z) {
 		float total = 0;
@@ -0,0 +1,53 @@
+uniform sampler2D m_HeightMap;
+uniform float m_HeightMapSize;
+uniform mat4 m_WorldToTerrain;
+
+#ifdef HAS_COLOR
+    uniform vec4 m_Color;
+#endif
+
+#ifdef DIFFUSEMAP
+    uniform sampler2D m_DiffuseMap;
+    uniform float m_DiffuseMapScale;
+#endif
+
+#ifdef LIGHTING
+    uniform vec3 m_LightDirection;
+    uniform float m_Ambient;
+#endif
+
+varying vec2 index;
+
+void main(){
+    // the levels reach beyond the heightmap
+    if (any(lessThan(index, vec2(0.0))) || any(greaterThan(index, vec2(m_HeightMapSize - 1.0)))) {
+        discard;
+    }
+
+    float texel = 1.0 / m_HeightMapSize;
+    vec4 color = vec4(1.0);
+
+    #ifdef HAS_COLOR
+        color *= m_Color;
+    #endif
+
+    #ifdef DIFFUSEMAP
+        color *= texture2D(m_DiffuseMap, (index + 0.5) * texel * m_DiffuseMapScale);
+    #endif
+
+    #ifdef LIGHTING
+        // the normal from the central differences of the full resolution heights
+        vec2 uv = (floor(index + 0.5) + 0.5) * texel;
+        float left = texture2D(m_HeightMap, uv - vec2(texel, 0.0)).r;
+        float right = texture2D(m_HeightMap, uv + vec2(texel, 0.0)).r;
+        float up = texture2D(m_HeightMap, uv - vec2(0.0, texel)).r;
+        float down = texture2D(m_HeightMap, uv + vec2(0.0, texel)).r;
+        vec3 normal = vec3((left - right) * 0.5, 1.0, (up - down) * 0.5);
+        // to world space with the transpose of the world to terrain matrix
+        normal = normalize((vec4(normal, 0.0) * m_WorldToTerrain).xyz);
+        float diffuse = max(dot(normal, -normalize(m_LightDirection)), 0.0);
+        color.rgb *= m_Ambient + (1.0 - m_Ambient) * diffuse;
+    #endif
+
+    gl_FragColor = color;
+}
@@ -0,0 +1,38 @@
+uniform mat4 g_WorldViewProjectionMatrix;
+uniform mat4 g_WorldMatrix;
+uniform vec3 g_CameraPosition;
+
+uniform sampler2D m_HeightMap;
+uniform float m_HeightMapSize;
+uniform vec2 m_MorphRange;
+uniform mat4 m_WorldToTerrain;
+
+attribute vec3 inPosition;
+
+// heightmap coordinates of the vertex
+varying vec2 index;
+
+float heightAt(vec2 i){
+    return texture2DLod(m_HeightMap, (i + 0.5) / m_HeightMapSize, 0.0).r;
+}
+
+void main(){
+    // the level geometry is scaled by the grid step of the level and placed
+    // on its grid, in heightmap coordinates of the terrain
+    mat4 levelToTerrain = m_WorldToTerrain * g_WorldMatrix;
+    vec2 grid = (levelToTerrain * vec4(inPosition.x, 0.0, inPosition.z, 1.0)).xz;
+    float levelStep = levelToTerrain[0][0];
+    vec2 camera = (m_WorldToTerrain * vec4(g_CameraPosition, 1.0)).xz;
+
+    // towards the outer edge the odd vertices move onto their even
+    // neighbours, which are the vertices of the next coarser level
+    vec2 cells = abs(grid - camera) / levelStep;
+    float morph = clamp((max(cells.x, cells.y) - m_MorphRange.x) / (m_MorphRange.y - m_MorphRange.x), 0.0, 1.0);
+    vec2 odd = mod(inPosition.xz, 2.0);
+    vec2 coarse = grid - odd * levelStep;
+    float height = mix(heightAt(grid), heightAt(coarse), morph);
+
+    vec2 position = inPosition.xz - odd * morph;
+    index = mix(grid, coarse, morph);
+    gl_Position = g_WorldViewProjectionMatrix * vec4(position.x, height, position.y, 1.0);
+}
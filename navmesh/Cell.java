@@ -93,29 +93,10 @@ public class Cell implements Savable {
     private Cell[] links = new Cell[3];
 
     /**
-     * an identifier for the current pathfinding session.
+     * the index of this cell in the NavigationMesh, used by the path
+     * finding to keep its data per cell.
      */
-    private volatile int sessionID;
-
-    /**
-     * total cost to use this cell as part of a path
-     */
-    private volatile float arrivalCost;
-
-    /**
-     * our estimated cost to the goal from here
-     */
-    private volatile float heuristic;
-
-    /**
-     * are we currently listed as an Open cell to revisit and test?
-     */
-    private volatile boolean open;
-
-    /**
-     * the side we arrived through.
-     */
-    private volatile int arrivalWall;
+    private int index = -1;
 
     /**
      * the pre-computed midpoint of each wall.
@@ -331,20 +312,12 @@ public class Cell implements Savable {
         return sides[side];
     }
 
-    float getArrivalCost() {
-        return (arrivalCost);
+    int getIndex() {
+        return index;
     }
 
-    float getHeuristic() {
-        return (heuristic);
-    }
-
-    float getTotalCost() {
-        return (arrivalCost + heuristic);
-    }
-
-    int getArrivalWall() {
-        return (arrivalWall);
+    void setIndex(int index) {
+        this.index = index;
     }
 
     public float getWallLength(int side){
@@ -585,120 +558,6 @@ public class Cell implements Savable {
         return (PointAltered);
     }
 
-    /**
-     * Process this cells neighbors using A*
-     *
-     * @param heap
-     * @return
-     */
-    boolean processCell(NavHeap heap) {
-        if (sessionID == heap.getSessionID()) {
-            // once we have been processed, we are closed
-            open = false;
-
-            // querry all our neigbors to see if they need to be added to the
-            // Open heap
-            for (int i = 0; i < 3; ++i) {
-                if (links[i] != null) {
-                    // abs(i-m_ArrivalWall) is a formula to determine which
-                    // distance measurement to use.
-                    // The Distance measurements between the wall midpoints of
-                    // this cell
-                    // are held in the order ABtoBC, BCtoCA and CAtoAB.
-                    // We add this distance to our known m_ArrivalCost to
-                    // compute
-                    // the total cost to reach the next adjacent cell.
-                    links[i].queryForPath(heap, this, arrivalCost
-                            + wallDistances[Math.abs(i - arrivalWall)]);
-                }
-            }
-            return true;
-        }
-        return false;
-    }
-
-    /**
-     * Process this cell using the A* heuristic
-     *
-     * @param heap
-     * @param caller
-     * @param arrivalCost
-     * @return
-     */
-    boolean queryForPath(NavHeap heap, Cell caller, float arrivalCost) {
-        if (sessionID != heap.getSessionID()) {
-            // this is a new session, reset our internal data
-            sessionID = heap.getSessionID();
-
-            if (caller != null) {
-                open = true;
-                computeHeuristic(heap.getGoal());
-                this.arrivalCost = arrivalCost;
-
-                // remember the side this caller is entering from
-                if (caller.equals(links[0])) {
-                    arrivalWall = 0;
-                } else if (caller.equals(links[1])) {
-                    arrivalWall = 1;
-                } else if (caller.equals(links[2])) {
-                    arrivalWall = 2;
-                }
-            } else {
-                // we are the cell that contains the starting location
-                // of the A* search.
-                open = false;
-                this.arrivalCost = 0;
-                heuristic = 0;
-                arrivalWall = 0;
-            }
-            // add this cell to the Open heap
-            heap.addCell(this);
-            return true;
-        } else if (caller == null) {
-            // caller is null
-            return false;
-        } else if (open) {
-            // m_Open means we are already in the Open Heap.
-            // If this new caller provides a better path, adjust our data
-            // Then tell the Heap to resort our position in the list.            
-            if ((arrivalCost + heuristic) < (this.arrivalCost + heuristic)) {
-                this.arrivalCost = arrivalCost;
-
-                // remember the side this caller is entering from
-                if (caller.equals(links[0])) {
-                    arrivalWall = 0;
-                } else if (caller.equals(links[1])) {
-                    arrivalWall = 1;
-                } else if (caller.equals(links[2])) {
-                    arrivalWall = 2;
-                }
-                // ask the heap to resort our position in the priority heap
-                heap.adjustCell(this);
-                return true;
-            }
-        }
-        // this cell is closed
-        return false;
-    }
-
-
-    /**
-     * Compute the A* Heuristic for this cell given a Goal point
-     * @param goal
-     */
-    void computeHeuristic(Vector3f goal) {
-        // our heuristic is the estimated distance (using the longest axis
-        // delta) between our
-        // cell center and the goal location
-
-//        float XDelta = Math.abs(goal.x - center.x);
-//        float YDelta = Math.abs(goal.y - center.y);
-//        float ZDelta = Math.abs(goal.z - center.z);
-
-//        heuristic = Math.max(Math.max(XDelta, YDelta), ZDelta);
-        heuristic = goal.distance(center);
-    }
-
     @Override
     public String toString() {
         return "Cell: " + center.x + "," + center.z;
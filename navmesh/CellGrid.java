@@ -0,0 +1,303 @@
+package navmesh;
+
+import com.jme3.export.InputCapsule;
+import com.jme3.export.JmeExporter;
+import com.jme3.export.JmeImporter;
+import com.jme3.export.OutputCapsule;
+import com.jme3.export.Savable;
+import com.jme3.math.Vector2f;
+import com.jme3.math.Vector3f;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A uniform grid over the XZ bounds of the cells of a {@link NavMesh}, used
+ * to locate the cells around a point without testing every cell of the mesh.
+ * Each bucket lists the indices of the cells whose bounds overlap it, in
+ * ascending order, so queries visit cells in the same order as a scan of the
+ * whole cell list would and return the same cell.
+ *
+ * The grid is immutable once built, it is rebuilt by the mesh whenever cells
+ * are added.
+ */
+public final class CellGrid implements Savable {
+
+    /**
+     * cells are padded by this distance, which covers the squared epsilon
+     * used when linking cells and float rounding in the containment tests
+     */
+    static final float PADDING = 0.032f;
+    private float originX;
+    private float originZ;
+    private float bucketSize = 1;
+    private int columns;
+    private int rows;
+    private int cellCount;
+    /**
+     * the cells of bucket b are bucketCells[bucketStarts[b]] up to
+     * bucketCells[bucketStarts[b + 1]]
+     */
+    private int[] bucketStarts = new int[1];
+    private int[] bucketCells = new int[0];
+
+    /**
+     * Serialization only. Do not use.
+     */
+    public CellGrid() {
+    }
+
+    CellGrid(List<Cell> cells) {
+        cellCount = cells.size();
+        if (cellCount == 0) {
+            return;
+        }
+
+        float minX = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        float extent = 0;
+        for (int i = 0; i < cellCount; i++) {
+            Cell cell = cells.get(i);
+            float cellMinX = Float.POSITIVE_INFINITY, cellMinZ = Float.POSITIVE_INFINITY;
+            float cellMaxX = Float.NEGATIVE_INFINITY, cellMaxZ = Float.NEGATIVE_INFINITY;
+            for (int v = 0; v < 3; v++) {
+                Vector3f vertex = cell.getVertex(v);
+                cellMinX = Math.min(cellMinX, vertex.x);
+                cellMinZ = Math.min(cellMinZ, vertex.z);
+                cellMaxX = Math.max(cellMaxX, vertex.x);
+                cellMaxZ = Math.max(cellMaxZ, vertex.z);
+            }
+            extent += Math.max(cellMaxX - cellMinX, cellMaxZ - cellMinZ);
+            minX = Math.min(minX, cellMinX);
+            minZ = Math.min(minZ, cellMinZ);
+            maxX = Math.max(maxX, cellMaxX);
+            maxZ = Math.max(maxZ, cellMaxZ);
+        }
+        originX = minX - PADDING;
+        originZ = minZ - PADDING;
+        float width = maxX - minX + 2 * PADDING;
+        float depth = maxZ - minZ + 2 * PADDING;
+
+        // buckets about the size of an average cell, but no more than a few
+        // buckets per cell for meshes of very unevenly sized cells
+        bucketSize = Math.max(extent / cellCount, PADDING);
+        bucketSize = Math.max(bucketSize, (float) Math.sqrt(width * depth / (4.0 * cellCount)));
+        columns = Math.max(1, (int) Math.ceil(width / bucketSize));
+        rows = Math.max(1, (int) Math.ceil(depth / bucketSize));
+
+        // count the cells of each bucket, then fill them in cell order
+        bucketStarts = new int[columns * rows + 1];
+        int[] bounds = new int[4 * cellCount];
+        for (int i = 0; i < cellCount; i++) {
+            cellBuckets(cells.get(i), bounds, i * 4);
+            for (int z = bounds[i * 4 + 1]; z <= bounds[i * 4 + 3]; z++) {
+                for (int x = bounds[i * 4]; x <= bounds[i * 4 + 2]; x++) {
+                    bucketStarts[z * columns + x + 1]++;
+                }
+            }
+        }
+        for (int b = 0; b < columns * rows; b++) {
+            bucketStarts[b + 1] += bucketStarts[b];
+        }
+        bucketCells = new int[bucketStarts[columns * rows]];
+        int[] fill = Arrays.copyOf(bucketStarts, columns * rows);
+        for (int i = 0; i < cellCount; i++) {
+            for (int z = bounds[i * 4 + 1]; z <= bounds[i * 4 + 3]; z++) {
+                for (int x = bounds[i * 4]; x <= bounds[i * 4 + 2]; x++) {
+                    bucketCells[fill[z * columns + x]++] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of cells the grid was built for
+     */
+    int getCellCount() {
+        return cellCount;
+    }
+
+    /**
+     * Link all cells that share an edge, checking only the cells found in
+     * the same buckets. The candidates of each cell are checked in list
+     * order, which gives the same links as checking every pair of cells.
+     */
+    void linkCells(List<Cell> cells, float epsilon) {
+        int[] seen = new int[cellCount];
+        Arrays.fill(seen, -1);
+        int[] candidates = new int[16];
+        int[] bounds = new int[4];
+        for (int i = 0; i < cellCount; i++) {
+            Cell cell = cells.get(i);
+            cellBuckets(cell, bounds, 0);
+            int count = 0;
+            for (int z = bounds[1]; z <= bounds[3]; z++) {
+                for (int x = bounds[0]; x <= bounds[2]; x++) {
+                    int bucket = z * columns + x;
+                    for (int k = bucketStarts[bucket]; k < bucketStarts[bucket + 1]; k++) {
+                        int other = bucketCells[k];
+                        if (other != i && seen[other] != i) {
+                            seen[other] = i;
+                            if (count == candidates.length) {
+                                candidates = Arrays.copyOf(candidates, count * 2);
+                            }
+                            candidates[count++] = other;
+                        }
+                    }
+                }
+            }
+            Arrays.sort(candidates, 0, count);
+            for (int k = 0; k < count; k++) {
+                cell.checkAndLink(cells.get(candidates[k]), epsilon);
+            }
+        }
+    }
+
+    /**
+     * @see NavMesh#findInsideCell(Vector3f, float)
+     */
+    Cell findInsideCell(List<Cell> cells, Vector3f point, float maxHeight) {
+        int bucket = bucketAt(point);
+        if (bucket < 0) {
+            return null;
+        }
+        for (int k = bucketStarts[bucket]; k < bucketStarts[bucket + 1]; k++) {
+            Cell cell = cells.get(bucketCells[k]);
+            if (cell.contains(point) && point.y - cell.getHeightOnCell(point) < maxHeight) {
+                return cell;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @see NavMesh#findClosestCell(Vector3f)
+     */
+    Cell findClosestCell(List<Cell> cells, Vector3f point) {
+        if (cellCount == 0) {
+            return null;
+        }
+
+        // a cell containing the point wins, the one closest in height first
+        int bucket = bucketAt(point);
+        if (bucket >= 0) {
+            Cell closestCell = null;
+            float closestHeight = Float.MAX_VALUE;
+            for (int k = bucketStarts[bucket]; k < bucketStarts[bucket + 1]; k++) {
+                Cell cell = cells.get(bucketCells[k]);
+                if (cell.contains(point)) {
+                    float height = Math.abs(cell.getHeightOnCell(point) - point.y);
+                    if (closestCell == null || height < closestHeight) {
+                        closestCell = cell;
+                        closestHeight = height;
+                    }
+                }
+            }
+            if (closestCell != null) {
+                return closestCell;
+            }
+        }
+
+        // otherwise search rings of buckets around the point for the cell
+        // with the closest edge, until no unvisited bucket can be closer
+        int column = clamp((int) Math.floor((point.x - originX) / bucketSize), columns);
+        int row = clamp((int) Math.floor((point.z - originZ) / bucketSize), rows);
+        int maxRing = Math.max(Math.max(column, columns - 1 - column), Math.max(row, rows - 1 - row));
+        Vector2f end = new Vector2f(point.x, point.z);
+        Vector3f closestPoint = new Vector3f();
+        Cell closestCell = null;
+        int closestIndex = Integer.MAX_VALUE;
+        float closestDistance = Float.MAX_VALUE;
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // cells first found in this ring are at least ring - 1 buckets
+            // away from the point
+            if (closestCell != null && closestDistance < (ring - 1) * bucketSize) {
+                break;
+            }
+            int minZ = row - ring, maxZ = row + ring;
+            for (int z = Math.max(minZ, 0); z <= Math.min(maxZ, rows - 1); z++) {
+                boolean edgeRow = z == minZ || z == maxZ;
+                int step = edgeRow ? 1 : 2 * ring;
+                for (int x = column - ring; x <= column + ring; x += step) {
+                    if (x < 0 || x >= columns) {
+                        continue;
+                    }
+                    int b = z * columns + x;
+                    for (int k = bucketStarts[b]; k < bucketStarts[b + 1]; k++) {
+                        int index = bucketCells[k];
+                        Cell cell = cells.get(index);
+                        Vector3f center = cell.getCenter();
+                        Line2D motionPath = new Line2D(new Vector2f(center.x, center.z), end);
+                        Cell.ClassifyResult result = cell.classifyPathToCell(motionPath);
+                        if (result.result != Cell.PathResult.ExitingCell) {
+                            continue;
+                        }
+                        closestPoint.set(result.intersection.x, 0.0f, result.intersection.y);
+                        cell.computeHeightOnCell(closestPoint);
+                        float distance = closestPoint.subtractLocal(point).length();
+                        if (distance < closestDistance
+                                || (distance == closestDistance && index < closestIndex)) {
+                            closestDistance = distance;
+                            closestIndex = index;
+                            closestCell = cell;
+                        }
+                    }
+                }
+            }
+        }
+        return closestCell;
+    }
+
+    private int bucketAt(Vector3f point) {
+        float x = (point.x - originX) / bucketSize;
+        float z = (point.z - originZ) / bucketSize;
+        if (!(x >= 0 && z >= 0 && x < columns && z < rows)) {
+            return -1;
+        }
+        return (int) z * columns + (int) x;
+    }
+
+    private void cellBuckets(Cell cell, int[] store, int offset) {
+        float minX = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        for (int v = 0; v < 3; v++) {
+            Vector3f vertex = cell.getVertex(v);
+            minX = Math.min(minX, vertex.x);
+            minZ = Math.min(minZ, vertex.z);
+            maxX = Math.max(maxX, vertex.x);
+            maxZ = Math.max(maxZ, vertex.z);
+        }
+        store[offset] = clamp((int) Math.floor((minX - PADDING - originX) / bucketSize), columns);
+        store[offset + 1] = clamp((int) Math.floor((minZ - PADDING - originZ) / bucketSize), rows);
+        store[offset + 2] = clamp((int) Math.floor((maxX + PADDING - originX) / bucketSize), columns);
+        store[offset + 3] = clamp((int) Math.floor((maxZ + PADDING - originZ) / bucketSize), rows);
+    }
+
+    private static int clamp(int value, int size) {
+        return Math.min(Math.max(value, 0), size - 1);
+    }
+
+    public void write(JmeExporter e) throws IOException {
+        OutputCapsule capsule = e.getCapsule(this);
+        capsule.write(originX, "originX", 0);
+        capsule.write(originZ, "originZ", 0);
+        capsule.write(bucketSize, "bucketSize", 1);
+        capsule.write(columns, "columns", 0);
+        capsule.write(rows, "rows", 0);
+        capsule.write(cellCount, "cellCount", 0);
+        capsule.write(bucketStarts, "bucketStarts", null);
+        capsule.write(bucketCells, "bucketCells", null);
+    }
+
+    public void read(JmeImporter e) throws IOException {
+        InputCapsule capsule = e.getCapsule(this);
+        originX = capsule.readFloat("originX", 0);
+        originZ = capsule.readFloat("originZ", 0);
+        bucketSize = capsule.readFloat("bucketSize", 1);
+        columns = capsule.readInt("columns", 0);
+        rows = capsule.readInt("rows", 0);
+        cellCount = capsule.readInt("cellCount", 0);
+        bucketStarts = capsule.readIntArray("bucketStarts", new int[1]);
+        bucketCells = capsule.readIntArray("bucketCells", new int[0]);
+    }
+}
@@ -103,10 +103,12 @@ public class Line2D implements Savable {
     }
 
     public Vector2f getNormal() {
-        if (normal == null)
+        Vector2f n = normal;
+        if (n == null) {
             computeNormal();
-        
-        return normal;
+            n = normal;
+        }
+        return n;
     }
 
     public void setPoints(float PointAx, float PointAy, float PointBx, float PointBy) {
@@ -141,12 +143,16 @@ public class Line2D implements Savable {
 
     private void computeNormal() {
         // Get Normailized direction from A to B
-        normal = getDirection();
+        Vector2f n = getDirection();
 
         // Rotate by -90 degrees to get normal of line
-        float oldY = normal.y;
-        normal.y = -normal.x;
-        normal.x = oldY;
+        float oldY = n.y;
+        n.y = -n.x;
+        n.x = oldY;
+
+        // publish only the finished normal, cells are shared between
+        // path finding threads
+        normal = n;
     }
 
     /**
@@ -156,11 +162,8 @@ public class Line2D implements Savable {
     are to the right of the line, negative distances are to the left.
      */
     public float signedDistance(Vector2f point) {
-        if (normal == null) {
-            computeNormal();
-        }
-
-        return point.subtract(pointA).dot(normal); //.x*m_Normal.x + TestVector.y*m_Normal.y;//DotProduct(TestVector,m_Normal);
+        Vector2f n = getNormal();
+        return point.subtract(pointA).dot(n); //.x*m_Normal.x + TestVector.y*m_Normal.y;//DotProduct(TestVector,m_Normal);
     }
 
     /**
@@ -33,6 +33,11 @@ public class NavMesh implements Savable {
      * the cells that make up this mesh
      */
     private ArrayList<Cell> cellList = new ArrayList<Cell>();
+    /**
+     * spatial index over the cells, null when cells were added since it
+     * was built
+     */
+    private volatile CellGrid cellGrid;
     
     private Mesh usedMesh;
 
@@ -45,6 +50,7 @@ public class NavMesh implements Savable {
 
     public void clear() {
         cellList.clear();
+        cellGrid = null;
     }
 
     public Mesh getLoadedMesh() {
@@ -62,7 +68,9 @@ public class NavMesh implements Savable {
     public void addCell(Vector3f pointA, Vector3f PointB, Vector3f PointC) {
         Cell newCell = new Cell();
         newCell.initialize(pointA.clone(), PointB.clone(), PointC.clone());
+        newCell.setIndex(cellList.size());
         cellList.add(newCell);
+        cellGrid = null;
     }
 
     /**
@@ -104,69 +112,30 @@ public class NavMesh implements Savable {
      * it is within the max_height of the navmesh on the floor
      */
     public Cell findInsideCell(Vector3f point, float max_height) {
-        //for(Cell cell : cellList) {
-        for(int i=0;i<cellList.size();i++) {
-            Cell cell = cellList.get(i);
-            if( cell.contains(point) && point.y - cell.getHeightOnCell(point) < max_height ) {
-                return cell;
-            }
-        }
-        return null;
+        return getCellGrid().findInsideCell(cellList, point, max_height);
     }
     
     /**
-     * Find the closest cell on the mesh to the given point
-     * AVOID CALLING! not a fast routine!
+     * Find the closest cell on the mesh to the given point.
+     * A cell containing the point is preferred, the one closest in height
+     * when cells overlap, otherwise the cell with the closest edge is
+     * returned. Only the cells near the point are tested.
      */
     public Cell findClosestCell(Vector3f point) {
-        float closestDistance = 3.4E+38f;
-        float closestHeight = 3.4E+38f;
-        boolean foundHomeCell = false;
-        float thisDistance;
-        Cell closestCell = null;
-
-        // oh dear this is not fast
-        for (Cell cell : cellList) {
-            if (cell.contains(point)) {
-                thisDistance = Math.abs(cell.getHeightOnCell(point) - point.y);
-
-                if (foundHomeCell) {
-                    if (thisDistance < closestHeight) {
-                        closestCell = cell;
-                        closestHeight = thisDistance;
-                    }
-                } else {
-                    closestCell = cell;
-                    closestHeight = thisDistance;
-                    foundHomeCell = true;
-                }
-            }
-
-            if (!foundHomeCell) {
-                Vector2f start = new Vector2f(cell.getCenter().x, cell.getCenter().z);
-                Vector2f end = new Vector2f(point.x, point.z);
-                Line2D motionPath = new Line2D(start, end);
-
-                Cell.ClassifyResult Result = cell.classifyPathToCell(motionPath);
-
-                if (Result.result == Cell.PathResult.ExitingCell) {
-                    Vector3f ClosestPoint3D = new Vector3f(
-                            Result.intersection.x, 0.0f, Result.intersection.y);
-                    cell.computeHeightOnCell(ClosestPoint3D);
-
-                    ClosestPoint3D = ClosestPoint3D.subtract(point);
-
-                    thisDistance = ClosestPoint3D.length();
+        return getCellGrid().findClosestCell(cellList, point);
+    }
 
-                    if (thisDistance < closestDistance) {
-                        closestDistance = thisDistance;
-                        closestCell = cell;
-                    }
-                }
-            }
+    /**
+     * @return the spatial index over the cells, built if cells were added
+     * since the last time
+     */
+    CellGrid getCellGrid() {
+        CellGrid grid = cellGrid;
+        if (grid == null) {
+            grid = new CellGrid(cellList);
+            cellGrid = grid;
         }
-
-        return closestCell;
+        return grid;
     }
 
     /**
@@ -214,18 +183,8 @@ public class NavMesh implements Savable {
      * Link all the cells that are in our pool
      */
     public void linkCells() {
-//        for (int i = 0; i < cellList.size(); i++){
-//            for (int j = i+1; j < cellList.size(); j++){
-//                cellList.get(i).checkAndLink(cellList.get(j));
-//            }
-//        }
-        for (Cell pCellA : cellList) {
-            for (Cell pCellB : cellList) {
-                if (pCellA != pCellB) {
-                    pCellA.checkAndLink(pCellB, 0.001f);
-                }
-            }
-        }
+        // only cells sharing a bucket of the grid can share an edge
+        getCellGrid().linkCells(cellList, 0.001f);
     }
 
     private void addFace(Vector3f vertA, Vector3f vertB, Vector3f vertC) {
@@ -305,11 +264,22 @@ public class NavMesh implements Savable {
     public void write(JmeExporter e) throws IOException {
         OutputCapsule capsule = e.getCapsule(this);
         capsule.writeSavableArrayList(cellList, "cellarray", null);
+        capsule.write(getCellGrid(), "cellgrid", null);
     }
 
     @SuppressWarnings("unchecked")
     public void read(JmeImporter e) throws IOException {
         InputCapsule capsule = e.getCapsule(this);
         cellList = (ArrayList<Cell>) capsule.readSavableArrayList("cellarray", new ArrayList<Cell>());
+        for (int i = 0; i < cellList.size(); i++) {
+            cellList.get(i).setIndex(i);
+        }
+        // meshes saved without the index get a new one on first use
+        CellGrid grid = (CellGrid) capsule.readSavable("cellgrid", null);
+        if (grid != null && grid.getCellCount() == cellList.size()) {
+            cellGrid = grid;
+        } else {
+            cellGrid = null;
+        }
     }
 }
@@ -14,7 +14,9 @@ import com.jme3.scene.mesh.IndexBuffer;
 import java.io.IOException;
 import java.nio.FloatBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import jme3tools.optimize.GeometryBatchFactory;
 
 /**
@@ -40,7 +42,9 @@ public class NavMeshGenerator implements Savable {
     private int maxVertsPerPoly = 6;
     private float contourSampleDistance = 25;
     private float contourMaxDeviation = 25;
+    private int tileSize = 0;
     private IntermediateData intermediateData;
+    private TiledNavMeshBuilder tiledBuilder;
     //private int timeout = 10000;
 
     public NavMeshGenerator() {
@@ -63,6 +67,7 @@ public class NavMeshGenerator implements Savable {
         System.out.println("Max Verts/Poly: " + maxVertsPerPoly);
         System.out.println("Contour Sample Dist: " + contourSampleDistance);
         System.out.println("Contour Max Dev.: " + contourMaxDeviation);
+        System.out.println("Tile Size: " + tileSize);
     }
 
     public void setIntermediateData(IntermediateData data) {
@@ -81,28 +86,52 @@ public class NavMeshGenerator implements Savable {
     }
     
     public NavMesh completeCreationFromNode(Node n) {
-        Mesh m = createFromNode(n);
+        return completeCreationFromNode(n, null);
+    }
+
+    /**
+     * @see #createFromMesh(Mesh, ExecutorService)
+     */
+    public NavMesh completeCreationFromNode(Node n, ExecutorService executor) {
+        Mesh m = createFromNode(n, executor);
         NavMesh nm = new NavMesh(m);
         return nm;
     }
     
     public Mesh createFromNode(Node n) {
+        return createFromNode(n, null);
+    }
+
+    /**
+     * @see #createFromMesh(Mesh, ExecutorService)
+     */
+    public Mesh createFromNode(Node n, ExecutorService executor) {
         Mesh m = new Mesh();
         ArrayList<Geometry> list = new ArrayList<>();
         
         GeometryBatchFactory.mergeGeometries(findGeometries(n, list), m);
                 
-        return createFromMesh(m);
+        return createFromMesh(m, executor);
     }    
     
     public Mesh createFromMesh(Mesh mesh) {
-        nmgen = new NavmeshGenerator(cellSize, cellHeight, minTraversableHeight,
-                maxTraversableStep, maxTraversableSlope,
-                clipLedges, traversableAreaBorderSize,
-                smoothingThreshold, useConservativeExpansion,
-                minUnconnectedRegionSize, mergeRegionSize,
-                maxEdgeLength, edgeMaxDeviation, maxVertsPerPoly,
-                contourSampleDistance, contourMaxDeviation);
+        return createFromMesh(mesh, null);
+    }
+
+    /**
+     * Generate the navigation mesh of the given mesh.
+     * If a tile size is set, the mesh is generated in tiles which are run on
+     * the executor, and only the tiles whose source triangles changed since
+     * the last call are generated again. Intermediate data is not collected
+     * for tiled generation.
+     *
+     * @param mesh the source geometry
+     * @param executor runs the tiles, if null they are generated on the
+     * calling thread
+     * @return the navigation mesh, or null if nothing is traversable
+     */
+    public Mesh createFromMesh(Mesh mesh, ExecutorService executor) {
+        nmgen = createNmgen();
 
         FloatBuffer pb = mesh.getFloatBuffer(Type.Position);
         IndexBuffer ib = mesh.getIndexBuffer();
@@ -119,7 +148,15 @@ public class NavMeshGenerator implements Savable {
         }
 
 
-        TriangleMesh triMesh = nmgen.build(positions, indices, intermediateData); //buildNavMesh(positions, indices, intermediateData);
+        TriangleMesh triMesh;
+        if (tileSize > 0) {
+            if (tiledBuilder == null) {
+                tiledBuilder = new TiledNavMeshBuilder();
+            }
+            triMesh = tiledBuilder.build(this, positions, indices, tileSize, executor);
+        } else {
+            triMesh = nmgen.build(positions, indices, intermediateData); //buildNavMesh(positions, indices, intermediateData);
+        }
         if (triMesh == null) {
             return null;
         }
@@ -136,6 +173,48 @@ public class NavMeshGenerator implements Savable {
         return mesh2;
     }
 
+    NavmeshGenerator createNmgen() {
+        return new NavmeshGenerator(cellSize, cellHeight, minTraversableHeight,
+                maxTraversableStep, maxTraversableSlope,
+                clipLedges, traversableAreaBorderSize,
+                smoothingThreshold, useConservativeExpansion,
+                minUnconnectedRegionSize, mergeRegionSize,
+                maxEdgeLength, edgeMaxDeviation, maxVertsPerPoly,
+                contourSampleDistance, contourMaxDeviation);
+    }
+
+    /**
+     * @return the parameters the tiles depend on, tiles built with other
+     * parameters are not reused
+     */
+    List<Object> getSettings() {
+        return Arrays.<Object>asList(cellSize, cellHeight, minTraversableHeight,
+                maxTraversableStep, maxTraversableSlope,
+                clipLedges, traversableAreaBorderSize,
+                smoothingThreshold, useConservativeExpansion,
+                minUnconnectedRegionSize, mergeRegionSize,
+                maxEdgeLength, edgeMaxDeviation, maxVertsPerPoly,
+                contourSampleDistance, contourMaxDeviation, tileSize);
+    }
+
+    /**
+     * @return the number of tiles generated by the last tiled
+     * createFromMesh() call, the others were reused
+     */
+    public int getRebuiltTileCount() {
+        return tiledBuilder == null ? 0 : tiledBuilder.getRebuiltTileCount();
+    }
+
+    /**
+     * Forget the tiles kept from previous calls, so the next tiled
+     * generation builds every tile.
+     */
+    public void clearTiles() {
+        if (tiledBuilder != null) {
+            tiledBuilder.clear();
+        }
+    }
+
     //private TriangleMesh buildNavMesh(float[] positions, int[] indices, IntermediateData intermediateData) {
         /*MeshBuildRunnable runnable = new MeshBuildRunnable(positions, indices, intermediateData);
         try {
@@ -420,6 +499,25 @@ public class NavMeshGenerator implements Savable {
             this.traversableAreaBorderSize = 0;
     }
 
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * The width and depth of the tiles to generate the navmesh in. (Cells)
+     * Tiles are generated independently, in parallel when an executor is
+     * given, and are kept so that only the tiles whose source geometry
+     * changed are generated again. Larger tiles give fewer seams but make
+     * updates more expensive.
+     * A value of zero generates the whole navmesh at once.
+     * Constraints: >= 0
+     */
+    public void setTileSize(int tileSize) {
+        this.tileSize = tileSize;
+        if (this.tileSize < 0)
+            this.tileSize = 0;
+    }
+
     public boolean isUseConservativeExpansion() {
         return useConservativeExpansion;
     }
@@ -460,6 +558,7 @@ public class NavMeshGenerator implements Savable {
         oc.write(maxVertsPerPoly, "maxVertsPerPoly", 6);
         oc.write(contourSampleDistance, "contourSampleDistance", 25);
         oc.write(contourMaxDeviation, "contourMaxDeviation", 25);
+        oc.write(tileSize, "tileSize", 0);
     }
 
     public void read(JmeImporter im) throws IOException {
@@ -480,6 +579,7 @@ public class NavMeshGenerator implements Savable {
         maxVertsPerPoly = (int) ic.readFloat("maxVertsPerPoly", 6);
         contourSampleDistance = ic.readFloat("contourSampleDistance", 25);
         contourMaxDeviation = ic.readFloat("contourMaxDeviation", 25);
+        tileSize = ic.readInt("tileSize", 0);
     }
 
     /*private class MeshBuildRunnable implements Runnable {
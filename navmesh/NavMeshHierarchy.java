@@ -0,0 +1,629 @@
+package navmesh;
+
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * A coarse view of a {@link NavMesh} for long distance path finding. The
+ * cells are clustered into regions, square areas of the mesh split into
+ * their connected parts, and every pair of neighbor regions gets an
+ * entrance, a pair of linked cells on both sides of their border. The
+ * shortest ways from every cell of a region to each of its entrances are
+ * precomputed, which gives a small graph of entrances to search instead of
+ * all cells.
+ *
+ * A long path is found by searching the entrance graph for the entrances
+ * to pass, then following the precomputed ways from the start cell to the
+ * first entrance, from entrance to entrance and from the last entrance to
+ * the end cell, without searching any cells. Paths within a region or to a
+ * neighbor region use the plain cell search. The entrances found for a pair
+ * of start and goal regions are cached, so popular routes skip the coarse
+ * search.
+ *
+ * The hierarchy does not follow changes of the nav mesh, create a new one
+ * after changing the cells. It may be shared by path finders on several
+ * threads.
+ *
+ * @see NavMeshPathfinder#setHierarchy(NavMeshHierarchy)
+ */
+public class NavMeshHierarchy {
+
+    private final NavMesh navMesh;
+    private final float regionSize;
+    private final int cellCount;
+    /**
+     * region of each cell, by cell index
+     */
+    private final int[] cellRegions;
+    /**
+     * position of each cell within its region, by cell index
+     */
+    private final int[] cellSlots;
+    private final int[] regionSizes;
+    private final int regionCount;
+    private final List<Entrance> entrances = new ArrayList<Entrance>();
+    /**
+     * entrances by region pair, see {@link #pairKey(int, int) }
+     */
+    private final HashMap<Long, Entrance> entrancesByPair = new HashMap<Long, Entrance>();
+    /**
+     * entrances of each region
+     */
+    private final List<List<Entrance>> regionEntrances = new ArrayList<List<Entrance>>();
+    private final RouteCache routeCache = new RouteCache(256);
+
+    /**
+     * The connection of two neighbor regions.
+     */
+    private static final class Entrance {
+
+        final int index;
+        final int regionA;
+        final int regionB;
+        /**
+         * average midpoint of the walls between the regions
+         */
+        final Vector3f position = new Vector3f();
+        /**
+         * the linked cells closest to the position in region A and in
+         * region B, and their walls towards each other
+         */
+        Cell cellA;
+        Cell cellB;
+        int wallA;
+        int wallB;
+        /**
+         * the wall towards cellA of each cell of region A by slot, and the
+         * same for region B, or -1 if the cell cannot reach it
+         */
+        byte[] treeA;
+        byte[] treeB;
+        /**
+         * the other entrances of both regions and the cost to reach them
+         */
+        Entrance[] neighbors;
+        float[] costs;
+
+        Entrance(int index, int regionA, int regionB) {
+            this.index = index;
+            this.regionA = regionA;
+            this.regionB = regionB;
+        }
+
+        Cell cell(int region) {
+            return region == regionA ? cellA : cellB;
+        }
+
+        int wall(int region) {
+            return region == regionA ? wallA : wallB;
+        }
+
+        byte[] tree(int region) {
+            return region == regionA ? treeA : treeB;
+        }
+
+        float crossingCost() {
+            return cellA.getCenter().distance(cellB.getCenter());
+        }
+    }
+
+    /**
+     * Least recently used cache of entrance routes.
+     */
+    private static final class RouteCache extends LinkedHashMap<Long, int[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private int maxSize;
+
+        RouteCache(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, int[]> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    /**
+     * Build the hierarchy of a nav mesh.
+     *
+     * @param navMesh the mesh, with its cells linked
+     * @param regionSize the width and depth of the square areas the cells
+     * are clustered in, a few times the size of a cell or more
+     */
+    public NavMeshHierarchy(NavMesh navMesh, float regionSize) {
+        if (regionSize <= 0) {
+            throw new IllegalArgumentException("Region size must be > 0");
+        }
+        this.navMesh = navMesh;
+        this.regionSize = regionSize;
+        this.cellCount = navMesh.getNumCells();
+        this.cellRegions = new int[cellCount];
+        this.regionCount = createRegions();
+        this.cellSlots = new int[cellCount];
+        this.regionSizes = new int[regionCount];
+        for (int i = 0; i < cellCount; i++) {
+            cellSlots[i] = regionSizes[cellRegions[i]]++;
+        }
+        for (int i = 0; i < regionCount; i++) {
+            regionEntrances.add(new ArrayList<Entrance>());
+        }
+        createEntrances();
+        computeEntranceCosts();
+    }
+
+    public NavMesh getNavMesh() {
+        return navMesh;
+    }
+
+    public float getRegionSize() {
+        return regionSize;
+    }
+
+    public int getRegionCount() {
+        return regionCount;
+    }
+
+    public int getEntranceCount() {
+        return entrances.size();
+    }
+
+    /**
+     * @return the number of routes kept in the cache
+     */
+    public int getRouteCacheSize() {
+        synchronized (routeCache) {
+            return routeCache.maxSize;
+        }
+    }
+
+    /**
+     * @param size the number of routes to keep, the least recently
+     * used are dropped first
+     */
+    public void setRouteCacheSize(int size) {
+        synchronized (routeCache) {
+            routeCache.maxSize = size;
+            routeCache.clear();
+        }
+    }
+
+    public void clearRouteCache() {
+        synchronized (routeCache) {
+            routeCache.clear();
+        }
+    }
+
+    /**
+     * @return true if the hierarchy was built for the cells the mesh has now
+     */
+    boolean isValidFor(NavMesh mesh) {
+        return mesh == navMesh && mesh.getNumCells() == cellCount;
+    }
+
+    /**
+     * @return true if the cells are too far apart for the plain search, they
+     * are neither in the same region nor in neighbor regions
+     */
+    boolean isLongPath(Cell startCell, Cell endCell) {
+        int start = cellRegions[startCell.getIndex()];
+        int end = cellRegions[endCell.getIndex()];
+        return start != end && !entrancesByPair.containsKey(pairKey(start, end));
+    }
+
+    /**
+     * Find a long path, leaving the arrival walls from the start cell to the
+     * end cell in the context like {@link SearchContext#search}.
+     *
+     * @return true if the start cell can be reached from the end cell
+     */
+    boolean search(SearchContext context, Cell startCell, Vector3f startPos,
+            Cell endCell, Vector3f endPos) {
+        int startRegion = cellRegions[startCell.getIndex()];
+        int endRegion = cellRegions[endCell.getIndex()];
+        Long key = pairKey(startRegion, endRegion);
+        int[] route;
+        synchronized (routeCache) {
+            route = routeCache.get(key);
+        }
+        if (route == null) {
+            route = findRoute(startCell, startPos, endCell, endPos);
+            if (route == null) {
+                // the regions are not connected, so neither are the cells
+                return false;
+            }
+            synchronized (routeCache) {
+                routeCache.put(key, route);
+            }
+        }
+
+        // walk from the start cell along the ways to the entrances of the
+        // route, crossing into the region shared with the next entrance
+        List<Cell> cells = new ArrayList<Cell>();
+        List<Integer> walls = new ArrayList<Integer>();
+        Cell current = startCell;
+        int region = startRegion;
+        for (int i = 0; i < route.length; i++) {
+            Entrance entrance = entrances.get(route[i]);
+            int next = i + 1 < route.length
+                    ? sharedRegion(entrance, entrances.get(route[i + 1])) : endRegion;
+            if (!followTree(current, entrance.cell(region), entrance.tree(region), cells, walls)) {
+                // the cells moved since the hierarchy was built
+                return context.search(navMesh, startCell, startPos, endCell);
+            }
+            current = entrance.cell(region);
+            if (next != region) {
+                cells.add(current);
+                walls.add(entrance.wall(region));
+                current = entrance.cell(next);
+                region = next;
+            }
+        }
+        if (route.length == 0 || !followTreeBack(endCell, current,
+                entrances.get(route[route.length - 1]).tree(region), cells, walls)) {
+            return context.search(navMesh, startCell, startPos, endCell);
+        }
+
+        // a cell passed twice keeps its last wall, which cuts the loop
+        context.setArrivalWalls(navMesh, cells, walls);
+        return true;
+    }
+
+    /**
+     * Store the cells and walls passed from a cell to the root of a tree.
+     */
+    private boolean followTree(Cell cell, Cell root, byte[] tree,
+            List<Cell> cells, List<Integer> walls) {
+        for (int steps = 0; cell != root; steps++) {
+            int wall = tree[cellSlots[cell.getIndex()]];
+            if (wall < 0 || steps > cellCount) {
+                return false;
+            }
+            cells.add(cell);
+            walls.add(wall);
+            cell = cell.getLink(wall);
+        }
+        return true;
+    }
+
+    /**
+     * Store the cells and walls passed from the root of a tree to a cell.
+     */
+    private boolean followTreeBack(Cell cell, Cell root, byte[] tree,
+            List<Cell> cells, List<Integer> walls) {
+        List<Cell> way = new ArrayList<Cell>();
+        way.add(cell);
+        while (cell != root) {
+            int wall = tree[cellSlots[cell.getIndex()]];
+            if (wall < 0 || way.size() > cellCount) {
+                return false;
+            }
+            cell = cell.getLink(wall);
+            way.add(cell);
+        }
+        for (int i = way.size() - 1; i > 0; i--) {
+            cells.add(way.get(i));
+            walls.add(linkSide(way.get(i), way.get(i - 1)));
+        }
+        return true;
+    }
+
+    private static int linkSide(Cell cell, Cell other) {
+        for (int side = 0; side < 3; side++) {
+            if (cell.getLink(side) == other) {
+                return side;
+            }
+        }
+        return 0;
+    }
+
+    private static int sharedRegion(Entrance a, Entrance b) {
+        return a.regionA == b.regionA || a.regionA == b.regionB ? a.regionA : a.regionB;
+    }
+
+    /**
+     * Cluster the cells by the square their center lies in, then split each
+     * cluster into the groups of cells linked within it.
+     */
+    private int createRegions() {
+        HashMap<Long, Integer> squares = new HashMap<Long, Integer>();
+        int[] cellSquares = new int[cellCount];
+        for (int i = 0; i < cellCount; i++) {
+            Vector3f center = navMesh.getCell(i).getCenter();
+            long square = pairKey((int) Math.floor(center.x / regionSize),
+                    (int) Math.floor(center.z / regionSize));
+            Integer index = squares.get(square);
+            if (index == null) {
+                index = squares.size();
+                squares.put(square, index);
+            }
+            cellSquares[i] = index;
+        }
+
+        Arrays.fill(cellRegions, -1);
+        int regions = 0;
+        int[] stack = new int[cellCount];
+        for (int i = 0; i < cellCount; i++) {
+            if (cellRegions[i] >= 0) {
+                continue;
+            }
+            int size = 0;
+            stack[size++] = i;
+            cellRegions[i] = regions;
+            while (size > 0) {
+                Cell cell = navMesh.getCell(stack[--size]);
+                for (int side = 0; side < 3; side++) {
+                    Cell link = cell.getLink(side);
+                    if (link != null && cellRegions[link.getIndex()] < 0
+                            && cellSquares[link.getIndex()] == cellSquares[i]) {
+                        cellRegions[link.getIndex()] = regions;
+                        stack[size++] = link.getIndex();
+                    }
+                }
+            }
+            regions++;
+        }
+        return regions;
+    }
+
+    private void createEntrances() {
+        HashMap<Long, Integer> wallCounts = new HashMap<Long, Integer>();
+        for (int i = 0; i < cellCount; i++) {
+            Cell cell = navMesh.getCell(i);
+            int region = cellRegions[i];
+            for (int side = 0; side < 3; side++) {
+                Cell link = cell.getLink(side);
+                if (link == null || cellRegions[link.getIndex()] == region) {
+                    continue;
+                }
+                int other = cellRegions[link.getIndex()];
+                Long key = pairKey(Math.min(region, other), Math.max(region, other));
+                Entrance entrance = entrancesByPair.get(key);
+                if (entrance == null) {
+                    entrance = new Entrance(entrances.size(), Math.min(region, other), Math.max(region, other));
+                    entrances.add(entrance);
+                    entrancesByPair.put(key, entrance);
+                    regionEntrances.get(region).add(entrance);
+                    regionEntrances.get(other).add(entrance);
+                }
+                // both cells of a wall see the same midpoint
+                entrance.position.addLocal(cell.getWallMidpoint(side));
+                wallCounts.put(key, wallCounts.containsKey(key) ? wallCounts.get(key) + 1 : 1);
+            }
+        }
+        for (Entrance entrance : entrances) {
+            Long key = pairKey(entrance.regionA, entrance.regionB);
+            entrance.position.divideLocal(wallCounts.get(key));
+        }
+
+        // the wall closest to the position is the one paths pass
+        float[] closest = new float[entrances.size()];
+        Arrays.fill(closest, Float.POSITIVE_INFINITY);
+        for (int i = 0; i < cellCount; i++) {
+            Cell cell = navMesh.getCell(i);
+            int region = cellRegions[i];
+            for (int side = 0; side < 3; side++) {
+                Cell link = cell.getLink(side);
+                if (link == null || cellRegions[link.getIndex()] <= region) {
+                    continue;
+                }
+                Entrance entrance = entrancesByPair.get(pairKey(region, cellRegions[link.getIndex()]));
+                float distance = cell.getWallMidpoint(side).distanceSquared(entrance.position);
+                if (distance < closest[entrance.index]) {
+                    closest[entrance.index] = distance;
+                    entrance.cellA = cell;
+                    entrance.wallA = side;
+                    entrance.cellB = link;
+                    entrance.wallB = linkSide(link, cell);
+                }
+            }
+        }
+    }
+
+    /**
+     * Search the cells of each region from every entrance, which gives the
+     * ways to the entrance and the costs between the entrances of a region.
+     */
+    private void computeEntranceCosts() {
+        float[] distances = new float[cellCount];
+        Arrays.fill(distances, Float.POSITIVE_INFINITY);
+        List<Integer> visited = new ArrayList<Integer>();
+        for (Entrance entrance : entrances) {
+            List<Entrance> neighbors = new ArrayList<Entrance>();
+            List<Float> costs = new ArrayList<Float>();
+            for (int r = 0; r < 2; r++) {
+                int region = r == 0 ? entrance.regionA : entrance.regionB;
+                byte[] tree = new byte[regionSizes[region]];
+                Arrays.fill(tree, (byte) -1);
+                Cell root = entrance.cell(region);
+                distances[root.getIndex()] = 0;
+                visited.add(root.getIndex());
+                searchRegion(distances, visited, region, tree);
+                if (r == 0) {
+                    entrance.treeA = tree;
+                } else {
+                    entrance.treeB = tree;
+                }
+                for (Entrance other : regionEntrances.get(region)) {
+                    float cost = distances[other.cell(region).getIndex()];
+                    if (other != entrance && cost < Float.POSITIVE_INFINITY) {
+                        neighbors.add(other);
+                        costs.add(cost + other.crossingCost());
+                    }
+                }
+                for (int index : visited) {
+                    distances[index] = Float.POSITIVE_INFINITY;
+                }
+                visited.clear();
+            }
+            entrance.neighbors = neighbors.toArray(new Entrance[neighbors.size()]);
+            entrance.costs = new float[costs.size()];
+            for (int i = 0; i < entrance.costs.length; i++) {
+                entrance.costs[i] = costs.get(i);
+            }
+        }
+    }
+
+    /**
+     * Dijkstra over the cells of one region from the already seeded cells,
+     * moving from cell center to cell center.
+     *
+     * @param tree stores the wall towards the seeded cells by cell slot, or
+     * null
+     */
+    private void searchRegion(float[] distances, List<Integer> visited, int region, byte[] tree) {
+        PriorityQueue<Step> open = new PriorityQueue<Step>();
+        for (int index : visited) {
+            open.add(new Step(index, distances[index]));
+        }
+        while (!open.isEmpty()) {
+            Step step = open.poll();
+            if (step.cost > distances[step.cell]) {
+                continue;
+            }
+            Cell cell = navMesh.getCell(step.cell);
+            for (int side = 0; side < 3; side++) {
+                Cell link = cell.getLink(side);
+                if (link == null || cellRegions[link.getIndex()] != region) {
+                    continue;
+                }
+                int index = link.getIndex();
+                float cost = step.cost + cell.getCenter().distance(link.getCenter());
+                if (cost < distances[index]) {
+                    if (distances[index] == Float.POSITIVE_INFINITY) {
+                        visited.add(index);
+                    }
+                    distances[index] = cost;
+                    if (tree != null) {
+                        tree[cellSlots[index]] = (byte) linkSide(link, cell);
+                    }
+                    open.add(new Step(index, cost));
+                }
+            }
+        }
+    }
+
+    /**
+     * A* over the entrances, starting with the costs from the start cell to
+     * the entrances of its region and ending with the costs from the
+     * entrances of the goal region to the goal cell.
+     *
+     * @return the entrances passed from start to goal
+     */
+    private int[] findRoute(Cell startCell, Vector3f startPos, Cell endCell, Vector3f endPos) {
+        int startRegion = cellRegions[startCell.getIndex()];
+        int endRegion = cellRegions[endCell.getIndex()];
+        float[] distances = new float[cellCount];
+        Arrays.fill(distances, Float.POSITIVE_INFINITY);
+        List<Integer> visited = new ArrayList<Integer>();
+
+        distances[endCell.getIndex()] = 0;
+        visited.add(endCell.getIndex());
+        searchRegion(distances, visited, endRegion, null);
+        HashMap<Entrance, Float> goalCosts = new HashMap<Entrance, Float>();
+        for (Entrance entrance : regionEntrances.get(endRegion)) {
+            float cost = distances[entrance.cell(endRegion).getIndex()];
+            if (cost < Float.POSITIVE_INFINITY) {
+                goalCosts.put(entrance, cost);
+            }
+        }
+        for (int index : visited) {
+            distances[index] = Float.POSITIVE_INFINITY;
+        }
+        visited.clear();
+        if (goalCosts.isEmpty()) {
+            return null;
+        }
+
+        int count = entrances.size();
+        float[] costs = new float[count];
+        Arrays.fill(costs, Float.POSITIVE_INFINITY);
+        int[] previous = new int[count];
+        Arrays.fill(previous, -1);
+        PriorityQueue<Step> open = new PriorityQueue<Step>();
+
+        distances[startCell.getIndex()] = 0;
+        visited.add(startCell.getIndex());
+        searchRegion(distances, visited, startRegion, null);
+        for (Entrance entrance : regionEntrances.get(startRegion)) {
+            float cost = distances[entrance.cell(startRegion).getIndex()] + entrance.crossingCost();
+            if (cost < costs[entrance.index]) {
+                costs[entrance.index] = cost;
+                open.add(new Step(entrance.index, cost + entrance.position.distance(endPos)));
+            }
+        }
+
+        Entrance last = null;
+        float lastCost = Float.POSITIVE_INFINITY;
+        while (!open.isEmpty()) {
+            Step step = open.poll();
+            Entrance entrance = entrances.get(step.cell);
+            float cost = costs[step.cell];
+            if (step.cost > cost + entrance.position.distance(endPos)) {
+                // outdated entry
+                continue;
+            }
+            if (cost >= lastCost) {
+                break;
+            }
+            Float goalCost = goalCosts.get(entrance);
+            if (goalCost != null && cost + goalCost < lastCost) {
+                lastCost = cost + goalCost;
+                last = entrance;
+            }
+            for (int i = 0; i < entrance.neighbors.length; i++) {
+                Entrance next = entrance.neighbors[i];
+                float nextCost = cost + entrance.costs[i];
+                if (nextCost < costs[next.index]) {
+                    costs[next.index] = nextCost;
+                    previous[next.index] = entrance.index;
+                    open.add(new Step(next.index, nextCost + next.position.distance(endPos)));
+                }
+            }
+        }
+        if (last == null) {
+            return null;
+        }
+
+        int length = 0;
+        for (int e = last.index; e >= 0; e = previous[e]) {
+            length++;
+        }
+        int[] route = new int[length];
+        for (int e = last.index; e >= 0; e = previous[e]) {
+            route[--length] = e;
+        }
+        return route;
+    }
+
+    private static long pairKey(int a, int b) {
+        return ((long) a << 32) | (b & 0xffffffffL);
+    }
+
+    /**
+     * An entry of the open lists, a cell or an entrance and its cost.
+     */
+    private static final class Step implements Comparable<Step> {
+
+        final int cell;
+        final float cost;
+
+        Step(int cell, float cost) {
+            this.cell = cell;
+            this.cost = cost;
+        }
+
+        public int compareTo(Step o) {
+            return Float.compare(cost, o.cost);
+        }
+    }
+}
@@ -3,11 +3,14 @@ package navmesh;
 import navmesh.Path.Waypoint;
 import com.jme3.math.Vector2f;
 import com.jme3.math.Vector3f;
+import com.jme3.util.ParallelTasks;
 import navmesh.Cell.ClassifyResult;
 import navmesh.Cell.PathResult;
 import navmesh.Line2D.LineIntersect;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 public class NavMeshPathfinder {
 
@@ -21,11 +24,22 @@ public class NavMeshPathfinder {
     private Vector3f goalPos3d;
     private Cell goalCell;
     private Waypoint nextWaypoint;
+    private NavMeshHierarchy hierarchy;
     /**
-     * path finding data...
+     * Number of path finders handled by one task of
+     * {@link #computePaths(NavMeshPathfinder[], Vector3f[], ExecutorService) }
      */
-    private volatile int sessionID = 0;
-    private volatile NavHeap heap = new NavHeap();
+    private static final int PATHS_PER_TASK = 16;
+    /**
+     * path finding data, one search context per thread so that the
+     * cells of a nav mesh can be shared by concurrent queries
+     */
+    private static final ThreadLocal<SearchContext> searchContext = new ThreadLocal<SearchContext>() {
+        @Override
+        protected SearchContext initialValue() {
+            return new SearchContext();
+        }
+    };
 
     public NavMeshPathfinder(NavMesh navMesh) {
         this.navMesh = navMesh;        
@@ -53,6 +67,21 @@ public class NavMeshPathfinder {
         //currentCell = navMesh.findClosestCell(newPos2d);
     }
 
+    public NavMeshHierarchy getHierarchy() {
+        return hierarchy;
+    }
+
+    /**
+     * Use the hierarchy for long paths, see {@link NavMeshHierarchy}.
+     * Paths to nearby goals are found as without it.
+     *
+     * @param hierarchy the hierarchy of this path finder's nav mesh, or null
+     * to always search all cells
+     */
+    public void setHierarchy(NavMeshHierarchy hierarchy) {
+        this.hierarchy = hierarchy;
+    }
+
     public float getEntityRadius() {
         return entityRadius;
     }
@@ -143,6 +172,53 @@ public class NavMeshPathfinder {
         return true;
     }
 
+    /**
+     * Compute the paths of several path finders at once, see
+     * {@link #computePath(Vector3f) }. The path finders are split in chunks
+     * which are run on the given executor, the calling thread works on the
+     * chunks too. Every path finder must be a separate instance, they may
+     * share the same nav mesh as the mesh is only read during the search.
+     *
+     * @param pathfinders the path finders, with their positions set
+     * @param goals the goal of each path finder
+     * @param executor the executor to run the searches on, if null all paths
+     * are computed on the calling thread
+     * @return the result of computePath() for each path finder
+     */
+    public static boolean[] computePaths(final NavMeshPathfinder[] pathfinders,
+            final Vector3f[] goals, ExecutorService executor) {
+        if (goals.length != pathfinders.length) {
+            throw new IllegalArgumentException("Need one goal per path finder");
+        }
+        final boolean[] results = new boolean[pathfinders.length];
+        if (executor == null || pathfinders.length <= PATHS_PER_TASK) {
+            computePaths(pathfinders, goals, results, 0, pathfinders.length);
+            return results;
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int start = 0; start < pathfinders.length; start += PATHS_PER_TASK) {
+            final int from = start;
+            final int to = Math.min(start + PATHS_PER_TASK, pathfinders.length);
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    computePaths(pathfinders, goals, results, from, to);
+                    return null;
+                }
+            });
+        }
+        // tasks not yet picked up by the executor run on this thread
+        ParallelTasks.invokeAll(executor, tasks);
+        return results;
+    }
+
+    private static void computePaths(NavMeshPathfinder[] pathfinders,
+            Vector3f[] goals, boolean[] results, int from, int to) {
+        for (int i = from; i < to; i++) {
+            results[i] = pathfinders[i].computePath(goals[i]);
+        }
+    }
+
     public void clearPath() {
         path.clear();
         goalPos = null;
@@ -218,35 +294,17 @@ public class NavMeshPathfinder {
             Cell endCell, Vector3f endPos,
             float entityRadius, DebugInfo debugInfo) {
 
-        // Increment our path finding session ID
-        // This Identifies each pathfinding session
-        // so we do not need to clear out old data
-        // in the cells from previous sessions.
-        sessionID++;
-
-        // load our data into the Heap object
-        // to prepare it for use.
-        heap.initialize(sessionID, startPos);
-
+        // the search state lives in a per thread context, so the cells
+        // are not modified and other threads may search the same mesh.
         // We are doing a reverse search, from EndCell to StartCell.
-        // Push our EndCell onto the Heap at the first cell to be processed
-        endCell.queryForPath(heap, null, 0.0f);
-
-        // process the heap until empty, or a path is found
-        boolean foundPath = false;
-        while (heap.isNotEmpty() && !foundPath) {
-
-            // pop the top cell (the open cell with the lowest cost) off the
-            // Heap
-            NavNode currentNode = heap.getTop();
-
-            // if this cell is our StartCell, we are done
-            if (currentNode.cell.equals(startCell)) {
-                foundPath = true;
-            } else {
-                // Process the Cell, Adding it's neighbors to the Heap as needed
-                currentNode.cell.processCell(heap);
-            }
+        SearchContext context = searchContext.get();
+        boolean foundPath;
+        if (hierarchy != null && hierarchy.isValidFor(navMesh)
+                && hierarchy.isLongPath(startCell, endCell)) {
+            // follow the precomputed ways along the coarse route
+            foundPath = hierarchy.search(context, startCell, startPos, endCell, endPos);
+        } else {
+            foundPath = context.search(navMesh, startCell, startPos, endCell);
         }
 
         Vector2f intersectionPoint = new Vector2f();
@@ -273,7 +331,7 @@ public class NavMeshPathfinder {
 
             // add the link point of the cell as a way point (the exit
             // wall's center)
-            int linkWall = currentCell.getArrivalWall();
+            int linkWall = context.getArrivalWall(currentCell);
             Vector3f newWayPoint = currentCell.getWallMidpoint(linkWall).clone();
 
             Line2D wall = currentCell.getWall(linkWall);
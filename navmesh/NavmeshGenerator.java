@@ -306,6 +306,34 @@ public final class NavmeshGenerator
             , int[] indices
             , IntermediateData outIntermediateData)
     {
+        return build(vertices, indices, null, null, outIntermediateData);
+    }
+    
+    /**
+     * Build a navigation mesh from the part of the source geometry within
+     * the provided bounds.
+     * <p>The edges of the bounds are treated as obstructions, so the
+     * resulting mesh keeps the traversable area border size away from them.
+     * To build a tile of a larger mesh, the bounds should overlap the
+     * neighbor tiles by more than the border size.</p>
+     * @param vertices  The source geometry vertices in the form (x, y, z)
+     * @param indices The triangle mesh vertices in the form
+     * (vertA, vertB, vertC), wrapped clockwise.
+     * @param boundsMin The minimum (x, y, z) bounds to build, or null to
+     * build all of the source geometry.  The y bound should be the same
+     * for all tiles of a mesh.
+     * @param boundsMax The maximum (x, y, z) bounds to build, or null to
+     * build all of the source geometry.
+     * @param outIntermediateData  If non-null, the intermediate build
+     * results will be added to this object.
+     * @return The generated navigation mesh, or null if generation failed.
+     */
+    public TriangleMesh build(float[] vertices
+            , int[] indices
+            , float[] boundsMin
+            , float[] boundsMax
+            , IntermediateData outIntermediateData)
+    {
         
         if (outIntermediateData != null)
             outIntermediateData.reset();
@@ -320,7 +348,8 @@ public final class NavmeshGenerator
             timerStart = System.nanoTime();
         
         final SolidHeightfield solidField =
-            mSolidHeightFieldBuilder.build(vertices, indices);
+            mSolidHeightFieldBuilder.build(vertices, indices
+                    , boundsMin, boundsMax);
         if (solidField == null || !solidField.hasSpans())
             return null;
         
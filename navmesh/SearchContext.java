@@ -0,0 +1,205 @@
+package navmesh;
+
+import com.jme3.math.Vector3f;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Per query A* state for path finding on a {@link NavMesh}. All search data
+ * is kept in primitive arrays indexed by the cell index, so the cells of a
+ * mesh stay read only while paths are computed and several searches can run
+ * on the same mesh at once. The open list is an indexed binary heap keyed on
+ * the total cost (arrival cost plus heuristic) of a cell.
+ *
+ * A context is reused between queries and is not thread safe, every thread
+ * needs its own instance.
+ */
+class SearchContext {
+
+    private int session;
+    private int[] sessions = new int[0];
+    private float[] arrivalCosts = new float[0];
+    private float[] heuristics = new float[0];
+    private int[] arrivalWalls = new int[0];
+    private boolean[] open = new boolean[0];
+    /**
+     * the heap holds cell indices, heapPositions maps a cell index to its
+     * slot in the heap
+     */
+    private int[] heap = new int[0];
+    private int[] heapPositions = new int[0];
+    private int heapSize;
+
+    /**
+     * Run the A* search. As in the original implementation the search goes
+     * in reverse, from the end cell to the start cell, so that the arrival
+     * walls can be followed from the start cell towards the goal.
+     *
+     * @return true if the start cell can be reached from the end cell
+     */
+    boolean search(NavMesh mesh, Cell startCell, Vector3f startPos, Cell endCell) {
+        begin(mesh.getNumCells());
+
+        // we are the cell that contains the starting location
+        // of the A* search.
+        int end = endCell.getIndex();
+        sessions[end] = session;
+        open[end] = false;
+        arrivalCosts[end] = 0;
+        heuristics[end] = 0;
+        arrivalWalls[end] = 0;
+        push(end);
+
+        int start = startCell.getIndex();
+        while (heapSize > 0) {
+            // pop the open cell with the lowest cost off the heap
+            int current = pop();
+            if (current == start) {
+                return true;
+            }
+
+            // once we have been processed, we are closed
+            open[current] = false;
+            Cell cell = mesh.getCell(current);
+            float arrival = arrivalCosts[current];
+            int wall = arrivalWalls[current];
+            for (int i = 0; i < 3; ++i) {
+                Cell link = cell.getLink(i);
+                if (link != null) {
+                    // abs(i-arrivalWall) selects the distance between the
+                    // wall midpoints, held in the order ABtoBC, BCtoCA and
+                    // CAtoAB.
+                    query(link, cell, arrival + cell.getWallLength(Math.abs(i - wall)), startPos);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the side of the cell the search entered it from, which is the
+     * wall leading towards the goal
+     */
+    int getArrivalWall(Cell cell) {
+        return arrivalWalls[cell.getIndex()];
+    }
+
+    /**
+     * Set the walls leading towards the goal for a path found without a
+     * search. A cell listed twice keeps its last wall.
+     *
+     * @see NavMeshHierarchy
+     */
+    void setArrivalWalls(NavMesh mesh, List<Cell> cells, List<Integer> walls) {
+        begin(mesh.getNumCells());
+        for (int i = 0; i < cells.size(); i++) {
+            arrivalWalls[cells.get(i).getIndex()] = walls.get(i);
+        }
+    }
+
+    private void begin(int cellCount) {
+        if (sessions.length < cellCount) {
+            sessions = new int[cellCount];
+            arrivalCosts = new float[cellCount];
+            heuristics = new float[cellCount];
+            arrivalWalls = new int[cellCount];
+            open = new boolean[cellCount];
+            heap = new int[cellCount];
+            heapPositions = new int[cellCount];
+            session = 0;
+        }
+        if (++session == Integer.MAX_VALUE) {
+            // identifiers are about to wrap, forget all old sessions
+            Arrays.fill(sessions, 0);
+            session = 1;
+        }
+        heapSize = 0;
+    }
+
+    private void query(Cell cell, Cell caller, float arrivalCost, Vector3f goal) {
+        int index = cell.getIndex();
+        if (sessions[index] != session) {
+            // first visit in this session
+            sessions[index] = session;
+            open[index] = true;
+            heuristics[index] = goal.distance(cell.getCenter());
+            arrivalCosts[index] = arrivalCost;
+            arrivalWalls[index] = linkSide(cell, caller);
+            push(index);
+        } else if (open[index] && arrivalCost < arrivalCosts[index]) {
+            // already in the open heap and the caller provides a better path
+            arrivalCosts[index] = arrivalCost;
+            arrivalWalls[index] = linkSide(cell, caller);
+            siftUp(heapPositions[index]);
+        }
+    }
+
+    private static int linkSide(Cell cell, Cell caller) {
+        for (int i = 0; i < 3; i++) {
+            if (cell.getLink(i) == caller) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private float cost(int index) {
+        return arrivalCosts[index] + heuristics[index];
+    }
+
+    private void push(int index) {
+        heap[heapSize] = index;
+        heapPositions[index] = heapSize;
+        siftUp(heapSize++);
+    }
+
+    private int pop() {
+        int top = heap[0];
+        int last = heap[--heapSize];
+        if (heapSize > 0) {
+            heap[0] = last;
+            heapPositions[last] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    private void siftUp(int pos) {
+        int index = heap[pos];
+        float c = cost(index);
+        while (pos > 0) {
+            int parent = (pos - 1) >> 1;
+            int p = heap[parent];
+            if (cost(p) <= c) {
+                break;
+            }
+            heap[pos] = p;
+            heapPositions[p] = pos;
+            pos = parent;
+        }
+        heap[pos] = index;
+        heapPositions[index] = pos;
+    }
+
+    private void siftDown(int pos) {
+        int index = heap[pos];
+        float c = cost(index);
+        int half = heapSize >> 1;
+        while (pos < half) {
+            int child = (pos << 1) + 1;
+            int right = child + 1;
+            if (right < heapSize && cost(heap[right]) < cost(heap[child])) {
+                child = right;
+            }
+            int ch = heap[child];
+            if (c <= cost(ch)) {
+                break;
+            }
+            heap[pos] = ch;
+            heapPositions[ch] = pos;
+            pos = child;
+        }
+        heap[pos] = index;
+        heapPositions[index] = pos;
+    }
+}
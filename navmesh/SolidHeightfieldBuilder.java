@@ -200,6 +200,29 @@ public final class SolidHeightfieldBuilder
      * @return The generated solid heightfield, or null if the generation fails.
      */
     public SolidHeightfield build(float[] vertices, int[] indices)
+    {
+        return build(vertices, indices, null, null);
+    }
+    
+    /**
+     * Generates a solid heightfield covering only part of the source
+     * geometry.  Used to build a navigation mesh in tiles.
+     * <p>The field covers the provided bounds.  Tiles of one mesh should
+     * share the same minimum height, so their spans line up.
+     * Geometry outside the bounds is clipped away.</p>
+     * @param vertices Source geometry vertices in the form (x, y, z).
+     * @param indices Source geometry indices in the form (VertA, VertB, VertC).
+     * Wrapped: Clockwise.
+     * @param fieldBoundsMin The minimum bounds of the field in the form
+     * (x, y, z), or null to use the bounds of the source geometry.
+     * @param fieldBoundsMax The maximum bounds of the field in the form
+     * (x, y, z), or null to use the bounds of the source geometry.
+     * @return The generated solid heightfield, or null if the generation fails.
+     */
+    public SolidHeightfield build(float[] vertices
+            , int[] indices
+            , float[] fieldBoundsMin
+            , float[] fieldBoundsMax)
     {
         // Perform basic checks.
         if (vertices == null
@@ -216,28 +239,39 @@ public final class SolidHeightfieldBuilder
         final float inverseCellSize = 1 / result.cellSize();
         final float inverseCellHeight = 1 / result.cellHeight();
         
-        // Detect and set the bounds of the source geometry.
-        // Default to the first vertex.
-        float xmin = vertices[0];
-        float ymin = vertices[1];
-        float zmin = vertices[2];
-        float xmax = vertices[0];
-        float ymax = vertices[1];
-        float zmax = vertices[2];
-        // Loop through all vertices, expanding the bounds
-        // as appropriate.
-        for (int i = 3; i < vertices.length; i += 3)
+        if (fieldBoundsMin == null || fieldBoundsMax == null)
         {
-            xmax = Math.max(vertices[i], xmax);
-            ymax = Math.max(vertices[i + 1], ymax);
-            zmax = Math.max(vertices[i + 2], zmax);
-            
-            xmin = Math.min(vertices[i], xmin);
-            ymin = Math.min(vertices[i + 1], ymin);
-            zmin = Math.min(vertices[i + 2], zmin);
+            // Detect and set the bounds of the source geometry.
+            // Default to the first vertex.
+            float xmin = vertices[0];
+            float ymin = vertices[1];
+            float zmin = vertices[2];
+            float xmax = vertices[0];
+            float ymax = vertices[1];
+            float zmax = vertices[2];
+            // Loop through all vertices, expanding the bounds
+            // as appropriate.
+            for (int i = 3; i < vertices.length; i += 3)
+            {
+                xmax = Math.max(vertices[i], xmax);
+                ymax = Math.max(vertices[i + 1], ymax);
+                zmax = Math.max(vertices[i + 2], zmax);
+                
+                xmin = Math.min(vertices[i], xmin);
+                ymin = Math.min(vertices[i + 1], ymin);
+                zmin = Math.min(vertices[i + 2], zmin);
+            }
+            // Set the bounds.
+            result.setBounds(xmin, ymin, zmin, xmax, ymax, zmax);
+        }
+        else
+        {
+            if (indices.length == 0)
+                return null;
+            result.setBounds(fieldBoundsMin[0], fieldBoundsMin[1]
+                    , fieldBoundsMin[2], fieldBoundsMax[0], fieldBoundsMax[1]
+                    , fieldBoundsMax[2]);
         }
-        // Set the bounds.
-        result.setBounds(xmin, ymin, zmin, xmax, ymax, zmax);
         
         // Detect which polygons in the source mesh have a slope
         // that low enough to be considered traversable.  (Agent can walk up
@@ -536,13 +570,13 @@ public final class SolidHeightfieldBuilder
                         ? minimum : (value > maximum ? maximum : value));
     }
     
-    private static float floatd[] = new float[16];
     private static int clipPoly(float[] in
                     , int inputVertCount
                     , float[] out
                     , float pnx
                     , float pnz
-                    , float pd)
+                    , float pd
+                    , float[] floatd)
     {
         
         // TODO: DOC: Figure out what is going on here.  Not familiar with
@@ -771,6 +805,9 @@ public final class SolidHeightfieldBuilder
         final float in[] = new float[21];
         final float out[] = new float[21];
         final float inrow[] = new float[21];
+        // Scratch space for the clipping, one per call so several fields
+        // can be built at the same time.
+        final float clipDistances[] = new float[7];
         
         // The height of the heightfield.
         final float fieldHeight =
@@ -814,14 +851,16 @@ public final class SolidHeightfieldBuilder
                             , out
                             , 0
                             , 1
-                            , -rowWorldZ);
+                            , -rowWorldZ
+                            , clipDistances);
             if (intermediateVertCount < 3)
                 continue;
             intermediateVertCount = clipPoly(out, intermediateVertCount
                             , inrow
                             , 0
                             , -1
-                            , rowWorldZ + inoutField.cellSize());
+                            , rowWorldZ + inoutField.cellSize()
+                            , clipDistances);
             if (intermediateVertCount < 3)
                 continue;
             
@@ -834,7 +873,8 @@ public final class SolidHeightfieldBuilder
                 int vertCount = intermediateVertCount;
                 final float colWorldX = inoutField.boundsMin()[0]
                                         + (widthIndex * inoutField.cellSize());
-                vertCount = clipPoly(inrow, vertCount, out, 1, 0, -colWorldX);
+                vertCount = clipPoly(inrow, vertCount, out, 1, 0, -colWorldX
+                                , clipDistances);
                 if (vertCount < 3)
                     continue;
                 vertCount = clipPoly(out
@@ -842,7 +882,8 @@ public final class SolidHeightfieldBuilder
                                 , in
                                 , -1
                                 , 0
-                                , colWorldX + inoutField.cellSize());
+                                , colWorldX + inoutField.cellSize()
+                                , clipDistances);
                 if (vertCount < 3)
                     continue;
                 
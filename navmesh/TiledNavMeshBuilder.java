@@ -0,0 +1,519 @@
+package navmesh;
+
+import com.jme3.math.Vector3f;
+import com.jme3.util.ParallelTasks;
+import gnu.trove.list.array.TFloatArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Builds a navigation mesh in square tiles of a fixed size. Each tile is
+ * generated from the source triangles overlapping it plus a border, which
+ * keeps the tile edges from being treated as obstructions, and the result is
+ * clipped to the tile. Tiles are independent, so they can be generated in
+ * parallel. The tile edges are stitched afterwards by splitting the
+ * triangles along them at the vertices of the neighbor tiles, so the
+ * {@link NavMesh} can link cells across tiles.
+ *
+ * The tiles are kept between builds together with a hash of their input
+ * triangles, and a tile is only generated again when its input or the
+ * generator settings change.
+ */
+class TiledNavMeshBuilder {
+
+    /**
+     * extra cells around a tile on top of the traversable area border
+     */
+    private static final int EXTRA_BORDER_CELLS = 3;
+    /**
+     * how far from a tile edge line, relative to the tile width, a point
+     * still counts as lying on it
+     */
+    private static final float LINE_EPSILON = 1e-5f;
+    private final TLongObjectHashMap<Tile> tiles = new TLongObjectHashMap<Tile>();
+    private List<Object> settings;
+    private int rebuiltTiles;
+
+    /**
+     * The result of one tile, already clipped to the tile bounds.
+     */
+    private static final class Tile {
+
+        final int x;
+        final int z;
+        final long inputHash;
+        /**
+         * three vertices (x, y, z) per triangle, wrapped clockwise
+         */
+        float[] triangles = new float[0];
+
+        Tile(int x, int z, long inputHash) {
+            this.x = x;
+            this.z = z;
+            this.inputHash = inputHash;
+        }
+    }
+
+    /**
+     * @return the number of tiles generated by the last build, the other
+     * tiles were reused
+     */
+    int getRebuiltTileCount() {
+        return rebuiltTiles;
+    }
+
+    /**
+     * @return the number of tiles kept from the last build
+     */
+    int getTileCount() {
+        return tiles.size();
+    }
+
+    void clear() {
+        tiles.clear();
+        settings = null;
+    }
+
+    /**
+     * Build the navigation mesh of the source geometry.
+     *
+     * @param generator creates the generators for the tiles, each tile gets
+     * its own as they are not thread safe
+     * @param vertices the source geometry vertices in the form (x, y, z)
+     * @param indices the source triangles, wrapped clockwise
+     * @param tileSize the width and depth of a tile in cells
+     * @param executor runs the tile generation, or null to generate on the
+     * calling thread
+     * @return the stitched mesh, or null if nothing is traversable
+     */
+    TriangleMesh build(final NavMeshGenerator generator, final float[] vertices,
+            final int[] indices, int tileSize, ExecutorService executor) {
+        List<Object> newSettings = generator.getSettings();
+        if (!newSettings.equals(settings)) {
+            tiles.clear();
+            settings = newSettings;
+        }
+
+        final float cellSize = generator.getCellSize();
+        final float tileWidth = tileSize * cellSize;
+        final float border = ((int) Math.ceil(generator.getTraversableAreaBorderSize() / cellSize)
+                + EXTRA_BORDER_CELLS) * cellSize;
+
+        // all tiles share the height range of the whole geometry, the bottom
+        // snapped to the cell height so the spans of tiles built against an
+        // earlier range still line up
+        float minY = Float.POSITIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < indices.length; i++) {
+            minY = Math.min(minY, vertices[indices[i] * 3 + 1]);
+            maxY = Math.max(maxY, vertices[indices[i] * 3 + 1]);
+        }
+        final float cellHeight = generator.getCellHeight();
+        final float fieldMinY = (float) Math.floor(minY / cellHeight) * cellHeight;
+        final float fieldMaxY = maxY;
+
+        // find the triangles overlapping each tile and its border
+        TLongObjectHashMap<TIntArrayList> tileTriangles = new TLongObjectHashMap<TIntArrayList>();
+        for (int i = 0; i < indices.length; i += 3) {
+            float minX = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+            float maxX = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+            for (int v = 0; v < 3; v++) {
+                int p = indices[i + v] * 3;
+                minX = Math.min(minX, vertices[p]);
+                maxX = Math.max(maxX, vertices[p]);
+                minZ = Math.min(minZ, vertices[p + 2]);
+                maxZ = Math.max(maxZ, vertices[p + 2]);
+            }
+            int tileMinX = (int) Math.floor((minX - border) / tileWidth);
+            int tileMaxX = (int) Math.floor((maxX + border) / tileWidth);
+            int tileMinZ = (int) Math.floor((minZ - border) / tileWidth);
+            int tileMaxZ = (int) Math.floor((maxZ + border) / tileWidth);
+            for (int z = tileMinZ; z <= tileMaxZ; z++) {
+                for (int x = tileMinX; x <= tileMaxX; x++) {
+                    long key = key(x, z);
+                    TIntArrayList list = tileTriangles.get(key);
+                    if (list == null) {
+                        list = new TIntArrayList();
+                        tileTriangles.put(key, list);
+                    }
+                    list.add(i);
+                }
+            }
+        }
+
+        // generate the tiles whose input changed
+        List<Callable<Tile>> tasks = new ArrayList<Callable<Tile>>();
+        TLongObjectHashMap<Tile> newTiles = new TLongObjectHashMap<Tile>();
+        for (long key : tileTriangles.keys()) {
+            final int x = (int) (key >> 32);
+            final int z = (int) key;
+            final int[] tileIndices = triangleIndices(indices, tileTriangles.get(key));
+            final long hash = hash(vertices, tileIndices);
+            Tile tile = tiles.get(key);
+            if (tile != null && tile.inputHash == hash) {
+                newTiles.put(key, tile);
+                continue;
+            }
+            tasks.add(new Callable<Tile>() {
+                public Tile call() {
+                    return buildTile(generator, vertices, tileIndices, x, z, hash, tileWidth, border,
+                            fieldMinY, fieldMaxY);
+                }
+            });
+        }
+        // the tasks not yet picked up by the executor run on this thread
+        for (Tile tile : ParallelTasks.invokeAll(executor, tasks)) {
+            newTiles.put(key(tile.x, tile.z), tile);
+        }
+        tiles.clear();
+        tiles.putAll(newTiles);
+        rebuiltTiles = tasks.size();
+
+        return stitch(tileWidth, cellSize * 0.01f);
+    }
+
+    private static long key(int x, int z) {
+        return ((long) x << 32) | (z & 0xffffffffL);
+    }
+
+    private static int[] triangleIndices(int[] indices, TIntArrayList triangles) {
+        int[] result = new int[triangles.size() * 3];
+        for (int i = 0; i < triangles.size(); i++) {
+            System.arraycopy(indices, triangles.get(i), result, i * 3, 3);
+        }
+        return result;
+    }
+
+    /**
+     * Hash the positions of the triangles, so moving a tile's geometry
+     * around in the source buffers does not count as a change.
+     */
+    private static long hash(float[] vertices, int[] indices) {
+        long hash = 1125899906842597L + indices.length;
+        for (int i = 0; i < indices.length; i++) {
+            int p = indices[i] * 3;
+            hash = 31 * hash + Float.floatToIntBits(vertices[p]);
+            hash = 31 * hash + Float.floatToIntBits(vertices[p + 1]);
+            hash = 31 * hash + Float.floatToIntBits(vertices[p + 2]);
+        }
+        return hash;
+    }
+
+    private static Tile buildTile(NavMeshGenerator generator, float[] vertices, int[] indices,
+            int x, int z, long hash, float tileWidth, float border, float minY, float maxY) {
+        Tile tile = new Tile(x, z, hash);
+        float minX = x * tileWidth, minZ = z * tileWidth;
+        float maxX = (x + 1) * tileWidth, maxZ = (z + 1) * tileWidth;
+        TriangleMesh mesh = generator.createNmgen().build(vertices, indices,
+                new float[]{minX - border, minY, minZ - border},
+                new float[]{maxX + border, maxY, maxZ + border}, null);
+        if (mesh == null || mesh.indices == null) {
+            return tile;
+        }
+
+        // keep only the part of the mesh within the tile
+        TFloatArrayList triangles = new TFloatArrayList();
+        float[] polygon = new float[3 * 8];
+        float[] clipped = new float[3 * 8];
+        for (int i = 0; i < mesh.indices.length; i += 3) {
+            for (int v = 0; v < 3; v++) {
+                System.arraycopy(mesh.vertices, mesh.indices[i + v] * 3, polygon, v * 3, 3);
+            }
+            int count = clip(polygon, 3, clipped, 0, minX, 1);
+            count = clip(clipped, count, polygon, 0, maxX, -1);
+            count = clip(polygon, count, clipped, 2, minZ, 1);
+            count = clip(clipped, count, polygon, 2, maxZ, -1);
+            for (int v = 1; v + 1 < count; v++) {
+                addTriangle(triangles, polygon, 0, v, v + 1);
+            }
+        }
+        tile.triangles = triangles.toArray();
+        return tile;
+    }
+
+    /**
+     * Clip a convex polygon against an axis aligned plane, keeping the side
+     * where (coordinate - plane) * side >= 0. Points on the plane get the
+     * exact plane coordinate, so both tiles agree on their shared edge.
+     */
+    private static int clip(float[] in, int count, float[] out, int axis, float plane, int side) {
+        int result = 0;
+        for (int current = 0, previous = count - 1; current < count; previous = current++) {
+            float dp = (in[previous * 3 + axis] - plane) * side;
+            float dc = (in[current * 3 + axis] - plane) * side;
+            if ((dp >= 0) != (dc >= 0)) {
+                float s = dp / (dp - dc);
+                for (int c = 0; c < 3; c++) {
+                    out[result * 3 + c] = in[previous * 3 + c]
+                            + (in[current * 3 + c] - in[previous * 3 + c]) * s;
+                }
+                out[result * 3 + axis] = plane;
+                result++;
+            }
+            if (dc >= 0) {
+                System.arraycopy(in, current * 3, out, result * 3, 3);
+                result++;
+            }
+        }
+        return result;
+    }
+
+    private static void addTriangle(TFloatArrayList triangles, float[] points, int a, int b, int c) {
+        // skip triangles without area on the xz plane, they can not be cells
+        float area = (points[b * 3] - points[a * 3]) * (points[c * 3 + 2] - points[a * 3 + 2])
+                - (points[c * 3] - points[a * 3]) * (points[b * 3 + 2] - points[a * 3 + 2]);
+        if (Math.abs(area) < 1e-6f) {
+            return;
+        }
+        triangles.add(points, a * 3, 3);
+        triangles.add(points, b * 3, 3);
+        triangles.add(points, c * 3, 3);
+    }
+
+    /**
+     * Merge the tiles into one mesh. The vertices on the edges between tiles
+     * are collected per edge line, merged where tiles put them at almost the
+     * same place, and every triangle edge lying on such a line is split at
+     * the vertices of the line between its end points. This removes the
+     * T-junctions between tiles, so neighbor cells share their edges.
+     */
+    private TriangleMesh stitch(float tileWidth, float epsilon) {
+        Tile[] sorted = tiles.values(new Tile[tiles.size()]);
+        Arrays.sort(sorted, new Comparator<Tile>() {
+            public int compare(Tile a, Tile b) {
+                return a.z != b.z ? (a.z < b.z ? -1 : 1) : (a.x < b.x ? -1 : (a.x == b.x ? 0 : 1));
+            }
+        });
+
+        // the points on each tile edge line, sorted along the line
+        HashMap<Long, float[]> lines = new HashMap<Long, float[]>();
+        HashMap<Long, TFloatArrayList> linePoints = new HashMap<Long, TFloatArrayList>();
+        HashMap<Long, float[]> corners = new HashMap<Long, float[]>();
+        for (Tile tile : sorted) {
+            float[] t = tile.triangles;
+            for (int p = 0; p < t.length; p += 3) {
+                int lineX = lineIndex(t[p], tileWidth);
+                int lineZ = lineIndex(t[p + 2], tileWidth);
+                if (lineX != Integer.MIN_VALUE && lineZ != Integer.MIN_VALUE) {
+                    long key = key(lineX, lineZ);
+                    if (!corners.containsKey(key)) {
+                        corners.put(key, new float[]{t[p], t[p + 1], t[p + 2]});
+                    }
+                }
+            }
+        }
+        for (Tile tile : sorted) {
+            float[] t = tile.triangles;
+            for (int p = 0; p < t.length; p += 3) {
+                float[] point = canonicalCorner(corners, t, p, tileWidth);
+                int lineX = lineIndex(point[0], tileWidth);
+                int lineZ = lineIndex(point[2], tileWidth);
+                if (lineX != Integer.MIN_VALUE) {
+                    addLinePoint(linePoints, lineKey(0, lineX), point);
+                }
+                if (lineZ != Integer.MIN_VALUE) {
+                    addLinePoint(linePoints, lineKey(2, lineZ), point);
+                }
+            }
+        }
+        for (Long key : linePoints.keySet()) {
+            lines.put(key, mergeLinePoints(linePoints.get(key), (int) (key & 3), epsilon));
+        }
+
+        // snap the vertices on the lines and split the edges along them
+        TFloatArrayList result = new TFloatArrayList();
+        float[] work = new float[9];
+        TFloatArrayList pending = new TFloatArrayList();
+        for (Tile tile : sorted) {
+            float[] t = tile.triangles;
+            for (int i = 0; i < t.length; i += 9) {
+                for (int v = 0; v < 3; v++) {
+                    float[] point = snap(lines, corners, t, i + v * 3, tileWidth, epsilon);
+                    System.arraycopy(point, 0, work, v * 3, 3);
+                }
+                pending.resetQuick();
+                pending.add(work);
+                while (!pending.isEmpty()) {
+                    int last = pending.size() - 9;
+                    float[] triangle = pending.toArray(last, 9);
+                    pending.remove(last, 9);
+                    if (!split(lines, triangle, tileWidth, epsilon, pending)) {
+                        addTriangle(result, triangle, 0, 1, 2);
+                    }
+                }
+            }
+        }
+        if (result.isEmpty()) {
+            return null;
+        }
+
+        // weld the vertices
+        TriangleMesh mesh = new TriangleMesh();
+        HashMap<Vector3f, Integer> welded = new HashMap<Vector3f, Integer>();
+        TFloatArrayList weldedVertices = new TFloatArrayList();
+        mesh.indices = new int[result.size() / 3];
+        for (int i = 0; i < mesh.indices.length; i++) {
+            Vector3f vertex = new Vector3f(result.get(i * 3), result.get(i * 3 + 1), result.get(i * 3 + 2));
+            Integer index = welded.get(vertex);
+            if (index == null) {
+                index = welded.size();
+                welded.put(vertex, index);
+                weldedVertices.add(result.toArray(i * 3, 3));
+            }
+            mesh.indices[i] = index;
+        }
+        mesh.vertices = weldedVertices.toArray();
+        mesh.triangleRegions = new int[mesh.indices.length / 3];
+        return mesh;
+    }
+
+    /**
+     * @return the index of the tile edge line the coordinate lies on, or
+     * Integer.MIN_VALUE if it is not on one. Clipping puts the points on the
+     * edges, up to the rounding of line * tileWidth.
+     */
+    private static int lineIndex(float coordinate, float tileWidth) {
+        int line = Math.round(coordinate / tileWidth);
+        float distance = Math.abs(line * tileWidth - coordinate);
+        return distance <= tileWidth * LINE_EPSILON ? line : Integer.MIN_VALUE;
+    }
+
+    private static long lineKey(int axis, int line) {
+        return ((long) line << 2) | axis;
+    }
+
+    private static float[] canonicalCorner(HashMap<Long, float[]> corners, float[] t, int p, float tileWidth) {
+        int lineX = lineIndex(t[p], tileWidth);
+        int lineZ = lineIndex(t[p + 2], tileWidth);
+        if (lineX != Integer.MIN_VALUE && lineZ != Integer.MIN_VALUE) {
+            return corners.get(key(lineX, lineZ));
+        }
+        return new float[]{t[p], t[p + 1], t[p + 2]};
+    }
+
+    private static void addLinePoint(HashMap<Long, TFloatArrayList> linePoints, long key, float[] point) {
+        TFloatArrayList list = linePoints.get(key);
+        if (list == null) {
+            list = new TFloatArrayList();
+            linePoints.put(key, list);
+        }
+        list.add(point);
+    }
+
+    /**
+     * Sort the points along the line and merge the points closer than
+     * epsilon, keeping the first one. Corners are always kept.
+     */
+    private static float[] mergeLinePoints(TFloatArrayList points, int axis, float epsilon) {
+        final int along = axis == 0 ? 2 : 0;
+        final float[] data = points.toArray();
+        Integer[] order = new Integer[data.length / 3];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        // a stable sort keeps the points of the first tiles first
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Float.compare(data[a * 3 + along], data[b * 3 + along]);
+            }
+        });
+        TFloatArrayList merged = new TFloatArrayList();
+        float last = Float.NEGATIVE_INFINITY;
+        for (Integer i : order) {
+            float position = data[i * 3 + along];
+            if (position - last > epsilon) {
+                merged.add(data, i * 3, 3);
+                last = position;
+            }
+        }
+        return merged.toArray();
+    }
+
+    /**
+     * @return the shared position of a vertex on a tile edge line, or the
+     * vertex itself
+     */
+    private static float[] snap(HashMap<Long, float[]> lines, HashMap<Long, float[]> corners,
+            float[] t, int p, float tileWidth, float epsilon) {
+        float[] point = canonicalCorner(corners, t, p, tileWidth);
+        int lineX = lineIndex(point[0], tileWidth);
+        int lineZ = lineIndex(point[2], tileWidth);
+        if (lineX != Integer.MIN_VALUE && lineZ != Integer.MIN_VALUE) {
+            return point;
+        }
+        float[] line = null;
+        int along = 0;
+        if (lineX != Integer.MIN_VALUE) {
+            line = lines.get(lineKey(0, lineX));
+            along = 2;
+        } else if (lineZ != Integer.MIN_VALUE) {
+            line = lines.get(lineKey(2, lineZ));
+        }
+        if (line != null) {
+            for (int i = 0; i < line.length; i += 3) {
+                if (Math.abs(line[i + along] - point[along]) <= epsilon) {
+                    return new float[]{line[i], line[i + 1], line[i + 2]};
+                }
+            }
+        }
+        return point;
+    }
+
+    /**
+     * Split the first edge of the triangle lying on a tile edge line at the
+     * points of the line between its end points.
+     *
+     * @return false if no edge needs to be split
+     */
+    private static boolean split(HashMap<Long, float[]> lines, float[] triangle,
+            float tileWidth, float epsilon, TFloatArrayList store) {
+        for (int e = 0; e < 3; e++) {
+            int a = e, b = (e + 1) % 3, c = (e + 2) % 3;
+            for (int axis = 0; axis <= 2; axis += 2) {
+                int lineA = lineIndex(triangle[a * 3 + axis], tileWidth);
+                if (lineA == Integer.MIN_VALUE || lineA != lineIndex(triangle[b * 3 + axis], tileWidth)) {
+                    continue;
+                }
+                float[] line = lines.get(lineKey(axis, lineA));
+                if (line == null) {
+                    continue;
+                }
+                int along = axis == 0 ? 2 : 0;
+                float from = triangle[a * 3 + along];
+                float to = triangle[b * 3 + along];
+                float low = Math.min(from, to) + epsilon;
+                float high = Math.max(from, to) - epsilon;
+                // the line points are sorted, find the one closest to a
+                int first = -1;
+                for (int i = 0; i < line.length; i += 3) {
+                    float position = line[i + along];
+                    if (position > low && position < high) {
+                        first = i;
+                        if (from < to) {
+                            break;
+                        }
+                    }
+                }
+                if (first < 0) {
+                    continue;
+                }
+                // split at the point next to a, the rest is split again
+                float[] point = {line[first], line[first + 1], line[first + 2]};
+                store.add(triangle, a * 3, 3);
+                store.add(point);
+                store.add(triangle, c * 3, 3);
+                store.add(point);
+                store.add(triangle, b * 3, 3);
+                store.add(triangle, c * 3, 3);
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,153 @@
+package navmesh;
+
+import com.jme3.export.binary.BinaryExporter;
+import com.jme3.export.binary.BinaryImporter;
+import com.jme3.math.Vector2f;
+import com.jme3.math.Vector3f;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CellGridTest {
+
+    private static final int GRID_SIZE = 30;
+    private static final int QUERIES = 2000;
+
+    private NavMesh navMesh;
+    private Vector3f[] points;
+
+    @Before
+    public void setUp() {
+        navMesh = TestMeshes.createGridMesh(GRID_SIZE, new Random(7));
+        Random random = new Random(42);
+        points = new Vector3f[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            // include points outside the mesh, in the holes, above and
+            // below the cells
+            float x = random.nextFloat() * (GRID_SIZE + 10) - 5;
+            float z = random.nextFloat() * (GRID_SIZE + 10) - 5;
+            points[i] = new Vector3f(x, x * 0.25f + random.nextFloat() * 4 - 2, z);
+        }
+    }
+
+    /**
+     * The linear search over all cells the grid replaces.
+     */
+    private static Cell scanInsideCell(NavMesh navMesh, Vector3f point, float maxHeight) {
+        for (int i = 0; i < navMesh.getNumCells(); i++) {
+            Cell cell = navMesh.getCell(i);
+            if (cell.contains(point) && point.y - cell.getHeightOnCell(point) < maxHeight) {
+                return cell;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The linear search over all cells the grid replaces.
+     */
+    private static Cell scanClosestCell(NavMesh navMesh, Vector3f point) {
+        float closestDistance = Float.MAX_VALUE;
+        float closestHeight = Float.MAX_VALUE;
+        boolean foundHomeCell = false;
+        Cell closestCell = null;
+        for (int i = 0; i < navMesh.getNumCells(); i++) {
+            Cell cell = navMesh.getCell(i);
+            if (cell.contains(point)) {
+                float distance = Math.abs(cell.getHeightOnCell(point) - point.y);
+                if (!foundHomeCell || distance < closestHeight) {
+                    closestCell = cell;
+                    closestHeight = distance;
+                    foundHomeCell = true;
+                }
+            }
+            if (!foundHomeCell) {
+                Line2D motionPath = new Line2D(new Vector2f(cell.getCenter().x, cell.getCenter().z),
+                        new Vector2f(point.x, point.z));
+                Cell.ClassifyResult result = cell.classifyPathToCell(motionPath);
+                if (result.result == Cell.PathResult.ExitingCell) {
+                    Vector3f closestPoint = new Vector3f(result.intersection.x, 0, result.intersection.y);
+                    cell.computeHeightOnCell(closestPoint);
+                    float distance = closestPoint.subtract(point).length();
+                    if (distance < closestDistance) {
+                        closestDistance = distance;
+                        closestCell = cell;
+                    }
+                }
+            }
+        }
+        return closestCell;
+    }
+
+    @Test
+    public void testInsideCellMatchesScan() {
+        int inside = 0;
+        for (Vector3f point : points) {
+            Cell expected = scanInsideCell(navMesh, point, 1f);
+            assertSame(expected, navMesh.findInsideCell(point, 1f));
+            if (expected != null) {
+                inside++;
+            }
+        }
+        // the points must cover both cases
+        assertTrue(inside > 0);
+        assertTrue(inside < QUERIES);
+    }
+
+    @Test
+    public void testClosestCellMatchesScan() {
+        for (Vector3f point : points) {
+            assertSame(scanClosestCell(navMesh, point), navMesh.findClosestCell(point));
+        }
+    }
+
+    /**
+     * Linking through the grid must give the same links as checking every
+     * pair of cells.
+     */
+    @Test
+    public void testLinksMatchPairwiseLinking() {
+        NavMesh unlinked = new NavMesh();
+        for (int i = 0; i < navMesh.getNumCells(); i++) {
+            Cell cell = navMesh.getCell(i);
+            unlinked.addCell(cell.getVertex(0), cell.getVertex(1), cell.getVertex(2));
+        }
+        for (int i = 0; i < unlinked.getNumCells(); i++) {
+            for (int j = 0; j < unlinked.getNumCells(); j++) {
+                if (i != j) {
+                    unlinked.getCell(i).checkAndLink(unlinked.getCell(j), 0.001f);
+                }
+            }
+        }
+        for (int i = 0; i < navMesh.getNumCells(); i++) {
+            for (int side = 0; side < 3; side++) {
+                Cell expected = unlinked.getCell(i).getLink(side);
+                Cell link = navMesh.getCell(i).getLink(side);
+                assertEquals(expected == null ? -1 : expected.getIndex(),
+                        link == null ? -1 : link.getIndex());
+            }
+        }
+    }
+
+    @Test
+    public void testLookupAfterLoading() throws IOException {
+        // cells are saved by following their links recursively, which
+        // needs a small mesh
+        NavMesh saved = TestMeshes.createGridMesh(8, new Random(7));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryExporter.getInstance().save(saved, out);
+        NavMesh loaded = (NavMesh) BinaryImporter.getInstance().load(
+                new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(saved.getNumCells(), loaded.getNumCells());
+        assertEquals(loaded.getNumCells(), loaded.getCellGrid().getCellCount());
+        for (Vector3f point : points) {
+            Vector3f scaled = point.mult(8f / GRID_SIZE);
+            assertEquals(saved.findClosestCell(scaled).getIndex(),
+                    loaded.findClosestCell(scaled).getIndex());
+        }
+    }
+}
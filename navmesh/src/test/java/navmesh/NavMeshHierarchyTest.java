@@ -0,0 +1,135 @@
+package navmesh;
+
+import com.jme3.math.Vector3f;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NavMeshHierarchyTest {
+
+    private static final int GRID_SIZE = 48;
+    private static final int WALL_SPACING = 8;
+    private static final float REGION_SIZE = 8;
+    private static final int PATHS = 50;
+
+    private static float pathLength(Path path) {
+        float length = 0;
+        Vector3f last = null;
+        for (Path.Waypoint waypoint : path.getWaypoints()) {
+            if (last != null) {
+                length += last.distance(waypoint.getPosition());
+            }
+            last = waypoint.getPosition();
+        }
+        return length;
+    }
+
+    /**
+     * Long paths through the maze, from its first rows to its last ones.
+     */
+    @Test
+    public void testLongPathsMatchPlainSearch() {
+        NavMesh navMesh = TestMeshes.createMazeMesh(GRID_SIZE, WALL_SPACING, false);
+        NavMeshHierarchy hierarchy = new NavMeshHierarchy(navMesh, REGION_SIZE);
+        assertTrue(hierarchy.getRegionCount() > 1);
+        assertTrue(hierarchy.getEntranceCount() > 0);
+
+        NavMeshPathfinder plain = new NavMeshPathfinder(navMesh);
+        NavMeshPathfinder hierarchical = new NavMeshPathfinder(navMesh);
+        hierarchical.setHierarchy(hierarchy);
+        Random random = new Random(42);
+        for (int i = 0; i < PATHS; i++) {
+            Vector3f start = new Vector3f(random.nextFloat() * GRID_SIZE, 0,
+                    random.nextFloat() * WALL_SPACING / 2);
+            Vector3f goal = new Vector3f(random.nextFloat() * GRID_SIZE, 0,
+                    GRID_SIZE - random.nextFloat() * WALL_SPACING / 2);
+            plain.setPosition(start);
+            hierarchical.setPosition(start);
+            assertTrue(plain.computePath(goal));
+            assertTrue(hierarchical.computePath(goal));
+            assertTrue(hierarchy.isLongPath(plain.getPath().getStart().getCell(), plain.getPath().getEnd().getCell()));
+
+            Path plainPath = plain.getPath();
+            Path hierarchicalPath = hierarchical.getPath();
+            assertSame(plainPath.getStart().getCell(), hierarchicalPath.getStart().getCell());
+            assertSame(plainPath.getEnd().getCell(), hierarchicalPath.getEnd().getCell());
+            // neither search gives the shortest path, but the coarse route
+            // must not make a detour
+            float plainLength = pathLength(plainPath);
+            float hierarchicalLength = pathLength(hierarchicalPath);
+            assertEquals(plainLength, hierarchicalLength, plainLength * 0.1f);
+        }
+    }
+
+    /**
+     * Paths within a region or to a neighbor region use the plain search.
+     */
+    @Test
+    public void testShortPathsUsePlainSearch() {
+        NavMesh navMesh = TestMeshes.createMazeMesh(GRID_SIZE, WALL_SPACING, false);
+        NavMeshHierarchy hierarchy = new NavMeshHierarchy(navMesh, REGION_SIZE);
+        NavMeshPathfinder plain = new NavMeshPathfinder(navMesh);
+        NavMeshPathfinder hierarchical = new NavMeshPathfinder(navMesh);
+        hierarchical.setHierarchy(hierarchy);
+        Random random = new Random(42);
+        for (int i = 0; i < PATHS; i++) {
+            Vector3f start = new Vector3f(random.nextFloat() * (GRID_SIZE - 6), 0,
+                    random.nextFloat() * (WALL_SPACING - 1));
+            Vector3f goal = start.add(random.nextFloat() * 5, 0, 0);
+            plain.setPosition(start);
+            hierarchical.setPosition(start);
+            assertTrue(plain.computePath(goal));
+            assertTrue(hierarchical.computePath(goal));
+            assertEquals(TestMeshes.describe(plain.getPath()),
+                    TestMeshes.describe(hierarchical.getPath()));
+        }
+    }
+
+    /**
+     * A hierarchy built for another mesh, or one that no longer matches
+     * its mesh, is ignored.
+     */
+    @Test
+    public void testStaleHierarchyIsIgnored() {
+        NavMesh navMesh = TestMeshes.createMazeMesh(GRID_SIZE, WALL_SPACING, false);
+        NavMesh other = TestMeshes.createMazeMesh(GRID_SIZE, WALL_SPACING, false);
+        NavMeshHierarchy hierarchy = new NavMeshHierarchy(other, REGION_SIZE);
+        assertFalse(hierarchy.isValidFor(navMesh));
+
+        NavMeshPathfinder plain = new NavMeshPathfinder(navMesh);
+        NavMeshPathfinder hierarchical = new NavMeshPathfinder(navMesh);
+        hierarchical.setHierarchy(hierarchy);
+        Vector3f start = new Vector3f(1.5f, 0, 1.5f);
+        Vector3f goal = new Vector3f(GRID_SIZE - 1.5f, 0, GRID_SIZE - 1.5f);
+        plain.setPosition(start);
+        hierarchical.setPosition(start);
+        assertTrue(plain.computePath(goal));
+        assertTrue(hierarchical.computePath(goal));
+        assertEquals(TestMeshes.describe(plain.getPath()),
+                TestMeshes.describe(hierarchical.getPath()));
+
+        other.addCell(new Vector3f(-2, 0, -2), new Vector3f(-1, 0, -1), new Vector3f(-1, 0, -2));
+        assertFalse(hierarchy.isValidFor(other));
+    }
+
+    /**
+     * Without a way between the regions neither search finds a path.
+     */
+    @Test
+    public void testNoPathBetweenDisconnectedParts() {
+        NavMesh navMesh = TestMeshes.createMazeMesh(GRID_SIZE, WALL_SPACING, true);
+        NavMeshHierarchy hierarchy = new NavMeshHierarchy(navMesh, REGION_SIZE);
+        NavMeshPathfinder plain = new NavMeshPathfinder(navMesh);
+        NavMeshPathfinder hierarchical = new NavMeshPathfinder(navMesh);
+        hierarchical.setHierarchy(hierarchy);
+        Vector3f start = new Vector3f(1.5f, 0, 1.5f);
+        Vector3f goal = new Vector3f(GRID_SIZE - 1.5f, 0, GRID_SIZE - 1.5f);
+        plain.setPosition(start);
+        hierarchical.setPosition(start);
+        assertFalse(plain.computePath(goal));
+        assertFalse(hierarchical.computePath(goal));
+        // a second try must not be answered from a stale cached route
+        hierarchical.setPosition(start);
+        assertFalse(hierarchical.computePath(goal));
+    }
+}
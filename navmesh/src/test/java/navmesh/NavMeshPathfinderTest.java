@@ -0,0 +1,109 @@
+package navmesh;
+
+import com.jme3.math.Vector3f;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NavMeshPathfinderTest {
+
+    private static final int AGENTS = 300;
+
+    private NavMesh navMesh;
+    private Vector3f[] starts;
+    private Vector3f[] goals;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        navMesh = TestMeshes.createGridMesh(24, new Random(7));
+        Random random = new Random(42);
+        starts = new Vector3f[AGENTS];
+        goals = new Vector3f[AGENTS];
+        for (int i = 0; i < AGENTS; i++) {
+            starts[i] = TestMeshes.randomCellCenter(navMesh, random);
+            goals[i] = TestMeshes.randomCellCenter(navMesh, random);
+        }
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private String[] computeOneByOne() {
+        String[] paths = new String[AGENTS];
+        NavMeshPathfinder pathfinder = new NavMeshPathfinder(navMesh);
+        for (int i = 0; i < AGENTS; i++) {
+            pathfinder.clearPath();
+            pathfinder.setPosition(starts[i]);
+            paths[i] = pathfinder.computePath(goals[i]) 
+                    ? TestMeshes.describe(pathfinder.getPath()) : null;
+        }
+        return paths;
+    }
+
+    /**
+     * A search must not leave any state behind that changes the next one.
+     */
+    @Test
+    public void testRepeatedSearchesGiveSamePaths() {
+        String[] first = computeOneByOne();
+        String[] second = computeOneByOne();
+        int found = 0;
+        for (int i = 0; i < AGENTS; i++) {
+            assertEquals(first[i], second[i]);
+            if (first[i] != null) {
+                found++;
+            }
+        }
+        assertTrue(found > AGENTS / 2);
+    }
+
+    /**
+     * Searches running at once on the same mesh must give the same paths as
+     * searches run one after the other.
+     */
+    @Test
+    public void testBatchMatchesOneByOne() {
+        String[] expected = computeOneByOne();
+        for (int round = 0; round < 3; round++) {
+            NavMeshPathfinder[] pathfinders = new NavMeshPathfinder[AGENTS];
+            for (int i = 0; i < AGENTS; i++) {
+                pathfinders[i] = new NavMeshPathfinder(navMesh);
+                pathfinders[i].setPosition(starts[i]);
+            }
+            boolean[] results = NavMeshPathfinder.computePaths(pathfinders, goals, executor);
+            for (int i = 0; i < AGENTS; i++) {
+                assertEquals(expected[i] != null, results[i]);
+                if (results[i]) {
+                    assertEquals(expected[i], TestMeshes.describe(pathfinders[i].getPath()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBatchWithoutExecutor() {
+        String[] expected = computeOneByOne();
+        NavMeshPathfinder[] pathfinders = new NavMeshPathfinder[AGENTS];
+        for (int i = 0; i < AGENTS; i++) {
+            pathfinders[i] = new NavMeshPathfinder(navMesh);
+            pathfinders[i].setPosition(starts[i]);
+        }
+        boolean[] results = NavMeshPathfinder.computePaths(pathfinders, goals, null);
+        for (int i = 0; i < AGENTS; i++) {
+            assertEquals(expected[i] != null, results[i]);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBatchNeedsOneGoalPerPathfinder() {
+        NavMeshPathfinder.computePaths(new NavMeshPathfinder[2], new Vector3f[1], null);
+    }
+}
@@ -0,0 +1,78 @@
+package navmesh;
+
+import com.jme3.math.Vector3f;
+import java.util.Random;
+
+/**
+ * Generated nav meshes for the tests.
+ */
+final class TestMeshes {
+
+    private TestMeshes() {
+    }
+
+    /**
+     * Create a mesh of two triangles per grid square, leaving out about one
+     * square in ten to force the paths around obstacles. The mesh slopes
+     * along x so that the cell heights differ.
+     */
+    static NavMesh createGridMesh(int size, Random random) {
+        NavMesh navMesh = new NavMesh();
+        for (int z = 0; z < size; z++) {
+            for (int x = 0; x < size; x++) {
+                if (random.nextFloat() < 0.1f) {
+                    continue;
+                }
+                Vector3f a = new Vector3f(x, x * 0.25f, z);
+                Vector3f b = new Vector3f(x + 1, (x + 1) * 0.25f, z);
+                Vector3f c = new Vector3f(x + 1, (x + 1) * 0.25f, z + 1);
+                Vector3f d = new Vector3f(x, x * 0.25f, z + 1);
+                navMesh.addCell(a, c, b);
+                navMesh.addCell(a, d, c);
+            }
+        }
+        navMesh.linkCells();
+        return navMesh;
+    }
+
+    /**
+     * Create a flat mesh of two triangles per grid square with a wall every
+     * spacing rows, open at the left and right end in turns. If closed is
+     * true the first wall has no opening.
+     */
+    static NavMesh createMazeMesh(int size, int spacing, boolean closed) {
+        NavMesh navMesh = new NavMesh();
+        for (int z = 0; z < size; z++) {
+            boolean wall = z % spacing == spacing - 1;
+            boolean openLeft = (z / spacing) % 2 == 1;
+            for (int x = 0; x < size; x++) {
+                if (wall && (closed && z == spacing - 1 || (openLeft ? x >= 2 : x < size - 2))) {
+                    continue;
+                }
+                Vector3f a = new Vector3f(x, 0, z);
+                Vector3f b = new Vector3f(x + 1, 0, z);
+                Vector3f c = new Vector3f(x + 1, 0, z + 1);
+                Vector3f d = new Vector3f(x, 0, z + 1);
+                navMesh.addCell(a, c, b);
+                navMesh.addCell(a, d, c);
+            }
+        }
+        navMesh.linkCells();
+        return navMesh;
+    }
+
+    static Vector3f randomCellCenter(NavMesh navMesh, Random random) {
+        return navMesh.getCell(random.nextInt(navMesh.getNumCells())).getCenter().clone();
+    }
+
+    /**
+     * @return the waypoint positions of the path
+     */
+    static String describe(Path path) {
+        StringBuilder sb = new StringBuilder();
+        for (Path.Waypoint waypoint : path.getWaypoints()) {
+            sb.append(waypoint.getPosition()).append(' ');
+        }
+        return sb.toString();
+    }
+}